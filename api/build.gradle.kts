@@ -5,8 +5,14 @@ plugins {
 dependencies {
     val jUnitJupiterVersion: String by rootProject.extra
     val jUnit4Version: String by rootProject.extra
+    val jmhVersion: String by rootProject.extra
 
     implementation("junit", "junit", jUnit4Version)
+    // Benchmarks using the JMH annotations of the API classes are always run by JMH.
+    compileOnly("org.openjdk.jmh", "jmh-core", jmhVersion)
+
+    // The tests read the JMH annotations of the API classes at run time.
+    testImplementation("org.openjdk.jmh", "jmh-core", jmhVersion)
 
     testImplementation("org.junit.jupiter", "junit-jupiter-api", jUnitJupiterVersion)
     testRuntimeOnly("org.junit.jupiter", "junit-jupiter-engine", jUnitJupiterVersion)
@@ -7,6 +7,37 @@ import org.junit.runner.Description;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.Statement;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of generated benchmarks, running a test method together with the fixture methods and
+ * rules of its test class the way JUnit 4 would.
+ *
+ * <p>Everything that stays the same across invocations, such as descriptions, framework methods
+ * and, for test classes without rules, the statements wrapping the test method, is created once
+ * per benchmark instance and reused by every invocation, so that the harness itself allocates as
+ * little as possible per operation. Rules are applied anew on every invocation, since rule fields
+ * belong to the test instance that is created for each invocation. Generated subclasses of test
+ * classes without rules declare so through {@link #hasClassRules()} and
+ * {@link #hasInstanceRules()}. Instances are not thread-safe, which matches the thread scope of
+ * the benchmark state.
+ *
+ * <p>By default, the class fixture methods and class rules run around every invocation. Once
+ * {@link #startClassFixture(Class)} has been called, typically from a trial-level setup method,
+ * invocations only run the instance-level fixtures and rules until
+ * {@link #stopClassFixture()} is called.
+ *
+ * <p>Similarly, the test instance is created and its fixture methods run as part of every
+ * invocation by default. Once {@link #startInstanceFixture()} has been called, typically from an
+ * invocation-level setup method, the next invocation only runs the test method, until
+ * {@link #stopInstanceFixture()} is called.
+ *
+ * <p>Once {@link #startPhases(PhaseCounters)} has been called, typically at the start of each
+ * benchmark method, invocations record the time spent in each of their phases in the given
+ * {@link PhaseCounters}. The fixture methods are then run through timed actions, which are only
+ * created on that first call, so that benchmarks without counters do not pay for the timing.
+ */
 public abstract class JU2JmhBenchmark {
     @FunctionalInterface
     public interface ThrowingRunnable {
@@ -41,17 +72,71 @@ public abstract class JU2JmhBenchmark {
         return statement;
     }
 
+    /**
+     * Returns whether the test class has class rules, i.e. whether
+     * {@link #applyClassRuleFields(Statement, Description)} or
+     * {@link #applyClassRuleMethods(Statement, Description)} are overridden to apply any rules.
+     * Returns true by default, so that subclasses applying class rules need not override it.
+     * Subclasses without class rules may override it to return false, in which case class
+     * fixture methods are run without building a statement chain.
+     *
+     * @return true if the test class may have class rules, false if it has none
+     */
+    public boolean hasClassRules() {
+        return true;
+    }
+
+    /**
+     * Returns whether the test class has instance rules, i.e. whether
+     * {@link #applyRuleFields(Statement, Description)} or
+     * {@link #applyRuleMethods(Statement, Description)} are overridden to apply any rules.
+     * Returns true by default, so that subclasses applying instance rules need not override it.
+     * Subclasses without instance rules may override it to return false, in which case instance
+     * fixture methods are run without building a statement chain.
+     *
+     * @return true if the test class may have instance rules, false if it has none
+     */
+    public boolean hasInstanceRules() {
+        return true;
+    }
+
+    private final Map<String, Description> descriptions = new HashMap<>();
+    private final Map<String, FrameworkMethod> frameworkMethods = new HashMap<>();
+    private ThrowingRunnable beforeAction = this::before;
+    private ThrowingRunnable afterAction = this::after;
+    private ThrowingRunnable beforeClassAction = this::beforeClass;
+    private ThrowingRunnable afterClassAction = this::afterClass;
+    private BeforeAfterStatement testStatement =
+            new BeforeAfterStatement(beforeAction, null, afterAction);
+    private BeforeAfterStatement classStatement = new BeforeAfterStatement(
+            beforeClassAction, testStatement::evaluate, afterClassAction);
+    private final ExpectedExceptionAction expectedExceptionAction = new ExpectedExceptionAction();
+    private final TimedTestAction timedTestAction = new TimedTestAction();
+    private PhaseCounters phaseCounters = null;
+    private boolean classFixtureStarted = false;
+    private TrialClassFixture trialClassFixture = null;
+    private boolean instanceFixtureStarted = false;
+
     public final Description description(String methodName) {
-        return Description.createTestDescription(implementation().getClass(), methodName);
+        Description description = descriptions.get(methodName);
+        if (description == null) {
+            description =
+                    Description.createTestDescription(implementation().getClass(), methodName);
+            descriptions.put(methodName, description);
+        }
+        return description;
     }
 
     private FrameworkMethod frameworkMethodFromDescription(Description description) {
-        FrameworkMethod frameworkMethod;
-        try {
-            frameworkMethod = new FrameworkMethod(
-                    implementation().getClass().getMethod(description.getMethodName()));
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
+        FrameworkMethod frameworkMethod = frameworkMethods.get(description.getMethodName());
+        if (frameworkMethod == null) {
+            try {
+                frameworkMethod = new FrameworkMethod(
+                        implementation().getClass().getMethod(description.getMethodName()));
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+            frameworkMethods.put(description.getMethodName(), frameworkMethod);
         }
         return frameworkMethod;
     }
@@ -70,7 +155,7 @@ public abstract class JU2JmhBenchmark {
 
     private static class BeforeAfterStatement extends Statement {
         private final ThrowingRunnable beforeAction;
-        private final ThrowingRunnable action;
+        private ThrowingRunnable action;
         private final ThrowingRunnable afterAction;
 
         private BeforeAfterStatement(
@@ -92,21 +177,12 @@ public abstract class JU2JmhBenchmark {
         }
     }
 
-    public final void runBenchmark(ThrowingRunnable benchmark, Description description)
-            throws Throwable {
-        Statement statement = new BeforeAfterStatement(this::before, benchmark, this::after);
-        statement = applyRuleMethods(statement, description);
-        statement = applyRuleFields(statement, description);
-        statement = new BeforeAfterStatement(
-                this::beforeClass, statement::evaluate, this::afterClass);
-        statement = applyClassRuleMethods(statement, description);
-        statement = applyClassRuleFields(statement, description);
-        statement.evaluate();
-    }
+    private static class ExpectedExceptionAction implements ThrowingRunnable {
+        private ThrowingRunnable benchmark;
+        private Class<? extends Throwable> expected;
 
-    public final void runExceptionBenchmark(ThrowingRunnable benchmark, Description description,
-                                            Class<? extends Throwable> expected) throws Throwable {
-        ThrowingRunnable exceptionBenchmark = () -> {
+        @Override
+        public void run() throws Throwable {
             try {
                 benchmark.run();
             } catch (Throwable e) {
@@ -117,7 +193,212 @@ public abstract class JU2JmhBenchmark {
             }
             throw new AssertionError(
                     "Expected " + expected.getCanonicalName() + " but none was thrown");
-        };
-        runBenchmark(exceptionBenchmark, description);
+        }
+    }
+
+    private static class TimedTestAction implements ThrowingRunnable {
+        private ThrowingRunnable benchmark;
+        private PhaseCounters counters;
+
+        @Override
+        public void run() throws Throwable {
+            counters.startPhase();
+            benchmark.run();
+            counters.endTest();
+        }
+    }
+
+    private Statement applyClassRules(Statement statement, Description description) {
+        statement = applyClassRuleMethods(statement, description);
+        statement = applyClassRuleFields(statement, description);
+        return statement;
+    }
+
+    /**
+     * Sets up the class fixtures of the given test class for all following invocations, until
+     * {@link #stopClassFixture()} is called. Class rules are evaluated on a separate thread for
+     * the duration of the fixture, as described in {@link TrialClassFixture}. Does nothing if the
+     * class fixtures are already set up.
+     *
+     * @param testClass the test class, which class rules are given a description of
+     * @throws Throwable if a class fixture method or class rule failed
+     */
+    public final void startClassFixture(Class<?> testClass) throws Throwable {
+        if (classFixtureStarted) {
+            return;
+        }
+        if (hasClassRules()) {
+            Description description = Description.createSuiteDescription(testClass);
+            trialClassFixture = TrialClassFixture.start(trial -> applyClassRules(
+                    new BeforeAfterStatement(this::beforeClass, trial::evaluate, this::afterClass),
+                    description), testClass);
+        } else {
+            beforeClass();
+        }
+        classFixtureStarted = true;
+    }
+
+    /**
+     * Tears down the class fixtures set up by {@link #startClassFixture(Class)}. Does nothing if
+     * the class fixtures are not set up.
+     *
+     * @throws Throwable if a class fixture method or class rule failed
+     */
+    public final void stopClassFixture() throws Throwable {
+        if (!classFixtureStarted) {
+            return;
+        }
+        classFixtureStarted = false;
+        if (trialClassFixture != null) {
+            TrialClassFixture fixture = trialClassFixture;
+            trialClassFixture = null;
+            fixture.stop();
+        } else {
+            afterClass();
+        }
+    }
+
+    /**
+     * Creates the test instance and sets up its fixtures, as well as the class fixtures unless
+     * they are set up by {@link #startClassFixture(Class)}, for the following invocation, until
+     * {@link #stopInstanceFixture()} is called. Rules wrap the test method, so if the test class
+     * has instance rules, or class rules that are not set up by {@link #startClassFixture(Class)},
+     * only the test instance is created, and fixtures and rules still run as part of the
+     * invocation.
+     *
+     * @throws Throwable if creating the test instance or a fixture method failed
+     */
+    public final void startInstanceFixture() throws Throwable {
+        createImplementation();
+        if (hasInstanceRules() || (!classFixtureStarted && hasClassRules())) {
+            return;
+        }
+        if (!classFixtureStarted) {
+            beforeClass();
+        }
+        before();
+        instanceFixtureStarted = true;
+    }
+
+    /**
+     * Tears down the fixtures set up by {@link #startInstanceFixture()}. Does nothing if the
+     * fixtures are not set up.
+     *
+     * @throws Throwable if a fixture method failed
+     */
+    public final void stopInstanceFixture() throws Throwable {
+        if (!instanceFixtureStarted) {
+            return;
+        }
+        instanceFixtureStarted = false;
+        if (classFixtureStarted) {
+            after();
+            return;
+        }
+        try {
+            after();
+        } finally {
+            afterClass();
+        }
+    }
+
+    /**
+     * Makes the following invocations record the time spent in each of their phases in the given
+     * counters, and starts timing the current invocation, beginning with the creation of the test
+     * instance. Must be called at the start of every benchmark method that is to be timed, as
+     * the invocation is completed by {@link #runBenchmark(ThrowingRunnable, Description)}.
+     *
+     * @param counters the counters to record the phases in
+     */
+    public final void startPhases(PhaseCounters counters) {
+        if (phaseCounters != counters) {
+            phaseCounters = counters;
+            beforeAction = () -> {
+                counters.startPhase();
+                before();
+                counters.endFixture();
+            };
+            afterAction = () -> {
+                counters.startPhase();
+                after();
+                counters.endFixture();
+            };
+            beforeClassAction = () -> {
+                counters.startPhase();
+                beforeClass();
+                counters.endClassFixture();
+            };
+            afterClassAction = () -> {
+                counters.startPhase();
+                afterClass();
+                counters.endClassFixture();
+            };
+            testStatement = new BeforeAfterStatement(beforeAction, null, afterAction);
+            classStatement = new BeforeAfterStatement(
+                    beforeClassAction, testStatement::evaluate, afterClassAction);
+            timedTestAction.counters = counters;
+        }
+        counters.startInvocation();
+        counters.startPhase();
+    }
+
+    public final void runBenchmark(ThrowingRunnable benchmark, Description description)
+            throws Throwable {
+        if (phaseCounters == null) {
+            runStatements(benchmark, description);
+            return;
+        }
+        phaseCounters.endCreation();
+        timedTestAction.benchmark = benchmark;
+        try {
+            runStatements(timedTestAction, description);
+        } finally {
+            timedTestAction.benchmark = null;
+        }
+        phaseCounters.endInvocation();
+    }
+
+    private void runStatements(ThrowingRunnable benchmark, Description description)
+            throws Throwable {
+        if (instanceFixtureStarted) {
+            benchmark.run();
+            return;
+        }
+        if (!hasInstanceRules() && (classFixtureStarted || !hasClassRules())) {
+            testStatement.action = benchmark;
+            try {
+                if (classFixtureStarted) {
+                    testStatement.evaluate();
+                } else {
+                    classStatement.evaluate();
+                }
+            } finally {
+                testStatement.action = null;
+            }
+            return;
+        }
+        Statement statement = new BeforeAfterStatement(beforeAction, benchmark, afterAction);
+        statement = applyRuleMethods(statement, description);
+        statement = applyRuleFields(statement, description);
+        if (classFixtureStarted) {
+            statement.evaluate();
+            return;
+        }
+        statement = new BeforeAfterStatement(
+                beforeClassAction, statement::evaluate, afterClassAction);
+        statement = applyClassRules(statement, description);
+        statement.evaluate();
+    }
+
+    public final void runExceptionBenchmark(ThrowingRunnable benchmark, Description description,
+                                            Class<? extends Throwable> expected) throws Throwable {
+        expectedExceptionAction.benchmark = benchmark;
+        expectedExceptionAction.expected = expected;
+        try {
+            runBenchmark(expectedExceptionAction, description);
+        } finally {
+            expectedExceptionAction.benchmark = null;
+            expectedExceptionAction.expected = null;
+        }
     }
 }
@@ -0,0 +1,114 @@
+package se.chalmers.ju2jmh.api;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JMH auxiliary counters breaking the time of benchmark invocations down into the phases of the
+ * JUnit test they run, reported by JMH next to the primary score of the benchmarks that take this
+ * state as an argument.
+ *
+ * <p>Each counter is the total number of nanoseconds spent in its phase during an iteration, and
+ * {@link #invocations} is the number of invocations the time was spent in. The counters are
+ * reset by {@link #reset()} before each iteration, warmup iterations included. Creating the test
+ * instance, running class fixture methods, running instance fixture methods and running the test
+ * method itself are timed directly. These phases never nest, so a single pair of timestamps
+ * suffices. The remaining time of each invocation, spent evaluating rule statements and in the
+ * benchmark harness, is counted as rule time. A phase that completes abruptly is not recorded
+ * either, so its time is counted as rule time as well, which only happens when a rule swallows
+ * the exception, as the invocation fails otherwise.
+ *
+ * <p>Phases that run outside of the benchmark methods, such as class fixtures run once per trial
+ * or instance fixtures run in invocation-level setup methods, are not part of the measured time
+ * and are not counted. Reading the clock costs some tens of nanoseconds per phase, which is
+ * included in the primary score, so the counters are meant for comparing the phases of a
+ * benchmark rather than for precise absolute measurements.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class PhaseCounters {
+    public long creationNanos;
+    public long classFixtureNanos;
+    public long fixtureNanos;
+    public long ruleNanos;
+    public long testNanos;
+    public long invocations;
+
+    private long invocationStart;
+    private long phaseStart;
+    private long phaseTotal;
+
+    /**
+     * Resets all counters, so that each iteration only reports the time spent in it.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        creationNanos = 0;
+        classFixtureNanos = 0;
+        fixtureNanos = 0;
+        ruleNanos = 0;
+        testNanos = 0;
+        invocations = 0;
+    }
+
+    /**
+     * Starts timing an invocation.
+     */
+    public void startInvocation() {
+        invocations++;
+        phaseTotal = 0;
+        invocationStart = System.nanoTime();
+    }
+
+    /**
+     * Stops timing the current invocation, counting the time not spent in any other phase as
+     * rule time.
+     */
+    public void endInvocation() {
+        ruleNanos += System.nanoTime() - invocationStart - phaseTotal;
+    }
+
+    /**
+     * Starts timing a phase, which is to be ended by one of the {@code end} methods.
+     */
+    public void startPhase() {
+        phaseStart = System.nanoTime();
+    }
+
+    private long endPhase() {
+        long elapsed = System.nanoTime() - phaseStart;
+        phaseTotal += elapsed;
+        return elapsed;
+    }
+
+    /**
+     * Ends the current phase, counting it as test instance creation.
+     */
+    public void endCreation() {
+        creationNanos += endPhase();
+    }
+
+    /**
+     * Ends the current phase, counting it as a class fixture method.
+     */
+    public void endClassFixture() {
+        classFixtureNanos += endPhase();
+    }
+
+    /**
+     * Ends the current phase, counting it as an instance fixture method.
+     */
+    public void endFixture() {
+        fixtureNanos += endPhase();
+    }
+
+    /**
+     * Ends the current phase, counting it as the test method.
+     */
+    public void endTest() {
+        testNanos += endPhase();
+    }
+}
@@ -0,0 +1,90 @@
+package se.chalmers.ju2jmh.api;
+
+import org.junit.runners.model.Statement;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.function.UnaryOperator;
+
+/**
+ * A class-level statement, consisting of the class fixture methods and class rules of a test
+ * class, that is kept running for the duration of a benchmark trial instead of being evaluated
+ * around each benchmark invocation.
+ *
+ * <p>Class rules are statements wrapping the tests of a class, so they cannot be split into a
+ * part to run before the tests and a part to run after them. The class-level statement is instead
+ * evaluated on a separate thread, around an inner statement that blocks until the fixture is
+ * stopped. Class fixture methods and class rules therefore do not run on the benchmark thread,
+ * and any thread-local state they set up, such as a logging or transaction context, is not
+ * visible to the tests, unlike when running the tests with JUnit.
+ */
+public class TrialClassFixture {
+    private final Thread thread;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = false;
+    private volatile Throwable failure = null;
+
+    private class TrialStatement extends Statement {
+        @Override
+        public void evaluate() throws InterruptedException {
+            running = true;
+            started.countDown();
+            stopped.await();
+        }
+    }
+
+    private TrialClassFixture(UnaryOperator<Statement> classStatement, String name) {
+        Statement statement = classStatement.apply(new TrialStatement());
+        this.thread = new Thread(() -> {
+            try {
+                statement.evaluate();
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                started.countDown();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts evaluating the class-level statement built around the given trial statement, and
+     * waits until the trial statement is reached, i.e. until the class fixtures are set up.
+     *
+     * @param classStatement function building the class-level statement around the trial
+     *     statement, which blocks until the fixture is stopped
+     * @param testClass the test class that the fixture belongs to
+     * @return the started fixture
+     * @throws Throwable if the class-level statement failed before reaching the trial statement
+     */
+    public static TrialClassFixture start(UnaryOperator<Statement> classStatement,
+            Class<?> testClass) throws Throwable {
+        TrialClassFixture fixture = new TrialClassFixture(
+                classStatement, "ju2jmh class fixture " + testClass.getName());
+        fixture.thread.start();
+        fixture.started.await();
+        if (!fixture.running) {
+            fixture.thread.join();
+            if (fixture.failure != null) {
+                throw fixture.failure;
+            }
+            throw new IllegalStateException(
+                    "Class rules of " + testClass.getName() + " did not run the tests");
+        }
+        return fixture;
+    }
+
+    /**
+     * Lets the class-level statement complete, i.e. tears down the class fixtures, and waits for
+     * it to do so.
+     *
+     * @throws Throwable if the class-level statement failed
+     */
+    public void stop() throws Throwable {
+        stopped.countDown();
+        thread.join();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
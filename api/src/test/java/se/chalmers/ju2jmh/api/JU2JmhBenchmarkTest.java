@@ -4,6 +4,7 @@ import org.junit.Rule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.MethodRule;
 import org.junit.rules.RuleChain;
 import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
@@ -17,6 +18,8 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class JU2JmhBenchmarkTest {
     private static class LogRule implements TestRule {
@@ -177,6 +180,33 @@ public class JU2JmhBenchmarkTest {
         assertIterableEquals(expected, LoggingUnitTest.getEventLog());
     }
 
+    @Test
+    public void classFixtureRunsOncePerTrial() throws Throwable {
+        JUnitCore jUnitCore = new JUnitCore();
+        jUnitCore.run(Request.method(LoggingUnitTest.class, "testMethod"))
+                .getFailures()
+                .forEach(e -> {
+                    throw new AssertionError(e);
+                });
+        List<String> junitLog = LoggingUnitTest.getEventLog();
+        int beforeClassIndex = junitLog.indexOf("beforeClassMethod");
+        int afterClassIndex = junitLog.indexOf("afterClassMethod");
+        List<String> expected = new ArrayList<>(junitLog.subList(0, beforeClassIndex + 1));
+        expected.addAll(junitLog.subList(beforeClassIndex + 1, afterClassIndex));
+        expected.addAll(junitLog.subList(beforeClassIndex + 1, afterClassIndex));
+        expected.addAll(junitLog.subList(afterClassIndex, junitLog.size()));
+        LoggingUnitTest.clearEventLog();
+
+        LoggingUnitTest test = new LoggingUnitTest();
+        BenchmarkImplementation instance = new BenchmarkImplementation(test);
+        instance.startClassFixture(LoggingUnitTest.class);
+        instance.runBenchmark(test::testMethod, null);
+        instance.runBenchmark(test::testMethod, null);
+        instance.stopClassFixture();
+
+        assertIterableEquals(expected, LoggingUnitTest.getEventLog());
+    }
+
     public static class LoggingExceptionUnitTest extends LoggingUnitTest {
         @org.junit.Test(expected = Exception.class)
         public void exceptionTestMethod() throws Exception {
@@ -288,6 +318,277 @@ public class JU2JmhBenchmarkTest {
         assertIterableEquals(expected, LoggingUnitTest.getEventLog());
     }
 
+    private static class RuleFreeBenchmarkImplementation extends JU2JmhBenchmark {
+        private LoggingExceptionUnitTest implementation;
+
+        @Override
+        public void beforeClass() {
+            LoggingUnitTest.beforeClassMethod();
+        }
+
+        @Override
+        public void afterClass() {
+            LoggingUnitTest.afterClassMethod();
+        }
+
+        @Override
+        public void before() {
+            implementation().beforeMethod();
+        }
+
+        @Override
+        public void after() {
+            implementation().afterMethod();
+        }
+
+        @Override
+        public void createImplementation() {
+            this.implementation = new LoggingExceptionUnitTest();
+        }
+
+        @Override
+        public LoggingExceptionUnitTest implementation() {
+            return implementation;
+        }
+
+        @Override
+        public boolean hasClassRules() {
+            return false;
+        }
+
+        @Override
+        public boolean hasInstanceRules() {
+            return false;
+        }
+    }
+
+    @Test
+    public void reusedStatementsRunFixturesOnEveryInvocation() throws Throwable {
+        RuleFreeBenchmarkImplementation instance = new RuleFreeBenchmarkImplementation();
+        List<String> invocationLog = List.of(
+                "beforeClassMethod", "beforeMethod", "testMethod", "afterMethod",
+                "afterClassMethod");
+        List<String> expected = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            instance.createImplementation();
+            instance.runBenchmark(
+                    instance.implementation()::testMethod, instance.description("testMethod"));
+            expected.addAll(invocationLog);
+        }
+        instance.createImplementation();
+        instance.runExceptionBenchmark(instance.implementation()::exceptionTestMethod,
+                instance.description("exceptionTestMethod"), Exception.class);
+        expected.addAll(List.of("beforeClassMethod", "beforeMethod", "exceptionTestMethod",
+                "finally exceptionTestMethod", "afterMethod", "afterClassMethod"));
+
+        assertIterableEquals(expected, LoggingUnitTest.getEventLog());
+    }
+
+    @Test
+    public void classFixtureWithoutClassRulesRunsOncePerTrial() throws Throwable {
+        RuleFreeBenchmarkImplementation instance = new RuleFreeBenchmarkImplementation();
+
+        instance.startClassFixture(LoggingExceptionUnitTest.class);
+        for (int i = 0; i < 2; i++) {
+            instance.createImplementation();
+            instance.runBenchmark(
+                    instance.implementation()::testMethod, instance.description("testMethod"));
+        }
+        instance.stopClassFixture();
+
+        assertIterableEquals(List.of("beforeClassMethod", "beforeMethod", "testMethod",
+                "afterMethod", "beforeMethod", "testMethod", "afterMethod", "afterClassMethod"),
+                LoggingUnitTest.getEventLog());
+    }
+
+    @Test
+    public void instanceFixtureRunsOutsideInvocation() throws Throwable {
+        RuleFreeBenchmarkImplementation instance = new RuleFreeBenchmarkImplementation();
+
+        instance.startInstanceFixture();
+        List<String> setUpLog = LoggingUnitTest.getEventLog();
+        instance.runBenchmark(
+                instance.implementation()::testMethod, instance.description("testMethod"));
+        List<String> invocationLog = LoggingUnitTest.getEventLog();
+        instance.stopInstanceFixture();
+
+        assertIterableEquals(List.of("beforeClassMethod", "beforeMethod"), setUpLog);
+        assertIterableEquals(List.of("beforeClassMethod", "beforeMethod", "testMethod"),
+                invocationLog);
+        assertIterableEquals(List.of("beforeClassMethod", "beforeMethod", "testMethod",
+                "afterMethod", "afterClassMethod"), LoggingUnitTest.getEventLog());
+    }
+
+    @Test
+    public void instanceFixtureWithRulesOnlyCreatesInstance() throws Throwable {
+        JUnitCore jUnitCore = new JUnitCore();
+        jUnitCore.run(Request.method(LoggingUnitTest.class, "testMethod"))
+                .getFailures()
+                .forEach(e -> {
+                    throw new AssertionError(e);
+                });
+        List<String> expected = LoggingUnitTest.getEventLog();
+        LoggingUnitTest.clearEventLog();
+
+        LoggingUnitTest test = new LoggingUnitTest();
+        BenchmarkImplementation instance = new BenchmarkImplementation(test);
+        instance.startInstanceFixture();
+        List<String> setUpLog = LoggingUnitTest.getEventLog();
+        instance.runBenchmark(test::testMethod, null);
+        instance.stopInstanceFixture();
+
+        assertIterableEquals(List.of(), setUpLog);
+        assertIterableEquals(expected, LoggingUnitTest.getEventLog());
+    }
+
+    @Test
+    public void instanceFixtureAppliesMethodRulesToTestMethod() throws Throwable {
+        List<String> ruleMethodNames = new ArrayList<>();
+        MethodRule rule = (base, method, target) -> {
+            ruleMethodNames.add(method.getName());
+            return base;
+        };
+        RuleFreeBenchmarkImplementation instance = new RuleFreeBenchmarkImplementation() {
+            @Override
+            public Statement applyRuleFields(Statement statement, Description description) {
+                return applyRule(rule, statement, description);
+            }
+
+            @Override
+            public boolean hasInstanceRules() {
+                return true;
+            }
+        };
+
+        instance.startInstanceFixture();
+        instance.runBenchmark(
+                instance.implementation()::testMethod, instance.description("testMethod"));
+        instance.stopInstanceFixture();
+
+        assertIterableEquals(List.of("testMethod"), ruleMethodNames);
+        assertIterableEquals(List.of("beforeClassMethod", "beforeMethod", "testMethod",
+                "afterMethod", "afterClassMethod"), LoggingUnitTest.getEventLog());
+    }
+
+    @Test
+    public void rulesAreOnlyAppliedByInvocations() throws Throwable {
+        List<Description> applications = new ArrayList<>();
+        RuleFreeBenchmarkImplementation instance = new RuleFreeBenchmarkImplementation() {
+            @Override
+            public Statement applyRuleFields(Statement statement, Description description) {
+                applications.add(description);
+                return statement;
+            }
+
+            @Override
+            public boolean hasInstanceRules() {
+                return true;
+            }
+        };
+
+        instance.startClassFixture(LoggingExceptionUnitTest.class);
+        instance.startInstanceFixture();
+        instance.runBenchmark(
+                instance.implementation()::testMethod, instance.description("testMethod"));
+        instance.stopInstanceFixture();
+        instance.stopClassFixture();
+
+        assertIterableEquals(List.of(instance.description("testMethod")), applications);
+    }
+
+    @Test
+    public void appliesRulesOfSubclassesNotDeclaringRulePresence() throws Throwable {
+        List<Description> applications = new ArrayList<>();
+        JU2JmhBenchmark instance = new JU2JmhBenchmark() {
+            private LoggingExceptionUnitTest implementation;
+
+            @Override
+            public Statement applyRuleFields(Statement statement, Description description) {
+                applications.add(description);
+                return statement;
+            }
+
+            @Override
+            public void createImplementation() {
+                this.implementation = new LoggingExceptionUnitTest();
+            }
+
+            @Override
+            public LoggingExceptionUnitTest implementation() {
+                return implementation;
+            }
+        };
+        instance.createImplementation();
+        Description description = instance.description("testMethod");
+
+        instance.runBenchmark(() -> {}, description);
+        instance.startInstanceFixture();
+        instance.runBenchmark(() -> {}, description);
+        instance.stopInstanceFixture();
+
+        assertIterableEquals(List.of(description, description), applications);
+    }
+
+    @Test
+    public void phaseCountersDoNotChangeExecutionOrder() throws Throwable {
+        JUnitCore jUnitCore = new JUnitCore();
+        jUnitCore.run(Request.method(LoggingUnitTest.class, "testMethod"))
+                .getFailures()
+                .forEach(e -> {
+                    throw new AssertionError(e);
+                });
+        List<String> expected = LoggingUnitTest.getEventLog();
+        LoggingUnitTest.clearEventLog();
+
+        LoggingUnitTest test = new LoggingUnitTest();
+        BenchmarkImplementation instance = new BenchmarkImplementation(test);
+        PhaseCounters counters = new PhaseCounters();
+        instance.startPhases(counters);
+        instance.runBenchmark(test::testMethod, null);
+
+        assertIterableEquals(expected, LoggingUnitTest.getEventLog());
+        assertEquals(1, counters.invocations);
+    }
+
+    @Test
+    public void phaseCountersRecordTimeOfEachPhase() throws Throwable {
+        RuleFreeBenchmarkImplementation instance = new RuleFreeBenchmarkImplementation();
+        PhaseCounters counters = new PhaseCounters();
+        JU2JmhBenchmark.ThrowingRunnable slowTest = () -> {
+            instance.implementation().testMethod();
+            Thread.sleep(5);
+        };
+
+        for (int i = 0; i < 2; i++) {
+            instance.startPhases(counters);
+            instance.createImplementation();
+            instance.runBenchmark(slowTest, instance.description("testMethod"));
+        }
+
+        assertIterableEquals(List.of("beforeClassMethod", "beforeMethod", "testMethod",
+                "afterMethod", "afterClassMethod", "beforeClassMethod", "beforeMethod",
+                "testMethod", "afterMethod", "afterClassMethod"), LoggingUnitTest.getEventLog());
+        assertEquals(2, counters.invocations);
+        assertTrue(counters.testNanos >= 10_000_000);
+        assertTrue(counters.creationNanos > 0);
+        assertTrue(counters.classFixtureNanos > 0);
+        assertTrue(counters.fixtureNanos > 0);
+        assertTrue(counters.ruleNanos >= 0);
+    }
+
+    @Test
+    public void descriptionsAreReused() {
+        RuleFreeBenchmarkImplementation instance = new RuleFreeBenchmarkImplementation();
+        instance.createImplementation();
+
+        Description description = instance.description("testMethod");
+
+        assertEquals(Description.createTestDescription(
+                LoggingExceptionUnitTest.class, "testMethod"), description);
+        assertSame(description, instance.description("testMethod"));
+    }
+
     private static class EmptyJU2JmhBenchmark extends JU2JmhBenchmark {
         private Object implementation;
 
@@ -0,0 +1,57 @@
+package se.chalmers.ju2jmh.api;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PhaseCountersTest {
+    private static void setUpIteration(PhaseCounters counters) throws Exception {
+        // Runs the iteration-level setup methods the way JMH does before each iteration.
+        for (Method method : PhaseCounters.class.getMethods()) {
+            Setup setup = method.getAnnotation(Setup.class);
+            if (setup != null && setup.value() == Level.Iteration) {
+                method.invoke(counters);
+            }
+        }
+    }
+
+    private static void assertCountersAreZero(PhaseCounters counters) throws Exception {
+        Field[] fields = Arrays.stream(PhaseCounters.class.getFields())
+                .filter(f -> !Modifier.isStatic(f.getModifiers()))
+                .toArray(Field[]::new);
+        assertEquals(6, fields.length);
+        for (Field field : fields) {
+            assertEquals(0L, field.getLong(counters), field.getName());
+        }
+    }
+
+    @Test
+    public void countersStartAtZeroInEachIteration() throws Exception {
+        PhaseCounters counters = new PhaseCounters();
+
+        for (int iteration = 0; iteration < 3; iteration++) {
+            setUpIteration(counters);
+            assertCountersAreZero(counters);
+            for (int invocation = 0; invocation < 2; invocation++) {
+                counters.startInvocation();
+                counters.startPhase();
+                counters.endCreation();
+                counters.startPhase();
+                counters.endClassFixture();
+                counters.startPhase();
+                counters.endFixture();
+                counters.startPhase();
+                counters.endTest();
+                counters.endInvocation();
+            }
+            assertEquals(2, counters.invocations);
+        }
+    }
+}
@@ -33,6 +33,23 @@ application {
     mainClass.set("se.chalmers.ju2jmh.Converter")
 }
 
+val daemonStartScripts by tasks.registering(CreateStartScripts::class) {
+    mainClass.set("se.chalmers.ju2jmh.ConverterDaemon")
+    applicationName = "ju2jmh-daemon"
+    outputDir = file("build/daemon-scripts")
+    classpath = tasks.startScripts.get().classpath
+}
+
+distributions {
+    main {
+        contents {
+            from(daemonStartScripts) {
+                into("bin")
+            }
+        }
+    }
+}
+
 tasks.named<Test>("test") {
     useJUnitPlatform()
 }
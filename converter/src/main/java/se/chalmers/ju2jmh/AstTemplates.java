@@ -17,6 +17,8 @@ public class AstTemplates {
     }
 
     public static class AstTemplateException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
         public AstTemplateException(String message, Throwable cause) {
             super(message, cause);
         }
@@ -1,6 +1,8 @@
 package se.chalmers.ju2jmh;
 
 public class BenchmarkGenerationException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public BenchmarkGenerationException() {
     }
 
@@ -0,0 +1,786 @@
+package se.chalmers.ju2jmh;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.AccessFlags;
+import org.apache.bcel.classfile.AnnotationEntry;
+import org.apache.bcel.classfile.ElementValue;
+import org.apache.bcel.classfile.ElementValuePair;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.AnnotationEntryGen;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.ElementValuePairGen;
+import org.apache.bcel.generic.EnumElementValueGen;
+import org.apache.bcel.generic.FieldGen;
+import org.apache.bcel.generic.InstructionConst;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.LDC;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.MethodRule;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import se.chalmers.ju2jmh.api.JU2JmhBenchmark;
+import se.chalmers.ju2jmh.api.PhaseCounters;
+import se.chalmers.ju2jmh.api.TrialClassFixture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Builds benchmark suites as compiled class files instead of source files. For each test class, a
+ * top level benchmark class equivalent to the nested benchmark class generated by
+ * {@link NestedBenchmarkSuiteBuilder} is generated directly as bytecode, referring to the already
+ * compiled test classes. The JMH benchmark list and stubs are then generated for the benchmark
+ * classes, so the built suite can be run by JMH without compiling the test classes again.
+ */
+public class BytecodeBenchmarkSuiteBuilder {
+    private static final String BENCHMARK_CLASS_SUFFIX = "_Benchmark";
+    private static final ObjectType THROWING_RUNNABLE =
+            new ObjectType(JU2JmhBenchmark.ThrowingRunnable.class.getName());
+    private static final ObjectType STATEMENT = new ObjectType(Statement.class.getName());
+    private static final ObjectType PHASE_COUNTERS = new ObjectType(PhaseCounters.class.getName());
+    private static final ObjectType DESCRIPTION = new ObjectType(Description.class.getName());
+    private static final ObjectType TEST_RULE = new ObjectType(TestRule.class.getName());
+    private static final ObjectType METHOD_RULE = new ObjectType(MethodRule.class.getName());
+    private static final Type[] APPLY_RULES_ARGUMENT_TYPES = {STATEMENT, DESCRIPTION};
+    private static final String[] APPLY_RULES_ARGUMENT_NAMES = {"statement", "description"};
+    private static final String[] NO_ARGUMENT_NAMES = {};
+
+    private final InputClassRepository inputClassRepository;
+    private final NestedBenchmarkSuiteBuilder testClasses;
+    private ConversionExecutor executor = ConversionExecutor.sequential();
+    private boolean trialClassFixtures = false;
+    private boolean invocationFixtures = false;
+    private boolean statelessInstanceReuse = false;
+    private boolean phaseCounters = false;
+
+    /**
+     * Creates a new builder loading classes from the given repository.
+     *
+     * @param inputClassRepository the repository to load input classes from
+     */
+    public BytecodeBenchmarkSuiteBuilder(InputClassRepository inputClassRepository) {
+        this.inputClassRepository = inputClassRepository;
+        // The test classes to generate benchmark classes for are selected exactly as for nested
+        // benchmark suites.
+        this.testClasses = new NestedBenchmarkSuiteBuilder(inputClassRepository);
+    }
+
+    /**
+     * Sets the executor used for loading classes and generating benchmark classes. By default,
+     * all work is done sequentially on the calling thread. The built suite is the same regardless
+     * of the executor used.
+     *
+     * @param executor the executor to use
+     * @return a reference to this builder
+     */
+    public BytecodeBenchmarkSuiteBuilder withExecutor(ConversionExecutor executor) {
+        this.executor = executor;
+        testClasses.withExecutor(executor);
+        return this;
+    }
+
+    /**
+     * Sets whether the class fixture methods and class rules of the test classes run once per
+     * JMH trial, as with {@link NestedBenchmarkSuiteBuilder#withTrialClassFixtures(boolean)}. By
+     * default, they run around every benchmark invocation.
+     *
+     * @param trialClassFixtures whether to run class fixtures once per trial
+     * @return a reference to this builder
+     */
+    public BytecodeBenchmarkSuiteBuilder withTrialClassFixtures(boolean trialClassFixtures) {
+        this.trialClassFixtures = trialClassFixtures;
+        return this;
+    }
+
+    /**
+     * Sets whether the test instances are created, and their fixture methods run, in
+     * invocation-level setup and teardown methods, as with
+     * {@link NestedBenchmarkSuiteBuilder#withInvocationFixtures(boolean)}. By default, they are
+     * part of the benchmark methods.
+     *
+     * @param invocationFixtures whether to run instance fixtures in invocation-level methods
+     * @return a reference to this builder
+     */
+    public BytecodeBenchmarkSuiteBuilder withInvocationFixtures(boolean invocationFixtures) {
+        this.invocationFixtures = invocationFixtures;
+        return this;
+    }
+
+    /**
+     * Sets whether stateless test instances are shared across benchmark invocations, as with
+     * {@link NestedBenchmarkSuiteBuilder#withStatelessInstanceReuse(boolean)}. By default, a new
+     * instance is created for every invocation.
+     *
+     * @param statelessInstanceReuse whether to share stateless test instances across invocations
+     * @return a reference to this builder
+     */
+    public BytecodeBenchmarkSuiteBuilder withStatelessInstanceReuse(
+            boolean statelessInstanceReuse) {
+        this.statelessInstanceReuse = statelessInstanceReuse;
+        return this;
+    }
+
+    /**
+     * Sets whether the benchmark methods report the time of each phase of their invocations as
+     * JMH auxiliary counters, as with
+     * {@link NestedBenchmarkSuiteBuilder#withPhaseCounters(boolean)}. By default, invocations are
+     * not broken down into phases.
+     *
+     * @param phaseCounters whether to report the time of each phase of the invocations
+     * @return a reference to this builder
+     */
+    public BytecodeBenchmarkSuiteBuilder withPhaseCounters(boolean phaseCounters) {
+        this.phaseCounters = phaseCounters;
+        return this;
+    }
+
+    public BytecodeBenchmarkSuiteBuilder addTestClass(String className)
+            throws ClassNotFoundException {
+        testClasses.addTestClass(className);
+        return this;
+    }
+
+    /**
+     * Adds all of the given test classes. The classes are loaded using the executor of this
+     * builder before being added in the given order.
+     *
+     * @param classNames the names of the test classes to add
+     * @return a reference to this builder
+     * @throws ClassNotFoundException if any of the classes could not be loaded
+     */
+    public BytecodeBenchmarkSuiteBuilder addTestClasses(Collection<String> classNames)
+            throws ClassNotFoundException {
+        testClasses.addTestClasses(classNames);
+        return this;
+    }
+
+    private static final class BenchmarkClassGenerator {
+        private final InputClass testClass;
+        private final JavaClass bytecode;
+        private final ObjectType testType;
+        private final String className;
+        private final String superclassName;
+        private final boolean isAbstract;
+        private final boolean trialClassFixtures;
+        private final boolean invocationFixtures;
+        private final boolean sharedImplementation;
+        private final boolean phaseCounters;
+        private final ClassLoader classLoader;
+        private final ClassGen classGen;
+        private final ConstantPoolGen constantPool;
+        private final InstructionFactory factory;
+        private final List<JavaClass> invokerClasses = new ArrayList<>();
+
+        private BenchmarkClassGenerator(InputClass testClass, String className,
+                String superclassName, boolean isAbstract, boolean trialClassFixtures,
+                boolean invocationFixtures, boolean sharedImplementation, boolean phaseCounters,
+                ClassLoader classLoader) {
+            this.testClass = testClass;
+            this.bytecode = testClass.getBytecodeView();
+            this.testType = new ObjectType(testClass.getName());
+            this.className = className;
+            this.superclassName = superclassName;
+            this.isAbstract = isAbstract;
+            this.trialClassFixtures = trialClassFixtures;
+            this.invocationFixtures = invocationFixtures;
+            this.sharedImplementation = sharedImplementation;
+            this.phaseCounters = phaseCounters;
+            this.classLoader = classLoader;
+            int accessFlags = Const.ACC_PUBLIC | Const.ACC_SUPER
+                    | (isAbstract ? Const.ACC_ABSTRACT : 0);
+            this.classGen = newClassGen(className, superclassName, bytecode.getSourceFileName(),
+                    accessFlags);
+            this.constantPool = classGen.getConstantPool();
+            this.factory = new InstructionFactory(classGen, constantPool);
+        }
+
+        private static ClassGen newClassGen(String className, String superclassName,
+                String sourceFileName, int accessFlags, String... interfaceNames) {
+            ClassGen classGen = new ClassGen(className, superclassName, sourceFileName,
+                    accessFlags, interfaceNames);
+            classGen.setMajor(Const.MAJOR_1_8);
+            classGen.setMinor(0);
+            return classGen;
+        }
+
+        private AnnotationEntryGen annotation(Class<? extends Annotation> annotationType,
+                List<ElementValuePairGen> elements) {
+            return new AnnotationEntryGen(new ObjectType(annotationType.getName()), elements,
+                    true, constantPool);
+        }
+
+        private void addMethod(ClassGen target, MethodGen method, InstructionList instructions) {
+            method.setMaxStack();
+            method.setMaxLocals();
+            target.addMethod(method.getMethod());
+            instructions.dispose();
+        }
+
+        private MethodGen method(int accessFlags, Type returnType, Type[] argumentTypes,
+                String[] argumentNames, String name, InstructionList instructions) {
+            return new MethodGen(accessFlags, returnType, argumentTypes, argumentNames, name,
+                    className, instructions, constantPool);
+        }
+
+        private static void discard(InstructionList instructions, Type type) {
+            if (type.getSize() == 1) {
+                instructions.append(InstructionConst.POP);
+            } else if (type.getSize() == 2) {
+                instructions.append(InstructionConst.POP2);
+            }
+        }
+
+        private void appendLoadImplementation(InstructionList instructions) {
+            instructions.append(InstructionConst.ALOAD_0);
+            instructions.append(factory.createInvoke(className, "implementation", Type.OBJECT,
+                    Type.NO_ARGS, Const.INVOKEVIRTUAL));
+            instructions.append(factory.createCheckCast(testType));
+        }
+
+        private void appendCall(InstructionList instructions, Method method, short kind) {
+            instructions.append(factory.createInvoke(testClass.getName(), method.getName(),
+                    method.getReturnType(), method.getArgumentTypes(), kind));
+        }
+
+        private Method[] methods(Predicate<Method> filter) {
+            return Arrays.stream(bytecode.getMethods())
+                    .filter(AccessFlags::isPublic)
+                    .filter(Bytecode.Predicates.hasArgCount(0))
+                    .filter(filter)
+                    .toArray(Method[]::new);
+        }
+
+        private Field[] fields(Predicate<Field> filter) {
+            return Arrays.stream(bytecode.getFields())
+                    .filter(AccessFlags::isPublic)
+                    .filter(filter)
+                    .toArray(Field[]::new);
+        }
+
+        private static Optional<String> getExpectedException(Method method) {
+            return Bytecode.getAnnotation(method, Test.class)
+                    .stream()
+                    .map(AnnotationEntry::getElementValuePairs)
+                    .flatMap(Arrays::stream)
+                    .filter(evp -> evp.getNameString().equals("expected"))
+                    .map(ElementValuePair::getValue)
+                    .map(ElementValue::stringifyValue)
+                    .map(Bytecode::referenceFieldTypeDescriptorToClassName)
+                    .filter(Predicate.not(Predicate.isEqual(Test.None.class.getName())))
+                    .findFirst();
+        }
+
+        private String generateInvokerClass(Method testMethod) {
+            // Equivalent to the method reference this.implementation()::test used by nested
+            // benchmark classes.
+            String invokerClassName = className + "$" + testMethod.getName();
+            ClassGen invoker = newClassGen(invokerClassName, Object.class.getName(),
+                    bytecode.getSourceFileName(),
+                    Const.ACC_FINAL | Const.ACC_SUPER | Const.ACC_SYNTHETIC,
+                    THROWING_RUNNABLE.getClassName());
+            ConstantPoolGen invokerConstantPool = invoker.getConstantPool();
+            InstructionFactory invokerFactory = new InstructionFactory(invoker);
+            invoker.addField(new FieldGen(Const.ACC_PRIVATE | Const.ACC_FINAL, testType,
+                    "implementation", invokerConstantPool).getField());
+
+            InstructionList constructor = new InstructionList();
+            constructor.append(InstructionConst.ALOAD_0);
+            constructor.append(invokerFactory.createInvoke(Object.class.getName(), "<init>",
+                    Type.VOID, Type.NO_ARGS, Const.INVOKESPECIAL));
+            constructor.append(InstructionConst.ALOAD_0);
+            constructor.append(InstructionConst.ALOAD_1);
+            constructor.append(invokerFactory.createPutField(invokerClassName, "implementation",
+                    testType));
+            constructor.append(InstructionConst.RETURN);
+            addMethod(invoker, new MethodGen(0, Type.VOID, new Type[] {testType},
+                    new String[] {"implementation"}, "<init>", invokerClassName, constructor,
+                    invokerConstantPool), constructor);
+
+            InstructionList run = new InstructionList();
+            run.append(InstructionConst.ALOAD_0);
+            run.append(invokerFactory.createGetField(invokerClassName, "implementation",
+                    testType));
+            run.append(invokerFactory.createInvoke(testClass.getName(), testMethod.getName(),
+                    testMethod.getReturnType(), testMethod.getArgumentTypes(),
+                    Const.INVOKEVIRTUAL));
+            discard(run, testMethod.getReturnType());
+            run.append(InstructionConst.RETURN);
+            MethodGen runMethod = new MethodGen(Const.ACC_PUBLIC, Type.VOID, Type.NO_ARGS,
+                    NO_ARGUMENT_NAMES, "run", invokerClassName, run, invokerConstantPool);
+            runMethod.addException(Throwable.class.getName());
+            addMethod(invoker, runMethod, run);
+
+            invokerClasses.add(invoker.getJavaClass());
+            return invokerClassName;
+        }
+
+        private void generateBenchmarkMethod(Method testMethod) {
+            Optional<String> expectedException = getExpectedException(testMethod);
+            String invokerClassName = generateInvokerClass(testMethod);
+            ObjectType invokerType = new ObjectType(invokerClassName);
+            InstructionList instructions = new InstructionList();
+            if (phaseCounters) {
+                instructions.append(InstructionConst.ALOAD_0);
+                instructions.append(InstructionConst.ALOAD_1);
+                instructions.append(factory.createInvoke(className, "startPhases", Type.VOID,
+                        new Type[] {PHASE_COUNTERS}, Const.INVOKEVIRTUAL));
+            }
+            if (!invocationFixtures) {
+                instructions.append(InstructionConst.ALOAD_0);
+                instructions.append(factory.createInvoke(className, "createImplementation",
+                        Type.VOID, Type.NO_ARGS, Const.INVOKEVIRTUAL));
+            }
+            instructions.append(InstructionConst.ALOAD_0);
+            instructions.append(factory.createNew(invokerType));
+            instructions.append(InstructionConst.DUP);
+            appendLoadImplementation(instructions);
+            instructions.append(factory.createInvoke(invokerClassName, "<init>", Type.VOID,
+                    new Type[] {testType}, Const.INVOKESPECIAL));
+            instructions.append(InstructionConst.ALOAD_0);
+            instructions.append(factory.createConstant(testMethod.getName()));
+            instructions.append(factory.createInvoke(className, "description", DESCRIPTION,
+                    new Type[] {Type.STRING}, Const.INVOKEVIRTUAL));
+            if (expectedException.isEmpty()) {
+                instructions.append(factory.createInvoke(className, "runBenchmark", Type.VOID,
+                        new Type[] {THROWING_RUNNABLE, DESCRIPTION}, Const.INVOKEVIRTUAL));
+            } else {
+                instructions.append(new LDC(
+                        constantPool.addClass(new ObjectType(expectedException.get()))));
+                instructions.append(factory.createInvoke(className, "runExceptionBenchmark",
+                        Type.VOID, new Type[] {THROWING_RUNNABLE, DESCRIPTION, Type.CLASS},
+                        Const.INVOKEVIRTUAL));
+            }
+            instructions.append(InstructionConst.RETURN);
+            MethodGen method = phaseCounters
+                    ? method(Const.ACC_PUBLIC, Type.VOID, new Type[] {PHASE_COUNTERS},
+                            new String[] {"phaseCounters"}, "benchmark_" + testMethod.getName(),
+                            instructions)
+                    : method(Const.ACC_PUBLIC, Type.VOID, Type.NO_ARGS, NO_ARGUMENT_NAMES,
+                            "benchmark_" + testMethod.getName(), instructions);
+            method.addException(Throwable.class.getName());
+            method.addAnnotationEntry(annotation(Benchmark.class, List.of()));
+            addMethod(classGen, method, instructions);
+        }
+
+        private void generateBenchmarkMethods() {
+            Predicate<Method> isTest = Bytecode.Predicates.isMethodAnnotated(Test.class)
+                    .and(Predicate.not(Bytecode.Predicates.isMethodAnnotated(Ignore.class)))
+                    .and(m -> !m.isStatic());
+            for (Method testMethod : methods(isTest)) {
+                generateBenchmarkMethod(testMethod);
+            }
+        }
+
+        private void generateFixtureMethod(String name, Class<? extends Annotation> annotation,
+                boolean isStatic, boolean callSuperFirst) {
+            Method[] fixtureMethods = methods(
+                    Bytecode.Predicates.isMethodAnnotated(annotation)
+                            .and(m -> m.isStatic() == isStatic));
+            if (fixtureMethods.length == 0) {
+                return;
+            }
+            InstructionList superCall = new InstructionList();
+            superCall.append(InstructionConst.ALOAD_0);
+            superCall.append(factory.createInvoke(superclassName, name, Type.VOID, Type.NO_ARGS,
+                    Const.INVOKESPECIAL));
+            InstructionList instructions = new InstructionList();
+            if (callSuperFirst) {
+                instructions.append(superCall);
+            }
+            for (Method fixtureMethod : fixtureMethods) {
+                if (isStatic) {
+                    appendCall(instructions, fixtureMethod, Const.INVOKESTATIC);
+                } else {
+                    appendLoadImplementation(instructions);
+                    appendCall(instructions, fixtureMethod, Const.INVOKEVIRTUAL);
+                }
+                discard(instructions, fixtureMethod.getReturnType());
+            }
+            if (!callSuperFirst) {
+                instructions.append(superCall);
+            }
+            instructions.append(InstructionConst.RETURN);
+            MethodGen method = method(Const.ACC_PUBLIC, Type.VOID, Type.NO_ARGS,
+                    NO_ARGUMENT_NAMES, name, instructions);
+            method.addException(Throwable.class.getName());
+            addMethod(classGen, method, instructions);
+        }
+
+        private ObjectType ruleType(Type type, String ruleName)
+                throws BenchmarkGenerationException {
+            // The applyRule overload is chosen by the static type of the rule, as in the nested
+            // benchmark classes, so the type hierarchy of the rule is needed.
+            if (type instanceof ObjectType) {
+                Class<?> ruleClass;
+                try {
+                    ruleClass = Class.forName(
+                            ((ObjectType) type).getClassName(), false, classLoader);
+                } catch (ClassNotFoundException | LinkageError e) {
+                    throw new BenchmarkGenerationException(
+                            "Failed to load type of rule " + ruleName, e);
+                }
+                if (TestRule.class.isAssignableFrom(ruleClass)) {
+                    return TEST_RULE;
+                } else if (MethodRule.class.isAssignableFrom(ruleClass)) {
+                    return METHOD_RULE;
+                }
+            }
+            throw new BenchmarkGenerationException("Rule " + ruleName + " of type " + type
+                    + " is neither a TestRule nor a MethodRule");
+        }
+
+        private void appendApplyRule(InstructionList instructions, ObjectType ruleType) {
+            instructions.append(InstructionConst.ALOAD_1);
+            instructions.append(InstructionConst.ALOAD_2);
+            instructions.append(factory.createInvoke(className, "applyRule", STATEMENT,
+                    new Type[] {ruleType, STATEMENT, DESCRIPTION}, Const.INVOKEVIRTUAL));
+            instructions.append(InstructionConst.ASTORE_1);
+        }
+
+        private boolean generateApplyRulesMethod(String name, boolean isStatic, boolean isField,
+                Class<? extends Annotation> annotation) throws BenchmarkGenerationException {
+            InstructionList instructions = new InstructionList();
+            int ruleCount = 0;
+            if (isField) {
+                for (Field field : fields(Bytecode.Predicates.isFieldAnnotated(annotation)
+                        .and(f -> f.isStatic() == isStatic))) {
+                    ObjectType ruleType = ruleType(field.getType(), field.getName());
+                    instructions.append(InstructionConst.ALOAD_0);
+                    if (isStatic) {
+                        instructions.append(factory.createGetStatic(testClass.getName(),
+                                field.getName(), field.getType()));
+                    } else {
+                        appendLoadImplementation(instructions);
+                        instructions.append(factory.createGetField(testClass.getName(),
+                                field.getName(), field.getType()));
+                    }
+                    appendApplyRule(instructions, ruleType);
+                    ruleCount++;
+                }
+            } else {
+                for (Method ruleMethod : methods(Bytecode.Predicates.isMethodAnnotated(annotation)
+                        .and(m -> m.isStatic() == isStatic))) {
+                    ObjectType ruleType = ruleType(ruleMethod.getReturnType(),
+                            ruleMethod.getName());
+                    instructions.append(InstructionConst.ALOAD_0);
+                    if (isStatic) {
+                        appendCall(instructions, ruleMethod, Const.INVOKESTATIC);
+                    } else {
+                        appendLoadImplementation(instructions);
+                        appendCall(instructions, ruleMethod, Const.INVOKEVIRTUAL);
+                    }
+                    appendApplyRule(instructions, ruleType);
+                    ruleCount++;
+                }
+            }
+            if (ruleCount == 0) {
+                instructions.dispose();
+                return false;
+            }
+            instructions.append(InstructionConst.ALOAD_0);
+            instructions.append(InstructionConst.ALOAD_1);
+            instructions.append(InstructionConst.ALOAD_2);
+            instructions.append(factory.createInvoke(superclassName, name, STATEMENT,
+                    APPLY_RULES_ARGUMENT_TYPES, Const.INVOKESPECIAL));
+            instructions.append(InstructionConst.ARETURN);
+            addMethod(classGen, method(Const.ACC_PUBLIC, STATEMENT, APPLY_RULES_ARGUMENT_TYPES,
+                    APPLY_RULES_ARGUMENT_NAMES, name, instructions), instructions);
+            return true;
+        }
+
+        private void generateHasRulesMethod(String name, boolean hasRules) {
+            // The method returns true unless overridden, so it is only overridden to return false
+            // by benchmarks without rules, and to return true again by benchmarks with rules
+            // whose superclass benchmark returns false.
+            boolean hasSuperclassBenchmark =
+                    !superclassName.equals(JU2JmhBenchmark.class.getName());
+            if (hasRules != hasSuperclassBenchmark) {
+                return;
+            }
+            InstructionList instructions = new InstructionList();
+            instructions.append(hasRules ? InstructionConst.ICONST_1 : InstructionConst.ICONST_0);
+            instructions.append(InstructionConst.IRETURN);
+            addMethod(classGen, method(Const.ACC_PUBLIC, Type.BOOLEAN, Type.NO_ARGS,
+                    NO_ARGUMENT_NAMES, name, instructions), instructions);
+        }
+
+        private void generateImplementationMethods() {
+            classGen.addField(new FieldGen(Const.ACC_PRIVATE, testType, "implementation",
+                    constantPool).getField());
+
+            InstructionList create = new InstructionList();
+            create.append(InstructionConst.ALOAD_0);
+            create.append(factory.createNew(testType));
+            create.append(InstructionConst.DUP);
+            create.append(factory.createInvoke(testClass.getName(), "<init>", Type.VOID,
+                    Type.NO_ARGS, Const.INVOKESPECIAL));
+            create.append(factory.createPutField(className, "implementation", testType));
+            create.append(InstructionConst.RETURN);
+            if (sharedImplementation) {
+                generateLevelMethod("createSharedImplementation", Setup.class, Level.Trial,
+                        create);
+                create = new InstructionList();
+                create.append(InstructionConst.RETURN);
+            }
+            MethodGen createMethod = method(Const.ACC_PUBLIC, Type.VOID, Type.NO_ARGS,
+                    NO_ARGUMENT_NAMES, "createImplementation", create);
+            createMethod.addException(Throwable.class.getName());
+            addMethod(classGen, createMethod, create);
+
+            InstructionList get = new InstructionList();
+            get.append(InstructionConst.ALOAD_0);
+            get.append(factory.createGetField(className, "implementation", testType));
+            get.append(InstructionConst.ARETURN);
+            addMethod(classGen, method(Const.ACC_PUBLIC, Type.OBJECT, Type.NO_ARGS,
+                    NO_ARGUMENT_NAMES, "implementation", get), get);
+        }
+
+        private void generateLevelMethod(String name, Class<? extends Annotation> annotation,
+                Level level, InstructionList instructions) {
+            MethodGen method = method(Const.ACC_PUBLIC, Type.VOID, Type.NO_ARGS,
+                    NO_ARGUMENT_NAMES, name, instructions);
+            method.addException(Throwable.class.getName());
+            method.addAnnotationEntry(annotation(annotation, List.of(new ElementValuePairGen(
+                    "value",
+                    new EnumElementValueGen(new ObjectType(Level.class.getName()),
+                            level.name(), constantPool),
+                    constantPool))));
+            addMethod(classGen, method, instructions);
+        }
+
+        private void generateTrialClassFixtureMethods() {
+            InstructionList setUp = new InstructionList();
+            setUp.append(InstructionConst.ALOAD_0);
+            setUp.append(new LDC(constantPool.addClass(testType)));
+            setUp.append(factory.createInvoke(className, "startClassFixture", Type.VOID,
+                    new Type[] {Type.CLASS}, Const.INVOKEVIRTUAL));
+            setUp.append(InstructionConst.RETURN);
+            generateLevelMethod("setUpClassFixture", Setup.class, Level.Trial, setUp);
+
+            InstructionList tearDown = new InstructionList();
+            tearDown.append(InstructionConst.ALOAD_0);
+            tearDown.append(factory.createInvoke(className, "stopClassFixture", Type.VOID,
+                    Type.NO_ARGS, Const.INVOKEVIRTUAL));
+            tearDown.append(InstructionConst.RETURN);
+            generateLevelMethod("tearDownClassFixture", TearDown.class, Level.Trial, tearDown);
+        }
+
+        private void generateInvocationFixtureMethods() {
+            InstructionList setUp = new InstructionList();
+            setUp.append(InstructionConst.ALOAD_0);
+            setUp.append(factory.createInvoke(className, "startInstanceFixture", Type.VOID,
+                    Type.NO_ARGS, Const.INVOKEVIRTUAL));
+            setUp.append(InstructionConst.RETURN);
+            generateLevelMethod("setUpInvocation", Setup.class, Level.Invocation, setUp);
+
+            InstructionList tearDown = new InstructionList();
+            tearDown.append(InstructionConst.ALOAD_0);
+            tearDown.append(factory.createInvoke(className, "stopInstanceFixture", Type.VOID,
+                    Type.NO_ARGS, Const.INVOKEVIRTUAL));
+            tearDown.append(InstructionConst.RETURN);
+            generateLevelMethod("tearDownInvocation", TearDown.class, Level.Invocation, tearDown);
+        }
+
+        private List<JavaClass> generate() throws BenchmarkGenerationException {
+            classGen.addAnnotationEntry(annotation(State.class, List.of(new ElementValuePairGen(
+                    "value",
+                    new EnumElementValueGen(new ObjectType(Scope.class.getName()),
+                            Scope.Thread.name(), constantPool),
+                    constantPool))));
+            classGen.addEmptyConstructor(Const.ACC_PUBLIC);
+            generateBenchmarkMethods();
+            generateFixtureMethod("beforeClass", BeforeClass.class, true, true);
+            generateFixtureMethod("afterClass", AfterClass.class, true, false);
+            generateFixtureMethod("before", Before.class, false, true);
+            generateFixtureMethod("after", After.class, false, false);
+            boolean hasClassRules =
+                    generateApplyRulesMethod("applyClassRuleFields", true, true, ClassRule.class)
+                    | generateApplyRulesMethod(
+                            "applyClassRuleMethods", true, false, ClassRule.class);
+            boolean hasInstanceRules =
+                    generateApplyRulesMethod("applyRuleFields", false, true, Rule.class)
+                    | generateApplyRulesMethod("applyRuleMethods", false, false, Rule.class);
+            generateHasRulesMethod("hasClassRules", hasClassRules);
+            generateHasRulesMethod("hasInstanceRules", hasInstanceRules);
+            if (!isAbstract) {
+                generateImplementationMethods();
+                if (trialClassFixtures) {
+                    generateTrialClassFixtureMethods();
+                }
+                if (invocationFixtures) {
+                    generateInvocationFixtureMethods();
+                }
+            }
+            List<JavaClass> classes = new ArrayList<>();
+            classes.add(classGen.getJavaClass());
+            classes.addAll(invokerClasses);
+            return classes;
+        }
+    }
+
+    private static Path classFile(Path outputDirectory, String className) {
+        return outputDirectory.resolve(className.replace('.', '/') + ".class");
+    }
+
+    private long writeClassFile(Path outputDirectory, JavaClass javaClass) throws IOException {
+        Path file = classFile(outputDirectory, javaClass.getClassName());
+        Files.createDirectories(file.getParent());
+        byte[] bytes = javaClass.getBytes();
+        Files.write(file, bytes);
+        return bytes.length;
+    }
+
+    private static void collectApiClasses(Class<?> apiClass, List<Class<?>> classes) {
+        classes.add(apiClass);
+        for (Class<?> nestedClass : apiClass.getDeclaredClasses()) {
+            collectApiClasses(nestedClass, classes);
+        }
+    }
+
+    private void copyApiClassFiles(Path outputDirectory) throws IOException {
+        List<Class<?>> apiClasses = new ArrayList<>();
+        collectApiClasses(JU2JmhBenchmark.class, apiClasses);
+        collectApiClasses(PhaseCounters.class, apiClasses);
+        collectApiClasses(TrialClassFixture.class, apiClasses);
+        ConversionMetrics metrics = inputClassRepository.getMetrics();
+        for (Class<?> apiClass : apiClasses) {
+            Path file = classFile(outputDirectory, apiClass.getName());
+            Files.createDirectories(file.getParent());
+            try (InputStream in = apiClass.getResourceAsStream(
+                    "/" + apiClass.getName().replace('.', '/') + ".class")) {
+                if (in == null) {
+                    throw new IOException("Failed to find class file of " + apiClass.getName());
+                }
+                Files.write(file, in.readAllBytes());
+            }
+            metrics.increment(ConversionMetrics.Counter.FILES_WRITTEN);
+            metrics.add(ConversionMetrics.Counter.BYTES_WRITTEN, Files.size(file));
+        }
+    }
+
+    private Map<String, String> benchmarkClassNames(Collection<String> testClassNames) {
+        // Benchmark classes are top level classes in the package of their test class, so their
+        // names must not clash with any class in the class path or with each other.
+        Set<String> usedNames = new HashSet<>(inputClassRepository.findClassNames());
+        Map<String, String> benchmarkClassNames = new HashMap<>();
+        for (String testClassName : testClassNames) {
+            String baseName = testClassName.replace('$', '_') + BENCHMARK_CLASS_SUFFIX;
+            String benchmarkClassName = baseName;
+            for (int i = 0; usedNames.contains(benchmarkClassName); i++) {
+                benchmarkClassName = baseName + "_" + i;
+            }
+            usedNames.add(benchmarkClassName);
+            benchmarkClassNames.put(testClassName, benchmarkClassName);
+        }
+        return benchmarkClassNames;
+    }
+
+    /**
+     * Builds the suite into the given class output directory. The directory receives the class
+     * files of the benchmark classes and of the ju2jmh API classes they depend on, the compiled
+     * JMH benchmark stubs, and the JMH benchmark list. Running the suite requires the directory,
+     * the class path of this builder's repository, and the dependencies of the tests on the class
+     * path.
+     *
+     * <p>The JMH benchmark stubs are generated as source code by JMH and compiled using the
+     * system Java compiler, so building a suite requires running on a JDK. Only the stubs are
+     * compiled; the test classes are used as they are.
+     *
+     * @param outputDirectory the directory to write the class files and benchmark list to
+     * @return the names of the generated benchmark classes, by test class name
+     * @throws ClassNotFoundException if any of the required classes could not be loaded
+     * @throws IOException if an output file could not be written
+     * @throws BenchmarkGenerationException if generating or compiling the benchmarks failed
+     */
+    @SuppressWarnings("try")
+    public Map<String, String> buildSuite(Path outputDirectory)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        Set<String> testClassNames = new TreeSet<>(testClasses.benchmarkClassNames());
+        testClassNames.addAll(testClasses.abstractBenchmarkClassNames());
+        Map<String, String> benchmarkClassNames = benchmarkClassNames(testClassNames);
+        List<URL> urls = new ArrayList<>();
+        urls.add(outputDirectory.toUri().toURL());
+        for (Path root : inputClassRepository.getClassPath()) {
+            urls.add(CompilationClassPath.classPathEntry(root).toUri().toURL());
+        }
+        ConversionMetrics metrics = inputClassRepository.getMetrics();
+        try (URLClassLoader classLoader = new URLClassLoader(urls.toArray(URL[]::new),
+                BytecodeBenchmarkSuiteBuilder.class.getClassLoader())) {
+            executor.forEach(testClassNames, testClassName -> {
+                InputClass testClass = inputClassRepository.findClass(testClassName);
+                String superclassName = benchmarkClassNames.getOrDefault(
+                        testClass.getSuperclassName(), JU2JmhBenchmark.class.getName());
+                boolean isAbstract =
+                        testClasses.abstractBenchmarkClassNames().contains(testClassName);
+                boolean sharedImplementation = statelessInstanceReuse && !isAbstract
+                        && InstanceStateAnalysis.isStateless(inputClassRepository, testClassName);
+                List<JavaClass> classes;
+                try (ConversionMetrics.Measurement m = metrics.measure(
+                        ConversionMetrics.Phase.BYTECODE_GENERATION, testClassName)) {
+                    classes = new BenchmarkClassGenerator(testClass,
+                            benchmarkClassNames.get(testClassName),
+                            superclassName,
+                            isAbstract,
+                            trialClassFixtures, invocationFixtures, sharedImplementation,
+                            phaseCounters, classLoader).generate();
+                }
+                for (JavaClass javaClass : classes) {
+                    long bytes = writeClassFile(outputDirectory, javaClass);
+                    metrics.increment(ConversionMetrics.Counter.FILES_WRITTEN);
+                    metrics.add(ConversionMetrics.Counter.BYTES_WRITTEN, bytes);
+                }
+            });
+            copyApiClassFiles(outputDirectory);
+            List<Class<?>> benchmarkClasses = new ArrayList<>();
+            for (String benchmarkClassName : new TreeSet<>(benchmarkClassNames.values())) {
+                benchmarkClasses.add(Class.forName(benchmarkClassName, false, classLoader));
+            }
+            List<Path> compileClassPath = new ArrayList<>();
+            compileClassPath.add(outputDirectory);
+            compileClassPath.addAll(CompilationClassPath.of(inputClassRepository));
+            try (ConversionMetrics.Measurement m = metrics.measure(
+                    ConversionMetrics.Phase.JMH_GENERATION, "JMH benchmark stubs")) {
+                new JmhStubCompiler(classLoader, compileClassPath)
+                        .generate(benchmarkClasses, outputDirectory);
+            }
+        }
+        return Map.copyOf(benchmarkClassNames);
+    }
+}
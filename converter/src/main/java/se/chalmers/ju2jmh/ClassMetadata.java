@@ -0,0 +1,396 @@
+package se.chalmers.ju2jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The parts of a class file needed to find tests, fixture methods, and rules: the access flags
+ * and superclass of the class, and the names, descriptors, access flags, and annotations of its
+ * fields and methods.
+ *
+ * <p>Metadata is read from class files in a single pass, without building a full model of the
+ * class. Classes whose constant pool does not reference any {@code org/junit/} type cannot
+ * declare JUnit members, so their fields and methods are skipped entirely.
+ */
+final class ClassMetadata {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_INTERFACE = 0x0200;
+    static final int ACC_ABSTRACT = 0x0400;
+    static final int ACC_ANNOTATION = 0x2000;
+    static final int ACC_ENUM = 0x4000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final byte[] JUNIT_PACKAGE = "org/junit/".getBytes(StandardCharsets.US_ASCII);
+
+    private final String name;
+    private final String superclassName;
+    private final int accessFlags;
+    private final List<Member> fields;
+    private final List<Member> methods;
+
+    private ClassMetadata(String name, String superclassName, int accessFlags,
+            List<Member> fields, List<Member> methods) {
+        this.name = name;
+        this.superclassName = superclassName;
+        this.accessFlags = accessFlags;
+        this.fields = fields;
+        this.methods = methods;
+    }
+
+    /**
+     * An annotation on a field or method, along with the values of its class-valued elements.
+     */
+    static final class Annotation {
+        private final String type;
+        private final Map<String, String> classValues;
+
+        private Annotation(String type, Map<String, String> classValues) {
+            this.type = type;
+            this.classValues = classValues;
+        }
+
+        /**
+         * Returns the type of the annotation as a field descriptor, e.g. {@code Lorg/junit/Test;}.
+         */
+        String type() {
+            return type;
+        }
+
+        /**
+         * Returns the value of the class-valued element with the given name as a field
+         * descriptor, if the element is present.
+         */
+        Optional<String> classValue(String elementName) {
+            return Optional.ofNullable(classValues.get(elementName));
+        }
+    }
+
+    /**
+     * A field or method declared by a class.
+     */
+    static final class Member {
+        private final int accessFlags;
+        private final String name;
+        private final String descriptor;
+        private final List<Annotation> annotations;
+
+        private Member(int accessFlags, String name, String descriptor,
+                List<Annotation> annotations) {
+            this.accessFlags = accessFlags;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.annotations = annotations;
+        }
+
+        String name() {
+            return name;
+        }
+
+        boolean isPublic() {
+            return (accessFlags & ACC_PUBLIC) != 0;
+        }
+
+        boolean isStatic() {
+            return (accessFlags & ACC_STATIC) != 0;
+        }
+
+        /**
+         * Returns whether this member is a method without parameters.
+         */
+        boolean hasNoParameters() {
+            return descriptor.startsWith("()");
+        }
+
+        List<Annotation> annotations() {
+            return annotations;
+        }
+
+        boolean isAnnotated(String annotationType) {
+            return annotation(annotationType).isPresent();
+        }
+
+        Optional<Annotation> annotation(String annotationType) {
+            return annotations.stream().filter(a -> a.type.equals(annotationType)).findFirst();
+        }
+    }
+
+    String name() {
+        return name;
+    }
+
+    String superclassName() {
+        return superclassName;
+    }
+
+    boolean isAbstract() {
+        return (accessFlags & ACC_ABSTRACT) != 0;
+    }
+
+    boolean isInterface() {
+        return (accessFlags & ACC_INTERFACE) != 0;
+    }
+
+    boolean isEnum() {
+        return (accessFlags & ACC_ENUM) != 0;
+    }
+
+    boolean isAnnotation() {
+        return (accessFlags & ACC_ANNOTATION) != 0;
+    }
+
+    List<Member> fields() {
+        return fields;
+    }
+
+    List<Member> methods() {
+        return methods;
+    }
+
+    private static class Reader {
+        private final byte[] bytecode;
+        private final ByteBuffer buffer;
+        // Offsets of the UTF-8 entries of the constant pool, or of the name indices of class
+        // entries. Unused for other entries.
+        private int[] offsets;
+        private byte[] tags;
+
+        private Reader(byte[] bytecode) {
+            this.bytecode = bytecode;
+            this.buffer = ByteBuffer.wrap(bytecode);
+        }
+
+        private int u1() {
+            return buffer.get() & 0xFF;
+        }
+
+        private int u2() {
+            return buffer.getShort() & 0xFFFF;
+        }
+
+        private void skip(int length) {
+            buffer.position(buffer.position() + length);
+        }
+
+        private boolean readConstantPool() throws IOException {
+            int count = u2();
+            offsets = new int[count];
+            tags = new byte[count];
+            boolean referencesJUnit = false;
+            for (int i = 1; i < count; i++) {
+                int tag = u1();
+                tags[i] = (byte) tag;
+                switch (tag) {
+                    case 1: // Utf8
+                        offsets[i] = buffer.position();
+                        int length = u2();
+                        referencesJUnit = referencesJUnit
+                                || contains(buffer.position(), length, JUNIT_PACKAGE);
+                        skip(length);
+                        break;
+                    case 7: // Class
+                        offsets[i] = buffer.position();
+                        skip(2);
+                        break;
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        skip(2);
+                        break;
+                    case 15: // MethodHandle
+                        skip(3);
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        skip(4);
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        skip(8);
+                        // Eight-byte constants take up two entries.
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Invalid constant pool tag " + tag);
+                }
+            }
+            return referencesJUnit;
+        }
+
+        private boolean contains(int offset, int length, byte[] pattern) {
+            int end = offset + length - pattern.length;
+            for (int i = offset; i <= end; i++) {
+                int j = 0;
+                while (j < pattern.length && bytecode[i + j] == pattern[j]) {
+                    j++;
+                }
+                if (j == pattern.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String utf8(int index) throws IOException {
+            if (index <= 0 || index >= tags.length || tags[index] != 1) {
+                throw new IOException("Invalid UTF-8 constant index " + index);
+            }
+            int offset = offsets[index];
+            int length = ((bytecode[offset] & 0xFF) << 8) | (bytecode[offset + 1] & 0xFF);
+            boolean ascii = true;
+            for (int i = offset + 2; i < offset + 2 + length && ascii; i++) {
+                ascii = bytecode[i] > 0;
+            }
+            if (ascii) {
+                return new String(bytecode, offset + 2, length, StandardCharsets.US_ASCII);
+            }
+            // Class files use modified UTF-8, as read by DataInputStream.
+            return new DataInputStream(new ByteArrayInputStream(bytecode, offset, length + 2))
+                    .readUTF();
+        }
+
+        private String className(int index) throws IOException {
+            if (index <= 0 || index >= tags.length || tags[index] != 7) {
+                throw new IOException("Invalid class constant index " + index);
+            }
+            int offset = offsets[index];
+            int nameIndex = ((bytecode[offset] & 0xFF) << 8) | (bytecode[offset + 1] & 0xFF);
+            return utf8(nameIndex).replace('/', '.');
+        }
+
+        private void skipElementValue() throws IOException {
+            int tag = u1();
+            switch (tag) {
+                case 'B':
+                case 'C':
+                case 'D':
+                case 'F':
+                case 'I':
+                case 'J':
+                case 'S':
+                case 'Z':
+                case 's':
+                case 'c':
+                    skip(2);
+                    break;
+                case 'e':
+                    skip(4);
+                    break;
+                case '@':
+                    readAnnotation();
+                    break;
+                case '[':
+                    int count = u2();
+                    for (int i = 0; i < count; i++) {
+                        skipElementValue();
+                    }
+                    break;
+                default:
+                    throw new IOException("Invalid element value tag " + (char) tag);
+            }
+        }
+
+        private Annotation readAnnotation() throws IOException {
+            String type = utf8(u2());
+            int pairCount = u2();
+            Map<String, String> classValues = Map.of();
+            for (int i = 0; i < pairCount; i++) {
+                String elementName = utf8(u2());
+                if (bytecode[buffer.position()] == 'c') {
+                    skip(1);
+                    if (classValues.isEmpty()) {
+                        classValues = new HashMap<>();
+                    }
+                    classValues.put(elementName, utf8(u2()));
+                } else {
+                    skipElementValue();
+                }
+            }
+            return new Annotation(type, classValues);
+        }
+
+        private List<Member> readMembers() throws IOException {
+            int count = u2();
+            List<Member> members = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int accessFlags = u2();
+                String name = utf8(u2());
+                String descriptor = utf8(u2());
+                List<Annotation> annotations = new ArrayList<>();
+                int attributeCount = u2();
+                for (int j = 0; j < attributeCount; j++) {
+                    String attributeName = utf8(u2());
+                    int length = buffer.getInt();
+                    int end = buffer.position() + length;
+                    if (attributeName.equals("RuntimeVisibleAnnotations")
+                            || attributeName.equals("RuntimeInvisibleAnnotations")) {
+                        int annotationCount = u2();
+                        for (int k = 0; k < annotationCount; k++) {
+                            annotations.add(readAnnotation());
+                        }
+                    }
+                    buffer.position(end);
+                }
+                members.add(new Member(accessFlags, name, descriptor,
+                        annotations.isEmpty() ? List.of() : annotations));
+            }
+            return Collections.unmodifiableList(members);
+        }
+
+        private ClassMetadata read() throws IOException {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a class file");
+            }
+            // Minor and major version.
+            skip(4);
+            boolean referencesJUnit = readConstantPool();
+            int accessFlags = u2();
+            String name = className(u2());
+            int superclassIndex = u2();
+            String superclassName = superclassIndex != 0
+                    ? className(superclassIndex)
+                    : Object.class.getName();
+            if (!referencesJUnit) {
+                return new ClassMetadata(name, superclassName, accessFlags, List.of(), List.of());
+            }
+            int interfaceCount = u2();
+            skip(2 * interfaceCount);
+            List<Member> fields = readMembers();
+            List<Member> methods = readMembers();
+            return new ClassMetadata(name, superclassName, accessFlags, fields, methods);
+        }
+    }
+
+    /**
+     * Reads the metadata of the class with the given class file content.
+     *
+     * @param bytecode the content of the class file
+     * @return the metadata of the class
+     * @throws IOException if the class file is malformed
+     */
+    static ClassMetadata read(byte[] bytecode) throws IOException {
+        try {
+            return new Reader(bytecode).read();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException e) {
+            throw new IOException("Truncated or malformed class file", e);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package se.chalmers.ju2jmh;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import se.chalmers.ju2jmh.model.FixtureMethod;
+import se.chalmers.ju2jmh.model.TestRule;
+import se.chalmers.ju2jmh.model.UnitTest;
+import se.chalmers.ju2jmh.model.UnitTestClass;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A persistent cache of {@link ClassSummary}s, stored in a local directory so that it can be
+ * reused across converter runs. Entries are keyed on the content of the class and source files
+ * they were extracted from, so entries for modified classes are never returned and the cache
+ * never needs to be invalidated explicitly. Entries are also keyed on the version of the entry
+ * format, so entries written by converter versions that stored or computed summaries differently
+ * are never returned either.
+ *
+ * <p>The cache is safe to use from multiple threads and processes at the same time. Entries are
+ * written atomically, and unreadable entries are treated as absent.
+ */
+public class ClassModelCache {
+    // Must be incremented whenever the entry format changes, or the way summaries are computed
+    // changes what they contain.
+    static final int FORMAT_VERSION = 2;
+    static final String HEADER = "ju2jmh-class-summary " + FORMAT_VERSION;
+
+    private final Path directory;
+
+    /**
+     * Creates a new cache storing entries in the given directory. The directory is created when
+     * the first entry is stored, if it does not already exist.
+     *
+     * @param directory the directory to store cache entries in
+     */
+    public ClassModelCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Computes the cache key of a class from its name and the content of its class file and
+     * source file, as well as the version of the entry format.
+     *
+     * @param name the fully qualified name of the class
+     * @param bytecode the content of the class file
+     * @param source the content of the source file
+     * @return the cache key
+     */
+    static String key(String name, byte[] bytecode, byte[] source) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(FORMAT_VERSION);
+        hasher.putString(name, StandardCharsets.UTF_8);
+        hasher.putInt(bytecode.length).putBytes(bytecode);
+        hasher.putInt(source.length).putBytes(source);
+        return hasher.hash().toString();
+    }
+
+    private Path entryFile(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+
+    /**
+     * Loads the summary stored with the given key, if any.
+     *
+     * @param key the cache key
+     * @return the stored summary, or an empty optional if no readable entry was found
+     */
+    Optional<ClassSummary> load(String key) {
+        try (BufferedReader reader = Files.newBufferedReader(entryFile(key))) {
+            return Optional.ofNullable(read(reader));
+        } catch (IOException | RuntimeException e) {
+            // Absent or corrupt entry.
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the given summary with the given key. Failures to write the entry are ignored, as
+     * they only cause the summary to be computed again by later runs.
+     *
+     * @param key the cache key
+     * @param summary the summary to store
+     */
+    void store(String key, ClassSummary summary) {
+        Path entryFile = entryFile(key);
+        try {
+            Files.createDirectories(entryFile.getParent());
+            Path tempFile = Files.createTempFile(entryFile.getParent(), key.substring(2), ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile)) {
+                    write(writer, summary);
+                }
+                try {
+                    Files.move(tempFile, entryFile, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            // Not caching the summary only affects performance.
+        }
+    }
+
+    private static void writeLine(BufferedWriter writer, String... parts) throws IOException {
+        writer.write(String.join(" ", parts));
+        writer.newLine();
+    }
+
+    private static void writeFixtureMethods(BufferedWriter writer, String kind,
+            List<FixtureMethod> methods) throws IOException {
+        for (FixtureMethod method : methods) {
+            writeLine(writer, kind, method.name());
+        }
+    }
+
+    private static void writeRules(BufferedWriter writer, String kind, List<TestRule> rules)
+            throws IOException {
+        for (TestRule rule : rules) {
+            writeLine(writer, kind, rule.name());
+        }
+    }
+
+    private static void write(BufferedWriter writer, ClassSummary summary) throws IOException {
+        UnitTestClass members = summary.declaredMembers();
+        writeLine(writer, HEADER);
+        writeLine(writer, "name", summary.name());
+        writeLine(writer, "superclass", summary.superclassName());
+        writeLine(writer, "abstract", Boolean.toString(summary.isAbstract()));
+        writeLine(writer, "test-class", Boolean.toString(summary.isTestClass()));
+        for (UnitTest test : members.tests()) {
+            if (test.expectedException().isEmpty()) {
+                writeLine(writer, "test", test.name());
+            } else {
+                writeLine(writer, "exception-test", test.name(), test.expectedException().get());
+            }
+        }
+        writeFixtureMethods(writer, "before", members.before());
+        writeFixtureMethods(writer, "after", members.after());
+        writeFixtureMethods(writer, "before-class", members.beforeClass());
+        writeFixtureMethods(writer, "after-class", members.afterClass());
+        writeRules(writer, "rule-field", members.ruleFields());
+        writeRules(writer, "rule-method", members.ruleMethods());
+        writeRules(writer, "class-rule-field", members.classRuleFields());
+        writeRules(writer, "class-rule-method", members.classRuleMethods());
+        writeLine(writer, "end");
+    }
+
+    private static String readValue(BufferedReader reader, String kind) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        String[] parts = line.split(" ");
+        if (parts.length != 2 || !parts[0].equals(kind)) {
+            return null;
+        }
+        return parts[1];
+    }
+
+    private static ClassSummary read(BufferedReader reader) throws IOException {
+        if (!HEADER.equals(reader.readLine())) {
+            return null;
+        }
+        String name = readValue(reader, "name");
+        String superclass = readValue(reader, "superclass");
+        String isAbstract = readValue(reader, "abstract");
+        String isTestClass = readValue(reader, "test-class");
+        if (name == null || superclass == null || isAbstract == null || isTestClass == null) {
+            return null;
+        }
+        UnitTestClass.Builder builder = UnitTestClass.Builder.forClass(name);
+        for (String line = reader.readLine(); !"end".equals(line); line = reader.readLine()) {
+            if (line == null) {
+                // Truncated entry.
+                return null;
+            }
+            String[] parts = line.split(" ");
+            if (parts.length == 3 && parts[0].equals("exception-test")) {
+                builder.withExceptionTest(parts[1], parts[2]);
+                continue;
+            }
+            if (parts.length != 2) {
+                return null;
+            }
+            switch (parts[0]) {
+                case "test":
+                    builder.withTest(parts[1]);
+                    break;
+                case "before":
+                    builder.withBefore(parts[1]);
+                    break;
+                case "after":
+                    builder.withAfter(parts[1]);
+                    break;
+                case "before-class":
+                    builder.withBeforeClass(parts[1]);
+                    break;
+                case "after-class":
+                    builder.withAfterClass(parts[1]);
+                    break;
+                case "rule-field":
+                    builder.withInstanceRuleField(parts[1]);
+                    break;
+                case "rule-method":
+                    builder.withInstanceRuleMethod(parts[1]);
+                    break;
+                case "class-rule-field":
+                    builder.withClassRuleField(parts[1]);
+                    break;
+                case "class-rule-method":
+                    builder.withClassRuleMethod(parts[1]);
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return new ClassSummary(superclass, Boolean.parseBoolean(isAbstract),
+                Boolean.parseBoolean(isTestClass), builder.build());
+    }
+}
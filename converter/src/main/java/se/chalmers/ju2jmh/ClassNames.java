@@ -51,6 +51,18 @@ public class ClassNames {
         return outermostClassName(clazz.getName());
     }
 
+    /**
+     * Returns the package of the given class name, or an empty {@link Optional} if the class is in
+     * the unnamed package.
+     */
+    public static Optional<String> packageName(String className) {
+        int packageSeparatorIndex = className.lastIndexOf('.');
+        if (packageSeparatorIndex < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(className.substring(0, packageSeparatorIndex));
+    }
+
     /**
      * Returns the given class name with the package removed.
      */
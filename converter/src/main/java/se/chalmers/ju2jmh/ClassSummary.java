@@ -0,0 +1,207 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import se.chalmers.ju2jmh.model.UnitTestClass;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * The information about a single class that is needed to decide whether and how to generate
+ * benchmarks for it, extracted from its bytecode. Unlike {@link UnitTestClass}, a summary only
+ * describes the members declared by the class itself, so summaries can be computed and cached
+ * independently for each class.
+ */
+public class ClassSummary {
+    private static final String TEST_ANNOTATION = Bytecode.annotationTypeName(Test.class);
+    private static final String IGNORE_ANNOTATION = Bytecode.annotationTypeName(Ignore.class);
+    private static final String BEFORE_ANNOTATION = Bytecode.annotationTypeName(Before.class);
+    private static final String AFTER_ANNOTATION = Bytecode.annotationTypeName(After.class);
+    private static final String BEFORE_CLASS_ANNOTATION =
+            Bytecode.annotationTypeName(BeforeClass.class);
+    private static final String AFTER_CLASS_ANNOTATION =
+            Bytecode.annotationTypeName(AfterClass.class);
+    private static final String RULE_ANNOTATION = Bytecode.annotationTypeName(Rule.class);
+    private static final String CLASS_RULE_ANNOTATION =
+            Bytecode.annotationTypeName(ClassRule.class);
+
+    private final String superclassName;
+    private final boolean isAbstract;
+    private final boolean isTestClass;
+    private final UnitTestClass declaredMembers;
+
+    ClassSummary(String superclassName, boolean isAbstract, boolean isTestClass,
+            UnitTestClass declaredMembers) {
+        this.superclassName = superclassName;
+        this.isAbstract = isAbstract;
+        this.isTestClass = isTestClass;
+        this.declaredMembers = declaredMembers;
+    }
+
+    /**
+     * Returns the name of the summarized class.
+     *
+     * @return the class name
+     */
+    public String name() {
+        return declaredMembers.name();
+    }
+
+    /**
+     * Returns the name of the superclass of the summarized class.
+     *
+     * @return the superclass name
+     */
+    public String superclassName() {
+        return superclassName;
+    }
+
+    /**
+     * Returns whether the summarized class is abstract.
+     *
+     * @return true if the class is abstract, false otherwise
+     */
+    public boolean isAbstract() {
+        return isAbstract;
+    }
+
+    /**
+     * Returns whether the summarized class itself declares public tests, fixture methods, or test
+     * rules, making it a test class regardless of its superclasses.
+     *
+     * @return true if the class declares public JUnit members, false otherwise
+     */
+    public boolean isTestClass() {
+        return isTestClass;
+    }
+
+    /**
+     * Returns the tests, fixture methods, and rules declared by the summarized class, as a
+     * {@link UnitTestClass} without a superclass.
+     *
+     * @return the declared members of the class
+     */
+    public UnitTestClass declaredMembers() {
+        return declaredMembers;
+    }
+
+    private static boolean isJUnitMethodAnnotation(String annotationType) {
+        return annotationType.equals(TEST_ANNOTATION) || annotationType.equals(BEFORE_ANNOTATION)
+                || annotationType.equals(AFTER_ANNOTATION)
+                || annotationType.equals(BEFORE_CLASS_ANNOTATION)
+                || annotationType.equals(AFTER_CLASS_ANNOTATION)
+                || annotationType.equals(RULE_ANNOTATION)
+                || annotationType.equals(CLASS_RULE_ANNOTATION);
+    }
+
+    private static boolean isJUnitFieldAnnotation(String annotationType) {
+        return annotationType.equals(RULE_ANNOTATION)
+                || annotationType.equals(CLASS_RULE_ANNOTATION);
+    }
+
+    private static boolean isTestClass(ClassMetadata metadata) {
+        if (metadata.isInterface() || metadata.isEnum() || metadata.isAnnotation()) {
+            return false;
+        }
+        boolean hasTestMethods = metadata.methods().stream()
+                .filter(ClassMetadata.Member::isPublic)
+                .filter(ClassMetadata.Member::hasNoParameters)
+                .flatMap(m -> m.annotations().stream())
+                .map(ClassMetadata.Annotation::type)
+                .anyMatch(ClassSummary::isJUnitMethodAnnotation);
+        if (hasTestMethods) {
+            return true;
+        }
+        return metadata.fields().stream()
+                .filter(ClassMetadata.Member::isPublic)
+                .flatMap(f -> f.annotations().stream())
+                .map(ClassMetadata.Annotation::type)
+                .anyMatch(ClassSummary::isJUnitFieldAnnotation);
+    }
+
+    private static UnitTestClass declaredMembers(ClassMetadata metadata) {
+        UnitTestClass.Builder builder = UnitTestClass.Builder.forClass(metadata.name());
+        for (ClassMetadata.Member method : metadata.methods()) {
+            if (!method.hasNoParameters()) {
+                continue;
+            }
+            for (ClassMetadata.Annotation annotation : method.annotations()) {
+                String annotationType = annotation.type();
+                if (annotationType.equals(TEST_ANNOTATION)) {
+                    if (method.isAnnotated(IGNORE_ANNOTATION)) {
+                        continue;
+                    }
+                    Optional<String> expected = annotation.classValue("expected")
+                            .map(Bytecode::referenceFieldTypeDescriptorToClassName)
+                            .filter(Predicate.not(Predicate.isEqual(Test.None.class.getName())));
+                    if (expected.isEmpty()) {
+                        builder.withTest(method.name());
+                    } else {
+                        builder.withExceptionTest(method.name(), expected.get());
+                    }
+                } else if (annotationType.equals(BEFORE_ANNOTATION)) {
+                    builder.withBefore(method.name());
+                } else if (annotationType.equals(AFTER_ANNOTATION)) {
+                    builder.withAfter(method.name());
+                } else if (annotationType.equals(BEFORE_CLASS_ANNOTATION)) {
+                    builder.withBeforeClass(method.name());
+                } else if (annotationType.equals(AFTER_CLASS_ANNOTATION)) {
+                    builder.withAfterClass(method.name());
+                } else if (annotationType.equals(RULE_ANNOTATION)) {
+                    builder.withInstanceRuleMethod(method.name());
+                } else if (annotationType.equals(CLASS_RULE_ANNOTATION)) {
+                    builder.withClassRuleMethod(method.name());
+                }
+            }
+        }
+        for (ClassMetadata.Member field : metadata.fields()) {
+            for (ClassMetadata.Annotation annotation : field.annotations()) {
+                String annotationType = annotation.type();
+                if (annotationType.equals(RULE_ANNOTATION)) {
+                    builder.withInstanceRuleField(field.name());
+                } else if (annotationType.equals(CLASS_RULE_ANNOTATION)) {
+                    builder.withClassRuleField(field.name());
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a summary of the class with the given metadata.
+     *
+     * @param metadata the metadata of the class to summarize
+     * @return the created summary
+     */
+    static ClassSummary of(ClassMetadata metadata) {
+        return new ClassSummary(metadata.superclassName(), metadata.isAbstract(),
+                isTestClass(metadata), declaredMembers(metadata));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ClassSummary that = (ClassSummary) o;
+        return isAbstract == that.isAbstract && isTestClass == that.isTestClass
+                && superclassName.equals(that.superclassName)
+                && declaredMembers.equals(that.declaredMembers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(superclassName, isAbstract, isTestClass, declaredMembers);
+    }
+}
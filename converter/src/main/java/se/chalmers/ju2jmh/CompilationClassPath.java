@@ -0,0 +1,73 @@
+package se.chalmers.ju2jmh;
+
+import org.hamcrest.Matcher;
+import org.junit.runner.Description;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class paths for compiling generated benchmarks with the system Java compiler.
+ */
+final class CompilationClassPath {
+    private CompilationClassPath() {
+        throw new AssertionError("Should not be instantiated.");
+    }
+
+    /**
+     * Returns the class path entry of a class path root of an {@link InputClassRepository}, which
+     * is the root itself for directories and the archive file for roots in archives.
+     *
+     * @param root the class path root
+     * @return the file to put on a class path
+     */
+    static Path classPathEntry(Path root) {
+        if (root.getFileSystem() == FileSystems.getDefault()) {
+            return root;
+        }
+        // Roots in archives are the root directories of the archive file systems, whose URIs have
+        // the form jar:file:///path/to/archive.jar!/.
+        String archiveUri = root.toUri().getSchemeSpecificPart();
+        return Path.of(URI.create(archiveUri.substring(0, archiveUri.lastIndexOf("!/"))));
+    }
+
+    private static Path codeSource(Class<?> clazz) throws BenchmarkGenerationException {
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new BenchmarkGenerationException(
+                    "Failed to find the class path location of " + clazz.getName());
+        }
+        try {
+            return Path.of(codeSource.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new BenchmarkGenerationException(
+                    "Failed to find the class path location of " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * Returns the class path for compiling benchmarks of the classes in the given repository:
+     * the class path of the repository followed by the JMH, JUnit and Hamcrest libraries that
+     * this converter runs with.
+     *
+     * @param repository the repository of the benchmarked classes
+     * @return the class path entries
+     * @throws BenchmarkGenerationException if the location of a library could not be found
+     */
+    static List<Path> of(InputClassRepository repository) throws BenchmarkGenerationException {
+        List<Path> classPath = new ArrayList<>();
+        for (Path root : repository.getClassPath()) {
+            classPath.add(classPathEntry(root));
+        }
+        classPath.add(codeSource(Benchmark.class));
+        classPath.add(codeSource(Description.class));
+        classPath.add(codeSource(Matcher.class));
+        return classPath;
+    }
+}
@@ -0,0 +1,25 @@
+package se.chalmers.ju2jmh;
+
+import com.github.javaparser.ast.CompilationUnit;
+
+import java.io.IOException;
+
+/**
+ * Receives generated compilation units as soon as each of them is complete, so that they can be
+ * written out and released without holding the whole generated suite in memory.
+ *
+ * <p>When generation runs on a parallel {@link ConversionExecutor}, a sink may be called from
+ * multiple threads at the same time, and must be thread-safe.
+ */
+@FunctionalInterface
+public interface CompilationUnitSink {
+    /**
+     * Accepts a complete compilation unit. The sink takes ownership of the compilation unit,
+     * which is not accessed by the generator afterwards.
+     *
+     * @param className the fully qualified name of the top level class of the compilation unit
+     * @param compilationUnit the compilation unit
+     * @throws IOException if the compilation unit could not be processed
+     */
+    void accept(String className, CompilationUnit compilationUnit) throws IOException;
+}
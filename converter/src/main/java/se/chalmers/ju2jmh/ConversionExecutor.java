@@ -0,0 +1,181 @@
+package se.chalmers.ju2jmh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Executes conversion tasks, either sequentially on the calling thread or in parallel on a
+ * work-stealing thread pool. Results are always returned in the order of the inputs, so that the
+ * output of a conversion does not depend on the number of threads used.
+ */
+public final class ConversionExecutor implements AutoCloseable {
+    private static final ConversionExecutor SEQUENTIAL = new ConversionExecutor(null);
+
+    private final ForkJoinPool pool;
+
+    /**
+     * A conversion task producing a result from a single input.
+     *
+     * @param <T> the input type
+     * @param <R> the result type
+     */
+    @FunctionalInterface
+    public interface Task<T, R> {
+        R apply(T input) throws ClassNotFoundException, IOException, BenchmarkGenerationException;
+    }
+
+    /**
+     * A conversion task consuming a single input.
+     *
+     * @param <T> the input type
+     */
+    @FunctionalInterface
+    public interface Action<T> {
+        void accept(T input)
+                throws ClassNotFoundException, IOException, BenchmarkGenerationException;
+    }
+
+    /**
+     * Carries checked exceptions thrown by tasks out of the thread pool.
+     */
+    private static class TaskFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private TaskFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private ConversionExecutor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns an executor running all tasks sequentially on the calling thread.
+     *
+     * @return a sequential executor
+     */
+    public static ConversionExecutor sequential() {
+        return SEQUENTIAL;
+    }
+
+    /**
+     * Creates an executor running tasks on the given number of threads. If the number of threads
+     * is 1, the executor runs all tasks sequentially on the calling thread.
+     *
+     * @param threads the number of threads to use
+     * @return the created executor
+     */
+    public static ConversionExecutor withThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        if (threads == 1) {
+            return sequential();
+        }
+        return new ConversionExecutor(new ForkJoinPool(threads));
+    }
+
+    /**
+     * Returns whether this executor runs tasks in parallel.
+     *
+     * @return true if tasks are run in parallel, false if they are run sequentially
+     */
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    private static void rethrow(Throwable cause)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        // The pool may wrap exceptions thrown in worker threads in new instances of the same type.
+        while (cause instanceof TaskFailure) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof ClassNotFoundException) {
+            throw (ClassNotFoundException) cause;
+        } else if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof BenchmarkGenerationException) {
+            throw (BenchmarkGenerationException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+    }
+
+    /**
+     * Applies the given task to each of the given inputs and returns the results in the order of
+     * the inputs. If any task fails, the exception of the first failing task (in input order) is
+     * thrown once all tasks have completed.
+     *
+     * @param inputs the inputs to apply the task to
+     * @param task the task to apply
+     * @param <T> the input type
+     * @param <R> the result type
+     * @return the results of applying the task to each input
+     */
+    public <T, R> List<R> map(Collection<T> inputs, Task<? super T, ? extends R> task)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        List<R> results = new ArrayList<>(inputs.size());
+        if (pool == null) {
+            for (T input : inputs) {
+                results.add(task.apply(input));
+            }
+            return Collections.unmodifiableList(results);
+        }
+        List<Callable<R>> callables = new ArrayList<>(inputs.size());
+        for (T input : inputs) {
+            callables.add(() -> {
+                try {
+                    return task.apply(input);
+                } catch (ClassNotFoundException | IOException | BenchmarkGenerationException e) {
+                    throw new TaskFailure(e);
+                }
+            });
+        }
+        List<Future<R>> futures = pool.invokeAll(callables);
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                rethrow(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for conversion task", e);
+            }
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Applies the given action to each of the given inputs. If any action fails, the exception of
+     * the first failing action (in input order) is thrown once all actions have completed.
+     *
+     * @param inputs the inputs to apply the action to
+     * @param action the action to apply
+     * @param <T> the input type
+     */
+    public <T> void forEach(Collection<T> inputs, Action<? super T> action)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        map(inputs, input -> {
+            action.accept(input);
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
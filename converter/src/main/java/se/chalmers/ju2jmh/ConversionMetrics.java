@@ -0,0 +1,310 @@
+package se.chalmers.ju2jmh;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Counters and per-phase timings of a conversion run, used to find out where the time of a slow
+ * conversion is spent and to track conversion throughput over time.
+ *
+ * <p>Each measured phase is also recorded as a {@code se.chalmers.ju2jmh.ConversionPhase} JFR
+ * event, and {@link #commitSummaryEvent()} records the counters as a
+ * {@code se.chalmers.ju2jmh.ConversionSummary} JFR event. The events are only recorded while a
+ * flight recording with the events enabled is running.
+ *
+ * <p>Phases may be nested, e.g. bytecode may be parsed while transforming the AST of a benchmark
+ * class. The time of a nested phase is only counted towards the nested phase, so the phase times
+ * add up to the total measured time. Recording metrics is thread-safe.
+ */
+public class ConversionMetrics {
+    private static final int SLOWEST_CLASS_COUNT = 10;
+
+    /**
+     * The measured phases of a conversion.
+     */
+    public enum Phase {
+        /** Parsing class files, both to full BCEL models and to class metadata. */
+        BYTECODE_PARSING,
+        /** Parsing source files with JavaParser. */
+        SOURCE_PARSING,
+        /** Rendering tailored benchmark templates and parsing the rendered code. */
+        TEMPLATE_RENDERING,
+        /** Populating benchmark class templates by transforming their ASTs. */
+        AST_TRANSFORMATION,
+        /** Pretty-printing generated compilation units. */
+        PRETTY_PRINTING,
+        /** Generating benchmark class files directly as bytecode. */
+        BYTECODE_GENERATION,
+        /** Generating and compiling the JMH benchmark stubs of benchmark class files. */
+        JMH_GENERATION,
+        /** Compiling generated benchmark sources to verify them. */
+        VERIFICATION
+    }
+
+    /**
+     * The counted events of a conversion.
+     */
+    public enum Counter {
+        /** Input classes loaded from the repository. */
+        CLASSES_LOADED,
+        /** Class summaries read from the {@link ClassModelCache}. */
+        SUMMARY_CACHE_HITS,
+        /** Class summaries computed because they were not present in the cache. */
+        SUMMARY_CACHE_MISSES,
+        /** Output files written or copied. */
+        FILES_WRITTEN,
+        /** Bytes of output files written or copied. */
+        BYTES_WRITTEN
+    }
+
+    /**
+     * A running measurement of a phase, ended by closing it. Measurements are meant to be opened
+     * in try-with-resources statements, whose bodies usually never reference them; methods doing
+     * so suppress the resulting {@code try} lint warning.
+     */
+    public interface Measurement extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> phaseCounts = new EnumMap<>(Phase.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final Map<String, LongAdder> classNanos = new ConcurrentHashMap<>();
+    private final ThreadLocal<PhaseMeasurement> currentMeasurement = new ThreadLocal<>();
+    private final long startNanos = System.nanoTime();
+
+    public ConversionMetrics() {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+            phaseCounts.put(phase, new LongAdder());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+    }
+
+    private class PhaseMeasurement implements Measurement {
+        private final Phase phase;
+        private final String className;
+        private final PhaseMeasurement parent;
+        private final ConversionPhaseEvent event = new ConversionPhaseEvent();
+        private final long start;
+        private long nestedNanos = 0;
+
+        private PhaseMeasurement(Phase phase, String className, PhaseMeasurement parent) {
+            this.phase = phase;
+            this.className = className;
+            this.parent = parent;
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            long elapsed = System.nanoTime() - start;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.className = className;
+                event.commit();
+            }
+            long selfNanos = elapsed - nestedNanos;
+            if (parent != null) {
+                parent.nestedNanos += elapsed;
+            }
+            currentMeasurement.set(parent);
+            phaseNanos.get(phase).add(selfNanos);
+            phaseCounts.get(phase).increment();
+            classNanos.computeIfAbsent(className, k -> new LongAdder()).add(selfNanos);
+        }
+    }
+
+    /**
+     * Starts measuring a phase of converting the given class. Measurements must be closed on the
+     * thread that started them, in the reverse order of starting them.
+     *
+     * @param phase the phase to measure
+     * @param className the name of the class the phase is performed for
+     * @return the running measurement, to be closed when the phase ends
+     */
+    public Measurement measure(Phase phase, String className) {
+        PhaseMeasurement measurement =
+                new PhaseMeasurement(phase, className, currentMeasurement.get());
+        currentMeasurement.set(measurement);
+        return measurement;
+    }
+
+    /**
+     * Increments the given counter by one.
+     *
+     * @param counter the counter to increment
+     */
+    public void increment(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    /**
+     * Adds the given amount to the given counter.
+     *
+     * @param counter the counter to add to
+     * @param amount the amount to add
+     */
+    public void add(Counter counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    /**
+     * Adds the phase times, measurement counts, counters, and class times recorded in the given
+     * metrics to these metrics, e.g. to combine the metrics of modules converted in the same run.
+     * The elapsed time of these metrics is unaffected.
+     *
+     * @param other the metrics to add
+     */
+    public void addAll(ConversionMetrics other) {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.get(phase).add(other.nanos(phase));
+            phaseCounts.get(phase).add(other.measurements(phase));
+        }
+        for (Counter counter : Counter.values()) {
+            counters.get(counter).add(other.count(counter));
+        }
+        other.classNanos.forEach((className, nanos) ->
+                classNanos.computeIfAbsent(className, k -> new LongAdder()).add(nanos.sum()));
+    }
+
+    /**
+     * Returns the current value of the given counter.
+     *
+     * @param counter the counter to return the value of
+     * @return the value of the counter
+     */
+    public long count(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * Returns the total time measured for the given phase, excluding nested phases.
+     *
+     * @param phase the phase to return the time of
+     * @return the time of the phase in nanoseconds
+     */
+    public long nanos(Phase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    /**
+     * Returns the number of completed measurements of the given phase.
+     *
+     * @param phase the phase to return the number of measurements of
+     * @return the number of measurements
+     */
+    public long measurements(Phase phase) {
+        return phaseCounts.get(phase).sum();
+    }
+
+    /**
+     * Returns the names of the classes with the largest total measured time over all phases,
+     * slowest first.
+     *
+     * @param limit the maximum number of classes to return
+     * @return the names of the slowest classes
+     */
+    public List<String> slowestClasses(int limit) {
+        return classNanos.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Records the current counters as a JFR event.
+     */
+    public void commitSummaryEvent() {
+        ConversionSummaryEvent event = new ConversionSummaryEvent();
+        if (event.shouldCommit()) {
+            event.classesLoaded = count(Counter.CLASSES_LOADED);
+            event.summaryCacheHits = count(Counter.SUMMARY_CACHE_HITS);
+            event.summaryCacheMisses = count(Counter.SUMMARY_CACHE_MISSES);
+            event.filesWritten = count(Counter.FILES_WRITTEN);
+            event.bytesWritten = count(Counter.BYTES_WRITTEN);
+            event.commit();
+        }
+    }
+
+    private static String jsonKey(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Returns a JSON report of the metrics, containing the elapsed time since the metrics were
+     * created, the time and number of measurements of each phase, the value of each counter, and
+     * the slowest classes. Times are given in nanoseconds.
+     *
+     * @return the JSON report
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"elapsed_nanos\": ").append(System.nanoTime() - startNanos).append(",\n");
+        json.append("  \"phases\": {\n");
+        json.append(phaseNanos.keySet().stream()
+                .map(p -> "    " + jsonString(jsonKey(p)) + ": {\"nanos\": " + nanos(p)
+                        + ", \"count\": " + measurements(p) + "}")
+                .collect(Collectors.joining(",\n")));
+        json.append("\n  },\n");
+        json.append("  \"counters\": {\n");
+        json.append(counters.keySet().stream()
+                .map(c -> "    " + jsonString(jsonKey(c)) + ": " + count(c))
+                .collect(Collectors.joining(",\n")));
+        json.append("\n  },\n");
+        json.append("  \"slowest_classes\": [");
+        List<String> slowestClasses = slowestClasses(SLOWEST_CLASS_COUNT);
+        if (!slowestClasses.isEmpty()) {
+            json.append("\n");
+            json.append(slowestClasses.stream()
+                    .map(n -> "    {\"class\": " + jsonString(n) + ", \"nanos\": "
+                            + classNanos.get(n).sum() + "}")
+                    .collect(Collectors.joining(",\n")));
+            json.append("\n  ");
+        }
+        json.append("]\n");
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Writes the JSON report returned by {@link #toJson()} to the given file.
+     *
+     * @param reportFile the file to write the report to
+     * @throws IOException if the report could not be written
+     */
+    public void writeReport(Path reportFile) throws IOException {
+        Files.writeString(reportFile, toJson(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,24 @@
+package se.chalmers.ju2jmh;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event recording the time spent in a single phase of converting a single class.
+ */
+@Name("se.chalmers.ju2jmh.ConversionPhase")
+@Label("Conversion Phase")
+@Description("Time spent in a phase of converting a class to benchmarks")
+@Category("JU2JMH")
+@StackTrace(false)
+class ConversionPhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Class Name")
+    String className;
+}
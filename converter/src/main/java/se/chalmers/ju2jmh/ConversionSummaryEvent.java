@@ -0,0 +1,35 @@
+package se.chalmers.ju2jmh;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event recording the counters of a complete conversion run.
+ */
+@Name("se.chalmers.ju2jmh.ConversionSummary")
+@Label("Conversion Summary")
+@Description("Counters of a complete conversion run")
+@Category("JU2JMH")
+@StackTrace(false)
+class ConversionSummaryEvent extends Event {
+    @Label("Classes Loaded")
+    long classesLoaded;
+
+    @Label("Summary Cache Hits")
+    long summaryCacheHits;
+
+    @Label("Summary Cache Misses")
+    long summaryCacheMisses;
+
+    @Label("Files Written")
+    long filesWritten;
+
+    @Label("Bytes Written")
+    @DataAmount(DataAmount.BYTES)
+    long bytesWritten;
+}
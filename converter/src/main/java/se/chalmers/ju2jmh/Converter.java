@@ -4,44 +4,75 @@ import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.TypeDeclaration;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
 import picocli.CommandLine;
 import se.chalmers.ju2jmh.api.ExceptionTest;
 import se.chalmers.ju2jmh.api.JU2JmhBenchmark;
+import se.chalmers.ju2jmh.api.PhaseCounters;
 import se.chalmers.ju2jmh.api.Rules;
 import se.chalmers.ju2jmh.api.ThrowingConsumer;
+import se.chalmers.ju2jmh.api.TrialClassFixture;
 import se.chalmers.ju2jmh.model.UnitTestClass;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @CommandLine.Command(name = "ju2jmh", mixinStandardHelpOptions = true)
 public class Converter implements Callable<Integer> {
+    private static final String NESTED_MODE = "nested";
+    private static final String TAILORED_MODE = "tailored";
+    private static final String JU4_RUNNER_MODE = "ju4-runner";
+    private static final String TRIAL_CLASS_FIXTURES_SUFFIX = "+trial-class-fixtures";
+    private static final String INVOCATION_FIXTURES_SUFFIX = "+invocation-fixtures";
+    private static final String STATELESS_INSTANCE_REUSE_SUFFIX = "+reuse-stateless-instances";
+    private static final String PHASE_COUNTERS_SUFFIX = "+phase-counters";
+    private static final List<Class<?>> NESTED_API_CLASSES =
+            List.of(JU2JmhBenchmark.class, PhaseCounters.class, TrialClassFixture.class);
+
     @CommandLine.Parameters(description =
             "Root path(s) of the input source files. `${sys:path.separator}` may be used as a"
-                    + " separator to specify multiple directories.", index = "0")
+                    + " separator to specify multiple directories. Only read when generating"
+                    + " nested or tailored benchmarks; may be empty otherwise. Not used with"
+                    + " --modules.", index = "0", arity = "0..1")
     private String sourcePath;
 
     @CommandLine.Parameters(description =
             "Root path(s) of the input class files. `${sys:path.separator}` may be used as a"
-                    + " separator to specify multiple directories.", index = "1")
+                    + " separator to specify multiple directories. Not used with --modules.",
+            index = "1", arity = "0..1")
     private String classPath;
 
-    @CommandLine.Parameters(description = "Root path for the output source files.", index = "2")
+    @CommandLine.Parameters(
+            description = "Root path for the output source files. Not used with --modules.",
+            index = "2", arity = "0..1")
     private Path outputPath;
 
     @CommandLine.Parameters(
@@ -61,176 +92,961 @@ public class Converter implements Callable<Integer> {
                     + "JUnit features used by the individual tests.")
     private boolean tailoredBenchmark;
 
+    @CommandLine.Option(
+            names = {"--bytecode-benchmark"},
+            description = "Generate the benchmark classes directly as class files referring to the "
+                    + "compiled test classes, together with the compiled JMH benchmark stubs and "
+                    + "benchmark list, so that the output directory can be run by JMH without "
+                    + "compiling the tests again. Requires running on a JDK. Output files are "
+                    + "always regenerated, even with --incremental.")
+    private boolean bytecodeBenchmark;
+
+    @CommandLine.Option(
+            names = {"--trial-class-fixtures"},
+            description = "Run the @BeforeClass and @AfterClass methods and class rules of the "
+                    + "tests once per JMH trial, in @Setup(Level.Trial) and "
+                    + "@TearDown(Level.Trial) methods, instead of around every benchmark "
+                    + "invocation, so that only the per-test work is measured. Test classes "
+                    + "with class rules run their class fixtures and class rules on a separate "
+                    + "thread for the duration of the trial, and a warning is printed for them. "
+                    + "Not supported with --ju4-runner-benchmark.")
+    private boolean trialClassFixtures;
+
+    @CommandLine.Option(
+            names = {"--invocation-fixtures"},
+            description = "Create the test instances and run the @Before and @After methods of "
+                    + "the tests in @Setup(Level.Invocation) and @TearDown(Level.Invocation) "
+                    + "methods, outside the measured benchmark methods, together with the class "
+                    + "fixtures unless --trial-class-fixtures is given. Test classes with rules, "
+                    + "or with class rules when running class fixtures around every invocation, "
+                    + "still run their fixtures in the benchmark methods, and a warning is "
+                    + "printed for them. Not supported with --ju4-runner-benchmark.")
+    private boolean invocationFixtures;
+
+    @CommandLine.Option(
+            names = {"--reuse-stateless-instances"},
+            description = "Create a single instance of each test class whose instances are "
+                    + "stateless, i.e. whose instance fields are all final and of primitive, "
+                    + "boxed primitive or String types and are initialised with constants, in a "
+                    + "@Setup(Level.Trial) method, and share it across benchmark invocations "
+                    + "instead of creating a new instance for every invocation. Not supported "
+                    + "with --ju4-runner-benchmark.")
+    private boolean statelessInstanceReuse;
+
+    @CommandLine.Option(
+            names = {"--phase-counters"},
+            description = "Time the phases of every benchmark invocation, i.e. test instance "
+                    + "creation, class fixture methods, instance fixture methods, rules and the "
+                    + "test method itself, and report the nanoseconds spent in each phase as JMH "
+                    + "auxiliary counters next to the primary score. Reading the clock adds to "
+                    + "the measured time, so the counters are meant for finding which phase of a "
+                    + "benchmark got slower. Not supported with --ju4-runner-benchmark.")
+    private boolean phaseCounters;
+
     @CommandLine.Option(
             names = {"-i", "--ignore-failures"},
             description = "Generate the remaining benchmark classes even if conversion of some "
                     + "input classes fails.")
     private boolean ignoreFailures;
 
+    @CommandLine.Option(
+            names = {"--verify"},
+            description = "Compile the generated sources in-process against the input class path "
+                    + "after generating them, one package at a time, and report the classes that "
+                    + "fail to compile. With --ignore-failures, the failing benchmark classes "
+                    + "generated by the conversion are deleted from the output directory, and "
+                    + "only other failing sources, such as copied test sources, fail the "
+                    + "conversion; otherwise, any failure fails the conversion. Requires running "
+                    + "on a JDK. Has no effect with --bytecode-benchmark.")
+    private boolean verify;
+
     @CommandLine.Option(
             names = {"--class-names-file"},
             description = "File to load class names from.")
     private Path classNamesFile;
 
+    @CommandLine.Option(
+            names = {"--threads"},
+            description = "Number of threads to use for loading, converting, and writing classes. "
+                    + "The generated benchmarks do not depend on the number of threads. Defaults "
+                    + "to 1.")
+    private int threads = 1;
+
+    @CommandLine.Option(
+            names = {"--cache-dir"},
+            description = "Directory to cache class metadata in between runs. Metadata of classes "
+                    + "whose class and source files are unchanged since an earlier run using the "
+                    + "same directory is read from the cache instead of from the class files.")
+    private Path cacheDir;
+
+    @CommandLine.Option(
+            names = {"--incremental"},
+            description = "Only regenerate output files whose inputs have changed since the "
+                    + "previous incremental run with the same output directory, and delete output "
+                    + "files that are no longer generated. A manifest of the generated files is "
+                    + "stored in the output directory.")
+    private boolean incremental;
+
+    @CommandLine.Option(
+            names = {"--discover"},
+            description = "Convert all test classes found in the class path, in addition to any "
+                    + "classes named explicitly.")
+    private boolean discover;
+
+    @CommandLine.Option(
+            names = {"--include"},
+            description = "Glob matching fully qualified names of classes to consider when "
+                    + "discovering test classes, e.g. `com.example.**`. May be repeated. Defaults "
+                    + "to all classes.")
+    private List<String> includes = List.of();
+
+    @CommandLine.Option(
+            names = {"--exclude"},
+            description = "Glob matching fully qualified names of classes to skip when "
+                    + "discovering test classes, e.g. `**.*IT`. May be repeated.")
+    private List<String> excludes = List.of();
+
+    @CommandLine.Option(
+            names = {"--metrics-report"},
+            description = "File to write a JSON report of the conversion metrics to, including "
+                    + "the time spent in each conversion phase, counters of loaded classes, cache "
+                    + "hits, and written files, and the slowest classes to convert.")
+    private Path metricsReport;
+
+    @CommandLine.Option(
+            names = {"--modules"},
+            description = "Properties file listing the modules of a multi-module project, with "
+                    + "the source path, class path, output directory, and test classes of each "
+                    + "module, to convert all modules in this process instead of the paths and "
+                    + "classes given as parameters. Modules are converted in parallel when using "
+                    + "--threads, and classes read from the same files by several modules are "
+                    + "only loaded once.")
+    private Path modulesFile;
+
+    @CommandLine.Option(
+            names = {"--daemon"},
+            description = "State file of a running conversion daemon to send the conversion to, "
+                    + "as written by `ju2jmh-daemon --state-file`. If no daemon is running, the "
+                    + "conversion is done in this process.")
+    private Path daemonStateFile;
+
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    private final RepositoryProvider repositoryProvider;
+    private ConversionMetrics metrics;
+    // The benchmark classes generated by this conversion, including those left up to date by an
+    // incremental conversion. Only these are deleted when failing verification.
+    private final Set<String> generatedClassNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Provides the repositories that classes are converted from. Repositories may be reused
+     * between conversions, as long as their inputs are unchanged. Providers must be thread-safe,
+     * as the modules of a multi-module conversion are converted in parallel.
+     */
+    interface RepositoryProvider {
+        /**
+         * Opens a repository of the given inputs. Repositories opened for the modules of a
+         * multi-module conversion are given the cache shared by the modules, which may be
+         * ignored by repositories outliving the conversion.
+         */
+        InputClassRepository open(List<Path> sourcePath, List<Path> classPath, Path cacheDir,
+                SharedInputCache sharedCache);
+
+        UnitTestClassRepository unitTestClasses(InputClassRepository repository);
+
+        void release(InputClassRepository repository) throws IOException;
+    }
+
+    private static class NewRepositoryProvider implements RepositoryProvider {
+        @Override
+        public InputClassRepository open(List<Path> sourcePath, List<Path> classPath,
+                Path cacheDir, SharedInputCache sharedCache) {
+            ClassModelCache cache = cacheDir != null ? new ClassModelCache(cacheDir) : null;
+            return new InputClassRepository(
+                    sourcePath, classPath, cache, new ConversionMetrics(), sharedCache);
+        }
+
+        @Override
+        public UnitTestClassRepository unitTestClasses(InputClassRepository repository) {
+            return new UnitTestClassRepository(repository);
+        }
+
+        @Override
+        public void release(InputClassRepository repository) throws IOException {
+            repository.close();
+        }
+    }
+
+    public Converter() {
+        this(new NewRepositoryProvider());
+    }
+
+    Converter(RepositoryProvider repositoryProvider) {
+        this.repositoryProvider = repositoryProvider;
+    }
+
+    /**
+     * Returns the writer to report diagnostics to, which is the error writer of the command line
+     * this converter runs in, so that diagnostics are forwarded to clients of a daemon.
+     */
+    private PrintWriter err() {
+        return spec.commandLine().getErr();
+    }
+
     private static CompilationUnit loadApiSource(Class<?> apiClass) throws IOException {
         return StaticJavaParser.parseResource(
                 apiClass.getCanonicalName().replace('.', '/') + ".java");
     }
 
-    private static void writeSourceCodeToFile(CompilationUnit benchmark, File outputFile)
-            throws IOException {
+    @SuppressWarnings("try")
+    private void writeSourceCodeToFile(
+            String className, CompilationUnit benchmark, File outputFile) throws IOException {
+        String sourceCode;
+        try (ConversionMetrics.Measurement m =
+                     metrics.measure(ConversionMetrics.Phase.PRETTY_PRINTING, className)) {
+            sourceCode = benchmark.toString();
+        }
+        byte[] bytes = sourceCode.getBytes(StandardCharsets.UTF_8);
         outputFile.getParentFile().mkdirs();
-        outputFile.createNewFile();
-        try (OutputStreamWriter out = new OutputStreamWriter(
-                new FileOutputStream(outputFile), StandardCharsets.UTF_8)) {
-            out.append(benchmark.toString());
+        Files.write(outputFile.toPath(), bytes);
+        metrics.increment(ConversionMetrics.Counter.FILES_WRITTEN);
+        metrics.add(ConversionMetrics.Counter.BYTES_WRITTEN, bytes.length);
+    }
+
+    private void writeCompilationUnit(String className, CompilationUnit compilationUnit)
+            throws IOException {
+        File outputFile = outputPath.resolve(
+                className.replace('.', File.separatorChar) + ".java").toFile();
+        writeSourceCodeToFile(className, compilationUnit, outputFile);
+        generatedClassNames.add(className);
+    }
+
+    private OutputManifest loadManifest() throws IOException {
+        return incremental ? OutputManifest.load(outputPath) : null;
+    }
+
+    private String generationMode(String mode) {
+        // Benchmarks generated with and without trial class fixtures, invocation fixtures,
+        // shared stateless instances or phase counters differ, so toggling any of these options
+        // regenerates all output files of an incremental run.
+        String generationMode = trialClassFixtures ? mode + TRIAL_CLASS_FIXTURES_SUFFIX : mode;
+        if (invocationFixtures) {
+            generationMode += INVOCATION_FIXTURES_SUFFIX;
+        }
+        if (statelessInstanceReuse) {
+            generationMode += STATELESS_INSTANCE_REUSE_SUFFIX;
+        }
+        if (phaseCounters) {
+            generationMode += PHASE_COUNTERS_SUFFIX;
+        }
+        return generationMode;
+    }
+
+    private static String inputHash(String mode, Collection<String> inputs) {
+        return Hashing.sha256()
+                .hashString(mode + "\n" + String.join("\n", inputs), StandardCharsets.UTF_8)
+                .toString();
+    }
+
+    private static String apiInputHash(String mode, Class<?> apiClass) throws IOException {
+        // The source of the API class is copied to the output, so it is hashed by content, so
+        // that changes to the API module regenerate the copy.
+        String resourceName = apiClass.getCanonicalName().replace('.', '/') + ".java";
+        URL resource = apiClass.getClassLoader().getResource(resourceName);
+        if (resource == null) {
+            throw new FileNotFoundException("Failed to find API source " + resourceName);
+        }
+        return inputHash(mode, List.of(apiClass.getCanonicalName() + " "
+                + Resources.asByteSource(resource).hash(Hashing.sha256())));
+    }
+
+    private static Map<String, String> classHierarchyHashes(
+            InputClassRepository repository, String className) throws ClassNotFoundException {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        hashes.put(className, repository.contentHash(className));
+        String superclassName = repository.findSummary(className).superclassName();
+        while (!superclassName.equals(Object.class.getName())) {
+            try {
+                hashes.put(superclassName, repository.contentHash(superclassName));
+                superclassName = repository.findSummary(superclassName).superclassName();
+            } catch (ClassNotFoundException e) {
+                // Superclass unavailable, record its absence in case it is added later.
+                hashes.put(superclassName, "absent");
+                break;
+            }
+        }
+        return hashes;
+    }
+
+    private static List<String> inputs(Map<String, String> hashes) {
+        return hashes.entrySet().stream()
+                .map(e -> e.getKey() + " " + e.getValue())
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    private static List<String> findOutOfDateClassNames(
+            OutputManifest manifest, Map<String, String> inputHashes) {
+        return inputHashes.entrySet().stream()
+                .filter(e -> !manifest.isUpToDate(e.getKey(), e.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    private static void recordManifest(OutputManifest manifest, Map<String, String> inputHashes)
+            throws IOException {
+        for (Map.Entry<String, String> e : inputHashes.entrySet()) {
+            manifest.record(e.getKey(), e.getValue());
         }
+        manifest.deleteStaleOutputs();
     }
 
-    private void generateNestedBenchmarks() throws ClassNotFoundException, IOException {
+    private Map<String, String> nestedInputHashes(ConversionExecutor executor,
+            InputClassRepository repository, List<String> outputClassNames)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        // A benchmark class depends on the test class and its superclasses, and abstract benchmark
+        // classes are generated for its superclasses, so the compilation unit of each of these
+        // classes depends on the entire class hierarchy.
+        List<Map<String, String>> hierarchies = executor.map(classNames,
+                className -> classHierarchyHashes(repository, className));
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        for (Map<String, String> hierarchy : hierarchies) {
+            for (String className : hierarchy.keySet()) {
+                dependencies.computeIfAbsent(
+                                ClassNames.outermostClassName(className), k -> new TreeSet<>())
+                        .addAll(inputs(hierarchy));
+            }
+        }
+        List<String> hashes = executor.map(outputClassNames, className -> {
+            List<String> inputs = new ArrayList<>();
+            inputs.add(className + " " + repository.contentHash(className));
+            inputs.addAll(dependencies.getOrDefault(className, Set.of()));
+            return inputHash(generationMode(NESTED_MODE), inputs);
+        });
+        Map<String, String> inputHashes = new LinkedHashMap<>();
+        for (int i = 0; i < outputClassNames.size(); i++) {
+            inputHashes.put(outputClassNames.get(i), hashes.get(i));
+        }
+        for (Class<?> apiClass : NESTED_API_CLASSES) {
+            inputHashes.put(apiClass.getCanonicalName(), apiInputHash(NESTED_MODE, apiClass));
+        }
+        return inputHashes;
+    }
+
+    private void generateNestedBenchmarks(ConversionExecutor executor,
+            InputClassRepository repository, OutputManifest manifest)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
         NestedBenchmarkSuiteBuilder benchmarkSuiteBuilder =
-                new NestedBenchmarkSuiteBuilder(toPaths(sourcePath), toPaths(classPath));
-        for (String className : classNames) {
-            benchmarkSuiteBuilder.addTestClass(className);
+                new NestedBenchmarkSuiteBuilder(repository)
+                        .withExecutor(executor)
+                        .withTrialClassFixtures(trialClassFixtures)
+                        .withInvocationFixtures(invocationFixtures)
+                        .withStatelessInstanceReuse(statelessInstanceReuse)
+                        .withPhaseCounters(phaseCounters);
+        benchmarkSuiteBuilder.addTestClasses(classNames);
+        if (manifest == null) {
+            benchmarkSuiteBuilder.buildSuite(
+                    benchmarkSuiteBuilder.findOutputClassNames(), this::writeCompilationUnit);
+            for (Class<?> apiClass : NESTED_API_CLASSES) {
+                writeApiSource(apiClass);
+            }
+            return;
+        }
+        Map<String, String> inputHashes = nestedInputHashes(
+                executor, repository, benchmarkSuiteBuilder.findOutputClassNames());
+        List<String> outOfDateClassNames = findOutOfDateClassNames(manifest, inputHashes);
+        Set<String> apiClassNames = NESTED_API_CLASSES.stream()
+                .map(Class::getCanonicalName)
+                .collect(Collectors.toUnmodifiableSet());
+        benchmarkSuiteBuilder.buildSuite(
+                outOfDateClassNames.stream()
+                        .filter(n -> !apiClassNames.contains(n))
+                        .collect(Collectors.toUnmodifiableList()),
+                this::writeCompilationUnit);
+        inputHashes.keySet().stream()
+                .filter(n -> !apiClassNames.contains(n))
+                .forEach(generatedClassNames::add);
+        for (Class<?> apiClass : NESTED_API_CLASSES) {
+            if (outOfDateClassNames.contains(apiClass.getCanonicalName())) {
+                writeApiSource(apiClass);
+            }
         }
-        Map<String, CompilationUnit> suite = benchmarkSuiteBuilder.buildSuite();
-        for (String className : suite.keySet()) {
-            File outputFile =
-                    outputPath.resolve(className.replace('.', File.separatorChar) + ".java")
-                            .toFile();
-            writeSourceCodeToFile(suite.get(className), outputFile);
+        recordManifest(manifest, inputHashes);
+    }
+
+    private void generateBytecodeBenchmarks(
+            ConversionExecutor executor, InputClassRepository repository)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        new BytecodeBenchmarkSuiteBuilder(repository)
+                .withExecutor(executor)
+                .withTrialClassFixtures(trialClassFixtures)
+                .withInvocationFixtures(invocationFixtures)
+                .withStatelessInstanceReuse(statelessInstanceReuse)
+                .withPhaseCounters(phaseCounters)
+                .addTestClasses(classNames)
+                .buildSuite(outputPath);
+    }
+
+    private void verifyOutput(ConversionExecutor executor, InputClassRepository repository,
+            OutputManifest manifest) throws IOException, BenchmarkGenerationException {
+        OutputVerifier verifier = new OutputVerifier(repository, outputPath).withExecutor(executor);
+        Map<String, List<String>> failures = verifier.verify();
+        while (!failures.isEmpty()) {
+            failures.forEach((className, errors) -> {
+                err().println("Generated class " + className + " failed to compile:");
+                errors.forEach(error -> err().println("    " + error));
+            });
+            if (!ignoreFailures) {
+                throw new BenchmarkGenerationException(failures.size()
+                        + " generated classes failed to compile: "
+                        + String.join(", ", failures.keySet()));
+            }
+            // Only generated benchmarks may be dropped. Other sources in the output directory,
+            // such as copied test sources and API classes, are kept for the user to fix.
+            List<String> otherClassNames = failures.keySet().stream()
+                    .filter(n -> !generatedClassNames.contains(n))
+                    .collect(Collectors.toUnmodifiableList());
+            if (!otherClassNames.isEmpty()) {
+                throw new BenchmarkGenerationException(otherClassNames.size()
+                        + " classes not generated by this conversion failed to compile: "
+                        + String.join(", ", otherClassNames));
+            }
+            for (String className : failures.keySet()) {
+                Files.deleteIfExists(outputPath.resolve(
+                        className.replace('.', File.separatorChar) + ".java"));
+                if (manifest != null) {
+                    // Not recorded, so that the next incremental run generates it again.
+                    manifest.forget(className);
+                }
+            }
+            // Classes depending on the deleted classes no longer compile, so the remaining output
+            // is verified again until it compiles.
+            failures = verifier.verify();
+        }
+    }
+
+    private static boolean hasClassRules(UnitTestClass testClass) {
+        for (UnitTestClass c = testClass; c != null; c = c.superclass().orElse(null)) {
+            if (!c.classRuleFields().isEmpty() || !c.classRuleMethods().isEmpty()) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    private static boolean hasWrappingRules(UnitTestClass testClass, boolean includeClassRules) {
+        for (UnitTestClass c = testClass; c != null; c = c.superclass().orElse(null)) {
+            if (!c.ruleFields().isEmpty() || !c.ruleMethods().isEmpty()) {
+                return true;
+            }
+        }
+        return includeClassRules && hasClassRules(testClass);
+    }
+
+    private void warnAboutClasses(ConversionExecutor executor, InputClassRepository repository,
+            Predicate<UnitTestClass> predicate, String warning)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        UnitTestClassRepository testClassRepository =
+                repositoryProvider.unitTestClasses(repository);
+        List<Boolean> matches = executor.map(classNames, className -> {
+            try {
+                return predicate.test(testClassRepository.findClass(className));
+            } catch (ClassNotFoundException e) {
+                // Reported when generating the benchmarks.
+                return false;
+            }
+        });
+        for (int i = 0; i < classNames.size(); i++) {
+            if (matches.get(i)) {
+                err().println("Warning: " + classNames.get(i) + " " + warning);
+            }
+        }
+    }
+
+    private void warnAboutWrappedFixtures(
+            ConversionExecutor executor, InputClassRepository repository)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        // Rules wrap the test methods, so the fixtures of classes with rules applied around every
+        // invocation stay in the benchmark methods.
+        warnAboutClasses(executor, repository, c -> hasWrappingRules(c, !trialClassFixtures),
+                "has rules wrapping its tests, so its fixtures run in the measured benchmark "
+                        + "methods despite --invocation-fixtures.");
+    }
+
+    private void warnAboutThreadedClassFixtures(
+            ConversionExecutor executor, InputClassRepository repository)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        // Class rules wrap the whole trial, so they are evaluated on a helper thread, as described
+        // in TrialClassFixture.
+        warnAboutClasses(executor, repository, Converter::hasClassRules,
+                "has class rules, so its class rules and @BeforeClass and @AfterClass methods "
+                        + "run on a separate thread with --trial-class-fixtures, and fixtures "
+                        + "relying on thread-local state may behave differently than in JUnit.");
+    }
+
+    private void writeApiSource(Class<?> apiClass) throws IOException {
         writeSourceCodeToFile(
-                loadApiSource(JU2JmhBenchmark.class),
+                apiClass.getCanonicalName(),
+                loadApiSource(apiClass),
                 outputPath.resolve(
-                        JU2JmhBenchmark.class.getCanonicalName()
-                                .replace('.', File.separatorChar) + ".java")
+                        apiClass.getCanonicalName().replace('.', File.separatorChar) + ".java")
                         .toFile());
     }
 
-    private void generateJU4Benchmarks()
-            throws ClassNotFoundException, IOException, InvalidInputClassException {
-        InputClassRepository repository =
-                new InputClassRepository(toPaths(sourcePath), toPaths(classPath));
+    @SuppressWarnings("try")
+    private void generateJU4Benchmarks(ConversionExecutor executor,
+            InputClassRepository repository, OutputManifest manifest)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
         JU4BenchmarkFactory benchmarkFactory = new JU4BenchmarkFactory(repository);
-        List<CompilationUnit> benchmarks = new ArrayList<>(classNames.size());
-        for (String className : classNames) {
-            try {
-                benchmarks.add(benchmarkFactory.createBenchmarkFromTest(className));
+        Map<String, String> inputHashes = new LinkedHashMap<>();
+        List<String> testClassNames = classNames;
+        if (manifest != null) {
+            List<String> hashes = executor.map(classNames, className -> inputHash(
+                    JU4_RUNNER_MODE, inputs(classHierarchyHashes(repository, className))));
+            for (int i = 0; i < classNames.size(); i++) {
+                inputHashes.put(
+                        JU4BenchmarkFactory.benchmarkClassName(classNames.get(i)), hashes.get(i));
+            }
+            testClassNames = classNames.stream()
+                    .filter(n -> {
+                        String benchmarkClassName = JU4BenchmarkFactory.benchmarkClassName(n);
+                        return !manifest.isUpToDate(
+                                benchmarkClassName, inputHashes.get(benchmarkClassName));
+                    })
+                    .collect(Collectors.toUnmodifiableList());
+        }
+        List<CompilationUnit> benchmarks = executor.map(testClassNames, className -> {
+            try (ConversionMetrics.Measurement m =
+                         metrics.measure(ConversionMetrics.Phase.AST_TRANSFORMATION, className)) {
+                return benchmarkFactory.createBenchmarkFromTest(className);
             } catch (BenchmarkGenerationException e) {
                 if (!ignoreFailures) {
                     throw e;
                 }
+                return null;
+            }
+        });
+        for (int i = 0; i < testClassNames.size(); i++) {
+            if (benchmarks.get(i) == null) {
+                inputHashes.remove(JU4BenchmarkFactory.benchmarkClassName(testClassNames.get(i)));
             }
         }
-        for (CompilationUnit benchmark : benchmarks) {
+        executor.forEach(benchmarks, benchmark -> {
+            if (benchmark == null) {
+                return;
+            }
             TypeDeclaration<?> benchmarkClass = benchmark.getTypes().get(0);
             String benchmarkClassName = benchmarkClass.getFullyQualifiedName().orElseThrow();
             File outputFile = outputPath.resolve(
                     benchmarkClassName.replace('.', File.separatorChar) + ".java").toFile();
-            writeSourceCodeToFile(benchmark, outputFile);
+            writeSourceCodeToFile(benchmarkClassName, benchmark, outputFile);
+            generatedClassNames.add(benchmarkClassName);
+        });
+        if (manifest != null) {
+            generatedClassNames.addAll(inputHashes.keySet());
+            recordManifest(manifest, inputHashes);
         }
     }
 
-    private static void loadMissingCompilationUnits(
-            String packageName, File file, InputClassRepository repository,
-            Map<String, CompilationUnit> compilationUnits) throws ClassNotFoundException {
-        String name = file.getName();
-        if (file.isFile()) {
+    private static void findMissingClassNames(
+            String packageName, Path file, Collection<String> presentClassNames,
+            Set<String> missingClassNames) throws IOException {
+        String name = InputClassRepository.fileName(file);
+        if (Files.isRegularFile(file)) {
             if (name.endsWith(".java")) {
                 String className =
                         packageName + name.substring(0, name.length() - ".java".length());
-                if (!compilationUnits.containsKey(className)) {
-                    compilationUnits.put(
-                            className,
-                            repository.findClass(className)
-                                    .getSource()
-                                    .findCompilationUnit()
-                                    .orElseThrow());
+                if (!presentClassNames.contains(className)) {
+                    missingClassNames.add(className);
                 }
             }
-        } else if (file.isDirectory()) {
+        } else if (Files.isDirectory(file)) {
             packageName = packageName + name + ".";
-            File[] containedFiles = file.listFiles();
-            if (containedFiles == null) {
-                return;
+            try (DirectoryStream<Path> containedFiles = Files.newDirectoryStream(file)) {
+                for (Path containedFile : containedFiles) {
+                    findMissingClassNames(
+                            packageName, containedFile, presentClassNames, missingClassNames);
+                }
             }
-            for (File containedFile : containedFiles) {
-                loadMissingCompilationUnits(
-                        packageName, containedFile, repository, compilationUnits);
-            }
-        }
-    }
-
-    private void generateTailoredBenchmarks() throws ClassNotFoundException, IOException {
-        InputClassRepository repository =
-                new InputClassRepository(toPaths(sourcePath), toPaths(classPath));
-        UnitTestClassRepository testClassRepository = new UnitTestClassRepository(repository);
-        Map<String, CompilationUnit> compilationUnits = new HashMap<>();
-        for (String className : classNames) {
-            UnitTestClass testClass = testClassRepository.findClass(className);
-            Predicate<String> nameValidator =
-                    TailoredBenchmarkFactory.nameValidatorForCompilationUnit(
-                            repository.findClass(className)
-                                    .getSource()
-                                    .findCompilationUnit()
-                                    .orElseThrow());
-            ClassOrInterfaceDeclaration benchmarkClass =
-                    TailoredBenchmarkFactory.generateBenchmarkClass(testClass, nameValidator);
-            TypeDeclaration<?> testClassSource = repository.findClass(className).getSource();
-            testClassSource.addMember(benchmarkClass);
-            compilationUnits.put(className, testClassSource.findCompilationUnit().orElseThrow());
-        }
-        for (Path path : toPaths(sourcePath)) {
-            File[] files = path.toFile().listFiles();
-            if (files == null) {
+        }
+    }
+
+    private static Set<String> findMissingClassNames(
+            InputClassRepository repository, Collection<String> presentClassNames)
+            throws IOException {
+        Set<String> missingClassNames = new LinkedHashSet<>();
+        for (Path path : repository.getSourcePath()) {
+            if (!Files.isDirectory(path)) {
                 continue;
             }
-            for (File file : files) {
-                loadMissingCompilationUnits("", file, repository, compilationUnits);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+                for (Path file : files) {
+                    findMissingClassNames("", file, presentClassNames, missingClassNames);
+                }
             }
         }
-        compilationUnits.put(
-                ExceptionTest.class.getCanonicalName(), loadApiSource(ExceptionTest.class));
-        compilationUnits.put(Rules.class.getCanonicalName(), loadApiSource(Rules.class));
-        compilationUnits.put(
-                ThrowingConsumer.class.getCanonicalName(), loadApiSource(ThrowingConsumer.class));
-        for (String className : compilationUnits.keySet()) {
-            CompilationUnit benchmark = compilationUnits.get(className);
-            File outputFile = outputPath.resolve(
-                    className.replace('.', File.separatorChar) + ".java").toFile();
-            writeSourceCodeToFile(benchmark, outputFile);
+        return missingClassNames;
+    }
+
+    private void copyMissingSourceFiles(
+            ConversionExecutor executor, InputClassRepository repository,
+            Collection<String> missingClassNames)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        // Source files without test classes are copied as they are, without being parsed, so that
+        // their formatting and line numbers are preserved.
+        executor.forEach(missingClassNames, className -> {
+            Path outputFile =
+                    outputPath.resolve(className.replace('.', File.separatorChar) + ".java");
+            Files.createDirectories(outputFile.getParent());
+            Files.copy(repository.findSourceFile(className), outputFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+            metrics.increment(ConversionMetrics.Counter.FILES_WRITTEN);
+            metrics.add(ConversionMetrics.Counter.BYTES_WRITTEN, Files.size(outputFile));
+        });
+    }
+
+    @SuppressWarnings("try")
+    private CompilationUnit generateTailoredBenchmark(
+            InputClassRepository repository, UnitTestClassRepository testClassRepository,
+            String className) throws ClassNotFoundException {
+        UnitTestClass testClass = testClassRepository.findClass(className);
+        TypeDeclaration<?> testClassSource = repository.findClass(className).getSource();
+        CompilationUnit compilationUnit = testClassSource.findCompilationUnit().orElseThrow();
+        Predicate<String> nameValidator =
+                repository.findIdentifierIndex(className, compilationUnit).nameValidator();
+        boolean sharedInstance = statelessInstanceReuse
+                && InstanceStateAnalysis.isStateless(repository, className);
+        ClassOrInterfaceDeclaration benchmarkClass;
+        try (ConversionMetrics.Measurement m =
+                     metrics.measure(ConversionMetrics.Phase.TEMPLATE_RENDERING, className)) {
+            benchmarkClass = TailoredBenchmarkFactory.generateBenchmarkClass(testClass,
+                    nameValidator, trialClassFixtures, invocationFixtures, sharedInstance,
+                    phaseCounters);
+        }
+        testClassSource.addMember(benchmarkClass);
+        return compilationUnit;
+    }
+
+    private Map<String, String> tailoredInputHashes(ConversionExecutor executor,
+            InputClassRepository repository, Collection<String> missingClassNames,
+            List<Class<?>> apiClasses)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        Map<String, String> inputHashes = new LinkedHashMap<>();
+        String mode = generationMode(TAILORED_MODE);
+        List<String> hashes = executor.map(classNames, className ->
+                inputHash(mode, inputs(classHierarchyHashes(repository, className))));
+        for (int i = 0; i < classNames.size(); i++) {
+            inputHashes.put(classNames.get(i), hashes.get(i));
+        }
+        List<String> missingHashes = executor.map(missingClassNames, className ->
+                inputHash(TAILORED_MODE, List.of(className + " " + Hashing.sha256()
+                        .hashBytes(Files.readAllBytes(repository.findSourceFile(className)))
+                        .toString())));
+        int i = 0;
+        for (String className : missingClassNames) {
+            inputHashes.put(className, missingHashes.get(i++));
+        }
+        for (Class<?> apiClass : apiClasses) {
+            inputHashes.put(apiClass.getCanonicalName(), apiInputHash(TAILORED_MODE, apiClass));
+        }
+        return inputHashes;
+    }
+
+    private void generateTailoredBenchmarks(ConversionExecutor executor,
+            InputClassRepository repository, OutputManifest manifest)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        UnitTestClassRepository testClassRepository =
+                repositoryProvider.unitTestClasses(repository);
+        List<Class<?>> apiClasses =
+                new ArrayList<>(List.of(ExceptionTest.class, Rules.class, ThrowingConsumer.class));
+        if (trialClassFixtures) {
+            apiClasses.add(TrialClassFixture.class);
+        }
+        if (phaseCounters) {
+            apiClasses.add(PhaseCounters.class);
+        }
+        Set<String> missingClassNames =
+                findMissingClassNames(repository, new HashSet<>(classNames));
+        Map<String, String> inputHashes = Map.of();
+        Predicate<String> isOutOfDate = n -> true;
+        if (manifest != null) {
+            inputHashes =
+                    tailoredInputHashes(executor, repository, missingClassNames, apiClasses);
+            Set<String> outOfDateClassNames =
+                    Set.copyOf(findOutOfDateClassNames(manifest, inputHashes));
+            isOutOfDate = outOfDateClassNames::contains;
+        }
+        List<String> testClassNames = classNames.stream()
+                .filter(isOutOfDate)
+                .collect(Collectors.toUnmodifiableList());
+        // Each compilation unit is written as soon as it is generated, so that only the
+        // compilation units currently being generated are held in memory.
+        executor.forEach(testClassNames, className -> writeCompilationUnit(className,
+                generateTailoredBenchmark(repository, testClassRepository, className)));
+        generatedClassNames.addAll(classNames);
+        copyMissingSourceFiles(executor, repository,
+                missingClassNames.stream()
+                        .filter(isOutOfDate)
+                        .collect(Collectors.toUnmodifiableList()));
+        for (Class<?> apiClass : apiClasses) {
+            if (isOutOfDate.test(apiClass.getCanonicalName())) {
+                writeApiSource(apiClass);
+            }
+        }
+        if (manifest != null) {
+            recordManifest(manifest, inputHashes);
         }
     }
 
     private static List<Path> toPaths(String pathString) {
         return Arrays.stream(pathString.split(File.pathSeparator))
+                .filter(p -> !p.isEmpty())
                 .map(Path::of)
                 .collect(Collectors.toUnmodifiableList());
     }
 
-    @Override
-    public Integer call() throws ClassNotFoundException, IOException, InvalidInputClassException {
-        if (!outputPath.toFile().exists()) {
-            throw new FileNotFoundException("Output directory " + outputPath + " does not exist");
+    private static String toAbsolutePaths(String pathString) {
+        return toPaths(pathString).stream()
+                .map(p -> p.toAbsolutePath().toString())
+                .collect(Collectors.joining(File.pathSeparator));
+    }
+
+    private List<String> daemonArguments() {
+        // The daemon does not share the working directory of this process, so all paths are
+        // passed as absolute paths.
+        List<String> arguments = new ArrayList<>();
+        if (modulesFile != null) {
+            arguments.add("--modules=" + modulesFile.toAbsolutePath());
+        } else {
+            arguments.add(toAbsolutePaths(sourcePath));
+            arguments.add(toAbsolutePaths(classPath));
+            arguments.add(outputPath.toAbsolutePath().toString());
+            if (classNames != null) {
+                arguments.addAll(classNames);
+            }
         }
         if (classNamesFile != null) {
-            try (Stream<String> lines = Files.lines(classNamesFile)) {
-                if (classNames == null) {
-                    classNames = lines.collect(Collectors.toUnmodifiableList());
+            arguments.add("--class-names-file=" + classNamesFile.toAbsolutePath());
+        }
+        if (metricsReport != null) {
+            arguments.add("--metrics-report=" + metricsReport.toAbsolutePath());
+        }
+        arguments.addAll(conversionOptionArguments());
+        return arguments;
+    }
+
+    private List<String> moduleArguments(ModuleManifest.Module module) {
+        List<String> arguments = new ArrayList<>();
+        arguments.add(module.getSourcePath().stream()
+                .map(Path::toString)
+                .collect(Collectors.joining(File.pathSeparator)));
+        arguments.add(module.getClassPath().stream()
+                .map(Path::toString)
+                .collect(Collectors.joining(File.pathSeparator)));
+        arguments.add(module.getOutputPath().toString());
+        arguments.addAll(module.getClassNames());
+        arguments.addAll(conversionOptionArguments());
+        return arguments;
+    }
+
+    private List<String> conversionOptionArguments() {
+        List<String> arguments = new ArrayList<>();
+        if (ju4RunnerBenchmark) {
+            arguments.add("--ju4-runner-benchmark");
+        }
+        if (tailoredBenchmark) {
+            arguments.add("--tailored-benchmark");
+        }
+        if (trialClassFixtures) {
+            arguments.add("--trial-class-fixtures");
+        }
+        if (invocationFixtures) {
+            arguments.add("--invocation-fixtures");
+        }
+        if (statelessInstanceReuse) {
+            arguments.add("--reuse-stateless-instances");
+        }
+        if (phaseCounters) {
+            arguments.add("--phase-counters");
+        }
+        if (bytecodeBenchmark) {
+            arguments.add("--bytecode-benchmark");
+        }
+        if (ignoreFailures) {
+            arguments.add("--ignore-failures");
+        }
+        if (verify) {
+            arguments.add("--verify");
+        }
+        arguments.add("--threads=" + threads);
+        if (cacheDir != null) {
+            arguments.add("--cache-dir=" + cacheDir.toAbsolutePath());
+        }
+        if (incremental) {
+            arguments.add("--incremental");
+        }
+        if (discover) {
+            arguments.add("--discover");
+        }
+        includes.forEach(glob -> arguments.add("--include=" + glob));
+        excludes.forEach(glob -> arguments.add("--exclude=" + glob));
+        return arguments;
+    }
+
+    private void convert(ConversionExecutor executor, SharedInputCache sharedCache)
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        if (!ju4RunnerBenchmark && !bytecodeBenchmark && toPaths(sourcePath).isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Nested and tailored benchmarks require the source path of the tests");
+        }
+        if (ju4RunnerBenchmark && trialClassFixtures) {
+            throw new IllegalArgumentException("JUnit 4 runner benchmarks run the class fixtures "
+                    + "of the tests around every invocation; --trial-class-fixtures is not "
+                    + "supported");
+        }
+        if (ju4RunnerBenchmark && invocationFixtures) {
+            throw new IllegalArgumentException("JUnit 4 runner benchmarks create the test "
+                    + "instances as part of every invocation; --invocation-fixtures is not "
+                    + "supported");
+        }
+        if (ju4RunnerBenchmark && statelessInstanceReuse) {
+            throw new IllegalArgumentException("JUnit 4 runner benchmarks create the test "
+                    + "instances as part of every invocation; --reuse-stateless-instances is not "
+                    + "supported");
+        }
+        if (ju4RunnerBenchmark && phaseCounters) {
+            throw new IllegalArgumentException("JUnit 4 runner benchmarks run the tests through "
+                    + "the JUnit runner, whose phases cannot be timed; --phase-counters is not "
+                    + "supported");
+        }
+        // JUnit 4 runner and bytecode benchmarks only refer to the compiled test classes, so their
+        // repositories are bytecode-only and no sources are parsed.
+        List<Path> repositorySourcePath =
+                ju4RunnerBenchmark || bytecodeBenchmark ? List.of() : toPaths(sourcePath);
+        InputClassRepository repository = repositoryProvider.open(
+                repositorySourcePath, toPaths(classPath), cacheDir, sharedCache);
+        metrics = repository.getMetrics();
+        if (classNames == null) {
+            classNames = List.of();
+        }
+        try {
+            if (discover) {
+                List<String> testClassNames = new TestClassFinder(repository)
+                        .withIncludes(includes)
+                        .withExcludes(excludes)
+                        .withExecutor(executor)
+                        .findTestClasses();
+                classNames = Stream.concat(classNames.stream(), testClassNames.stream())
+                        .distinct()
+                        .collect(Collectors.toUnmodifiableList());
+            }
+            if (trialClassFixtures && !ju4RunnerBenchmark) {
+                warnAboutThreadedClassFixtures(executor, repository);
+            }
+            if (invocationFixtures && !ju4RunnerBenchmark) {
+                warnAboutWrappedFixtures(executor, repository);
+            }
+            // Bytecode benchmarks are always regenerated, so no manifest is kept for them. The
+            // manifest is only saved after verification, which may delete generated files.
+            OutputManifest manifest = bytecodeBenchmark ? null : loadManifest();
+            if (bytecodeBenchmark) {
+                generateBytecodeBenchmarks(executor, repository);
+            } else if (!ju4RunnerBenchmark) {
+                if (!tailoredBenchmark) {
+                    generateNestedBenchmarks(executor, repository, manifest);
                 } else {
-                    classNames = Stream.concat(classNames.stream(), lines).collect(Collectors.toUnmodifiableList());
+                    generateTailoredBenchmarks(executor, repository, manifest);
                 }
+            } else {
+                generateJU4Benchmarks(executor, repository, manifest);
             }
+            if (verify && !bytecodeBenchmark) {
+                verifyOutput(executor, repository, manifest);
+            }
+            if (manifest != null) {
+                manifest.save();
+            }
+        } finally {
+            repositoryProvider.release(repository);
         }
-        if (!ju4RunnerBenchmark) {
-            if (!tailoredBenchmark) {
-                generateNestedBenchmarks();
-            } else {
-                generateTailoredBenchmarks();
+    }
+
+    private void convertModules()
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        Map<ModuleManifest.Module, Converter> moduleConverters = new LinkedHashMap<>();
+        for (ModuleManifest.Module module : ModuleManifest.load(modulesFile).getModules()) {
+            Files.createDirectories(module.getOutputPath());
+            Converter moduleConverter = new Converter(repositoryProvider);
+            new CommandLine(moduleConverter)
+                    .setErr(err())
+                    .parseArgs(moduleArguments(module).toArray(String[]::new));
+            moduleConverters.put(module, moduleConverter);
+        }
+        // Modules are converted on the same executor as their classes, so that a single module
+        // with many classes can use all threads, as can many modules with few classes.
+        try (SharedInputCache sharedCache = new SharedInputCache();
+             ConversionExecutor executor = ConversionExecutor.withThreads(threads)) {
+            executor.forEach(moduleConverters.entrySet(), e -> {
+                try {
+                    e.getValue().convert(executor, sharedCache);
+                } catch (ClassNotFoundException | IOException | BenchmarkGenerationException
+                        | RuntimeException ex) {
+                    err().println("Failed to convert module " + e.getKey().getName());
+                    throw ex;
+                }
+            });
+        }
+        // Modules with the same inputs may share a repository, and thereby its metrics.
+        metrics = new ConversionMetrics();
+        Set<ConversionMetrics> moduleMetrics = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Converter moduleConverter : moduleConverters.values()) {
+            if (moduleMetrics.add(moduleConverter.metrics)) {
+                metrics.addAll(moduleConverter.metrics);
             }
+        }
+    }
+
+    @Override
+    public Integer call()
+            throws ClassNotFoundException, IOException, BenchmarkGenerationException {
+        if (modulesFile == null) {
+            if (sourcePath == null || classPath == null || outputPath == null) {
+                throw new IllegalArgumentException("The source path, class path, and output "
+                        + "directory are required unless converting modules with --modules");
+            }
+            if (!outputPath.toFile().exists()) {
+                throw new FileNotFoundException(
+                        "Output directory " + outputPath + " does not exist");
+            }
+        }
+        if (daemonStateFile != null) {
+            Optional<Integer> exitCode =
+                    ConverterDaemon.convert(daemonStateFile, daemonArguments(), err());
+            if (exitCode.isPresent()) {
+                return exitCode.get();
+            }
+            err().println("No conversion daemon running, converting in this process.");
+        }
+        if (modulesFile != null) {
+            convertModules();
         } else {
-            generateJU4Benchmarks();
+            if (classNamesFile != null) {
+                try (Stream<String> lines = Files.lines(classNamesFile)) {
+                    if (classNames == null) {
+                        classNames = lines.collect(Collectors.toUnmodifiableList());
+                    } else {
+                        classNames = Stream.concat(classNames.stream(), lines)
+                                .collect(Collectors.toUnmodifiableList());
+                    }
+                }
+            }
+            try (ConversionExecutor executor = ConversionExecutor.withThreads(threads)) {
+                convert(executor, null);
+            }
+        }
+        metrics.commitSummaryEvent();
+        if (metricsReport != null) {
+            metrics.writeReport(metricsReport);
         }
         return 0;
     }
@@ -0,0 +1,388 @@
+package se.chalmers.ju2jmh;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import picocli.CommandLine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A long-lived process converting classes on behalf of {@link Converter} clients started with the
+ * {@code --daemon} option. Repeated conversions of the same inputs reuse the loaded and parsed
+ * classes of the previous conversion, as well as the loaded classes, parsed templates, and
+ * compiled code of the JVM, and therefore only take a fraction of the time of a fresh conversion.
+ *
+ * <p>The daemon listens on a loopback socket. The port and a secret token are written to a state
+ * file readable only by the owner, and clients must present the token with each request, so that
+ * only users able to read the state file can use the daemon. Requests are handled one at a time,
+ * and clients not sending their request in time are disconnected, so that a stalled client cannot
+ * block the daemon.
+ *
+ * <p>Loaded classes are reused as long as no file in the source and class paths has been added,
+ * removed, or modified since they were loaded. Otherwise, the classes are loaded again.
+ */
+@CommandLine.Command(name = "ju2jmh-daemon", mixinStandardHelpOptions = true,
+        description = "Runs a conversion daemon keeping loaded classes between conversions.")
+public class ConverterDaemon implements Callable<Integer> {
+    private static final String CONVERT_REQUEST = "convert";
+    private static final String STOP_REQUEST = "stop";
+    private static final int DEFAULT_REQUEST_TIMEOUT_MILLIS = 10_000;
+
+    @CommandLine.Option(
+            names = {"--state-file"},
+            required = true,
+            description = "File to write the port and token of the daemon to, to be passed to "
+                    + "the `--daemon` option of ju2jmh. Deleted when the daemon stops.")
+    private Path stateFile;
+
+    @CommandLine.Option(
+            names = {"--stop"},
+            description = "Stop the daemon with the given state file instead of starting one.")
+    private boolean stop;
+
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    private final int requestTimeoutMillis;
+    private final Map<String, WarmRepository> repositories = new HashMap<>();
+
+    public ConverterDaemon() {
+        this(DEFAULT_REQUEST_TIMEOUT_MILLIS);
+    }
+
+    ConverterDaemon(int requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    private static class WarmRepository {
+        private final String fingerprint;
+        private final InputClassRepository repository;
+        private final UnitTestClassRepository unitTestClasses;
+
+        private WarmRepository(String fingerprint, InputClassRepository repository) {
+            this.fingerprint = fingerprint;
+            this.repository = repository;
+            this.unitTestClasses = new UnitTestClassRepository(repository);
+        }
+    }
+
+    private static class State {
+        private final int port;
+        private final String token;
+
+        private State(int port, String token) {
+            this.port = port;
+            this.token = token;
+        }
+
+        private static State load(Path stateFile) throws IOException {
+            List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+            if (lines.size() < 2) {
+                throw new IOException("Invalid daemon state file " + stateFile);
+            }
+            try {
+                return new State(Integer.parseInt(lines.get(0)), lines.get(1));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid daemon state file " + stateFile, e);
+            }
+        }
+
+        private void save(Path stateFile) throws IOException {
+            Path tempFile = Files.createTempFile(
+                    stateFile.toAbsolutePath().getParent(), ".ju2jmh-daemon", ".tmp");
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.setPosixFilePermissions(
+                        tempFile, PosixFilePermissions.fromString("rw-------"));
+            }
+            Files.writeString(tempFile, port + "\n" + token + "\n", StandardCharsets.UTF_8);
+            Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String fingerprint(List<Path> roots) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Path root : roots) {
+            hasher.putString(root.toString(), StandardCharsets.UTF_8);
+            if (!Files.exists(root)) {
+                continue;
+            }
+            List<String> entries;
+            try (Stream<Path> files = Files.walk(root)) {
+                entries = files.map(file -> {
+                            try {
+                                BasicFileAttributes attributes =
+                                        Files.readAttributes(file, BasicFileAttributes.class);
+                                return file + " " + attributes.size() + " "
+                                        + attributes.lastModifiedTime().toMillis();
+                            } catch (IOException e) {
+                                return file + " unreadable";
+                            }
+                        })
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            for (String entry : entries) {
+                hasher.putString(entry, StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private class WarmRepositoryProvider implements Converter.RepositoryProvider {
+        private final Map<InputClassRepository, WarmRepository> open = new HashMap<>();
+
+        @Override
+        public synchronized InputClassRepository open(List<Path> sourcePath,
+                List<Path> classPath, Path cacheDir, SharedInputCache sharedCache) {
+            // Warm repositories outlive the shared cache of a multi-module conversion, so they do
+            // not use it.
+            String key = sourcePath + "\n" + classPath + "\n" + cacheDir;
+            List<Path> roots = new ArrayList<>(sourcePath);
+            roots.addAll(classPath);
+            String fingerprint;
+            try {
+                fingerprint = fingerprint(roots);
+            } catch (IOException e) {
+                // Inputs could not be checked, so they may have changed.
+                fingerprint = null;
+            }
+            WarmRepository warm = repositories.get(key);
+            if (warm == null || fingerprint == null || !warm.fingerprint.equals(fingerprint)) {
+                if (warm != null) {
+                    repositories.remove(key);
+                    closeQuietly(warm.repository);
+                }
+                ClassModelCache cache = cacheDir != null ? new ClassModelCache(cacheDir) : null;
+                warm = new WarmRepository(fingerprint, new InputClassRepository(
+                        sourcePath, classPath, cache, new ConversionMetrics()));
+                if (fingerprint != null) {
+                    repositories.put(key, warm);
+                }
+            }
+            open.put(warm.repository, warm);
+            return warm.repository;
+        }
+
+        @Override
+        public synchronized UnitTestClassRepository unitTestClasses(
+                InputClassRepository repository) {
+            return open.get(repository).unitTestClasses;
+        }
+
+        @Override
+        public synchronized void release(InputClassRepository repository) throws IOException {
+            WarmRepository warm = open.remove(repository);
+            if (!repositories.containsValue(warm)) {
+                repository.close();
+            }
+        }
+    }
+
+    private static void closeQuietly(InputClassRepository repository) {
+        try {
+            repository.close();
+        } catch (IOException e) {
+            // The repository is no longer used.
+        }
+    }
+
+    private static String newToken() {
+        byte[] token = new byte[32];
+        new SecureRandom().nextBytes(token);
+        return Hashing.sha256().hashBytes(token).toString();
+    }
+
+    private static boolean isValidToken(String expected, String actual) {
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                actual.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeResponse(DataOutputStream out, int exitCode, String output)
+            throws IOException {
+        byte[] outputBytes = output.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(outputBytes.length);
+        out.write(outputBytes);
+        out.writeInt(exitCode);
+        out.flush();
+    }
+
+    private int convert(List<String> arguments, PrintWriter output) {
+        CommandLine commandLine = new CommandLine(new Converter(new WarmRepositoryProvider()));
+        commandLine.setOut(output);
+        commandLine.setErr(output);
+        return commandLine.execute(arguments.toArray(String[]::new));
+    }
+
+    /**
+     * Handles a single request, returning false if the daemon was requested to stop.
+     */
+    private boolean handle(Socket socket, String token) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream()))) {
+            if (!isValidToken(token, in.readUTF())) {
+                writeResponse(out, CommandLine.ExitCode.USAGE, "Invalid daemon token.\n");
+                return true;
+            }
+            String request = in.readUTF();
+            if (request.equals(STOP_REQUEST)) {
+                writeResponse(out, CommandLine.ExitCode.OK, "");
+                return false;
+            }
+            if (!request.equals(CONVERT_REQUEST)) {
+                writeResponse(out, CommandLine.ExitCode.USAGE, "Unknown request " + request + "\n");
+                return true;
+            }
+            int argumentCount = in.readInt();
+            List<String> arguments = new ArrayList<>();
+            for (int i = 0; i < argumentCount; i++) {
+                arguments.add(in.readUTF());
+            }
+            StringWriter output = new StringWriter();
+            int exitCode;
+            try (PrintWriter writer = new PrintWriter(output)) {
+                exitCode = convert(arguments, writer);
+            }
+            writeResponse(out, exitCode, output.toString());
+            return true;
+        }
+    }
+
+    private void serve() throws IOException {
+        String token = newToken();
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            new State(serverSocket.getLocalPort(), token).save(stateFile);
+            try {
+                boolean running = true;
+                while (running) {
+                    try (Socket socket = serverSocket.accept()) {
+                        // Only bounds reading the request, not the conversion.
+                        socket.setSoTimeout(requestTimeoutMillis);
+                        running = handle(socket, token);
+                    } catch (IOException e) {
+                        // Failed request, e.g. due to a disconnected or stalled client. Keep
+                        // serving.
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(stateFile);
+                repositories.values().forEach(warm -> closeQuietly(warm.repository));
+                repositories.clear();
+            }
+        }
+    }
+
+    private static Optional<DataInputStream> sendRequest(
+            Path stateFile, String request, List<String> arguments, Socket socket)
+            throws IOException {
+        State state;
+        try {
+            state = State.load(stateFile);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), state.port));
+        } catch (IOException e) {
+            // Stale state file left by a daemon that did not shut down cleanly.
+            return Optional.empty();
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        out.writeUTF(state.token);
+        out.writeUTF(request);
+        if (request.equals(CONVERT_REQUEST)) {
+            out.writeInt(arguments.size());
+            for (String argument : arguments) {
+                out.writeUTF(argument);
+            }
+        }
+        out.flush();
+        return Optional.of(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+    }
+
+    private static Optional<Integer> readResponse(
+            Optional<DataInputStream> response, PrintWriter output) throws IOException {
+        if (response.isEmpty()) {
+            return Optional.empty();
+        }
+        DataInputStream in = response.get();
+        byte[] outputBytes = new byte[in.readInt()];
+        in.readFully(outputBytes);
+        output.print(new String(outputBytes, StandardCharsets.UTF_8));
+        output.flush();
+        return Optional.of(in.readInt());
+    }
+
+    /**
+     * Sends a conversion to the daemon with the given state file.
+     *
+     * @param stateFile the state file of the daemon
+     * @param arguments the command line arguments of the conversion, with absolute paths
+     * @param output the writer to print the output of the conversion to
+     * @return the exit code of the conversion, or an empty optional if no daemon is running
+     * @throws IOException if the conversion could not be sent or its result could not be received
+     */
+    static Optional<Integer> convert(Path stateFile, List<String> arguments, PrintWriter output)
+            throws IOException {
+        try (Socket socket = new Socket()) {
+            return readResponse(sendRequest(stateFile, CONVERT_REQUEST, arguments, socket), output);
+        }
+    }
+
+    private static Optional<Integer> requestStop(Path stateFile, PrintWriter output)
+            throws IOException {
+        try (Socket socket = new Socket()) {
+            return readResponse(sendRequest(stateFile, STOP_REQUEST, List.of(), socket), output);
+        }
+    }
+
+    @Override
+    public Integer call() throws IOException {
+        if (stop) {
+            PrintWriter err = spec.commandLine().getErr();
+            if (requestStop(stateFile, err).isEmpty()) {
+                err.println("No conversion daemon running.");
+                return CommandLine.ExitCode.SOFTWARE;
+            }
+            return CommandLine.ExitCode.OK;
+        }
+        serve();
+        return CommandLine.ExitCode.OK;
+    }
+
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new ConverterDaemon()).execute(args);
+        System.exit(exitCode);
+    }
+}
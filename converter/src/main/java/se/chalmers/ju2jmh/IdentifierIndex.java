@@ -0,0 +1,75 @@
+package se.chalmers.ju2jmh;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.MethodReferenceExpr;
+import com.github.javaparser.ast.expr.Name;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The set of identifiers used anywhere in a compilation unit, used to pick names for generated
+ * code that cannot clash with existing names. Building an index scans the whole compilation unit
+ * once, after which lookups are constant-time.
+ *
+ * <p>Indexes are immutable and may be shared between threads.
+ */
+public class IdentifierIndex {
+    private final Set<String> identifiers;
+
+    private IdentifierIndex(Set<String> identifiers) {
+        this.identifiers = identifiers;
+    }
+
+    /**
+     * Builds an index of the identifiers used in the given node and its descendants.
+     *
+     * @param node the node to index, typically a compilation unit
+     * @return the built index
+     */
+    public static IdentifierIndex of(Node node) {
+        Set<String> identifiers = new HashSet<>();
+        node.accept(new VoidVisitorAdapter<Void>() {
+            @Override
+            public void visit(SimpleName n, Void arg) {
+                identifiers.add(n.getIdentifier());
+                super.visit(n, arg);
+            }
+
+            @Override
+            public void visit(Name n, Void arg) {
+                identifiers.add(n.getIdentifier());
+                super.visit(n, arg);
+            }
+
+            @Override
+            public void visit(MethodReferenceExpr n, Void arg) {
+                identifiers.add(n.getIdentifier());
+                super.visit(n, arg);
+            }
+        }, null);
+        return new IdentifierIndex(Set.copyOf(identifiers));
+    }
+
+    /**
+     * Returns whether the given identifier is used in the indexed code.
+     *
+     * @param identifier the identifier to look up
+     * @return true if the identifier is used, false otherwise
+     */
+    public boolean contains(String identifier) {
+        return identifiers.contains(identifier);
+    }
+
+    /**
+     * Returns a name validator allowing only names that are not used in the indexed code.
+     *
+     * @return a predicate returning false for identifiers used in the indexed code
+     */
+    public Predicate<String> nameValidator() {
+        return Predicate.not(this::contains);
+    }
+}
@@ -17,15 +17,34 @@ public interface InputClass {
     /**
      * Returns a copy of the source type declaration for this class. A copy of the containing
      * compilation unit (which is guaranteed to be present) can be obtained by calling
-     * {@link TypeDeclaration#findCompilationUnit()} on the returned type declaration.
+     * {@link TypeDeclaration#findCompilationUnit()} on the returned type declaration. The copy is
+     * owned by the caller and is not retained by this class. The source code may be loaded
+     * lazily, in which case failures to load it are reported by throwing an unchecked exception.
+     * Each call may load the source code anew, so callers should request a copy only once per
+     * output they generate from it.
      */
     TypeDeclaration<?> getSource();
 
+    /**
+     * Returns the source type declaration for this class without copying it. The returned type
+     * declaration and its compilation unit are shared by all callers and must not be modified;
+     * callers that modify the source must use {@link #getSource()} instead. The shared type
+     * declaration may be retained for as long as this class is.
+     */
+    TypeDeclaration<?> getSourceView();
+
     /**
      * Returns a copy of the bytecode for this class.
      */
     JavaClass getBytecode();
 
+    /**
+     * Returns the bytecode for this class without copying it. The returned bytecode is shared by
+     * all callers and must not be modified; callers that modify the bytecode must use
+     * {@link #getBytecode()} instead.
+     */
+    JavaClass getBytecodeView();
+
     /**
      * Returns the name of this class' superclass.
      */
@@ -4,29 +4,117 @@ import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.BodyDeclaration;
 import com.github.javaparser.ast.body.TypeDeclaration;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.bcel.classfile.ClassParser;
 import org.apache.bcel.classfile.JavaClass;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * A repository for finding source code and bytecode of input classes.
+ *
+ * <p>Repositories are thread-safe and may be shared between multiple benchmark factories and
+ * builders. Each class is loaded at most once, even if it is requested by multiple threads at the
+ * same time, while lookups of already loaded classes do not block.
+ *
+ * <p>Repositories may be backed by a {@link ClassModelCache}, in which case {@link ClassSummary}s
+ * of classes that are unchanged since an earlier run are read from the cache instead of being
+ * extracted from the bytecode of the classes.
+ *
+ * <p>Root paths may be directories or JAR or ZIP archives. Archives are opened as file systems
+ * when the repository is created, and their entries are read directly from the archives without
+ * being extracted. Archives stay open until the repository is closed.
+ *
+ * <p>The class and source files in the root paths are indexed when the first class is looked up,
+ * and all lookups are answered from the index, without probing the file system for each class.
+ * Files added to the root paths after the first lookup are therefore not found.
+ *
+ * <p>A repository created with an empty source path is bytecode-only. Classes in a bytecode-only
+ * repository only need class files to be present, and requesting their source code fails. When
+ * there are source paths, classes without source files are not present in the repository.
+ *
+ * <p>Repositories of different modules converted in the same run may share a
+ * {@link SharedInputCache}, in which case classes loaded from the same files are only read and
+ * parsed once across all of the repositories.
  */
-public class InputClassRepository {
-    private final Map<String, InputClass> knownClasses = new HashMap<>();
+public class InputClassRepository implements Closeable {
+    private final LoadingCache<String, InputClass> knownClasses =
+            CacheBuilder.newBuilder()
+                    .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                    .build(new CacheLoader<>() {
+                        @Override
+                        public InputClass load(String name)
+                                throws ClassNotFoundException {
+                            return loadClass(name);
+                        }
+                    });
+    private final LoadingCache<String, ClassMetadata> knownMetadata = CacheBuilder.newBuilder()
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .build(new CacheLoader<>() {
+                @Override
+                public ClassMetadata load(String name) throws ClassNotFoundException {
+                    return loadMetadata(name);
+                }
+            });
+    private final LoadingCache<String, ClassSummary> knownSummaries = CacheBuilder.newBuilder()
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .build(new CacheLoader<>() {
+                @Override
+                public ClassSummary load(String name) throws ClassNotFoundException {
+                    return loadSummary(name);
+                }
+            });
+    private final LoadingCache<String, String> knownContentHashes = CacheBuilder.newBuilder()
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .build(new CacheLoader<>() {
+                @Override
+                public String load(String name) throws ClassNotFoundException {
+                    return computeContentHash(name);
+                }
+            });
+    // Keyed by outermost class name, as all classes in a source file share the same identifiers.
+    private final LoadingCache<String, IdentifierIndex> knownIdentifierIndexes =
+            CacheBuilder.newBuilder()
+                    .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                    .build(new CacheLoader<>() {
+                        @Override
+                        public IdentifierIndex load(String name) throws ClassNotFoundException {
+                            return loadIdentifierIndex(name);
+                        }
+                    });
+    private final List<FileSystem> archiveFileSystems = new ArrayList<>();
     private final List<Path> sourcePath;
     private final List<Path> classPath;
+    // Built on first lookup, so that files added before any class is loaded are still found.
+    private final Supplier<InputFileIndex> sourceIndex;
+    private final Supplier<InputFileIndex> bytecodeIndex;
+    private final boolean bytecodeOnly;
+    private final ClassModelCache cache;
+    private final ConversionMetrics metrics;
+    private final SharedInputCache sharedCache;
 
     /**
      * Creates a new InputClassRepository reading sources and bytecode from the given root paths.
@@ -35,8 +123,70 @@ public class InputClassRepository {
      * @param classPath   Root paths of the class files that can be loaded by this repository.
      */
     public InputClassRepository(List<Path> sourcePaths, List<Path> classPath) {
-        this.sourcePath = sourcePaths.stream().collect(Collectors.toUnmodifiableList());
-        this.classPath = classPath.stream().collect(Collectors.toUnmodifiableList());
+        this(sourcePaths, classPath, null);
+    }
+
+    /**
+     * Creates a new InputClassRepository reading sources and bytecode from the given root paths,
+     * and class summaries from the given cache when available.
+     *
+     * @param sourcePaths Root paths of the source files that can be loaded by this repository.
+     * @param classPath   Root paths of the class files that can be loaded by this repository.
+     * @param cache       Cache of class summaries from earlier runs, or null to not use a cache.
+     * @throws UncheckedIOException If a JAR or ZIP archive among the root paths could not be
+     * opened.
+     */
+    public InputClassRepository(List<Path> sourcePaths, List<Path> classPath,
+            ClassModelCache cache) {
+        this(sourcePaths, classPath, cache, new ConversionMetrics());
+    }
+
+    /**
+     * Creates a new InputClassRepository reading sources and bytecode from the given root paths,
+     * and class summaries from the given cache when available. Parsing of classes, loaded
+     * classes, and cache hits are recorded in the given metrics.
+     *
+     * @param sourcePaths Root paths of the source files that can be loaded by this repository,
+     *                    or an empty list for a bytecode-only repository.
+     * @param classPath   Root paths of the class files that can be loaded by this repository.
+     * @param cache       Cache of class summaries from earlier runs, or null to not use a cache.
+     * @param metrics     Metrics to record the work done by this repository in.
+     * @throws UncheckedIOException If a JAR or ZIP archive among the root paths could not be
+     * opened.
+     */
+    public InputClassRepository(List<Path> sourcePaths, List<Path> classPath,
+            ClassModelCache cache, ConversionMetrics metrics) {
+        this(sourcePaths, classPath, cache, metrics, null);
+    }
+
+    /**
+     * Creates a new InputClassRepository reading sources and bytecode from the given root paths,
+     * and class summaries from the given cache when available. Classes loaded from the same files
+     * as by other repositories using the same shared cache are not loaded again. Parsing of
+     * classes, loaded classes, and cache hits are recorded in the given metrics.
+     *
+     * @param sourcePaths Root paths of the source files that can be loaded by this repository,
+     *                    or an empty list for a bytecode-only repository.
+     * @param classPath   Root paths of the class files that can be loaded by this repository.
+     * @param cache       Cache of class summaries from earlier runs, or null to not use a cache.
+     * @param metrics     Metrics to record the work done by this repository in.
+     * @param sharedCache Cache shared with the repositories of other modules, or null to not
+     *                    share loaded classes. Archives are opened by the shared cache, and stay
+     *                    open until it is closed.
+     * @throws UncheckedIOException If a JAR or ZIP archive among the root paths could not be
+     * opened.
+     */
+    public InputClassRepository(List<Path> sourcePaths, List<Path> classPath,
+            ClassModelCache cache, ConversionMetrics metrics, SharedInputCache sharedCache) {
+        this.sharedCache = sharedCache;
+        this.sourcePath = openRoots(sourcePaths);
+        this.bytecodeOnly = sourcePaths.isEmpty();
+        this.classPath = openRoots(classPath);
+        this.sourceIndex = Suppliers.memoize(() -> InputFileIndex.build(this.sourcePath, ".java"));
+        this.bytecodeIndex =
+                Suppliers.memoize(() -> InputFileIndex.build(this.classPath, ".class"));
+        this.cache = cache;
+        this.metrics = metrics;
     }
 
     /**
@@ -46,35 +196,166 @@ public class InputClassRepository {
      * @param classPath  Root path of the class files that can be loaded by this repository.
      */
     public InputClassRepository(Path sourcePath, Path classPath) {
-        this.sourcePath = List.of(sourcePath);
-        this.classPath = List.of(classPath);
+        this(List.of(sourcePath), List.of(classPath));
+    }
+
+    /**
+     * Returns the name of the given file or directory, which may be located in an archive.
+     */
+    static String fileName(Path file) {
+        // Directories in archives may have names ending with a separator.
+        String fileName = file.getFileName().toString();
+        return fileName.endsWith("/") ? fileName.substring(0, fileName.length() - 1) : fileName;
+    }
+
+    private static boolean isArchive(Path path) {
+        String fileName = path.getFileName() != null
+                ? path.getFileName().toString().toLowerCase()
+                : "";
+        return (fileName.endsWith(".jar") || fileName.endsWith(".zip"))
+                && Files.isRegularFile(path);
     }
 
-    private static Optional<Path> findFirstExisting(List<Path> basePaths, String relativePath) {
-        return basePaths.stream()
-                .map(p -> p.resolve(relativePath))
-                .filter(f -> f.toFile().exists())
-                .findFirst();
+    private List<Path> openRoots(List<Path> paths) {
+        List<Path> roots = new ArrayList<>();
+        for (Path path : paths) {
+            if (!isArchive(path)) {
+                roots.add(path);
+                continue;
+            }
+            try {
+                FileSystem fileSystem;
+                if (sharedCache != null) {
+                    fileSystem = sharedCache.openArchive(path);
+                } else {
+                    fileSystem = FileSystems.newFileSystem(path, (ClassLoader) null);
+                    archiveFileSystems.add(fileSystem);
+                }
+                roots.add(fileSystem.getPath("/"));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open archive " + path, e);
+            }
+        }
+        return Collections.unmodifiableList(roots);
+    }
+
+    /**
+     * Returns the root paths of the source files that can be loaded by this repository. Roots
+     * in JAR or ZIP archives are returned as the root directories of the archives.
+     *
+     * @return the source root paths
+     */
+    public List<Path> getSourcePath() {
+        return sourcePath;
+    }
+
+    /**
+     * Returns whether this repository is bytecode-only, i.e. was created without source paths.
+     *
+     * @return true if classes in this repository have no source code, false otherwise
+     */
+    public boolean isBytecodeOnly() {
+        return bytecodeOnly;
+    }
+
+    /**
+     * Returns the root paths of the class files that can be loaded by this repository. Roots in
+     * JAR or ZIP archives are returned as the root directories of the archives.
+     *
+     * @return the class file root paths
+     */
+    public List<Path> getClassPath() {
+        return classPath;
     }
 
     private Path findBytecodeFile(String name) throws ClassNotFoundException {
-        String bytecodeFileName = name.replace('.', File.separatorChar) + ".class";
-        return findFirstExisting(classPath, bytecodeFileName)
+        String bytecodeFileName = name.replace('.', '/') + ".class";
+        return bytecodeIndex.get().find(bytecodeFileName)
                 .orElseThrow(() ->
                         new ClassNotFoundException("Found no bytecode for class " + name));
     }
 
-    private Path findSourceFile(String name) throws ClassNotFoundException {
-        String sourceFileName = ClassNames.outermostClassName(name)
-                .replace('.', File.separatorChar) + ".java";
-        return findFirstExisting(sourcePath, sourceFileName)
+    /**
+     * Returns the names of all classes with class files in the class path of this repository, in
+     * sorted order. The class files are not read.
+     *
+     * @return the names of the classes in the class path
+     */
+    public List<String> findClassNames() {
+        return bytecodeIndex.get().relativePaths().stream()
+                .map(p -> p.substring(0, p.length() - ".class".length()).replace('/', '.'))
+                // Skips module-info, package-info, and multi-release versions in META-INF.
+                .filter(n -> !n.contains("-"))
+                .sorted()
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Returns the source file declaring the class with the given name, if present in this
+     * repository. The source file is neither read nor parsed.
+     *
+     * @param name The name of the class to find the source file of.
+     * @return The source file of the requested class, which may be located in an archive.
+     * @throws ClassNotFoundException If no source file for the given class name was found.
+     */
+    public Path findSourceFile(String name) throws ClassNotFoundException {
+        String sourceFileName = ClassNames.outermostClassName(name).replace('.', '/') + ".java";
+        return sourceIndex.get().find(sourceFileName)
                 .orElseThrow(() ->
                         new ClassNotFoundException("Found no source file for class " + name));
     }
 
+    private byte[] readBytecode(String name) throws ClassNotFoundException {
+        return readBytecode(name, findBytecodeFile(name));
+    }
+
+    private static byte[] readBytecode(String name, Path bytecodeFile)
+            throws ClassNotFoundException {
+        try {
+            return Files.readAllBytes(bytecodeFile);
+        } catch (IOException e) {
+            throw new ClassNotFoundException("Failed to read bytecode for class " + name
+                    + " from file " + bytecodeFile, e);
+        }
+    }
+
+    private byte[] readSource(String name) throws ClassNotFoundException {
+        Path sourceFile = findSourceFile(name);
+        try {
+            return Files.readAllBytes(sourceFile);
+        } catch (IOException e) {
+            throw new ClassNotFoundException("Failed to read source for class " + name
+                    + " from source file " + sourceFile, e);
+        }
+    }
+
+    private InputClass loadClass(String name) throws ClassNotFoundException {
+        Path sourceFile = bytecodeOnly ? null : findSourceFile(name);
+        Path bytecodeFile = findBytecodeFile(name);
+        if (sharedCache == null) {
+            return loadClass(name, sourceFile, bytecodeFile);
+        }
+        String key = name + "\n" + SharedInputCache.fileKey(sourceFile) + "\n"
+                + SharedInputCache.fileKey(bytecodeFile);
+        return sharedCache.findClass(key, () -> loadClass(name, sourceFile, bytecodeFile));
+    }
+
+    private InputClass loadClass(String name, Path sourceFile, Path bytecodeFile)
+            throws ClassNotFoundException {
+        RepositoryInputClass inputClass = new RepositoryInputClass(
+                name, sourceFile, readBytecode(name, bytecodeFile), metrics);
+        metrics.increment(ConversionMetrics.Counter.CLASSES_LOADED);
+        return inputClass;
+    }
+
     /**
      * Returns a {@link InputClass} containing source code and bytecode for the class with the
-     * given name, if present in this repository.
+     * given name, if present in this repository. The source file of the class is only parsed when
+     * the source code is requested, so classes only needed for their bytecode are never parsed.
+     * Each copy of the source code is parsed from the source file and is not retained by the
+     * repository, while the shared source view is parsed once and kept with the class. Failures
+     * to parse the source file are reported by {@link InputClass#getSource()}, as is requesting
+     * the source code of a class in a bytecode-only repository.
      *
      * @param name The name of the class to load source code and bytecode for.
      * @return An {@link InputClass} representing the requested class.
@@ -82,62 +363,261 @@ public class InputClassRepository {
      * absent or could otherwise not be loaded.
      */
     public InputClass findClass(String name) throws ClassNotFoundException {
-        InputClass inputClass = knownClasses.get(name);
-        if (inputClass != null) {
-            return inputClass;
+        return get(knownClasses, name);
+    }
+
+    private String computeContentHash(String name) throws ClassNotFoundException {
+        byte[] source = bytecodeOnly ? new byte[0] : readSource(name);
+        return ClassModelCache.key(name, readBytecode(name), source);
+    }
+
+    /**
+     * Returns a hash of the name, bytecode, and source file of the class with the given name. The
+     * hash changes whenever the class file or source file of the class is modified. Classes in
+     * bytecode-only repositories are hashed as if their source files were empty. The files of each
+     * class are only read and hashed once per repository, so modifications made after the first
+     * call are not reflected.
+     *
+     * @param name The name of the class to compute the hash of.
+     * @return A hex string representation of the hash.
+     * @throws ClassNotFoundException If the source code or bytecode for the given class name was
+     * absent or could otherwise not be read.
+     */
+    public String contentHash(String name) throws ClassNotFoundException {
+        return get(knownContentHashes, name);
+    }
+
+    private ClassMetadata loadMetadata(String name) throws ClassNotFoundException {
+        if (!bytecodeOnly) {
+            // Classes without source files are not present in the repository.
+            findSourceFile(name);
         }
         Path bytecodeFile = findBytecodeFile(name);
-        JavaClass bytecode;
-        try {
-            bytecode = new ClassParser(bytecodeFile.toString()).parse();
+        if (sharedCache == null) {
+            return readMetadata(name, bytecodeFile);
+        }
+        return sharedCache.findMetadata(SharedInputCache.fileKey(bytecodeFile),
+                () -> readMetadata(name, bytecodeFile));
+    }
+
+    @SuppressWarnings("try")
+    private ClassMetadata readMetadata(String name, Path bytecodeFile)
+            throws ClassNotFoundException {
+        byte[] bytecode = readBytecode(name, bytecodeFile);
+        try (ConversionMetrics.Measurement m =
+                     metrics.measure(ConversionMetrics.Phase.BYTECODE_PARSING, name)) {
+            return ClassMetadata.read(bytecode);
         } catch (IOException e) {
-            throw new ClassNotFoundException("Failed to read bytecode for class " + name
-                    + " from file " + bytecodeFile, e);
+            throw new UncheckedIOException("Failed to read metadata for class " + name, e);
         }
-        Path sourceFile = findSourceFile(name);
-        CompilationUnit compilationUnit;
+    }
+
+    /**
+     * Returns the {@link ClassMetadata} of the class with the given name, if present in this
+     * repository. The metadata is read directly from the class file, without parsing the source
+     * code or building a full model of the bytecode.
+     *
+     * @param name The name of the class to read the metadata of.
+     * @return The {@link ClassMetadata} of the requested class.
+     * @throws ClassNotFoundException If the source code or bytecode for the given class name was
+     * absent or could otherwise not be loaded.
+     */
+    ClassMetadata findMetadata(String name) throws ClassNotFoundException {
+        return get(knownMetadata, name);
+    }
+
+    private ClassSummary loadSummary(String name) throws ClassNotFoundException {
+        if (cache == null) {
+            return ClassSummary.of(findMetadata(name));
+        }
+        String key = contentHash(name);
+        Optional<ClassSummary> cached = cache.load(key);
+        if (cached.isPresent()) {
+            metrics.increment(ConversionMetrics.Counter.SUMMARY_CACHE_HITS);
+            return cached.get();
+        }
+        metrics.increment(ConversionMetrics.Counter.SUMMARY_CACHE_MISSES);
+        ClassSummary summary = ClassSummary.of(findMetadata(name));
+        cache.store(key, summary);
+        return summary;
+    }
+
+    /**
+     * Returns a {@link ClassSummary} of the class with the given name, if present in this
+     * repository. If the repository is backed by a {@link ClassModelCache} containing a summary of
+     * the current version of the class, neither the source code nor the bytecode of the class is
+     * parsed.
+     *
+     * @param name The name of the class to summarize.
+     * @return A {@link ClassSummary} of the requested class.
+     * @throws ClassNotFoundException If the source code or bytecode for the given class name was
+     * absent or could otherwise not be loaded.
+     */
+    public ClassSummary findSummary(String name) throws ClassNotFoundException {
+        return get(knownSummaries, name);
+    }
+
+    private IdentifierIndex loadIdentifierIndex(String name) throws ClassNotFoundException {
+        InputClass inputClass = get(knownClasses, name);
+        return loadIdentifierIndex(name, () -> IdentifierIndex.of(
+                inputClass.getSource().findCompilationUnit().orElseThrow()));
+    }
+
+    private IdentifierIndex loadIdentifierIndex(String name,
+            SharedInputCache.Loader<IdentifierIndex> loader) throws ClassNotFoundException {
+        if (sharedCache == null) {
+            return loader.load();
+        }
+        return sharedCache.findIdentifierIndex(
+                SharedInputCache.fileKey(findSourceFile(name)), loader);
+    }
+
+    /**
+     * Returns an {@link IdentifierIndex} of the source file of the class with the given name, if
+     * present in this repository. The index is built once per source file and shared by all
+     * classes declared in it.
+     *
+     * @param name The name of the class to index the source file of.
+     * @return An {@link IdentifierIndex} of the source file of the requested class.
+     * @throws ClassNotFoundException If the source code or bytecode for the given class name was
+     * absent or could otherwise not be loaded.
+     */
+    public IdentifierIndex findIdentifierIndex(String name) throws ClassNotFoundException {
+        return get(knownIdentifierIndexes, ClassNames.outermostClassName(name));
+    }
+
+    /**
+     * Returns an {@link IdentifierIndex} of the source file of the class with the given name,
+     * like {@link #findIdentifierIndex(String)}, but builds the index from the given compilation
+     * unit if the source file has not been indexed yet. Callers already holding an unmodified
+     * copy of the source file, as returned by {@link InputClass#getSource()}, can thereby avoid
+     * parsing the source file again.
+     *
+     * @param name The name of the class to index the source file of.
+     * @param source An unmodified copy of the compilation unit of the source file of the class.
+     * @return An {@link IdentifierIndex} of the source file of the requested class.
+     * @throws ClassNotFoundException If the source code or bytecode for the given class name was
+     * absent or could otherwise not be loaded.
+     */
+    public IdentifierIndex findIdentifierIndex(String name, CompilationUnit source)
+            throws ClassNotFoundException {
+        String outermostClassName = ClassNames.outermostClassName(name);
         try {
-            compilationUnit = StaticJavaParser.parse(sourceFile);
-        } catch (IOException e) {
-            throw new ClassNotFoundException("Failed to read source for class " + name
-                    + " from source file " + sourceFile, e);
+            return knownIdentifierIndexes.get(outermostClassName, () -> loadIdentifierIndex(
+                    outermostClassName, () -> IdentifierIndex.of(source)));
+        } catch (ExecutionException e) {
+            throw (ClassNotFoundException) e.getCause();
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
         }
-        inputClass = new RepositoryInputClass(compilationUnit, bytecode);
-        if (inputClass.getSource() == null) {
-            throw new ClassNotFoundException("Failed to find class " + name + " in source file "
-                    + sourceFile);
+    }
+
+    /**
+     * Returns the metrics in which the work done by this repository is recorded. Components
+     * sharing the repository record their work in the same metrics.
+     *
+     * @return The metrics of this repository.
+     */
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static <T> T get(LoadingCache<String, T> cache, String name)
+            throws ClassNotFoundException {
+        try {
+            return cache.get(name);
+        } catch (ExecutionException e) {
+            // The loaders only throw ClassNotFoundException.
+            throw (ClassNotFoundException) e.getCause();
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the JAR and ZIP archives opened by this repository. Classes in archives can no longer
+     * be loaded, and the source code of already loaded classes in archives can only be accessed if
+     * it was accessed before the repository was closed.
+     *
+     * @throws IOException If an archive could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (FileSystem fileSystem : archiveFileSystems) {
+            fileSystem.close();
         }
-        knownClasses.put(name, inputClass);
-        return inputClass;
     }
 
     private static class RepositoryInputClass implements InputClass {
-        private final CompilationUnit source;
-        private final JavaClass bytecode;
-        private final List<String> interfaceNames;
+        private final String name;
+        private final Path sourceFile;
+        private final ConversionMetrics metrics;
+        // Parsed on first use, so that classes only needed for their bytecode are never parsed,
+        // and vice versa. Copies of the source are parsed separately instead of being cloned from
+        // the view, so that classes whose source is only copied never retain a parsed view.
+        private final Supplier<TypeDeclaration<?>> sourceView;
+        private final Supplier<JavaClass> bytecode;
 
-        public RepositoryInputClass(CompilationUnit source, JavaClass bytecode) {
-            this.source = source;
-            this.bytecode = bytecode;
-            interfaceNames = List.of(bytecode.getInterfaceNames());
+        public RepositoryInputClass(String name, Path sourceFile, byte[] bytecode,
+                ConversionMetrics metrics) {
+            this.name = name;
+            this.sourceFile = sourceFile;
+            this.metrics = metrics;
+            this.sourceView = Suppliers.memoize(() ->
+                    findTypeDeclaration(parseSource(name, sourceFile, metrics), name));
+            this.bytecode = Suppliers.memoize(() -> parseBytecode(name, bytecode, metrics));
+        }
+
+        @SuppressWarnings("try")
+        private static CompilationUnit parseSource(String name, Path sourceFile,
+                ConversionMetrics metrics) {
+            if (sourceFile == null) {
+                throw new IllegalStateException("No source code available for class " + name
+                        + " in a bytecode-only repository");
+            }
+            CompilationUnit compilationUnit;
+            try (ConversionMetrics.Measurement m =
+                         metrics.measure(ConversionMetrics.Phase.SOURCE_PARSING, name)) {
+                compilationUnit = StaticJavaParser.parse(sourceFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read source for class " + name
+                        + " from source file " + sourceFile, e);
+            }
+            if (findTypeDeclaration(compilationUnit, name) == null) {
+                throw new IllegalStateException("Failed to find class " + name
+                        + " in source file " + sourceFile);
+            }
+            return compilationUnit;
+        }
+
+        @SuppressWarnings("try")
+        private static JavaClass parseBytecode(String name, byte[] bytecode,
+                ConversionMetrics metrics) {
+            try (ConversionMetrics.Measurement m =
+                         metrics.measure(ConversionMetrics.Phase.BYTECODE_PARSING, name)) {
+                return new ClassParser(new ByteArrayInputStream(bytecode), name).parse();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to parse bytecode for class " + name, e);
+            }
         }
 
         @Override
         public String getName() {
-            return bytecode.getClassName();
+            return name;
         }
 
-        private TypeDeclaration<?> findTypeDeclaration(
+        private static TypeDeclaration<?> findTypeDeclaration(
                 Stream<TypeDeclaration<?>> types, String simpleName) {
             return types.filter(t -> t.getName().asString().equals(simpleName))
                     .findFirst()
                     .orElse(null);
         }
 
-        @Override
-        public TypeDeclaration<?> getSource() {
-            CompilationUnit compilationUnit = source.clone();
-            String typeName = ClassNames.shortClassName(getName());
+        private static TypeDeclaration<?> findTypeDeclaration(
+                CompilationUnit compilationUnit, String name) {
+            String typeName = ClassNames.shortClassName(name);
             Queue<String> typeNames = new ArrayDeque<>(Arrays.asList(typeName.split("\\$")));
             TypeDeclaration<?> type =
                     findTypeDeclaration(compilationUnit.getTypes().stream(), typeNames.remove());
@@ -151,19 +631,38 @@ public class InputClassRepository {
             return type;
         }
 
+        @Override
+        public TypeDeclaration<?> getSource() {
+            // Parsing again on every call is acceptable, since the suite builders request a copy
+            // of each class they generate output for only once, and the cost of parsing is close
+            // to that of cloning the view. Parsing keeps no compilation unit alive between calls,
+            // which keeps the heap bounded when converting thousands of classes.
+            return findTypeDeclaration(parseSource(name, sourceFile, metrics), name);
+        }
+
+        @Override
+        public TypeDeclaration<?> getSourceView() {
+            return sourceView.get();
+        }
+
         @Override
         public JavaClass getBytecode() {
-            return bytecode.copy();
+            return bytecode.get().copy();
+        }
+
+        @Override
+        public JavaClass getBytecodeView() {
+            return bytecode.get();
         }
 
         @Override
         public String getSuperclassName() {
-            return bytecode.getSuperclassName();
+            return bytecode.get().getSuperclassName();
         }
 
         @Override
         public List<String> getInterfaceNames() {
-            return interfaceNames;
+            return List.of(bytecode.get().getInterfaceNames());
         }
     }
 }
@@ -0,0 +1,143 @@
+package se.chalmers.ju2jmh;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * An index of the files with a given extension in a list of root directories, built by walking
+ * all roots once. Looking up a file in the index, including a file that does not exist, never
+ * touches the file system, which makes repeated lookups cheap on slow or network-mounted file
+ * systems.
+ *
+ * <p>The index is a snapshot of the roots at the time it was built; files added or removed
+ * afterwards are not reflected. Unreadable directories are left out of the index. Symbolic links
+ * to directories are followed, but each directory is walked at most once per root, so that links
+ * forming a loop do not make the walk recurse forever.
+ */
+class InputFileIndex {
+    private final Map<String, Path> files;
+
+    private InputFileIndex(Map<String, Path> files) {
+        this.files = files;
+    }
+
+    private static class WalkTask extends RecursiveTask<List<Path>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final String extension;
+        // The real paths of the directories walked so far, shared by all tasks walking a root.
+        private final Set<Path> visited;
+
+        private WalkTask(Path directory, String extension, Set<Path> visited) {
+            this.directory = directory;
+            this.extension = extension;
+            this.visited = visited;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            List<Path> found = new ArrayList<>();
+            List<WalkTask> subtasks = new ArrayList<>();
+            try {
+                if (!visited.add(directory.toRealPath())) {
+                    return found;
+                }
+            } catch (IOException e) {
+                // Unresolvable directory, skip it.
+                return found;
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry)) {
+                        WalkTask subtask = new WalkTask(entry, extension, visited);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    } else if (InputClassRepository.fileName(entry).endsWith(extension)) {
+                        found.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                // Unreadable directory, skip it.
+            }
+            for (WalkTask subtask : subtasks) {
+                found.addAll(subtask.join());
+            }
+            return found;
+        }
+    }
+
+    private static String relativeName(Path root, Path file) {
+        StringBuilder name = new StringBuilder();
+        for (Path element : root.relativize(file)) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(InputClassRepository.fileName(element));
+        }
+        return name.toString();
+    }
+
+    /**
+     * Builds an index of the files with the given extension in the given roots, walking the
+     * directory trees of the roots in parallel. When several roots contain a file with the same
+     * relative path, the file in the first of these roots is indexed.
+     *
+     * @param roots the root directories to index
+     * @param extension the extension of the files to index, e.g. ".class"
+     * @return the built index
+     */
+    static InputFileIndex build(List<Path> roots, String extension) {
+        List<WalkTask> tasks = new ArrayList<>();
+        for (Path root : roots) {
+            WalkTask task = Files.isDirectory(root)
+                    ? new WalkTask(root, extension, ConcurrentHashMap.newKeySet())
+                    : null;
+            if (task != null) {
+                ForkJoinPool.commonPool().execute(task);
+            }
+            tasks.add(task);
+        }
+        Map<String, Path> files = new HashMap<>();
+        for (int i = 0; i < roots.size(); i++) {
+            if (tasks.get(i) == null) {
+                continue;
+            }
+            for (Path file : tasks.get(i).join()) {
+                files.putIfAbsent(relativeName(roots.get(i), file), file);
+            }
+        }
+        return new InputFileIndex(Collections.unmodifiableMap(files));
+    }
+
+    /**
+     * Returns the relative paths of all indexed files, using '/' as separator.
+     *
+     * @return the relative paths of the indexed files
+     */
+    Set<String> relativePaths() {
+        return files.keySet();
+    }
+
+    /**
+     * Returns the indexed file with the given relative path.
+     *
+     * @param relativePath the path of the file relative to its root, using '/' as separator
+     * @return the indexed file, or an empty optional if no such file was indexed
+     */
+    Optional<Path> find(String relativePath) {
+        return Optional.ofNullable(files.get(relativePath));
+    }
+}
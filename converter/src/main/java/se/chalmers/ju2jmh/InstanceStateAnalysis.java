@@ -0,0 +1,155 @@
+package se.chalmers.ju2jmh;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ACONST_NULL;
+import org.apache.bcel.generic.ALOAD;
+import org.apache.bcel.generic.BasicType;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.ConstantPushInstruction;
+import org.apache.bcel.generic.INVOKESPECIAL;
+import org.apache.bcel.generic.INVOKESTATIC;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.LDC;
+import org.apache.bcel.generic.LDC2_W;
+import org.apache.bcel.generic.NOP;
+import org.apache.bcel.generic.PUTFIELD;
+import org.apache.bcel.generic.RETURN;
+import org.apache.bcel.generic.Type;
+
+import java.util.Set;
+
+/**
+ * Bytecode analysis finding test classes whose instances can be shared by all invocations of a
+ * benchmark, as their state is never written after construction.
+ *
+ * <p>A test class is considered stateless if every class in its hierarchy, except for
+ * {@link Object}, only declares instance fields that are final and of a primitive, boxed
+ * primitive or {@link String} type, and has a no-argument constructor that does nothing but
+ * assign constants to those fields and call the no-argument constructor of its superclass. Final
+ * fields can only be assigned by constructors, and the values of these types are immutable, so
+ * the state of an instance never changes after it is constructed, and constructing it has no
+ * other effects. The analysis is conservative: classes that cannot be loaded, such as superclasses
+ * outside the input class path, are considered stateful.
+ */
+public class InstanceStateAnalysis {
+    private static final Set<String> IMMUTABLE_REFERENCE_TYPES = Set.of(
+            "java.lang.String", "java.lang.Boolean", "java.lang.Byte", "java.lang.Character",
+            "java.lang.Short", "java.lang.Integer", "java.lang.Long", "java.lang.Float",
+            "java.lang.Double");
+    private static final Set<Byte> CONSTANT_TAGS = Set.of(
+            Const.CONSTANT_String, Const.CONSTANT_Integer, Const.CONSTANT_Float,
+            Const.CONSTANT_Long, Const.CONSTANT_Double, Const.CONSTANT_Class);
+
+    private InstanceStateAnalysis() {
+        throw new AssertionError("Should not be instantiated.");
+    }
+
+    private static boolean isImmutableType(Type type) {
+        return type instanceof BasicType
+                || IMMUTABLE_REFERENCE_TYPES.contains(type.toString());
+    }
+
+    private static boolean hasOnlyImmutableFields(JavaClass bytecode) {
+        for (Field field : bytecode.getFields()) {
+            if (field.isStatic()) {
+                continue;
+            }
+            if (!field.isFinal() || !isImmutableType(field.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isConstant(Instruction instruction, ConstantPoolGen constantPool) {
+        if (instruction instanceof ConstantPushInstruction
+                || instruction instanceof ACONST_NULL
+                || instruction instanceof LDC2_W) {
+            return true;
+        }
+        if (instruction instanceof LDC) {
+            Constant constant = constantPool.getConstant(((LDC) instruction).getIndex());
+            return CONSTANT_TAGS.contains(constant.getTag());
+        }
+        if (instruction instanceof INVOKESTATIC) {
+            // Boxing conversions of constants.
+            INVOKESTATIC invoke = (INVOKESTATIC) instruction;
+            Type[] argumentTypes = invoke.getArgumentTypes(constantPool);
+            return IMMUTABLE_REFERENCE_TYPES.contains(
+                    invoke.getReferenceType(constantPool).toString())
+                    && invoke.getMethodName(constantPool).equals("valueOf")
+                    && argumentTypes.length == 1 && argumentTypes[0] instanceof BasicType;
+        }
+        return false;
+    }
+
+    private static boolean hasTrivialConstructor(JavaClass bytecode) {
+        Method constructor = null;
+        for (Method method : bytecode.getMethods()) {
+            if (method.getName().equals(Const.CONSTRUCTOR_NAME)
+                    && method.getSignature().equals("()V")) {
+                constructor = method;
+            }
+        }
+        if (constructor == null || constructor.getCode() == null) {
+            return false;
+        }
+        ConstantPoolGen constantPool = new ConstantPoolGen(bytecode.getConstantPool());
+        for (Instruction instruction
+                : new InstructionList(constructor.getCode().getCode()).getInstructions()) {
+            if (instruction instanceof ALOAD) {
+                if (((ALOAD) instruction).getIndex() != 0) {
+                    return false;
+                }
+            } else if (instruction instanceof PUTFIELD) {
+                PUTFIELD putField = (PUTFIELD) instruction;
+                if (!putField.getReferenceType(constantPool).toString()
+                        .equals(bytecode.getClassName())) {
+                    return false;
+                }
+            } else if (instruction instanceof INVOKESPECIAL) {
+                INVOKESPECIAL invoke = (INVOKESPECIAL) instruction;
+                if (!invoke.getReferenceType(constantPool).toString()
+                        .equals(bytecode.getSuperclassName())
+                        || !invoke.getMethodName(constantPool).equals(Const.CONSTRUCTOR_NAME)
+                        || !invoke.getSignature(constantPool).equals("()V")) {
+                    return false;
+                }
+            } else if (!(instruction instanceof RETURN || instruction instanceof NOP
+                    || isConstant(instruction, constantPool))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the instances of the class with the given name are stateless, as described
+     * above, and may therefore be shared by all invocations of its benchmarks.
+     *
+     * @param repository the repository to load the class and its superclasses from
+     * @param className the name of the class to analyse
+     * @return true if the instances of the class are stateless, false otherwise
+     */
+    public static boolean isStateless(InputClassRepository repository, String className) {
+        String name = className;
+        while (!name.equals(Object.class.getName())) {
+            JavaClass bytecode;
+            try {
+                bytecode = repository.findClass(name).getBytecodeView();
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+            if (!hasOnlyImmutableFields(bytecode) || !hasTrivialConstructor(bytecode)) {
+                return false;
+            }
+            name = bytecode.getSuperclassName();
+        }
+        return true;
+    }
+}
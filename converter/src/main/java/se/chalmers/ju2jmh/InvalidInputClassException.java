@@ -1,6 +1,8 @@
 package se.chalmers.ju2jmh;
 
 public class InvalidInputClassException extends BenchmarkGenerationException {
+    private static final long serialVersionUID = 1L;
+
     public InvalidInputClassException() {
     }
 
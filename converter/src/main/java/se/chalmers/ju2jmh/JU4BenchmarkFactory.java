@@ -7,16 +7,10 @@ import com.github.javaparser.ast.body.TypeDeclaration;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.NameExpr;
 import com.github.javaparser.ast.expr.StringLiteralExpr;
-import com.github.javaparser.ast.nodeTypes.NodeWithName;
 import com.github.javaparser.ast.visitor.ModifierVisitor;
 import com.github.javaparser.ast.visitor.Visitable;
-import org.apache.bcel.classfile.FieldOrMethod;
-import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.classfile.Method;
 
-import java.util.Arrays;
 import java.util.List;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -42,19 +36,14 @@ public class JU4BenchmarkFactory {
         return METHOD_TEMPLATE.clone();
     }
 
-    private static Predicate<Method> isJUnit4Test() {
-        return m -> Arrays.stream(m.getAnnotationEntries())
-                .anyMatch(a -> a.getAnnotationType().equals(J_UNIT_4_TEST_ANNOTATION));
-    }
-
-    private Stream<String> findTestMethods(JavaClass bytecode) {
-        Stream<String> declaredTestMethods = Arrays.stream(bytecode.getMethods())
-                .filter(isJUnit4Test())
-                .map(FieldOrMethod::getName);
-        InputClass superclass;
+    private Stream<String> findTestMethods(ClassMetadata metadata) {
+        Stream<String> declaredTestMethods = metadata.methods().stream()
+                .filter(m -> m.isAnnotated(J_UNIT_4_TEST_ANNOTATION))
+                .map(ClassMetadata.Member::name);
+        ClassMetadata superclass;
         try {
-            superclass = repository.findClass(bytecode.getSuperclassName());
-            return Stream.concat(findTestMethods(superclass.getBytecode()), declaredTestMethods)
+            superclass = repository.findMetadata(metadata.superclassName());
+            return Stream.concat(findTestMethods(superclass), declaredTestMethods)
                     .distinct();
         } catch (ClassNotFoundException e) {
             return declaredTestMethods.distinct();
@@ -98,25 +87,25 @@ public class JU4BenchmarkFactory {
         return output;
     }
 
+    public static String benchmarkClassName(String testClassName) {
+        String packagePrefix = testClassName.substring(0, testClassName.lastIndexOf('.') + 1);
+        return packagePrefix + ClassNames.shortClassName(testClassName).replace('$', '_')
+                + "_JU4Benchmark";
+    }
+
     public CompilationUnit createBenchmarkFromTest(String testClassName)
             throws ClassNotFoundException, InvalidInputClassException {
-        InputClass inputClass = repository.findClass(testClassName);
-        TypeDeclaration<?> source = inputClass.getSource();
-        JavaClass bytecode = inputClass.getBytecode();
-        if (bytecode.isAbstract() || bytecode.isInterface()) {
+        ClassMetadata metadata = repository.findMetadata(testClassName);
+        if (metadata.isAbstract() || metadata.isInterface()) {
             throw new InvalidInputClassException("Input class" + testClassName
                     + " is abstract or an interface.");
         }
-        String packageName = source.findCompilationUnit()
-                .orElseThrow()
-                .getPackageDeclaration()
-                .map(NodeWithName::getNameAsString)
-                .orElse(null);
+        String packageName = ClassNames.packageName(testClassName).orElse(null);
         String testClassShortCanonicalName = ClassNames.shortClassName(testClassName)
                 .replace('$', '.');
         String benchmarkClassName =
-                testClassShortCanonicalName.replace('.', '_') + "_JU4Benchmark";
-        List<String> testMethodNames = findTestMethods(bytecode)
+                ClassNames.shortClassName(benchmarkClassName(testClassName));
+        List<String> testMethodNames = findTestMethods(metadata)
                 .collect(Collectors.toUnmodifiableList());
         if (testMethodNames.isEmpty()) {
             throw new InvalidInputClassException(
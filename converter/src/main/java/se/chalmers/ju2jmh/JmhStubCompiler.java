@@ -0,0 +1,184 @@
+package se.chalmers.ju2jmh;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.generators.core.BenchmarkGenerator;
+import org.openjdk.jmh.generators.core.GeneratorDestination;
+import org.openjdk.jmh.generators.core.GeneratorSource;
+import org.openjdk.jmh.generators.core.MetadataInfo;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Generates the JMH benchmark list and benchmark stubs for compiled benchmark classes and compiles
+ * the stubs, doing what the JMH annotation processor does when benchmark sources are compiled.
+ * Only the generated stubs are compiled, against the already compiled benchmark classes.
+ */
+class JmhStubCompiler {
+    private final ClassLoader classLoader;
+    private final List<Path> classPath;
+
+    /**
+     * Creates a new compiler for benchmark classes loaded by the given class loader.
+     *
+     * @param classLoader the class loader that loaded the benchmark classes
+     * @param classPath the class path to compile the stubs against, containing the benchmark
+     *     classes, the classes they depend on, and JMH
+     */
+    JmhStubCompiler(ClassLoader classLoader, List<Path> classPath) {
+        this.classLoader = classLoader;
+        this.classPath = List.copyOf(classPath);
+    }
+
+    private static final class Destination implements GeneratorDestination {
+        private final Path sourceDirectory;
+        private final Path resourceDirectory;
+        private final List<Path> sourceFiles = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+
+        private Destination(Path sourceDirectory, Path resourceDirectory) {
+            this.sourceDirectory = sourceDirectory;
+            this.resourceDirectory = resourceDirectory;
+        }
+
+        @Override
+        public OutputStream newResource(String resourcePath) throws IOException {
+            Path file = resourceDirectory.resolve(resourcePath);
+            Files.createDirectories(file.getParent());
+            return Files.newOutputStream(file);
+        }
+
+        @Override
+        public InputStream getResource(String resourcePath) throws IOException {
+            // The benchmark list is generated from scratch rather than merged with the benchmark
+            // list of an earlier build, which may list benchmarks that no longer exist.
+            throw new FileNotFoundException(resourcePath);
+        }
+
+        @Override
+        public Writer newClass(String className, String originatingClassName)
+                throws IOException {
+            Path file = sourceDirectory.resolve(className.replace('.', '/') + ".java");
+            Files.createDirectories(file.getParent());
+            sourceFiles.add(file);
+            return Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void printError(String message) {
+            errors.add(message);
+        }
+
+        @Override
+        public void printError(String message, MetadataInfo element) {
+            errors.add(message + " (" + element + ")");
+        }
+
+        @Override
+        public void printError(String message, Throwable throwable) {
+            errors.add(message + ": " + throwable);
+        }
+
+        @Override
+        public void printWarning(String message) {
+            System.err.println("JMH warning: " + message);
+        }
+
+        @Override
+        public void printWarning(String message, MetadataInfo element) {
+            System.err.println("JMH warning: " + message + " (" + element + ")");
+        }
+
+        @Override
+        public void printWarning(String message, Throwable throwable) {
+            System.err.println("JMH warning: " + message + ": " + throwable);
+        }
+
+        @Override
+        public void printNote(String message) {
+            // Notes are only informational.
+        }
+    }
+
+    private void compile(List<Path> sourceFiles, Path outputDirectory)
+            throws IOException, BenchmarkGenerationException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new BenchmarkGenerationException(
+                    "No Java compiler available for compiling JMH benchmark stubs; run on a JDK");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(
+                diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+            fileManager.setLocationFromPaths(
+                    StandardLocation.CLASS_OUTPUT, List.of(outputDirectory));
+            fileManager.setLocationFromPaths(StandardLocation.CLASS_PATH, classPath);
+            Iterable<? extends JavaFileObject> compilationUnits =
+                    fileManager.getJavaFileObjectsFromFiles(sourceFiles.stream()
+                            .map(Path::toFile)
+                            .collect(Collectors.toUnmodifiableList()));
+            boolean success = compiler.getTask(new StringWriter(), fileManager, diagnostics,
+                            List.of("-proc:none", "-nowarn"), null, compilationUnits)
+                    .call();
+            if (!success) {
+                throw new BenchmarkGenerationException(
+                        "Failed to compile JMH benchmark stubs:\n"
+                                + diagnostics.getDiagnostics().stream()
+                                .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+                                .map(d -> d.getMessage(Locale.ROOT))
+                                .collect(Collectors.joining("\n")));
+            }
+        }
+    }
+
+    /**
+     * Generates and compiles the JMH benchmark stubs for the given benchmark classes, and writes
+     * the JMH benchmark list and compiler hints. Any earlier benchmark list in the output
+     * directory is replaced.
+     *
+     * @param benchmarkClasses the benchmark classes to generate stubs for
+     * @param outputDirectory the directory to write the compiled stubs and resources to
+     * @throws IOException if the stubs could not be written
+     * @throws BenchmarkGenerationException if JMH rejected the benchmark classes or the stubs
+     *     failed to compile
+     */
+    void generate(Collection<Class<?>> benchmarkClasses, Path outputDirectory)
+            throws IOException, BenchmarkGenerationException {
+        Path sourceDirectory = Files.createTempDirectory("ju2jmh-jmh-stubs");
+        try {
+            Destination destination = new Destination(sourceDirectory, outputDirectory);
+            GeneratorSource source = new ReflectionGeneratorSource(classLoader, benchmarkClasses);
+            BenchmarkGenerator generator = new BenchmarkGenerator();
+            generator.generate(source, destination);
+            generator.complete(source, destination);
+            if (!destination.errors.isEmpty()) {
+                throw new BenchmarkGenerationException("Failed to generate JMH benchmark stubs:\n"
+                        + String.join("\n", destination.errors));
+            }
+            if (!destination.sourceFiles.isEmpty()) {
+                compile(destination.sourceFiles, outputDirectory);
+            }
+        } finally {
+            FileUtils.deleteDirectory(sourceDirectory.toFile());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package se.chalmers.ju2jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A description of the modules of a multi-module project to convert in a single run, read from a
+ * properties file of the following form:
+ *
+ * <pre>
+ * modules = lib, app
+ * lib.source-path = lib/src/test/java
+ * lib.class-path = lib/build/classes/java/test
+ * lib.output = lib/src/jmh/java
+ * lib.classes = com.example.ExampleTest, com.example.OtherTest
+ * app.source-path = app/src/test/java:lib/src/testFixtures/java
+ * ...
+ * </pre>
+ *
+ * <p>Source and class paths may contain multiple entries separated by the platform path
+ * separator, and backslashes must be escaped as in any properties file. Relative paths are
+ * resolved against the directory containing the manifest. The class list of a module is optional,
+ * e.g. when discovering test classes, and the source path may be left empty for modes that do not
+ * read sources.
+ */
+public class ModuleManifest {
+    private static final String MODULES_KEY = "modules";
+    private static final String SOURCE_PATH_KEY = "source-path";
+    private static final String CLASS_PATH_KEY = "class-path";
+    private static final String OUTPUT_KEY = "output";
+    private static final String CLASSES_KEY = "classes";
+
+    private final List<Module> modules;
+
+    /**
+     * A module to convert, with its own inputs and output directory.
+     */
+    public static class Module {
+        private final String name;
+        private final List<Path> sourcePath;
+        private final List<Path> classPath;
+        private final Path outputPath;
+        private final List<String> classNames;
+
+        private Module(String name, List<Path> sourcePath, List<Path> classPath,
+                Path outputPath, List<String> classNames) {
+            this.name = name;
+            this.sourcePath = List.copyOf(sourcePath);
+            this.classPath = List.copyOf(classPath);
+            this.outputPath = outputPath;
+            this.classNames = List.copyOf(classNames);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Path> getSourcePath() {
+            return sourcePath;
+        }
+
+        public List<Path> getClassPath() {
+            return classPath;
+        }
+
+        public Path getOutputPath() {
+            return outputPath;
+        }
+
+        public List<String> getClassNames() {
+            return classNames;
+        }
+    }
+
+    private ModuleManifest(List<Module> modules) {
+        this.modules = List.copyOf(modules);
+    }
+
+    private static List<String> split(String value, String separatorRegex) {
+        return Arrays.stream(value.split(separatorRegex))
+                .map(String::strip)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    private static String property(Properties properties, String module, String key,
+            boolean required) {
+        String value = properties.getProperty(module + "." + key);
+        if (value == null && required) {
+            throw new IllegalArgumentException(
+                    "Module " + module + " is missing the property " + module + "." + key);
+        }
+        return value != null ? value : "";
+    }
+
+    private static List<Path> paths(Path baseDirectory, String value) {
+        return split(value, File.pathSeparator).stream()
+                .map(baseDirectory::resolve)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Reads a module manifest from the given file.
+     *
+     * @param file the manifest file to read
+     * @return the read manifest
+     * @throws IOException if the file could not be read
+     * @throws IllegalArgumentException if the manifest lists no modules, lists a module more than
+     *     once, or is missing the class path or output directory of a module
+     */
+    public static ModuleManifest load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        Path baseDirectory = file.toAbsolutePath().getParent();
+        List<String> names = split(properties.getProperty(MODULES_KEY, ""), ",");
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("Module manifest " + file + " lists no modules");
+        }
+        Set<String> uniqueNames = new LinkedHashSet<>(names);
+        if (uniqueNames.size() != names.size()) {
+            throw new IllegalArgumentException(
+                    "Module manifest " + file + " lists a module more than once");
+        }
+        List<Module> modules = new ArrayList<>();
+        for (String name : names) {
+            modules.add(new Module(name,
+                    paths(baseDirectory, property(properties, name, SOURCE_PATH_KEY, false)),
+                    paths(baseDirectory, property(properties, name, CLASS_PATH_KEY, true)),
+                    baseDirectory.resolve(property(properties, name, OUTPUT_KEY, true).strip()),
+                    split(property(properties, name, CLASSES_KEY, false), "[,\\s]+")));
+        }
+        return new ModuleManifest(modules);
+    }
+
+    /**
+     * Returns the modules listed in the manifest, in the order they are listed.
+     *
+     * @return the modules
+     */
+    public List<Module> getModules() {
+        return modules;
+    }
+}
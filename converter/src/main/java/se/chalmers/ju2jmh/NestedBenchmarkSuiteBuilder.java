@@ -7,6 +7,7 @@ import com.github.javaparser.ast.body.BodyDeclaration;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.FieldDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.body.TypeDeclaration;
 import com.github.javaparser.ast.expr.AssignExpr;
 import com.github.javaparser.ast.expr.ClassExpr;
@@ -21,12 +22,16 @@ import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.ast.visitor.ModifierVisitor;
 import com.github.javaparser.ast.visitor.Visitable;
 import com.google.common.collect.Iterables;
+import org.apache.bcel.Const;
 import org.apache.bcel.classfile.AccessFlags;
 import org.apache.bcel.classfile.AnnotationEntry;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
 import org.apache.bcel.classfile.ElementValue;
 import org.apache.bcel.classfile.ElementValuePair;
 import org.apache.bcel.classfile.Field;
 import org.apache.bcel.classfile.FieldOrMethod;
+import org.apache.bcel.classfile.InnerClasses;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
 import org.junit.After;
@@ -38,18 +43,25 @@ import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 
-import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -59,76 +71,183 @@ public class NestedBenchmarkSuiteBuilder {
     private static final ClassOrInterfaceDeclaration BENCHMARK_CLASS_TEMPLATE =
             AstTemplates.type("templates/nested_benchmark/benchmark_class_template.java")
                     .asClassOrInterfaceDeclaration();
+    private static final ClassOrInterfaceDeclaration TRIAL_CLASS_FIXTURE_TEMPLATE =
+            AstTemplates.type("templates/nested_benchmark/trial_class_fixture_template.java")
+                    .asClassOrInterfaceDeclaration();
+    private static final ClassOrInterfaceDeclaration INVOCATION_FIXTURE_TEMPLATE =
+            AstTemplates.type("templates/nested_benchmark/invocation_fixture_template.java")
+                    .asClassOrInterfaceDeclaration();
+    private static final ClassOrInterfaceDeclaration SHARED_IMPLEMENTATION_TEMPLATE =
+            AstTemplates.type("templates/nested_benchmark/shared_implementation_template.java")
+                    .asClassOrInterfaceDeclaration();
     private final List<Path> sourcePath;
     private final InputClassRepository inputClassRepository;
-    private final Map<String, InputClass> benchmarkClasses = new HashMap<>();
-    private final Map<String, InputClass> abstractBenchmarkClasses = new HashMap<>();
+    private final Set<String> benchmarkClasses = new HashSet<>();
+    private final Set<String> abstractBenchmarkClasses = new HashSet<>();
+    private ConversionExecutor executor = ConversionExecutor.sequential();
+    private boolean trialClassFixtures = false;
+    private boolean invocationFixtures = false;
+    private boolean statelessInstanceReuse = false;
+    private boolean phaseCounters = false;
 
     public NestedBenchmarkSuiteBuilder(List<Path> sourcePaths, List<Path> classPath) {
-        this.sourcePath = sourcePaths.stream().collect(Collectors.toUnmodifiableList());
-        this.inputClassRepository = new InputClassRepository(sourcePaths, classPath);
+        this(new InputClassRepository(sourcePaths, classPath));
     }
 
     public NestedBenchmarkSuiteBuilder(Path sourcePath, Path classPath) {
-        this.sourcePath = List.of(sourcePath);
-        this.inputClassRepository = new InputClassRepository(sourcePath, classPath);
+        this(new InputClassRepository(sourcePath, classPath));
+    }
+
+    /**
+     * Creates a new builder loading classes from the given repository. The repository may be
+     * shared with other builders and benchmark factories, in which case classes already loaded by
+     * the repository are not loaded again.
+     *
+     * @param inputClassRepository the repository to load input classes from
+     */
+    public NestedBenchmarkSuiteBuilder(InputClassRepository inputClassRepository) {
+        this.sourcePath = inputClassRepository.getSourcePath();
+        this.inputClassRepository = inputClassRepository;
+    }
+
+    /**
+     * Sets the executor used for loading classes and populating benchmark classes. By default, all
+     * work is done sequentially on the calling thread. The built suite is the same regardless of
+     * the executor used.
+     *
+     * @param executor the executor to use
+     * @return a reference to this builder
+     */
+    public NestedBenchmarkSuiteBuilder withExecutor(ConversionExecutor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets whether the class fixture methods and class rules of the test classes run once per
+     * JMH trial, in trial-level setup and teardown methods of the benchmark classes, instead of
+     * around every benchmark invocation. By default, they run around every invocation.
+     *
+     * @param trialClassFixtures whether to run class fixtures once per trial
+     * @return a reference to this builder
+     */
+    public NestedBenchmarkSuiteBuilder withTrialClassFixtures(boolean trialClassFixtures) {
+        this.trialClassFixtures = trialClassFixtures;
+        return this;
     }
 
-    private boolean isTestClass(InputClass inputClass) {
-        JavaClass bytecode = inputClass.getBytecode();
-        if (bytecode.isInterface() || bytecode.isEnum() || bytecode.isAnnotation()) {
-            return false;
-        }
-        boolean hasTestMethods = Arrays.stream(bytecode.getMethods())
-                .filter(AccessFlags::isPublic)
-                .filter(Bytecode.Predicates.hasArgCount(0))
-                .anyMatch(Bytecode.Predicates.isMethodAnnotated(Test.class)
-                        .or(Bytecode.Predicates.isMethodAnnotated(Before.class))
-                        .or(Bytecode.Predicates.isMethodAnnotated(After.class))
-                        .or(Bytecode.Predicates.isMethodAnnotated(BeforeClass.class))
-                        .or(Bytecode.Predicates.isMethodAnnotated(AfterClass.class))
-                        .or(Bytecode.Predicates.isMethodAnnotated(Rule.class))
-                        .or(Bytecode.Predicates.isMethodAnnotated(ClassRule.class)));
-        if (hasTestMethods) {
-            return true;
-        }
-        return Arrays.stream(bytecode.getFields())
-                .filter(AccessFlags::isPublic)
-                .anyMatch(Bytecode.Predicates.isFieldAnnotated(Rule.class)
-                        .or(Bytecode.Predicates.isFieldAnnotated(ClassRule.class)));
+    /**
+     * Sets whether the test instances are created, and their fixture methods run, in
+     * invocation-level setup and teardown methods of the benchmark classes, so that the measured
+     * benchmark methods only run the test methods. The class fixture methods also run in these
+     * methods unless they run once per trial. Test classes with rules that can not be run
+     * outside the benchmark methods only have their instances created outside them, as
+     * described in {@link se.chalmers.ju2jmh.api.JU2JmhBenchmark#startInstanceFixture()}. By
+     * default, all of this is part of the benchmark methods.
+     *
+     * @param invocationFixtures whether to run instance fixtures in invocation-level methods
+     * @return a reference to this builder
+     */
+    public NestedBenchmarkSuiteBuilder withInvocationFixtures(boolean invocationFixtures) {
+        this.invocationFixtures = invocationFixtures;
+        return this;
+    }
+
+    /**
+     * Sets whether test classes whose instances are stateless, as determined by
+     * {@link InstanceStateAnalysis#isStateless(InputClassRepository, String)}, have a single
+     * instance created in a trial-level setup method of their benchmark classes, which is shared
+     * by all benchmark invocations. By default, a new instance is created for every invocation.
+     *
+     * @param statelessInstanceReuse whether to share stateless test instances across invocations
+     * @return a reference to this builder
+     */
+    public NestedBenchmarkSuiteBuilder withStatelessInstanceReuse(
+            boolean statelessInstanceReuse) {
+        this.statelessInstanceReuse = statelessInstanceReuse;
+        return this;
+    }
+
+    /**
+     * Sets whether the generated benchmark methods time the phases of their invocations, i.e.
+     * creating the test instance, running the fixture methods, rules and test method, and report
+     * them as JMH auxiliary counters through a {@link se.chalmers.ju2jmh.api.PhaseCounters}
+     * argument. By default, invocations are not broken down into phases.
+     *
+     * @param phaseCounters whether to report the time of each phase of the invocations
+     * @return a reference to this builder
+     */
+    public NestedBenchmarkSuiteBuilder withPhaseCounters(boolean phaseCounters) {
+        this.phaseCounters = phaseCounters;
+        return this;
+    }
+
+    private <T> void forEach(Collection<T> inputs, ConversionExecutor.Action<? super T> action)
+            throws ClassNotFoundException {
+        try {
+            executor.forEach(inputs, action);
+        } catch (IOException | BenchmarkGenerationException e) {
+            throw new AssertionError("Unexpected exception type.", e);
+        }
+    }
+
+    private <T, R> List<R> map(Collection<T> inputs, ConversionExecutor.Task<? super T, R> task)
+            throws ClassNotFoundException {
+        try {
+            return executor.map(inputs, task);
+        } catch (IOException | BenchmarkGenerationException e) {
+            throw new AssertionError("Unexpected exception type.", e);
+        }
     }
 
     private void addAbstractTestClass(String className) throws ClassNotFoundException {
-        if (className.equals(Object.class.getName()) || benchmarkClasses.containsKey(className)
-                || abstractBenchmarkClasses.containsKey(className)) {
+        if (className.equals(Object.class.getName()) || benchmarkClasses.contains(className)
+                || abstractBenchmarkClasses.contains(className)) {
             return;
         }
-        InputClass inputClass = inputClassRepository.findClass(className);
-        String superclassName = inputClass.getSuperclassName();
+        ClassSummary summary = inputClassRepository.findSummary(className);
+        String superclassName = summary.superclassName();
         try {
             addAbstractTestClass(superclassName);
         } catch (ClassNotFoundException e) {
             // Superclass is unavailable. Assume it is a non-test class and continue.
         }
-        if (!benchmarkClasses.containsKey(superclassName)
-                && !abstractBenchmarkClasses.containsKey(superclassName)) {
+        if (!benchmarkClasses.contains(superclassName)
+                && !abstractBenchmarkClasses.contains(superclassName)) {
             // Superclass is not test class, so check if this one should be added.
-            if (isTestClass(inputClass)) {
-                abstractBenchmarkClasses.put(className, inputClass);
+            if (summary.isTestClass()) {
+                abstractBenchmarkClasses.add(className);
             }
         } else {
             // Superclass is test class, so add regardless.
-            abstractBenchmarkClasses.put(className, inputClass);
+            abstractBenchmarkClasses.add(className);
         }
     }
 
     public NestedBenchmarkSuiteBuilder addTestClass(String className)
             throws ClassNotFoundException {
         addAbstractTestClass(className);
-        InputClass inputClass = abstractBenchmarkClasses.get(className);
-        if (inputClass != null && !inputClass.getBytecode().isAbstract()) {
+        if (abstractBenchmarkClasses.contains(className)
+                && !inputClassRepository.findSummary(className).isAbstract()) {
             abstractBenchmarkClasses.remove(className);
-            benchmarkClasses.put(className, inputClass);
+            benchmarkClasses.add(className);
+        }
+        return this;
+    }
+
+    /**
+     * Adds all of the given test classes. The classes are loaded using the executor of this
+     * builder before being added in the given order.
+     *
+     * @param classNames the names of the test classes to add
+     * @return a reference to this builder
+     * @throws ClassNotFoundException if any of the classes could not be loaded
+     */
+    public NestedBenchmarkSuiteBuilder addTestClasses(Collection<String> classNames)
+            throws ClassNotFoundException {
+        forEach(classNames, inputClassRepository::findSummary);
+        for (String className : classNames) {
+            addTestClass(className);
         }
         return this;
     }
@@ -137,7 +256,7 @@ public class NestedBenchmarkSuiteBuilder {
             throws ClassNotFoundException {
         addTestClass(className);
         InputClass inputClass = inputClassRepository.findClass(className);
-        for (BodyDeclaration<?> member : inputClass.getSource().getMembers()) {
+        for (BodyDeclaration<?> member : inputClass.getSourceView().getMembers()) {
             if (member.isTypeDeclaration()) {
                 if (member instanceof NodeWithStaticModifier
                         && !((NodeWithStaticModifier<?>) member).isStatic()) {
@@ -150,6 +269,26 @@ public class NestedBenchmarkSuiteBuilder {
         return this;
     }
 
+    /**
+     * Returns the names of the added test classes that concrete benchmark classes are generated
+     * for.
+     *
+     * @return the names of the concrete benchmark test classes
+     */
+    Set<String> benchmarkClassNames() {
+        return Collections.unmodifiableSet(benchmarkClasses);
+    }
+
+    /**
+     * Returns the names of the added abstract test classes and test superclasses that abstract
+     * benchmark classes are generated for.
+     *
+     * @return the names of the abstract benchmark test classes
+     */
+    Set<String> abstractBenchmarkClassNames() {
+        return Collections.unmodifiableSet(abstractBenchmarkClasses);
+    }
+
     private static final class BenchmarkTemplateModifier extends ModifierVisitor<InputClass> {
         private static final Expression ACCESS_IMPLEMENTATION =
                 StaticJavaParser.parseExpression("this.implementation()");
@@ -161,6 +300,23 @@ public class NestedBenchmarkSuiteBuilder {
                 AstTemplates.method("templates/nested_benchmark/benchmark_method_template.java");
         private static final MethodDeclaration EXCEPTION_BENCHMARK_METHOD = AstTemplates.method(
                 "templates/nested_benchmark/exception_benchmark_method_template.java");
+        private static final Parameter PHASE_COUNTERS_PARAMETER = StaticJavaParser.parseParameter(
+                "se.chalmers.ju2jmh.api.PhaseCounters phaseCounters");
+        private static final Statement START_PHASES_STATEMENT =
+                StaticJavaParser.parseStatement("this.startPhases(phaseCounters);");
+        private static final Statement RETURN_TRUE_STATEMENT =
+                StaticJavaParser.parseStatement("return true;");
+
+        private final boolean invocationFixtures;
+        private final boolean phaseCounters;
+        private final boolean hasSuperclassBenchmark;
+
+        private BenchmarkTemplateModifier(boolean invocationFixtures, boolean phaseCounters,
+                boolean hasSuperclassBenchmark) {
+            this.invocationFixtures = invocationFixtures;
+            this.phaseCounters = phaseCounters;
+            this.hasSuperclassBenchmark = hasSuperclassBenchmark;
+        }
 
         @Override
         public Visitable visit(ClassOrInterfaceType n, InputClass arg) {
@@ -177,7 +333,7 @@ public class NestedBenchmarkSuiteBuilder {
 
         private static Stream<MethodCallExpr> instanceMethodCalls(Predicate<Method> filter,
                 InputClass inputClass) {
-            return Arrays.stream(inputClass.getBytecode().getMethods())
+            return Arrays.stream(inputClass.getBytecodeView().getMethods())
                     .filter(AccessFlags::isPublic)
                     .filter(Predicate.not(AccessFlags::isStatic))
                     .filter(Bytecode.Predicates.hasArgCount(0))
@@ -188,7 +344,7 @@ public class NestedBenchmarkSuiteBuilder {
 
         private static Stream<MethodCallExpr> staticMethodCalls(Predicate<Method> filter,
                 InputClass inputClass) {
-            return Arrays.stream(inputClass.getBytecode().getMethods())
+            return Arrays.stream(inputClass.getBytecodeView().getMethods())
                     .filter(AccessFlags::isPublic)
                     .filter(AccessFlags::isStatic)
                     .filter(Bytecode.Predicates.hasArgCount(0))
@@ -253,7 +409,7 @@ public class NestedBenchmarkSuiteBuilder {
                     throw new AssertionError(
                             "memberType should always be STATIC_FIELD or INSTANCE_FIELD");
             }
-            return Arrays.stream(arg.getBytecode().getFields())
+            return Arrays.stream(arg.getBytecodeView().getFields())
                     .filter(AccessFlags::isPublic)
                     .filter(predicate)
                     .map(FieldOrMethod::getName)
@@ -298,6 +454,27 @@ public class NestedBenchmarkSuiteBuilder {
             }
         }
 
+        private MethodDeclaration populateHasRulesMethod(MethodDeclaration method,
+                InputClass arg, boolean classRules) {
+            // The method returns true unless overridden, so it is only overridden to return false
+            // by benchmarks without rules, and to return true again by benchmarks with rules
+            // whose superclass benchmark returns false.
+            Stream<? extends Expression> rules = classRules
+                    ? Stream.concat(fieldRules(arg, MemberType.STATIC_FIELD), staticMethodCalls(
+                            Bytecode.Predicates.isMethodAnnotated(ClassRule.class), arg))
+                    : Stream.concat(fieldRules(arg, MemberType.INSTANCE_FIELD),
+                            instanceMethodCalls(
+                                    Bytecode.Predicates.isMethodAnnotated(Rule.class), arg));
+            if (rules.findAny().isEmpty()) {
+                return hasSuperclassBenchmark ? null : method;
+            } else if (hasSuperclassBenchmark) {
+                method.setBody(new BlockStmt(new NodeList<>(RETURN_TRUE_STATEMENT.clone())));
+                return method;
+            } else {
+                return null;
+            }
+        }
+
         @Override
         public Visitable visit(MethodDeclaration n, InputClass arg) {
             switch (n.getNameAsString()) {
@@ -321,9 +498,13 @@ public class NestedBenchmarkSuiteBuilder {
                     return populateApplyRulesMethod(n, arg, MemberType.INSTANCE_FIELD);
                 case "applyRuleMethods":
                     return populateApplyRulesMethod(n, arg, MemberType.INSTANCE_METHOD);
+                case "hasClassRules":
+                    return populateHasRulesMethod(n, arg, true);
+                case "hasInstanceRules":
+                    return populateHasRulesMethod(n, arg, false);
                 case "implementation":
                 case "createImplementation":
-                    if (arg.getBytecode().isAbstract()) {
+                    if (arg.getBytecodeView().isAbstract()) {
                         return super.visit(n.removeBody().setAbstract(true), arg);
                     }
                     break;
@@ -337,7 +518,7 @@ public class NestedBenchmarkSuiteBuilder {
                     .stream()
                     .map(NodeWithSimpleName::getNameAsString)
                     .anyMatch(Predicate.isEqual("implementation"))
-                    && arg.getBytecode().isAbstract()) {
+                    && arg.getBytecodeView().isAbstract()) {
                 return null;
             }
             return super.visit(n, arg);
@@ -356,7 +537,8 @@ public class NestedBenchmarkSuiteBuilder {
                     .findFirst();
         }
 
-        private static MethodDeclaration generateBenchmarkMethod(Method method) {
+        private static MethodDeclaration generateBenchmarkMethod(Method method,
+                boolean invocationFixtures, boolean phaseCounters) {
             Optional<String> expectedException = getExpectedException(method);
             MethodDeclaration benchmarkMethod = expectedException.isEmpty()
                     ? BENCHMARK_METHOD.clone()
@@ -379,18 +561,26 @@ public class NestedBenchmarkSuiteBuilder {
                     runBenchmarkCall.setArgument(2,
                             new ClassExpr(StaticJavaParser.parseType(
                                     ClassNames.canonicalClassName(ex)))));
+            if (invocationFixtures) {
+                // The test instance is created by the invocation-level setup method.
+                body.getStatement(0).remove();
+            }
+            if (phaseCounters) {
+                benchmarkMethod.addParameter(PHASE_COUNTERS_PARAMETER.clone());
+                body.addStatement(0, START_PHASES_STATEMENT.clone());
+            }
             return benchmarkMethod;
         }
 
         private Stream<MethodDeclaration> generateBenchmarkMethods(InputClass arg) {
-            return Arrays.stream(arg.getBytecode().getMethods())
+            return Arrays.stream(arg.getBytecodeView().getMethods())
                     .filter(AccessFlags::isPublic)
                     .filter(Predicate.not(AccessFlags::isStatic))
                     .filter(Bytecode.Predicates.hasArgCount(0))
                     .filter(Bytecode.Predicates.isMethodAnnotated(Test.class))
                     .filter(Predicate.not(
                             Bytecode.Predicates.isMethodAnnotated(Ignore.class)))
-                    .map(BenchmarkTemplateModifier::generateBenchmarkMethod);
+                    .map(m -> generateBenchmarkMethod(m, invocationFixtures, phaseCounters));
         }
 
         @Override
@@ -402,52 +592,57 @@ public class NestedBenchmarkSuiteBuilder {
         }
     }
 
-    private void loadOutputCompilationUnits(Map<String, CompilationUnit> compilationUnits,
-            File directory, String packageName) throws ClassNotFoundException {
-        File[] files = directory.listFiles();
-        if (files == null) {
-            return;
-        }
-        for (File file : files) {
-            if (file.isDirectory()) {
-                loadOutputCompilationUnits(compilationUnits, file,
-                        packageName + "." + file.getName());
-            } else if (file.getName().toLowerCase().endsWith(".java")) {
-                String className = packageName + "."
-                        + file.getName().substring(0, file.getName().length() - ".java".length());
-                if (compilationUnits.containsKey(className)) {
-                    continue;
+    private static void findOutputClassNames(List<String> classNames, Path directory,
+            String packageName) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = InputClassRepository.fileName(file);
+                if (Files.isDirectory(file)) {
+                    findOutputClassNames(classNames, file, packageName + "." + fileName);
+                } else if (fileName.toLowerCase().endsWith(".java")) {
+                    classNames.add(packageName + "."
+                            + fileName.substring(0, fileName.length() - ".java".length()));
                 }
-                InputClass inputClass = inputClassRepository.findClass(className);
-                CompilationUnit compilationUnit = inputClass.getSource()
-                        .findCompilationUnit()
-                        .orElseThrow(() ->
-                                new ClassNotFoundException(
-                                        "Failed to load compilation unit for class " + inputClass));
-                compilationUnits.put(className, compilationUnit);
             }
+        } catch (IOException e) {
+            // Unreadable directory, skip it.
         }
     }
 
-    private Map<String, CompilationUnit> loadOutputCompilationUnits()
+    private CompilationUnit loadOutputCompilationUnit(String className)
             throws ClassNotFoundException {
-        Map<String, CompilationUnit> compilationUnits = new HashMap<>();
+        InputClass inputClass = inputClassRepository.findClass(className);
+        return inputClass.getSource()
+                .findCompilationUnit()
+                .orElseThrow(() ->
+                        new ClassNotFoundException(
+                                "Failed to load compilation unit for class " + inputClass));
+    }
+
+    /**
+     * Returns the names of the top level classes of all compilation units that will be included
+     * in the built suite, in sorted order.
+     *
+     * @return the names of the output compilation units
+     */
+    public List<String> findOutputClassNames() {
+        List<String> classNames = new ArrayList<>();
         for (Path path : sourcePath) {
-            File file = path.toFile();
-            if (file.exists() && file.isDirectory()) {
-                File[] packageDirs = file.listFiles();
-                if (packageDirs == null) {
-                    continue;
-                }
-                for (File packageDir : packageDirs) {
-                    if (packageDir.isDirectory()) {
-                        loadOutputCompilationUnits(compilationUnits, packageDir,
-                                packageDir.getName());
+            if (!Files.isDirectory(path)) {
+                continue;
+            }
+            try (DirectoryStream<Path> packageDirs = Files.newDirectoryStream(path)) {
+                for (Path packageDir : packageDirs) {
+                    if (Files.isDirectory(packageDir)) {
+                        findOutputClassNames(classNames, packageDir,
+                                InputClassRepository.fileName(packageDir));
                     }
                 }
+            } catch (IOException e) {
+                // Unreadable source root, skip it.
             }
         }
-        return compilationUnits;
+        return classNames.stream().distinct().sorted().collect(Collectors.toUnmodifiableList());
     }
 
     private TypeDeclaration<?> findTypeInCompilationUnit(String className,
@@ -483,36 +678,26 @@ public class NestedBenchmarkSuiteBuilder {
         }
     }
 
-    private TypeDeclaration<?> findOutputTypeDeclaration(
-            Map<String, CompilationUnit> compilationUnits, String className)
-            throws ClassNotFoundException {
-        CompilationUnit compilationUnit =
-                compilationUnits.get(ClassNames.outermostClassName(className));
-        if (compilationUnit == null) {
-            throw new ClassNotFoundException(
-                    "Failed to find compilation unit for class " + className);
-        }
-        return findTypeInCompilationUnit(className, compilationUnit);
+    private static Stream<String> memberClassNames(JavaClass bytecode) {
+        String internalName = bytecode.getClassName().replace('.', '/');
+        ConstantPool constantPool = bytecode.getConstantPool();
+        return Arrays.stream(bytecode.getAttributes())
+                .filter(a -> a instanceof InnerClasses)
+                .flatMap(a -> Arrays.stream(((InnerClasses) a).getInnerClasses()))
+                .filter(c -> c.getOuterClassIndex() != 0 && c.getInnerNameIndex() != 0)
+                .filter(c -> constantPool.getConstantString(
+                        c.getOuterClassIndex(), Const.CONSTANT_Class).equals(internalName))
+                .map(c -> ((ConstantUtf8) constantPool.getConstant(
+                        c.getInnerNameIndex(), Const.CONSTANT_Utf8)).getBytes());
     }
 
-    private Stream<String> enclosingTypeNames(TypeDeclaration<?> type) {
-        if (!type.isNestedType()) {
-            return Stream.empty();
-        } else {
-            TypeDeclaration<?> enclosing = (TypeDeclaration<?>) type.getParentNode().orElseThrow();
-            return Stream.concat(enclosingTypeNames(enclosing),
-                    Stream.of(enclosing.getNameAsString()));
-        }
-    }
-
-    private String benchmarkClassName(TypeDeclaration<?> enclosingType) {
-        Stream<String> enclosingTypeNames = Stream.concat(enclosingTypeNames(enclosingType),
-                Stream.of(enclosingType.getNameAsString()));
-        Stream<String> nestedTypesInEnclosing = enclosingType.getMembers().stream()
-                .filter(BodyDeclaration::isTypeDeclaration)
-                .map(BodyDeclaration::asTypeDeclaration)
-                .map(NodeWithSimpleName::getNameAsString);
-        Set<String> existingNames = Stream.concat(enclosingTypeNames, nestedTypesInEnclosing)
+    private String benchmarkClassName(String testClassName) throws ClassNotFoundException {
+        // Computed from the bytecode, whose member classes are the nested types declared in the
+        // source, so that no source code has to be parsed and retained just to name the class.
+        JavaClass bytecode = inputClassRepository.findClass(testClassName).getBytecodeView();
+        Stream<String> enclosingTypeNames =
+                Arrays.stream(ClassNames.shortClassName(testClassName).split("\\$"));
+        Set<String> existingNames = Stream.concat(enclosingTypeNames, memberClassNames(bytecode))
                 .collect(Collectors.toUnmodifiableSet());
         String benchmarkClassName = "_Benchmark";
         if (existingNames.contains(benchmarkClassName)) {
@@ -539,37 +724,147 @@ public class NestedBenchmarkSuiteBuilder {
         return inputClassRepository.findClass(name(type));
     }
 
+    @SuppressWarnings("try")
+    private void addBenchmarkClass(CompilationUnit compilationUnit,
+            Map<String, String> benchmarkClassNames, String testClassName)
+            throws ClassNotFoundException {
+        TypeDeclaration<?> enclosing = findTypeInCompilationUnit(testClassName, compilationUnit);
+        InputClass testInputClass = findInputClass(enclosing);
+        String superclassName = benchmarkClassNames.get(testInputClass.getSuperclassName());
+        if (superclassName != null) {
+            superclassName = ClassNames.canonicalClassName(
+                    testInputClass.getSuperclassName() + "$" + superclassName);
+        }
+        ClassOrInterfaceDeclaration benchmarkClass = BENCHMARK_CLASS_TEMPLATE.clone();
+        benchmarkClass.setName(benchmarkClassNames.get(testClassName));
+        if (superclassName != null) {
+            benchmarkClass.getExtendedTypes().removeIf(t -> true);
+            benchmarkClass.addExtendedType(superclassName);
+        }
+        if (abstractBenchmarkClasses.contains(testClassName)) {
+            benchmarkClass.setAbstract(true);
+        } else {
+            if (statelessInstanceReuse
+                    && InstanceStateAnalysis.isStateless(inputClassRepository, testClassName)) {
+                benchmarkClass.getMethodsByName("createImplementation").get(0).replace(
+                        SHARED_IMPLEMENTATION_TEMPLATE.getMethodsByName("createImplementation")
+                                .get(0).clone());
+                benchmarkClass.addMember(SHARED_IMPLEMENTATION_TEMPLATE
+                        .getMethodsByName("createSharedImplementation").get(0).clone());
+            }
+            if (trialClassFixtures) {
+                TRIAL_CLASS_FIXTURE_TEMPLATE.getMembers()
+                        .forEach(m -> benchmarkClass.addMember(m.clone()));
+            }
+            if (invocationFixtures) {
+                INVOCATION_FIXTURE_TEMPLATE.getMembers()
+                        .forEach(m -> benchmarkClass.addMember(m.clone()));
+            }
+        }
+        try (ConversionMetrics.Measurement m = inputClassRepository.getMetrics()
+                .measure(ConversionMetrics.Phase.AST_TRANSFORMATION, testClassName)) {
+            benchmarkClass.accept(
+                    new BenchmarkTemplateModifier(
+                            invocationFixtures, phaseCounters, superclassName != null),
+                    testInputClass);
+        }
+        enclosing.addMember(benchmarkClass);
+    }
+
     public Map<String, CompilationUnit> buildSuite() throws ClassNotFoundException {
-        Map<String, CompilationUnit> compilationUnits = loadOutputCompilationUnits();
-        Map<String, String> benchmarkClassNames = new HashMap<>();
-        for (String testClassName : Iterables.concat(benchmarkClasses.keySet(),
-                abstractBenchmarkClasses.keySet())) {
-            TypeDeclaration<?> enclosing =
-                    findOutputTypeDeclaration(compilationUnits, testClassName);
-            benchmarkClassNames.put(testClassName, benchmarkClassName(enclosing));
-        }
-        for (String testClassName : benchmarkClassNames.keySet()) {
-            TypeDeclaration<?> enclosing =
-                    findOutputTypeDeclaration(compilationUnits, testClassName);
-            InputClass testInputClass = findInputClass(enclosing);
-            String superclassName =
-                    benchmarkClassNames.get(testInputClass.getSuperclassName());
-            if (superclassName != null) {
-                superclassName = ClassNames.canonicalClassName(
-                        testInputClass.getSuperclassName() + "$" + superclassName);
+        return buildSuite(findOutputClassNames());
+    }
+
+    /**
+     * Builds the part of the suite consisting of the compilation units with the given top level
+     * class names. Each compilation unit is identical to the corresponding compilation unit of the
+     * full suite built by {@link #buildSuite()}.
+     *
+     * @param outputClassNames the names of the output compilation units to build, as returned by
+     *     {@link #findOutputClassNames()}
+     * @return the built compilation units, by top level class name
+     * @throws ClassNotFoundException if any of the required classes could not be loaded
+     */
+    public Map<String, CompilationUnit> buildSuite(Collection<String> outputClassNames)
+            throws ClassNotFoundException {
+        Map<String, CompilationUnit> compilationUnits = new ConcurrentHashMap<>();
+        try {
+            buildSuite(outputClassNames, compilationUnits::put);
+        } catch (IOException e) {
+            throw new AssertionError("Unexpected exception type.", e);
+        }
+        return Collections.unmodifiableMap(new HashMap<>(compilationUnits));
+    }
+
+    /**
+     * Builds the part of the suite consisting of the compilation units with the given top level
+     * class names, passing each compilation unit to the given sink as soon as it is complete. Only
+     * the compilation units currently being populated are held in memory, so the memory needed
+     * does not grow with the size of the suite. Each compilation unit is identical to the
+     * corresponding compilation unit of the full suite built by {@link #buildSuite()}.
+     *
+     * @param outputClassNames the names of the output compilation units to build, as returned by
+     *     {@link #findOutputClassNames()}
+     * @param sink the sink to pass the built compilation units to
+     * @throws ClassNotFoundException if any of the required classes could not be loaded
+     * @throws IOException if the sink failed to process a compilation unit
+     */
+    public void buildSuite(Collection<String> outputClassNames, CompilationUnitSink sink)
+            throws ClassNotFoundException, IOException {
+        Set<String> selectedClassNames = new TreeSet<>(outputClassNames);
+        Set<String> allClassNames = new HashSet<>(findOutputClassNames());
+        List<String> testClassNames = new ArrayList<>();
+        for (String testClassName : Iterables.concat(benchmarkClasses,
+                abstractBenchmarkClasses)) {
+            String outermostClassName = ClassNames.outermostClassName(testClassName);
+            if (!allClassNames.contains(outermostClassName)) {
+                throw new ClassNotFoundException(
+                        "Failed to find compilation unit for class " + testClassName);
             }
-            ClassOrInterfaceDeclaration benchmarkClass = BENCHMARK_CLASS_TEMPLATE.clone();
-            benchmarkClass.setName(benchmarkClassNames.get(testClassName));
-            if (superclassName != null) {
-                benchmarkClass.getExtendedTypes().removeIf(t -> true);
-                benchmarkClass.addExtendedType(superclassName);
+            if (selectedClassNames.contains(outermostClassName)) {
+                testClassNames.add(testClassName);
             }
-            if (abstractBenchmarkClasses.containsKey(testClassName)) {
-                benchmarkClass.setAbstract(true);
+        }
+        // Benchmark classes extend the benchmark classes of their superclasses, so the names of
+        // those are needed as well.
+        Set<String> superclassNames = new HashSet<>();
+        for (String testClassName : testClassNames) {
+            String superclassName = inputClassRepository.findSummary(testClassName)
+                    .superclassName();
+            if (benchmarkClasses.contains(superclassName)
+                    || abstractBenchmarkClasses.contains(superclassName)) {
+                superclassNames.add(superclassName);
             }
-            benchmarkClass.accept(new BenchmarkTemplateModifier(), testInputClass);
-            enclosing.addMember(benchmarkClass);
         }
-        return Collections.unmodifiableMap(compilationUnits);
+        // Benchmark class names only depend on the names of the nested types of the test classes,
+        // so they are computed up front without loading the compilation units.
+        Set<String> namedClassNameSet = new TreeSet<>(testClassNames);
+        namedClassNameSet.addAll(superclassNames);
+        List<String> namedClassNames = List.copyOf(namedClassNameSet);
+        List<String> names = map(namedClassNames, this::benchmarkClassName);
+        Map<String, String> benchmarkClassNames = new HashMap<>();
+        for (int i = 0; i < namedClassNames.size(); i++) {
+            benchmarkClassNames.put(namedClassNames.get(i), names.get(i));
+        }
+        // Test classes sharing a compilation unit are handled by the same task, as populating
+        // benchmark classes modifies the compilation unit.
+        Map<String, List<String>> testClassNamesByCompilationUnit = new HashMap<>();
+        testClassNames.stream()
+                .sorted()
+                .forEach(n -> testClassNamesByCompilationUnit
+                        .computeIfAbsent(ClassNames.outermostClassName(n), k -> new ArrayList<>())
+                        .add(n));
+        try {
+            executor.forEach(selectedClassNames, className -> {
+                CompilationUnit compilationUnit = loadOutputCompilationUnit(className);
+                for (String testClassName : testClassNamesByCompilationUnit.getOrDefault(
+                        className, List.of())) {
+                    addBenchmarkClass(compilationUnit, benchmarkClassNames, testClassName);
+                }
+                sink.accept(className, compilationUnit);
+            });
+        } catch (BenchmarkGenerationException e) {
+            throw new AssertionError("Unexpected exception type.", e);
+        }
     }
 }
@@ -0,0 +1,276 @@
+package se.chalmers.ju2jmh;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A record of the compilation units generated in an output directory, along with a hash of the
+ * inputs each of them was generated from and the version of the converter that generated them.
+ * Used to only regenerate the compilation units whose inputs have changed since the previous run.
+ *
+ * <p>Recording generated compilation units is thread-safe.
+ */
+public class OutputManifest {
+    /**
+     * The name of the manifest file in the output directory.
+     */
+    public static final String FILE_NAME = ".ju2jmh-manifest";
+    private static final String HEADER = "ju2jmh-manifest 1";
+    // Computed once, as the converter cannot change while it is running.
+    private static final Supplier<String> CONVERTER_VERSION =
+            Suppliers.memoize(OutputManifest::computeConverterVersion);
+
+    private final Path outputPath;
+    private final String converterVersion;
+    private final Map<String, Entry> previousEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final String inputHash;
+        private final String converterVersion;
+
+        private Entry(String inputHash, String converterVersion) {
+            this.inputHash = inputHash;
+            this.converterVersion = converterVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Entry entry = (Entry) o;
+            return inputHash.equals(entry.inputHash)
+                    && converterVersion.equals(entry.converterVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(inputHash, converterVersion);
+        }
+    }
+
+    private OutputManifest(Path outputPath, String converterVersion,
+            Map<String, Entry> previousEntries) {
+        this.outputPath = outputPath;
+        this.converterVersion = converterVersion;
+        this.previousEntries = previousEntries;
+    }
+
+    /**
+     * Returns a string identifying the running version of the converter. The version includes a
+     * hash of the converter JAR when running from a JAR file, or of the class files and the
+     * generator templates when running from the build directories, e.g. through the Gradle run
+     * task, so that any rebuild of the converter causes all outputs to be regenerated.
+     *
+     * @return the converter version
+     */
+    public static String currentConverterVersion() {
+        return CONVERTER_VERSION.get();
+    }
+
+    private static String computeConverterVersion() {
+        String version = Objects.requireNonNullElse(
+                OutputManifest.class.getPackage().getImplementationVersion(), "dev");
+        CodeSource codeSource = OutputManifest.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            return version;
+        }
+        try {
+            Path location = Path.of(codeSource.getLocation().toURI());
+            if (Files.isRegularFile(location)) {
+                version += "-" + com.google.common.io.Files.asByteSource(location.toFile())
+                        .hash(Hashing.sha256())
+                        .toString();
+            } else if (Files.isDirectory(location)) {
+                Hasher hasher = Hashing.sha256().newHasher();
+                hashDirectory(location, hasher);
+                // Resources are kept in a directory of their own by the build.
+                URL templates = OutputManifest.class.getClassLoader().getResource("templates");
+                if (templates != null && templates.getProtocol().equals("file")) {
+                    Path templateDirectory = Path.of(templates.toURI());
+                    if (!templateDirectory.startsWith(location)) {
+                        hashDirectory(templateDirectory, hasher);
+                    }
+                }
+                version += "-" + hasher.hash();
+            }
+        } catch (URISyntaxException | IOException | IllegalArgumentException e) {
+            // Location cannot be read, so fall back to the plain version.
+        }
+        return version.replace(' ', '_');
+    }
+
+    private static void hashDirectory(Path directory, Hasher hasher) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            hasher.putString(directory.relativize(file).toString(), StandardCharsets.UTF_8);
+            hasher.putBytes(Files.readAllBytes(file));
+        }
+    }
+
+    private static Map<String, Entry> read(BufferedReader reader) throws IOException {
+        if (!HEADER.equals(reader.readLine())) {
+            return null;
+        }
+        Map<String, Entry> entries = new HashMap<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            String[] parts = line.split(" ");
+            if (parts.length != 3) {
+                return null;
+            }
+            entries.put(parts[0], new Entry(parts[1], parts[2]));
+        }
+        return entries;
+    }
+
+    /**
+     * Loads the manifest of the given output directory. If the directory has no readable
+     * manifest, the loaded manifest is empty, causing all compilation units to be regenerated.
+     *
+     * @param outputPath the output directory
+     * @return the loaded manifest
+     * @throws IOException if the manifest exists but could not be read
+     */
+    public static OutputManifest load(Path outputPath) throws IOException {
+        return load(outputPath, currentConverterVersion());
+    }
+
+    static OutputManifest load(Path outputPath, String converterVersion) throws IOException {
+        Map<String, Entry> previousEntries;
+        try (BufferedReader reader = Files.newBufferedReader(outputPath.resolve(FILE_NAME))) {
+            previousEntries = read(reader);
+        } catch (NoSuchFileException e) {
+            previousEntries = null;
+        }
+        if (previousEntries == null) {
+            previousEntries = Collections.emptyMap();
+        }
+        return new OutputManifest(outputPath, converterVersion, previousEntries);
+    }
+
+    private File outputFile(String className) {
+        return outputPath.resolve(className.replace('.', File.separatorChar) + ".java").toFile();
+    }
+
+    /**
+     * Returns whether the compilation unit with the given top level class name was generated by
+     * the previous run from inputs with the given hash by the current converter version, and is
+     * still present in the output directory.
+     *
+     * @param className the top level class name of the compilation unit
+     * @param inputHash the hash of the current inputs of the compilation unit
+     * @return true if the compilation unit does not need to be regenerated, false otherwise
+     */
+    public boolean isUpToDate(String className, String inputHash) {
+        return new Entry(inputHash, converterVersion).equals(previousEntries.get(className))
+                && outputFile(className).isFile();
+    }
+
+    /**
+     * Records that the compilation unit with the given top level class name has been generated,
+     * or is up to date, for inputs with the given hash.
+     *
+     * @param className the top level class name of the compilation unit
+     * @param inputHash the hash of the inputs of the compilation unit
+     */
+    public void record(String className, String inputHash) {
+        entries.put(className, new Entry(inputHash, converterVersion));
+    }
+
+    /**
+     * Removes the compilation unit with the given top level class name from the compilation units
+     * recorded by this run, e.g. because its output file was deleted after being generated. The
+     * compilation unit is then regenerated by the next run.
+     *
+     * @param className the top level class name of the compilation unit
+     */
+    public void forget(String className) {
+        entries.remove(className);
+    }
+
+    /**
+     * Returns the names of the compilation units recorded by the previous run but not by this
+     * one.
+     *
+     * @return the top level class names of stale compilation units
+     */
+    public Set<String> staleClassNames() {
+        return previousEntries.keySet().stream()
+                .filter(n -> !entries.containsKey(n))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Deletes the output files of the compilation units recorded by the previous run but not by
+     * this one. Files not recorded by the previous run are never deleted.
+     *
+     * @throws IOException if a stale output file could not be deleted
+     */
+    public void deleteStaleOutputs() throws IOException {
+        for (String className : staleClassNames()) {
+            Files.deleteIfExists(outputFile(className).toPath());
+        }
+    }
+
+    /**
+     * Writes the compilation units recorded by this run to the manifest file in the output
+     * directory, replacing the previous manifest.
+     *
+     * @throws IOException if the manifest could not be written
+     */
+    public void save() throws IOException {
+        Path manifestFile = outputPath.resolve(FILE_NAME);
+        Path tempFile = Files.createTempFile(outputPath, FILE_NAME, ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Map.Entry<String, Entry> e : new TreeMap<>(entries).entrySet()) {
+                    writer.write(e.getKey() + " " + e.getValue().inputHash + " "
+                            + e.getValue().converterVersion);
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tempFile, manifestFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package se.chalmers.ju2jmh;
+
+import org.apache.commons.io.FileUtils;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Verifies generated benchmark sources by compiling them in-process with the system Java compiler,
+ * against the class path of the repository that they were generated from.
+ *
+ * <p>The sources are compiled one package at a time, so that the packages can be compiled in
+ * parallel and a failing class does not prevent the classes of other packages from being checked.
+ * Sources of other packages in the output directory are resolved from the output directory in
+ * preference to the class path, since generated classes replace or extend the classes that they
+ * were generated from.
+ */
+public class OutputVerifier {
+    private static final String SOURCE_FILE_EXTENSION = ".java";
+
+    private final InputClassRepository inputClassRepository;
+    private final Path outputDirectory;
+    private ConversionExecutor executor = ConversionExecutor.sequential();
+
+    /**
+     * Creates a verifier of the sources in the given output directory.
+     *
+     * @param inputClassRepository the repository that the sources were generated from, providing
+     *     the class path to compile against
+     * @param outputDirectory the root directory of the generated sources
+     */
+    public OutputVerifier(InputClassRepository inputClassRepository, Path outputDirectory) {
+        this.inputClassRepository = inputClassRepository;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Sets the executor used for compiling packages. By default, all packages are compiled
+     * sequentially on the calling thread. The verification result is the same regardless of the
+     * executor used.
+     *
+     * @param executor the executor to use
+     * @return a reference to this verifier
+     */
+    public OutputVerifier withExecutor(ConversionExecutor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    private Map<Path, List<Path>> findPackages() throws IOException {
+        try (Stream<Path> files = Files.walk(outputDirectory)) {
+            return files
+                    .filter(f -> f.getFileName().toString().endsWith(SOURCE_FILE_EXTENSION))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.groupingBy(
+                            Path::getParent, TreeMap::new, Collectors.toList()));
+        }
+    }
+
+    private String className(Path sourceFile) {
+        String relativePath = outputDirectory.relativize(sourceFile).toString();
+        return relativePath
+                .substring(0, relativePath.length() - SOURCE_FILE_EXTENSION.length())
+                .replace(File.separatorChar, '.');
+    }
+
+    private Map<String, Set<String>> compile(JavaCompiler compiler, List<Path> classPath,
+            List<Path> sourceFiles) throws IOException, BenchmarkGenerationException {
+        Path classOutput = Files.createTempDirectory("ju2jmh-verification");
+        try {
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(
+                    diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+                fileManager.setLocationFromPaths(
+                        StandardLocation.CLASS_OUTPUT, List.of(classOutput));
+                fileManager.setLocationFromPaths(StandardLocation.CLASS_PATH, classPath);
+                fileManager.setLocationFromPaths(
+                        StandardLocation.SOURCE_PATH, List.of(outputDirectory));
+                Iterable<? extends JavaFileObject> compilationUnits =
+                        fileManager.getJavaFileObjectsFromFiles(sourceFiles.stream()
+                                .map(Path::toFile)
+                                .collect(Collectors.toUnmodifiableList()));
+                compiler.getTask(new StringWriter(), fileManager, diagnostics,
+                                List.of("-proc:none", "-implicit:none", "-Xprefer:source",
+                                        "-nowarn", "-Xmaxerrs", String.valueOf(Integer.MAX_VALUE)),
+                                null, compilationUnits)
+                        .call();
+            }
+            Map<String, Set<String>> errors = new HashMap<>();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+                    continue;
+                }
+                if (diagnostic.getSource() == null) {
+                    throw new BenchmarkGenerationException(
+                            "Failed to compile generated benchmarks: "
+                                    + diagnostic.getMessage(Locale.ROOT));
+                }
+                Path sourceFile = Path.of(diagnostic.getSource().toUri());
+                errors.computeIfAbsent(className(sourceFile), k -> new LinkedHashSet<>())
+                        .add("line " + diagnostic.getLineNumber() + ": "
+                                + diagnostic.getMessage(Locale.ROOT));
+            }
+            return errors;
+        } finally {
+            FileUtils.deleteDirectory(classOutput.toFile());
+        }
+    }
+
+    /**
+     * Compiles all sources in the output directory, without writing any class files to it.
+     *
+     * @return the compilation errors of the classes that failed to compile, by fully qualified
+     *     name of the top level class of the failing source file, in sorted order; empty if all
+     *     sources compiled
+     * @throws IOException if the output directory could not be read
+     * @throws BenchmarkGenerationException if no Java compiler is available, or the compiler
+     *     failed for a reason other than an error in a source file
+     */
+    @SuppressWarnings("try")
+    public Map<String, List<String>> verify() throws IOException, BenchmarkGenerationException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new BenchmarkGenerationException(
+                    "No Java compiler available for verifying generated benchmarks; run on a JDK");
+        }
+        List<Path> classPath = CompilationClassPath.of(inputClassRepository);
+        Map<Path, List<Path>> packages = findPackages();
+        ConversionMetrics metrics = inputClassRepository.getMetrics();
+        List<Map<String, Set<String>>> packageErrors;
+        try {
+            packageErrors = executor.map(new ArrayList<>(packages.entrySet()), e -> {
+                String packageName = outputDirectory.relativize(e.getKey()).toString()
+                        .replace(File.separatorChar, '.');
+                try (ConversionMetrics.Measurement m = metrics.measure(
+                        ConversionMetrics.Phase.VERIFICATION, packageName)) {
+                    return compile(compiler, classPath, e.getValue());
+                }
+            });
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError("Unexpected exception type.", e);
+        }
+        // A class may be reported by several packages if sources of other packages that it
+        // depends on are compiled along with them.
+        Map<String, Set<String>> errors = new TreeMap<>();
+        for (Map<String, Set<String>> packageError : packageErrors) {
+            packageError.forEach((className, messages) ->
+                    errors.computeIfAbsent(className, k -> new LinkedHashSet<>()).addAll(messages));
+        }
+        Map<String, List<String>> failures = new TreeMap<>();
+        errors.forEach((className, messages) -> failures.put(className, List.copyOf(messages)));
+        return failures;
+    }
+}
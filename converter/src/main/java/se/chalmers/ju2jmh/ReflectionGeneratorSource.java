@@ -0,0 +1,342 @@
+package se.chalmers.ju2jmh;
+
+import org.openjdk.jmh.generators.core.ClassInfo;
+import org.openjdk.jmh.generators.core.FieldInfo;
+import org.openjdk.jmh.generators.core.GeneratorSource;
+import org.openjdk.jmh.generators.core.MethodInfo;
+import org.openjdk.jmh.generators.core.ParameterInfo;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A JMH generator source backed by loaded classes, allowing the JMH benchmark generator to be run
+ * on compiled benchmark classes instead of from an annotation processor.
+ */
+class ReflectionGeneratorSource implements GeneratorSource {
+    private final ClassLoader classLoader;
+    private final List<Class<?>> classes;
+
+    ReflectionGeneratorSource(ClassLoader classLoader, Collection<Class<?>> classes) {
+        this.classLoader = classLoader;
+        this.classes = List.copyOf(classes);
+    }
+
+    @Override
+    public Collection<ClassInfo> getClasses() {
+        return classes.stream().map(ReflectionClassInfo::new).collect(Collectors.toList());
+    }
+
+    @Override
+    public ClassInfo resolveClass(String className) {
+        try {
+            return new ReflectionClassInfo(Class.forName(className, false, classLoader));
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static ClassInfo classInfo(Class<?> clazz) {
+        return clazz != null ? new ReflectionClassInfo(clazz) : null;
+    }
+
+    private static final class ReflectionClassInfo implements ClassInfo {
+        private final Class<?> clazz;
+
+        private ReflectionClassInfo(Class<?> clazz) {
+            this.clazz = clazz;
+        }
+
+        @Override
+        public String getPackageName() {
+            return clazz.getPackageName();
+        }
+
+        @Override
+        public String getQualifiedName() {
+            String canonicalName = clazz.getCanonicalName();
+            return canonicalName != null ? canonicalName : clazz.getName();
+        }
+
+        @Override
+        public String getName() {
+            return clazz.getSimpleName();
+        }
+
+        @Override
+        public ClassInfo getSuperClass() {
+            return classInfo(clazz.getSuperclass());
+        }
+
+        @Override
+        public ClassInfo getDeclaringClass() {
+            return classInfo(clazz.getDeclaringClass());
+        }
+
+        @Override
+        public Collection<FieldInfo> getFields() {
+            return Arrays.stream(clazz.getDeclaredFields())
+                    .map(ReflectionFieldInfo::new)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public Collection<MethodInfo> getMethods() {
+            return Arrays.stream(clazz.getDeclaredMethods())
+                    .filter(m -> !m.isBridge() && !m.isSynthetic())
+                    .map(ReflectionMethodInfo::new)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public Collection<MethodInfo> getConstructors() {
+            return Arrays.stream(clazz.getDeclaredConstructors())
+                    .map(ReflectionMethodInfo::new)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public <T extends Annotation> T getAnnotation(Class<T> annotationClass) {
+            return clazz.getAnnotation(annotationClass);
+        }
+
+        @Override
+        public boolean isAbstract() {
+            return Modifier.isAbstract(clazz.getModifiers());
+        }
+
+        @Override
+        public boolean isPublic() {
+            return Modifier.isPublic(clazz.getModifiers());
+        }
+
+        @Override
+        public boolean isStrictFP() {
+            return Modifier.isStrict(clazz.getModifiers());
+        }
+
+        @Override
+        public boolean isFinal() {
+            return Modifier.isFinal(clazz.getModifiers());
+        }
+
+        @Override
+        public boolean isInner() {
+            return clazz.isAnonymousClass() || clazz.isLocalClass()
+                    || (clazz.isMemberClass() && !Modifier.isStatic(clazz.getModifiers()));
+        }
+
+        @Override
+        public boolean isEnum() {
+            return clazz.isEnum();
+        }
+
+        @Override
+        public Collection<String> getEnumConstants() {
+            return Arrays.stream(clazz.getEnumConstants())
+                    .map(c -> ((Enum<?>) c).name())
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ReflectionClassInfo
+                    && clazz.equals(((ReflectionClassInfo) o).clazz);
+        }
+
+        @Override
+        public int hashCode() {
+            return clazz.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getQualifiedName();
+        }
+    }
+
+    private static final class ReflectionMethodInfo implements MethodInfo {
+        private final Executable executable;
+
+        private ReflectionMethodInfo(Executable executable) {
+            this.executable = executable;
+        }
+
+        @Override
+        public String getName() {
+            return executable instanceof Constructor ? "<init>" : executable.getName();
+        }
+
+        @Override
+        public String getQualifiedName() {
+            return classInfo(executable.getDeclaringClass()).getQualifiedName() + "." + getName();
+        }
+
+        @Override
+        public String getReturnType() {
+            if (executable instanceof Method) {
+                return ((Method) executable).getReturnType().getCanonicalName();
+            }
+            return void.class.getName();
+        }
+
+        @Override
+        public Collection<ParameterInfo> getParameters() {
+            return Arrays.stream(executable.getParameterTypes())
+                    .map(ReflectionParameterInfo::new)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public ClassInfo getDeclaringClass() {
+            return classInfo(executable.getDeclaringClass());
+        }
+
+        @Override
+        public <T extends Annotation> T getAnnotation(Class<T> annotationClass) {
+            return executable.getAnnotation(annotationClass);
+        }
+
+        @Override
+        public boolean isPublic() {
+            return Modifier.isPublic(executable.getModifiers());
+        }
+
+        @Override
+        public boolean isAbstract() {
+            return Modifier.isAbstract(executable.getModifiers());
+        }
+
+        @Override
+        public boolean isSynchronized() {
+            return Modifier.isSynchronized(executable.getModifiers());
+        }
+
+        @Override
+        public boolean isStrictFP() {
+            return Modifier.isStrict(executable.getModifiers());
+        }
+
+        @Override
+        public boolean isStatic() {
+            return Modifier.isStatic(executable.getModifiers());
+        }
+
+        @Override
+        public int compareTo(MethodInfo o) {
+            return getQualifiedName().compareTo(o.getQualifiedName());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ReflectionMethodInfo
+                    && executable.equals(((ReflectionMethodInfo) o).executable);
+        }
+
+        @Override
+        public int hashCode() {
+            return executable.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getQualifiedName();
+        }
+    }
+
+    private static final class ReflectionFieldInfo implements FieldInfo {
+        private final Field field;
+
+        private ReflectionFieldInfo(Field field) {
+            this.field = field;
+        }
+
+        @Override
+        public String getName() {
+            return field.getName();
+        }
+
+        @Override
+        public ClassInfo getType() {
+            return classInfo(field.getType());
+        }
+
+        @Override
+        public ClassInfo getDeclaringClass() {
+            return classInfo(field.getDeclaringClass());
+        }
+
+        @Override
+        public <T extends Annotation> T getAnnotation(Class<T> annotationClass) {
+            return field.getAnnotation(annotationClass);
+        }
+
+        @Override
+        public boolean isPublic() {
+            return Modifier.isPublic(field.getModifiers());
+        }
+
+        @Override
+        public boolean isStatic() {
+            return Modifier.isStatic(field.getModifiers());
+        }
+
+        @Override
+        public boolean isFinal() {
+            return Modifier.isFinal(field.getModifiers());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ReflectionFieldInfo
+                    && field.equals(((ReflectionFieldInfo) o).field);
+        }
+
+        @Override
+        public int hashCode() {
+            return field.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getDeclaringClass().getQualifiedName() + "." + getName();
+        }
+    }
+
+    private static final class ReflectionParameterInfo implements ParameterInfo {
+        private final Class<?> type;
+
+        private ReflectionParameterInfo(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public ClassInfo getType() {
+            return classInfo(type);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ReflectionParameterInfo
+                    && type.equals(((ReflectionParameterInfo) o).type);
+        }
+
+        @Override
+        public int hashCode() {
+            return type.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return type.getName();
+        }
+    }
+}
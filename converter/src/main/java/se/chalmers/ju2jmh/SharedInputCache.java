@@ -0,0 +1,118 @@
+package se.chalmers.ju2jmh;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An in-memory cache shared by the {@link InputClassRepository}s of multiple modules converted in
+ * the same run, so that classes present in several modules, such as shared test fixtures, are
+ * only read and parsed once.
+ *
+ * <p>Entries are keyed on the files that they are read from rather than on class names, so
+ * repositories only share classes loaded from the same class and source files. Archives are
+ * opened once by the cache and shared by all repositories using it, and stay open until the cache
+ * is closed. Files are assumed not to change while the cache is in use.
+ *
+ * <p>The cache is thread-safe.
+ */
+public class SharedInputCache implements Closeable {
+    private final Map<Path, FileSystem> archiveFileSystems = new HashMap<>();
+    private final Cache<String, InputClass> classes = newCache();
+    private final Cache<String, ClassMetadata> metadata = newCache();
+    private final Cache<String, IdentifierIndex> identifierIndexes = newCache();
+
+    /**
+     * Loads a cache entry that is not yet present.
+     *
+     * @param <T> the type of the entry
+     */
+    @FunctionalInterface
+    interface Loader<T> {
+        T load() throws ClassNotFoundException;
+    }
+
+    private static <T> Cache<String, T> newCache() {
+        return CacheBuilder.newBuilder()
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .build();
+    }
+
+    private static <T> T get(Cache<String, T> cache, String key, Loader<? extends T> loader)
+            throws ClassNotFoundException {
+        try {
+            return cache.get(key, loader::load);
+        } catch (ExecutionException e) {
+            // The loaders only throw ClassNotFoundException.
+            throw (ClassNotFoundException) e.getCause();
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a string identifying the given file, which is the same for paths to the same file
+     * in different repositories, including files in archives.
+     */
+    static String fileKey(Path file) {
+        return file != null ? file.toUri().toString() : "";
+    }
+
+    /**
+     * Opens the given archive as a file system, or returns the file system opened by an earlier
+     * call for the same archive.
+     *
+     * @param archive the JAR or ZIP archive to open
+     * @return the file system of the archive
+     * @throws IOException if the archive could not be opened
+     */
+    synchronized FileSystem openArchive(Path archive) throws IOException {
+        Path key = archive.toAbsolutePath().normalize();
+        FileSystem fileSystem = archiveFileSystems.get(key);
+        if (fileSystem == null) {
+            fileSystem = FileSystems.newFileSystem(key, (ClassLoader) null);
+            archiveFileSystems.put(key, fileSystem);
+        }
+        return fileSystem;
+    }
+
+    InputClass findClass(String key, Loader<? extends InputClass> loader)
+            throws ClassNotFoundException {
+        return get(classes, key, loader);
+    }
+
+    ClassMetadata findMetadata(String key, Loader<? extends ClassMetadata> loader)
+            throws ClassNotFoundException {
+        return get(metadata, key, loader);
+    }
+
+    IdentifierIndex findIdentifierIndex(String key, Loader<? extends IdentifierIndex> loader)
+            throws ClassNotFoundException {
+        return get(identifierIndexes, key, loader);
+    }
+
+    /**
+     * Closes the archives opened by this cache. Repositories using the cache can no longer load
+     * classes from archives.
+     *
+     * @throws IOException if an archive could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (FileSystem fileSystem : archiveFileSystems.values()) {
+            fileSystem.close();
+        }
+        archiveFileSystems.clear();
+    }
+}
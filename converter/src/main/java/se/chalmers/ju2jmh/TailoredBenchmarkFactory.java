@@ -2,11 +2,28 @@ package se.chalmers.ju2jmh;
 
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.BodyDeclaration;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.ClassExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
 import com.github.javaparser.ast.expr.MethodReferenceExpr;
-import com.github.javaparser.ast.expr.Name;
-import com.github.javaparser.ast.expr.SimpleName;
-import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.expr.TypeExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.VoidType;
 import com.google.common.collect.Lists;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
@@ -64,6 +81,68 @@ public class TailoredBenchmarkFactory {
      */
     public static ClassOrInterfaceDeclaration generateBenchmarkClass(
             UnitTestClass testClass, Predicate<String> nameValidator) {
+        return generateBenchmarkClass(testClass, nameValidator, false);
+    }
+
+    /**
+     * Generates a tailored benchmark class for the given unit test class, using the given name
+     * validator to prevent naming conflicts, optionally running the class fixture methods and
+     * class rules of the test class once per JMH trial instead of around every benchmark
+     * invocation.
+     *
+     * @param testClass {@link UnitTestClass} representing the class to generate benchmarks for
+     * @param nameValidator predicate for validating identifier names, to avoid name clashes
+     * @param trialClassFixtures whether to run class fixtures in trial-level setup and teardown
+     *     methods
+     * @return the generated benchmark class
+     */
+    public static ClassOrInterfaceDeclaration generateBenchmarkClass(
+            UnitTestClass testClass, Predicate<String> nameValidator,
+            boolean trialClassFixtures) {
+        return generateBenchmarkClass(
+                testClass, nameValidator, trialClassFixtures, false, false, false);
+    }
+
+    /**
+     * Generates a tailored benchmark class for the given unit test class, using the given name
+     * validator to prevent naming conflicts, optionally running the class fixture methods and
+     * class rules of the test class once per JMH trial, and optionally creating the test instance
+     * and running its fixture methods in invocation-level setup and teardown methods, so that
+     * the benchmark methods only run the test methods. Test classes with instance rules, or with
+     * class rules that do not run once per trial, have their fixtures run by the benchmark
+     * methods regardless, as the rules wrap the test methods. Stateless test classes, as
+     * determined by {@link InstanceStateAnalysis}, may instead have a single instance created
+     * once per trial and shared by all invocations. The benchmark methods may also time the
+     * phases of their invocations and report them through a
+     * {@link se.chalmers.ju2jmh.api.PhaseCounters} argument.
+     *
+     * @param testClass {@link UnitTestClass} representing the class to generate benchmarks for
+     * @param nameValidator predicate for validating identifier names, to avoid name clashes
+     * @param trialClassFixtures whether to run class fixtures in trial-level setup and teardown
+     *     methods
+     * @param invocationFixtures whether to run instance fixtures in invocation-level setup and
+     *     teardown methods, where the test class allows it
+     * @param sharedInstance whether to create the test instance in a trial-level setup method
+     *     and share it across invocations, which is only correct for stateless test classes
+     * @param phaseCounters whether to report the time of each phase of the invocations as JMH
+     *     auxiliary counters
+     * @return the generated benchmark class
+     */
+    public static ClassOrInterfaceDeclaration generateBenchmarkClass(
+            UnitTestClass testClass, Predicate<String> nameValidator,
+            boolean trialClassFixtures, boolean invocationFixtures, boolean sharedInstance,
+            boolean phaseCounters) {
+        Model.BenchmarkClass model = Model.generate(testClass, nameValidator, trialClassFixtures,
+                invocationFixtures, sharedInstance, phaseCounters);
+        // Only the parts of the benchmark class that do not depend on the number of tests are
+        // rendered from the template and parsed. The members generated for each test are built
+        // directly as ASTs, so that the cost of parsing does not grow with the number of tests.
+        ClassOrInterfaceDeclaration benchmarkClass = render(model);
+        addBenchmarks(benchmarkClass, model);
+        return benchmarkClass;
+    }
+
+    private static ClassOrInterfaceDeclaration render(Model.BenchmarkClass model) {
         Template template;
         try {
             template = templateConfig.getTemplate("tailored_benchmark.ftl");
@@ -72,7 +151,6 @@ public class TailoredBenchmarkFactory {
         }
         String output;
         try (StringBuilderWriter writer = new StringBuilderWriter()) {
-            Model.BenchmarkClass model = Model.generate(testClass, nameValidator);
             template.process(model, writer);
             output = writer.toString();
         } catch (IOException | TemplateException e) {
@@ -81,6 +159,119 @@ public class TailoredBenchmarkFactory {
         return StaticJavaParser.parseTypeDeclaration(output).asClassOrInterfaceDeclaration();
     }
 
+    private static ClassOrInterfaceType classType(String name) {
+        ClassOrInterfaceType type = null;
+        for (String part : name.split("\\.")) {
+            type = new ClassOrInterfaceType(type, part);
+        }
+        return type;
+    }
+
+    private static FieldAccessExpr payloadReference(Model.Benchmark benchmark) {
+        return new FieldAccessExpr(
+                new FieldAccessExpr(new ThisExpr(), "payloads"), benchmark.getTestName());
+    }
+
+    private static Statement phaseCountersCall(String methodName) {
+        return new ExpressionStmt(new MethodCallExpr(new NameExpr("phaseCounters"), methodName));
+    }
+
+    private static MethodDeclaration benchmarkMethod(
+            Model.BenchmarkClass model, Model.Benchmark benchmark) {
+        MethodCallExpr run;
+        if (model.getHasStatementPayloads()) {
+            run = new MethodCallExpr(payloadReference(benchmark), "evaluate");
+        } else if (model.getInvocationFixtures()) {
+            run = new MethodCallExpr(payloadReference(benchmark), "accept",
+                    new NodeList<>(new FieldAccessExpr(new ThisExpr(), "instance")));
+        } else {
+            run = new MethodCallExpr(new ThisExpr(), "runBenchmark",
+                    new NodeList<>(payloadReference(benchmark)));
+        }
+        MethodDeclaration method = new MethodDeclaration(
+                new NodeList<>(Modifier.publicModifier()), new VoidType(),
+                "benchmark_" + benchmark.getTestName());
+        method.addMarkerAnnotation("org.openjdk.jmh.annotations.Benchmark");
+        method.addThrownException(classType("java.lang.Throwable"));
+        BlockStmt body = new BlockStmt(new NodeList<>(new ExpressionStmt(run)));
+        if (model.getPhaseCounters()) {
+            method.addParameter(classType("se.chalmers.ju2jmh.api.PhaseCounters"),
+                    "phaseCounters");
+            if (!model.getHasStatementPayloads() && model.getInvocationFixtures()) {
+                // Only the test method is run, directly by the benchmark method.
+                body.addStatement(0, phaseCountersCall("startPhase"));
+                body.addStatement(phaseCountersCall("endTest"));
+            }
+            body.addStatement(0, new ExpressionStmt(new AssignExpr(
+                    new FieldAccessExpr(new ThisExpr(), "phaseCounters"),
+                    new NameExpr("phaseCounters"), AssignExpr.Operator.ASSIGN)));
+            body.addStatement(1, phaseCountersCall("startInvocation"));
+            body.addStatement(phaseCountersCall("endInvocation"));
+        }
+        method.setBody(body);
+        return method;
+    }
+
+    private static FieldDeclaration payloadField(
+            Model.BenchmarkClass model, Model.Benchmark benchmark) {
+        ClassOrInterfaceType type;
+        if (!model.getHasStatementPayloads()) {
+            type = classType("se.chalmers.ju2jmh.api.ThrowingConsumer")
+                    .setTypeArguments(classType(model.getTestClassName()));
+        } else {
+            type = classType("org.junit.runners.model.Statement");
+        }
+        return new FieldDeclaration(new NodeList<>(Modifier.publicModifier()),
+                type, benchmark.getTestName());
+    }
+
+    private static Statement payloadAssignment(
+            Model.BenchmarkClass model, Model.Benchmark benchmark) {
+        Expression payload = new MethodReferenceExpr(
+                new TypeExpr(classType(model.getTestClassName())), null,
+                benchmark.getTestName());
+        if (benchmark.isExceptionTest()) {
+            payload = new ObjectCreationExpr(null,
+                    classType("se.chalmers.ju2jmh.api.ExceptionTest")
+                            .setTypeArguments(new NodeList<>()),
+                    new NodeList<>(payload,
+                            new ClassExpr(classType(benchmark.getExpectedException()))));
+        }
+        if (model.getHasStatementPayloads()) {
+            payload = new MethodCallExpr(new NameExpr(model.getClassStatementClassName()),
+                    "forPayload", new NodeList<>(payload,
+                            new StringLiteralExpr(benchmark.getTestName()), new ThisExpr()));
+        }
+        return new ExpressionStmt(
+                new AssignExpr(payloadReference(benchmark), payload, AssignExpr.Operator.ASSIGN));
+    }
+
+    private static void addBenchmarks(
+            ClassOrInterfaceDeclaration benchmarkClass, Model.BenchmarkClass model) {
+        // The benchmark methods follow the fields declared at the start of the template, the
+        // last of which is the phase counters field, if present, or else the instance field.
+        NodeList<BodyDeclaration<?>> members = benchmarkClass.getMembers();
+        FieldDeclaration lastField = benchmarkClass.getFieldByName("phaseCounters")
+                .orElseGet(() -> benchmarkClass.getFieldByName("instance").orElseThrow());
+        int benchmarkMethodIndex = IntStream.range(0, members.size())
+                .filter(i -> members.get(i) == lastField)
+                .findFirst()
+                .orElseThrow() + 1;
+        ClassOrInterfaceDeclaration payloadsClass = benchmarkClass.getMembers().stream()
+                .filter(BodyDeclaration::isClassOrInterfaceDeclaration)
+                .map(BodyDeclaration::asClassOrInterfaceDeclaration)
+                .filter(c -> c.getNameAsString().equals(model.getPayloadsClassName()))
+                .findFirst()
+                .orElseThrow();
+        BlockStmt makePayloads =
+                benchmarkClass.getMethodsByName("makePayloads").get(0).getBody().orElseThrow();
+        for (Model.Benchmark benchmark : model.getBenchmarks()) {
+            members.add(benchmarkMethodIndex++, benchmarkMethod(model, benchmark));
+            payloadsClass.addMember(payloadField(model, benchmark));
+            makePayloads.addStatement(payloadAssignment(model, benchmark));
+        }
+    }
+
     /**
      * Generates a tailored benchmark class for the given unit test class, without checking for
      * naming conflicts.
@@ -102,27 +293,7 @@ public class TailoredBenchmarkFactory {
      */
     public static Predicate<String> nameValidatorForCompilationUnit(
             CompilationUnit compilationUnit) {
-        Set<String> names = new HashSet<>();
-        compilationUnit.accept(new VoidVisitorAdapter<Void>() {
-            @Override
-            public void visit(SimpleName n, Void arg) {
-                names.add(n.getIdentifier());
-                super.visit(n, arg);
-            }
-
-            @Override
-            public void visit(Name n, Void arg) {
-                names.add(n.getIdentifier());
-                super.visit(n, arg);
-            }
-
-            @Override
-            public void visit(MethodReferenceExpr n, Void arg) {
-                names.add(n.getIdentifier());
-                super.visit(n, arg);
-            }
-        }, null);
-        return Predicate.not(names::contains);
+        return IdentifierIndex.of(compilationUnit).nameValidator();
     }
 
     private static String getValidName(String preferred, Predicate<String> nameValidator) {
@@ -243,6 +414,10 @@ public class TailoredBenchmarkFactory {
             private final List<InstanceFixtureMethod> afterMethods;
             private final List<ClassRule> classRules;
             private final List<InstanceRule> instanceRules;
+            private final boolean trialClassFixtures;
+            private final boolean invocationFixtures;
+            private final boolean sharedInstance;
+            private final boolean phaseCounters;
 
             public BenchmarkClass(
                     String className, String testClassName, String instanceStatementClassName,
@@ -252,7 +427,8 @@ public class TailoredBenchmarkFactory {
                     List<ClassFixtureMethod> afterClassMethods,
                     List<InstanceFixtureMethod> beforeMethods,
                     List<InstanceFixtureMethod> afterMethods, List<ClassRule> classRules,
-                    List<InstanceRule> instanceRules) {
+                    List<InstanceRule> instanceRules, boolean trialClassFixtures,
+                    boolean invocationFixtures, boolean sharedInstance, boolean phaseCounters) {
                 this.className = className;
                 this.testClassName = testClassName;
                 this.instanceStatementClassName = instanceStatementClassName;
@@ -266,6 +442,10 @@ public class TailoredBenchmarkFactory {
                 this.afterMethods = afterMethods;
                 this.classRules = classRules;
                 this.instanceRules = instanceRules;
+                this.trialClassFixtures = trialClassFixtures;
+                this.invocationFixtures = invocationFixtures;
+                this.sharedInstance = sharedInstance;
+                this.phaseCounters = phaseCounters;
             }
 
             public String getClassName() {
@@ -331,6 +511,26 @@ public class TailoredBenchmarkFactory {
             public List<InstanceRule> getInstanceRules() {
                 return instanceRules;
             }
+
+            public boolean getTrialClassFixtures() {
+                return trialClassFixtures;
+            }
+
+            public boolean getInvocationFixtures() {
+                return invocationFixtures;
+            }
+
+            public boolean getSharedInstance() {
+                return sharedInstance;
+            }
+
+            public boolean getPhaseCounters() {
+                return phaseCounters;
+            }
+
+            public boolean getHasStatementPayloads() {
+                return getHasRules() && !invocationFixtures;
+            }
         }
 
         public static class Benchmark {
@@ -451,7 +651,9 @@ public class TailoredBenchmarkFactory {
             }
         }
 
-        public static BenchmarkClass generate(UnitTestClass testClass, Predicate<String> nameValidator) {
+        public static BenchmarkClass generate(UnitTestClass testClass,
+                Predicate<String> nameValidator, boolean trialClassFixtures,
+                boolean invocationFixtures, boolean sharedInstance, boolean phaseCounters) {
             String benchmarkClassName = getValidName("_Benchmark", nameValidator);
             String instanceStatementClassName = getValidName("_InstanceStatement", nameValidator);
             String classStatementClassName = getValidName("_ClassStatement", nameValidator);
@@ -499,12 +701,17 @@ public class TailoredBenchmarkFactory {
                 seenFieldNames.add(testRule.member.name());
             }
             instanceRules = Collections.unmodifiableList(instanceRules);
+            // Rules wrap the test methods, so the fixtures of classes with rules that are applied
+            // around every invocation can not be moved out of the benchmark methods.
+            invocationFixtures = invocationFixtures && instanceRules.isEmpty()
+                    && (classRules.isEmpty() || trialClassFixtures);
             return new BenchmarkClass(
                     benchmarkClassName, ClassNames.shortClassName(testClass.name()),
                     instanceStatementClassName, classStatementClassName,
                     applyClassRulesStatementClassName, payloadsClassName, benchmarks,
                     beforeClassMethods, afterClassMethods, beforeMethods, afterMethods, classRules,
-                    instanceRules);
+                    instanceRules, trialClassFixtures, invocationFixtures, sharedInstance,
+                    phaseCounters);
         }
     }
 }
@@ -0,0 +1,133 @@
+package se.chalmers.ju2jmh;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the test classes in the class path of an {@link InputClassRepository}, so that they do
+ * not have to be listed explicitly.
+ *
+ * <p>A class is a test class if it is neither abstract nor an interface, and it or any of its
+ * available superclasses declares public JUnit 4 tests, fixture methods, or rules. These are the
+ * same criteria used by {@link NestedBenchmarkSuiteBuilder} to decide which classes to generate
+ * benchmarks for. Classes without source files are never test classes.
+ *
+ * <p>The classes to consider can be restricted using include and exclude globs, which are
+ * matched against fully qualified class names. In globs, {@code *} matches any part of a single
+ * package or class name and {@code **} matches any number of packages, e.g.
+ * {@code com.example.**} matches all classes in {@code com.example} and its subpackages, and
+ * {@code **.*IT} matches all classes whose names end with {@code IT}.
+ */
+public class TestClassFinder {
+    private final InputClassRepository repository;
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+    private ConversionExecutor executor = ConversionExecutor.sequential();
+
+    public TestClassFinder(InputClassRepository repository) {
+        this.repository = repository;
+    }
+
+    private static PathMatcher classNameMatcher(String glob) {
+        return FileSystems.getDefault().getPathMatcher("glob:" + glob.replace('.', '/'));
+    }
+
+    /**
+     * Restricts the found test classes to those matching any of the given globs. If no include
+     * globs are given, all classes are included.
+     *
+     * @param globs the globs matching the classes to include
+     * @return a reference to this finder
+     */
+    public TestClassFinder withIncludes(List<String> globs) {
+        globs.stream().map(TestClassFinder::classNameMatcher).forEach(includes::add);
+        return this;
+    }
+
+    /**
+     * Excludes the classes matching any of the given globs from the found test classes, even if
+     * they match an include glob.
+     *
+     * @param globs the globs matching the classes to exclude
+     * @return a reference to this finder
+     */
+    public TestClassFinder withExcludes(List<String> globs) {
+        globs.stream().map(TestClassFinder::classNameMatcher).forEach(excludes::add);
+        return this;
+    }
+
+    /**
+     * Sets the executor used for reading classes. By default, all classes are read sequentially
+     * on the calling thread. The found test classes are the same regardless of the executor used.
+     *
+     * @param executor the executor to use
+     * @return a reference to this finder
+     */
+    public TestClassFinder withExecutor(ConversionExecutor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    private boolean isSelected(String className) {
+        Path path = Path.of(className.replace('.', '/'));
+        return (includes.isEmpty() || includes.stream().anyMatch(m -> m.matches(path)))
+                && excludes.stream().noneMatch(m -> m.matches(path));
+    }
+
+    private boolean inheritsTests(ClassSummary summary) {
+        while (!summary.isTestClass()) {
+            if (summary.superclassName().equals(Object.class.getName())) {
+                return false;
+            }
+            try {
+                summary = repository.findSummary(summary.superclassName());
+            } catch (ClassNotFoundException e) {
+                // Superclass is unavailable. Assume it is a non-test class.
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isTestClass(String className) {
+        ClassSummary summary;
+        try {
+            summary = repository.findSummary(className);
+        } catch (ClassNotFoundException e) {
+            // Classes without source files cannot be converted.
+            return false;
+        }
+        return !summary.isAbstract() && inheritsTests(summary);
+    }
+
+    /**
+     * Returns the names of the test classes in the class path of the repository, in sorted
+     * order. The classes are read using the executor of this finder.
+     *
+     * @return the names of the found test classes
+     */
+    public List<String> findTestClasses() {
+        List<String> classNames = repository.findClassNames().stream()
+                .filter(this::isSelected)
+                .collect(Collectors.toUnmodifiableList());
+        List<Boolean> isTestClass;
+        try {
+            isTestClass = executor.map(classNames, this::isTestClass);
+        } catch (ClassNotFoundException | IOException | BenchmarkGenerationException e) {
+            throw new AssertionError("Unexpected exception type.", e);
+        }
+        List<String> testClassNames = new ArrayList<>();
+        for (int i = 0; i < classNames.size(); i++) {
+            if (isTestClass.get(i)) {
+                testClassNames.add(classNames.get(i));
+            }
+        }
+        return Collections.unmodifiableList(testClassNames);
+    }
+}
@@ -1,44 +1,29 @@
 package se.chalmers.ju2jmh;
 
-import org.apache.bcel.classfile.AnnotationEntry;
-import org.apache.bcel.classfile.ElementValue;
-import org.apache.bcel.classfile.ElementValuePair;
-import org.apache.bcel.classfile.Field;
-import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.classfile.Method;
-import org.junit.After;
-import org.junit.AfterClass;
-import org.junit.Before;
-import org.junit.BeforeClass;
-import org.junit.ClassRule;
-import org.junit.Ignore;
-import org.junit.Rule;
-import org.junit.Test;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import se.chalmers.ju2jmh.model.UnitTestClass;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.function.Predicate;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A repository for finding and loading {@link UnitTestClass}es.
+ *
+ * <p>Repositories are thread-safe. Each unit test class is loaded at most once, even if it is
+ * requested by multiple threads at the same time.
  */
 public class UnitTestClassRepository {
-    private static final String TEST_ANNOTATION = Bytecode.annotationTypeName(Test.class);
-    private static final String IGNORE_ANNOTATION = Bytecode.annotationTypeName(Ignore.class);
-    private static final String BEFORE_ANNOTATION = Bytecode.annotationTypeName(Before.class);
-    private static final String AFTER_ANNOTATION = Bytecode.annotationTypeName(After.class);
-    private static final String BEFORE_CLASS_ANNOTATION =
-            Bytecode.annotationTypeName(BeforeClass.class);
-    private static final String AFTER_CLASS_ANNOTATION =
-            Bytecode.annotationTypeName(AfterClass.class);
-    private static final String RULE_ANNOTATION = Bytecode.annotationTypeName(Rule.class);
-    private static final String CLASS_RULE_ANNOTATION =
-            Bytecode.annotationTypeName(ClassRule.class);
-
-    private final Map<String, UnitTestClass> knownClasses = new HashMap<>();
+    private final LoadingCache<String, UnitTestClass> knownClasses = CacheBuilder.newBuilder()
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .build(new CacheLoader<>() {
+                @Override
+                public UnitTestClass load(String name) throws ClassNotFoundException {
+                    return loadFromRepository(name);
+                }
+            });
     private final InputClassRepository repository;
 
     /**
@@ -52,9 +37,9 @@ public class UnitTestClassRepository {
     }
 
     private UnitTestClass loadFromRepository(String name) throws ClassNotFoundException {
-        InputClass testInputClass = repository.findClass(name);
+        ClassSummary summary = repository.findSummary(name);
         UnitTestClass.Builder builder = UnitTestClass.Builder.forClass(name);
-        String superclassName = testInputClass.getSuperclassName();
+        String superclassName = summary.superclassName();
         if (!superclassName.equals(Object.class.getCanonicalName())) {
             try {
                 builder.withSuperclass(findClass(superclassName));
@@ -62,60 +47,12 @@ public class UnitTestClassRepository {
                 // Superclass unavailable. Assume no tests, fixture methods, rules, or superclasses
                 // are present.
                 UnitTestClass superclass = UnitTestClass.Builder.forClass(superclassName).build();
-                knownClasses.put(superclassName, superclass);
-                builder.withSuperclass(superclass);
-            }
-        }
-        JavaClass bytecode = testInputClass.getBytecode();
-        for (Method method : bytecode.getMethods()) {
-            if (method.getArgumentTypes().length > 0) {
-                continue;
-            }
-            for (AnnotationEntry annotation : method.getAnnotationEntries()) {
-                String annotationType = annotation.getAnnotationType();
-                if (annotationType.equals(TEST_ANNOTATION)) {
-                    if (Arrays.stream(method.getAnnotationEntries())
-                            .map(AnnotationEntry::getAnnotationType)
-                            .anyMatch(Predicate.isEqual(IGNORE_ANNOTATION))) {
-                        continue;
-                    }
-                    Optional<String> expected = Arrays.stream(annotation.getElementValuePairs())
-                            .filter(evp -> evp.getNameString().equals("expected"))
-                            .map(ElementValuePair::getValue)
-                            .map(ElementValue::stringifyValue)
-                            .map(Bytecode::referenceFieldTypeDescriptorToClassName)
-                            .filter(Predicate.not(Predicate.isEqual(Test.None.class.getName())))
-                            .findFirst();
-                    if (expected.isEmpty()) {
-                        builder.withTest(method.getName());
-                    } else {
-                        builder.withExceptionTest(method.getName(), expected.get());
-                    }
-                } else if (annotationType.equals(BEFORE_ANNOTATION)) {
-                    builder.withBefore(method.getName());
-                } else if (annotationType.equals(AFTER_ANNOTATION)) {
-                    builder.withAfter(method.getName());
-                } else if (annotationType.equals(BEFORE_CLASS_ANNOTATION)) {
-                    builder.withBeforeClass(method.getName());
-                } else if (annotationType.equals(AFTER_CLASS_ANNOTATION)) {
-                    builder.withAfterClass(method.getName());
-                } else if (annotationType.equals(RULE_ANNOTATION)) {
-                    builder.withInstanceRuleMethod(method.getName());
-                } else if (annotationType.equals(CLASS_RULE_ANNOTATION)) {
-                    builder.withClassRuleMethod(method.getName());
-                }
-            }
-        }
-        for (Field field : bytecode.getFields()) {
-            for (AnnotationEntry annotation : field.getAnnotationEntries()) {
-                String annotationType = annotation.getAnnotationType();
-                if (annotationType.equals(RULE_ANNOTATION)) {
-                    builder.withInstanceRuleField(field.getName());
-                } else if (annotationType.equals(CLASS_RULE_ANNOTATION)) {
-                    builder.withClassRuleField(field.getName());
-                }
+                UnitTestClass existing =
+                        knownClasses.asMap().putIfAbsent(superclassName, superclass);
+                builder.withSuperclass(existing != null ? existing : superclass);
             }
         }
+        builder.withDeclaredMembersOf(summary.declaredMembers());
         return builder.build();
     }
 
@@ -129,12 +66,14 @@ public class UnitTestClassRepository {
      *     available
      */
     public UnitTestClass findClass(String name) throws ClassNotFoundException {
-        UnitTestClass testClass = knownClasses.get(name);
-        if (testClass != null) {
-            return testClass;
+        try {
+            return knownClasses.get(name);
+        } catch (ExecutionException e) {
+            // The loader only throws ClassNotFoundException.
+            throw (ClassNotFoundException) e.getCause();
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
         }
-        testClass = loadFromRepository(name);
-        knownClasses.put(name, testClass);
-        return testClass;
     }
 }
@@ -343,6 +343,26 @@ public class UnitTestClass {
             return this;
         }
 
+        /**
+         * Adds the tests, fixture methods, and rules declared by the given class, ignoring its
+         * superclass.
+         *
+         * @param declaringClass the class to add the declared members of
+         * @return a reference to this builder
+         */
+        public Builder withDeclaredMembersOf(UnitTestClass declaringClass) {
+            tests.addAll(declaringClass.tests());
+            before.addAll(declaringClass.before());
+            after.addAll(declaringClass.after());
+            beforeClass.addAll(declaringClass.beforeClass());
+            afterClass.addAll(declaringClass.afterClass());
+            ruleFields.addAll(declaringClass.ruleFields());
+            ruleMethods.addAll(declaringClass.ruleMethods());
+            classRuleFields.addAll(declaringClass.classRuleFields());
+            classRuleMethods.addAll(declaringClass.classRuleMethods());
+            return this;
+        }
+
         private static <T> void ensureUnique(
                 String kind, Function<T, String> getName, List<T> list1, List<T> list2) {
             Set<String> names = new HashSet<>();
@@ -44,6 +44,16 @@ public static class BENCHMARK_TEMPLATE extends se.chalmers.ju2jmh.api.JU2JmhBenc
         return statement;
     }
 
+    @java.lang.Override
+    public boolean hasClassRules() {
+        return false;
+    }
+
+    @java.lang.Override
+    public boolean hasInstanceRules() {
+        return false;
+    }
+
     private IMPLEMENTATION_CLASS_NAME implementation;
 
     @java.lang.Override
@@ -0,0 +1,11 @@
+public static class INVOCATION_FIXTURE_TEMPLATE {
+    @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void setUpInvocation() throws java.lang.Throwable {
+        this.startInstanceFixture();
+    }
+
+    @org.openjdk.jmh.annotations.TearDown(org.openjdk.jmh.annotations.Level.Invocation)
+    public void tearDownInvocation() throws java.lang.Throwable {
+        this.stopInstanceFixture();
+    }
+}
@@ -0,0 +1,10 @@
+public static class SHARED_IMPLEMENTATION_TEMPLATE {
+    @java.lang.Override
+    public void createImplementation() throws java.lang.Throwable {
+    }
+
+    @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void createSharedImplementation() throws java.lang.Throwable {
+        this.implementation = new IMPLEMENTATION_CLASS_NAME();
+    }
+}
@@ -0,0 +1,11 @@
+public static class TRIAL_CLASS_FIXTURE_TEMPLATE {
+    @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUpClassFixture() throws java.lang.Throwable {
+        this.startClassFixture(IMPLEMENTATION_CLASS_NAME.class);
+    }
+
+    @org.openjdk.jmh.annotations.TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDownClassFixture() throws java.lang.Throwable {
+        this.stopClassFixture();
+    }
+}
@@ -2,58 +2,95 @@
 public static class ${className} {
     private ${payloadsClassName} payloads;
     private ${testClassName} instance;
+    <#if phaseCounters>
+    private se.chalmers.ju2jmh.api.PhaseCounters phaseCounters;
+    </#if>
 
-    <#list benchmarks as benchmark>
-    @org.openjdk.jmh.annotations.Benchmark
-    public void benchmark_${benchmark.testName}() throws java.lang.Throwable {
-        <#if !hasRules>
-        this.runBenchmark(this.payloads.${benchmark.testName});
+    <#-- The members for each test are built as ASTs by TailoredBenchmarkFactory: the benchmark
+         methods are inserted after the fields, and the payload fields and assignments are
+         added to the payloads class and makePayloads. -->
+    <#-- Times the nested code as the given phase, unless no counters are given. -->
+    <#macro timed counters phase>
+        <#if counters?has_content>
+        ${counters}.startPhase();
+        <#nested>
+        ${counters}.end${phase}();
         <#else>
-        this.payloads.${benchmark.testName}.evaluate();
+        <#nested>
         </#if>
-    }
-
-    </#list>
-    <#macro classFixture>
-        <#list beforeClassMethods as beforeClass>
-        ${beforeClass.className}.${beforeClass.name}();
-        </#list>
-        <#list afterClassMethods>
+    </#macro>
+    <#macro classFixture counters="">
+        <#if beforeClassMethods?has_content>
+        <@timed counters=counters phase="ClassFixture">
+            <#list beforeClassMethods as beforeClass>
+            ${beforeClass.className}.${beforeClass.name}();
+            </#list>
+        </@timed>
+        </#if>
+        <#if afterClassMethods?has_content>
         try {
             <#nested>
         } finally {
-            <#items as afterClass>
-            ${afterClass.className}.${afterClass.name}();
-            </#items>
+            <@timed counters=counters phase="ClassFixture">
+                <#list afterClassMethods as afterClass>
+                ${afterClass.className}.${afterClass.name}();
+                </#list>
+            </@timed>
         }
         <#else>
             <#nested>
-        </#list>
+        </#if>
     </#macro>
-    <#macro instanceFixture instanceReference>
-        <#list beforeMethods as before>
-        ${instanceReference}.${before.name}();
-        </#list>
-        <#list afterMethods>
+    <#macro instanceFixture instanceReference counters="">
+        <#if beforeMethods?has_content>
+        <@timed counters=counters phase="Fixture">
+            <#list beforeMethods as before>
+            ${instanceReference}.${before.name}();
+            </#list>
+        </@timed>
+        </#if>
+        <#if afterMethods?has_content>
         try {
             <#nested>
         } finally {
-            <#items as after>
-            ${instanceReference}.${after.name}();
-            </#items>
+            <@timed counters=counters phase="Fixture">
+                <#list afterMethods as after>
+                ${instanceReference}.${after.name}();
+                </#list>
+            </@timed>
         }
         <#else>
             <#nested>
-        </#list>
+        </#if>
     </#macro>
-    <#if !hasRules>
+    <#if !hasStatementPayloads && !invocationFixtures>
     private void runBenchmark(se.chalmers.ju2jmh.api.ThrowingConsumer<${testClassName}> payload) throws java.lang.Throwable {
-        <@classFixture>
+        <#assign counters=phaseCounters?then("this.phaseCounters", "")>
+        <#if !trialClassFixtures>
+        <@classFixture counters=counters>
+            <#if !sharedInstance>
+            <@timed counters=counters phase="Creation">
             this.instance = new ${testClassName}();
-            <@instanceFixture instanceReference="this.instance">
+            </@timed>
+            </#if>
+            <@instanceFixture instanceReference="this.instance" counters=counters>
+                <@timed counters=counters phase="Test">
                 payload.accept(this.instance);
+                </@timed>
             </@instanceFixture>
         </@classFixture>
+        <#else>
+        <#if !sharedInstance>
+        <@timed counters=counters phase="Creation">
+        this.instance = new ${testClassName}();
+        </@timed>
+        </#if>
+        <@instanceFixture instanceReference="this.instance" counters=counters>
+            <@timed counters=counters phase="Test">
+            payload.accept(this.instance);
+            </@timed>
+        </@instanceFixture>
+        </#if>
     }
 
     </#if>
@@ -70,8 +107,11 @@ public static class ${className} {
 
         @java.lang.Override
         public void evaluate() throws java.lang.Throwable {
-            <@instanceFixture instanceReference="this.benchmark.instance">
+            <#assign counters=phaseCounters?then("this.benchmark.phaseCounters", "")>
+            <@instanceFixture instanceReference="this.benchmark.instance" counters=counters>
+                <@timed counters=counters phase="Test">
                 this.payload.accept(this.benchmark.instance);
+                </@timed>
             </@instanceFixture>
         }
     }
@@ -99,10 +139,12 @@ public static class ${className} {
             </#if>
         }
 
-        @java.lang.Override
-        public void evaluate() throws java.lang.Throwable {
-            <@classFixture>
+        <#macro instanceStatement counters>
+                <#if !sharedInstance>
+                <@timed counters=counters phase="Creation">
                 this.benchmark.instance = new ${testClassName}();
+                </@timed>
+                </#if>
                 <#list instanceRules>
                 org.junit.runners.model.Statement statement =
                     new ${instanceStatementClassName}(this.payload, this.benchmark);
@@ -117,11 +159,23 @@ public static class ${className} {
                     </#items>
                     statement.evaluate();
                 <#else>
-                    <@instanceFixture instanceReference="this.benchmark.instance">
+                    <@instanceFixture instanceReference="this.benchmark.instance" counters=counters>
+                    <@timed counters=counters phase="Test">
                     this.payload.accept(this.benchmark.instance);
+                    </@timed>
                     </@instanceFixture>
                 </#list>
+        </#macro>
+        @java.lang.Override
+        public void evaluate() throws java.lang.Throwable {
+            <#assign counters=phaseCounters?then("this.benchmark.phaseCounters", "")>
+            <#if !trialClassFixtures>
+            <@classFixture counters=counters>
+                <@instanceStatement counters=counters />
             </@classFixture>
+            <#else>
+                <@instanceStatement counters=counters />
+            </#if>
         }
 
         <#if hasInstanceRules>
@@ -172,7 +226,7 @@ public static class ${className} {
             org.junit.runners.model.Statement statement =
                 new ${classStatementClassName}(
                     payload, benchmark<#if hasInstanceRules>, description, frameworkMethod</#if>);
-            <#if hasClassRules>
+            <#if hasClassRules && !trialClassFixtures>
             statement = new ${applyClassRulesStatementClassName}(statement, description);
             </#if>
             return statement;
@@ -181,32 +235,93 @@ public static class ${className} {
 
     </#if>
     private static class ${payloadsClassName} {
-        <#list benchmarks as benchmark>
-            <#if !hasRules>
-            public se.chalmers.ju2jmh.api.ThrowingConsumer<${testClassName}> ${benchmark.testName};
-            <#else>
-            public org.junit.runners.model.Statement ${benchmark.testName};
-            </#if>
-        </#list>
     }
 
     @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
     public void makePayloads() {
         this.payloads = new ${payloadsClassName}();
-        <#macro payloadReference benchmark>
-            <#if !benchmark.exceptionTest>
-            ${testClassName}::${benchmark.testName}
-            <#else>
-            new se.chalmers.ju2jmh.api.ExceptionTest<>(${testClassName}::${benchmark.testName}, ${benchmark.expectedException}.class)
-            </#if>
-        </#macro>
-        <#list benchmarks as benchmark>
-        this.payloads.${benchmark.testName} =
-            <#if !hasRules>
-            <@payloadReference benchmark />;
-            <#else>
-            ${classStatementClassName}.forPayload(<@payloadReference benchmark />, "${benchmark.testName}", this);
-            </#if>
+    }
+    <#if sharedInstance>
+
+    @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void createSharedInstance() throws java.lang.Throwable {
+        this.instance = new ${testClassName}();
+    }
+    </#if>
+    <#if trialClassFixtures && (hasClassRules || beforeClassMethods?has_content || afterClassMethods?has_content)>
+    <#if hasClassRules>
+    private se.chalmers.ju2jmh.api.TrialClassFixture classFixture;
+
+    </#if>
+    @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUpClassFixture() throws java.lang.Throwable {
+        <#if hasClassRules>
+        org.junit.runner.Description description =
+            org.junit.runner.Description.createSuiteDescription(${testClassName}.class);
+        this.classFixture = se.chalmers.ju2jmh.api.TrialClassFixture.start(
+            trial -> new ${classStatementClassName}.${applyClassRulesStatementClassName}(
+                new org.junit.runners.model.Statement() {
+                    @java.lang.Override
+                    public void evaluate() throws java.lang.Throwable {
+                        <@classFixture>
+                            trial.evaluate();
+                        </@classFixture>
+                    }
+                },
+                description),
+            ${testClassName}.class);
+        <#else>
+        <#list beforeClassMethods as beforeClass>
+        ${beforeClass.className}.${beforeClass.name}();
+        </#list>
+        </#if>
+    }
+
+    @org.openjdk.jmh.annotations.TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDownClassFixture() throws java.lang.Throwable {
+        <#if hasClassRules>
+        this.classFixture.stop();
+        <#else>
+        <#list afterClassMethods as afterClass>
+        ${afterClass.className}.${afterClass.name}();
+        </#list>
+        </#if>
+    }
+    </#if>
+    <#if invocationFixtures>
+
+    @org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void setUpInvocation() throws java.lang.Throwable {
+        <#if !trialClassFixtures>
+        <#list beforeClassMethods as beforeClass>
+        ${beforeClass.className}.${beforeClass.name}();
+        </#list>
+        </#if>
+        <#if !sharedInstance>
+        this.instance = new ${testClassName}();
+        </#if>
+        <#list beforeMethods as before>
+        this.instance.${before.name}();
         </#list>
     }
+
+    @org.openjdk.jmh.annotations.TearDown(org.openjdk.jmh.annotations.Level.Invocation)
+    public void tearDownInvocation() throws java.lang.Throwable {
+        <#if !trialClassFixtures && afterClassMethods?has_content>
+        try {
+            <#list afterMethods as after>
+            this.instance.${after.name}();
+            </#list>
+        } finally {
+            <#list afterClassMethods as afterClass>
+            ${afterClass.className}.${afterClass.name}();
+            </#list>
+        }
+        <#else>
+        <#list afterMethods as after>
+        this.instance.${after.name}();
+        </#list>
+        </#if>
+    }
+    </#if>
 }
@@ -0,0 +1,287 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import se.chalmers.ju2jmh.api.JU2JmhBenchmark;
+import se.chalmers.ju2jmh.api.PhaseCounters;
+import se.chalmers.ju2jmh.testinput.unittests.ExceptionTest;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTestSubclassWithRule;
+import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementationSubclass;
+import se.chalmers.ju2jmh.testinput.unittests.TestInterface;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithConstantFields;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithFixtureMethodsAndRules;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithMethodRule;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithMutableFields;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BytecodeBenchmarkSuiteBuilderTest {
+    private static Map<String, String> buildSuite(Path tempDir, List<Class<?>> testClasses,
+            Class<?>... inputClasses) throws Exception {
+        return buildSuite(tempDir, false, false, false, testClasses, inputClasses);
+    }
+
+    private static Map<String, String> buildSuite(Path tempDir, boolean trialClassFixtures,
+            boolean invocationFixtures, boolean statelessInstanceReuse,
+            List<Class<?>> testClasses, Class<?>... inputClasses) throws Exception {
+        InputClassDirectory input = InputClassDirectory.directoryWithClasses(
+                tempDir.resolve("input"), inputClasses);
+        Path output = Files.createDirectories(tempDir.resolve("output"));
+        InputClassRepository repository = new InputClassRepository(
+                input.sourcesDirectory(), input.bytecodeDirectory());
+        return new BytecodeBenchmarkSuiteBuilder(repository)
+                .withTrialClassFixtures(trialClassFixtures)
+                .withInvocationFixtures(invocationFixtures)
+                .withStatelessInstanceReuse(statelessInstanceReuse)
+                .addTestClasses(testClasses.stream()
+                        .map(Class::getName)
+                        .collect(Collectors.toUnmodifiableList()))
+                .buildSuite(output);
+    }
+
+    private static List<String> readBenchmarkList(Path output) throws IOException {
+        try (InputStream in = Files.newInputStream(output.resolve("META-INF/BenchmarkList"))) {
+            return BenchmarkList.readBenchmarkList(in).stream()
+                    .map(BenchmarkListEntry::getUsername)
+                    .collect(Collectors.toUnmodifiableList());
+        }
+    }
+
+    @Test
+    public void generatesBenchmarkListAndStubs(@TempDir Path tempDir) throws Exception {
+        Map<String, String> benchmarkClassNames = buildSuite(tempDir,
+                List.of(SimpleUnitTest.class, TestImplementationSubclass.class),
+                SimpleUnitTest.class, TestImplementationSubclass.class, TestImplementation.class,
+                TestAbstractClass.class, TestInterface.class);
+        Path output = tempDir.resolve("output");
+
+        String simpleBenchmark = SimpleUnitTest.class.getName() + "_Benchmark";
+        String subclassBenchmark = TestImplementationSubclass.class.getName() + "_Benchmark";
+        assertThat(benchmarkClassNames.get(SimpleUnitTest.class.getName()),
+                equalTo(simpleBenchmark));
+        assertThat(readBenchmarkList(output), containsInAnyOrder(
+                simpleBenchmark + ".benchmark_test",
+                subclassBenchmark + ".benchmark_subclassTest",
+                subclassBenchmark + ".benchmark_implementationTest",
+                subclassBenchmark + ".benchmark_abstractClassTest"));
+        assertTrue(Files.exists(output.resolve(
+                "se/chalmers/ju2jmh/testinput/unittests/jmh_generated/"
+                        + "SimpleUnitTest_Benchmark_benchmark_test_jmhTest.class")));
+    }
+
+    @Test
+    public void generatedBenchmarksRunTests(@TempDir Path tempDir) throws Exception {
+        Map<String, String> benchmarkClassNames = buildSuite(tempDir,
+                List.of(UnitTestWithFixtureMethodsAndRules.class, ExceptionTest.class),
+                UnitTestWithFixtureMethodsAndRules.class, ExceptionTest.class);
+        URL[] urls = {tempDir.resolve("output").toUri().toURL()};
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            for (String benchmarkClassName : benchmarkClassNames.values()) {
+                Class<?> benchmarkClass = classLoader.loadClass(benchmarkClassName);
+                assertTrue(Modifier.isPublic(benchmarkClass.getModifiers()));
+                Object benchmark = benchmarkClass.getConstructor().newInstance();
+                for (Method method : benchmarkClass.getMethods()) {
+                    if (method.isAnnotationPresent(Benchmark.class)) {
+                        method.invoke(benchmark);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void generatedBenchmarksDeclareRulePresence(@TempDir Path tempDir) throws Exception {
+        Map<String, String> benchmarkClassNames = buildSuite(tempDir,
+                List.of(UnitTestWithFixtureMethodsAndRules.class, SimpleUnitTest.class),
+                UnitTestWithFixtureMethodsAndRules.class, SimpleUnitTest.class);
+        URL[] urls = {tempDir.resolve("output").toUri().toURL()};
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            JU2JmhBenchmark rulesBenchmark = (JU2JmhBenchmark) classLoader.loadClass(
+                    benchmarkClassNames.get(UnitTestWithFixtureMethodsAndRules.class.getName()))
+                    .getConstructor()
+                    .newInstance();
+            JU2JmhBenchmark simpleBenchmark = (JU2JmhBenchmark) classLoader.loadClass(
+                    benchmarkClassNames.get(SimpleUnitTest.class.getName()))
+                    .getConstructor()
+                    .newInstance();
+            assertTrue(rulesBenchmark.hasClassRules());
+            assertTrue(rulesBenchmark.hasInstanceRules());
+            assertFalse(simpleBenchmark.hasClassRules());
+            assertFalse(simpleBenchmark.hasInstanceRules());
+        }
+    }
+
+    @Test
+    public void benchmarksWithRulesOverrideRuleFreeSuperclassBenchmarks(@TempDir Path tempDir)
+            throws Exception {
+        Map<String, String> benchmarkClassNames = buildSuite(tempDir,
+                List.of(SimpleUnitTest.class, SimpleUnitTestSubclassWithRule.class),
+                SimpleUnitTest.class, SimpleUnitTestSubclassWithRule.class);
+        URL[] urls = {tempDir.resolve("output").toUri().toURL()};
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            Class<?> benchmarkClass = classLoader.loadClass(
+                    benchmarkClassNames.get(SimpleUnitTestSubclassWithRule.class.getName()));
+            JU2JmhBenchmark benchmark =
+                    (JU2JmhBenchmark) benchmarkClass.getConstructor().newInstance();
+            assertFalse(benchmark.hasClassRules());
+            assertTrue(benchmark.hasInstanceRules());
+            benchmarkClass.getMethod("benchmark_subclassTest").invoke(benchmark);
+        }
+    }
+
+    @Test
+    public void generatedBenchmarksRunClassFixturesInTrialMethods(@TempDir Path tempDir)
+            throws Exception {
+        Map<String, String> benchmarkClassNames = buildSuite(tempDir, true, false, false,
+                List.of(UnitTestWithFixtureMethodsAndRules.class),
+                UnitTestWithFixtureMethodsAndRules.class);
+        URL[] urls = {tempDir.resolve("output").toUri().toURL()};
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            Class<?> benchmarkClass = classLoader.loadClass(
+                    benchmarkClassNames.get(UnitTestWithFixtureMethodsAndRules.class.getName()));
+            Method setUp = benchmarkClass.getMethod("setUpClassFixture");
+            Method tearDown = benchmarkClass.getMethod("tearDownClassFixture");
+            assertThat(setUp.getAnnotation(Setup.class).value(), equalTo(Level.Trial));
+            assertThat(tearDown.getAnnotation(TearDown.class).value(), equalTo(Level.Trial));
+            Object benchmark = benchmarkClass.getConstructor().newInstance();
+            setUp.invoke(benchmark);
+            for (Method method : benchmarkClass.getMethods()) {
+                if (method.isAnnotationPresent(Benchmark.class)) {
+                    method.invoke(benchmark);
+                }
+            }
+            tearDown.invoke(benchmark);
+        }
+    }
+
+    @Test
+    public void generatedBenchmarksRunInstanceFixturesInInvocationMethods(@TempDir Path tempDir)
+            throws Exception {
+        Map<String, String> benchmarkClassNames = buildSuite(tempDir, false, true, false,
+                List.of(UnitTestWithFixtureMethodsAndRules.class),
+                UnitTestWithFixtureMethodsAndRules.class);
+        URL[] urls = {tempDir.resolve("output").toUri().toURL()};
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            Class<?> benchmarkClass = classLoader.loadClass(
+                    benchmarkClassNames.get(UnitTestWithFixtureMethodsAndRules.class.getName()));
+            Method setUp = benchmarkClass.getMethod("setUpInvocation");
+            Method tearDown = benchmarkClass.getMethod("tearDownInvocation");
+            assertThat(setUp.getAnnotation(Setup.class).value(), equalTo(Level.Invocation));
+            assertThat(tearDown.getAnnotation(TearDown.class).value(),
+                    equalTo(Level.Invocation));
+            Object benchmark = benchmarkClass.getConstructor().newInstance();
+            for (Method method : benchmarkClass.getMethods()) {
+                if (method.isAnnotationPresent(Benchmark.class)) {
+                    setUp.invoke(benchmark);
+                    method.invoke(benchmark);
+                    tearDown.invoke(benchmark);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void invocationFixturesApplyMethodRulesToTestMethods(@TempDir Path tempDir)
+            throws Exception {
+        Map<String, String> benchmarkClassNames = buildSuite(tempDir, false, true, false,
+                List.of(UnitTestWithMethodRule.class), UnitTestWithMethodRule.class);
+        URL[] urls = {tempDir.resolve("output").toUri().toURL()};
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            Class<?> benchmarkClass = classLoader.loadClass(
+                    benchmarkClassNames.get(UnitTestWithMethodRule.class.getName()));
+            Object benchmark = benchmarkClass.getConstructor().newInstance();
+            benchmarkClass.getMethod("setUpInvocation").invoke(benchmark);
+            benchmarkClass.getMethod("benchmark_test").invoke(benchmark);
+            benchmarkClass.getMethod("tearDownInvocation").invoke(benchmark);
+        }
+    }
+
+    @Test
+    public void generatedBenchmarksShareStatelessImplementations(@TempDir Path tempDir)
+            throws Exception {
+        Map<String, String> benchmarkClassNames = buildSuite(tempDir, false, false, true,
+                List.of(UnitTestWithConstantFields.class, UnitTestWithMutableFields.class),
+                UnitTestWithConstantFields.class, UnitTestWithMutableFields.class);
+        URL[] urls = {tempDir.resolve("output").toUri().toURL()};
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            Class<?> sharingClass = classLoader.loadClass(
+                    benchmarkClassNames.get(UnitTestWithConstantFields.class.getName()));
+            Method createShared = sharingClass.getMethod("createSharedImplementation");
+            assertThat(createShared.getAnnotation(Setup.class).value(), equalTo(Level.Trial));
+            Object benchmark = sharingClass.getConstructor().newInstance();
+            createShared.invoke(benchmark);
+            Method implementation = sharingClass.getMethod("implementation");
+            Object sharedImplementation = implementation.invoke(benchmark);
+            for (Method method : sharingClass.getMethods()) {
+                if (method.isAnnotationPresent(Benchmark.class)) {
+                    method.invoke(benchmark);
+                    assertThat(implementation.invoke(benchmark),
+                            sameInstance(sharedImplementation));
+                }
+            }
+            Class<?> nonSharingClass = classLoader.loadClass(
+                    benchmarkClassNames.get(UnitTestWithMutableFields.class.getName()));
+            assertThrows(NoSuchMethodException.class,
+                    () -> nonSharingClass.getMethod("createSharedImplementation"));
+        }
+    }
+
+    @Test
+    public void generatedBenchmarksReportPhaseCounters(@TempDir Path tempDir) throws Exception {
+        InputClassDirectory input = InputClassDirectory.directoryWithClasses(
+                tempDir.resolve("input"), UnitTestWithFixtureMethodsAndRules.class);
+        Path output = Files.createDirectories(tempDir.resolve("output"));
+        Map<String, String> benchmarkClassNames = new BytecodeBenchmarkSuiteBuilder(
+                new InputClassRepository(input.sourcesDirectory(), input.bytecodeDirectory()))
+                .withPhaseCounters(true)
+                .addTestClass(UnitTestWithFixtureMethodsAndRules.class.getName())
+                .buildSuite(output);
+        URL[] urls = {output.toUri().toURL()};
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            Class<?> benchmarkClass = classLoader.loadClass(
+                    benchmarkClassNames.get(UnitTestWithFixtureMethodsAndRules.class.getName()));
+            Object benchmark = benchmarkClass.getConstructor().newInstance();
+            PhaseCounters counters = new PhaseCounters();
+            benchmarkClass.getMethod("benchmark_test", PhaseCounters.class)
+                    .invoke(benchmark, counters);
+            assertThat(counters.invocations, equalTo(1L));
+            assertTrue(counters.testNanos > 0);
+            assertTrue(counters.fixtureNanos > 0);
+        }
+    }
+}
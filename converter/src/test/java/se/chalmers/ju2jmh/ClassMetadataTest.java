@@ -0,0 +1,183 @@
+package se.chalmers.ju2jmh;
+
+import org.apache.bcel.classfile.AccessFlags;
+import org.apache.bcel.classfile.AnnotationEntry;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.FieldOrMethod;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.jupiter.api.Test;
+import se.chalmers.ju2jmh.model.UnitTestClass;
+import se.chalmers.ju2jmh.testinput.NestedClasses;
+import se.chalmers.ju2jmh.testinput.SimpleClass;
+import se.chalmers.ju2jmh.testinput.SimpleClassWithInterfaces;
+import se.chalmers.ju2jmh.testinput.SimpleInterface1;
+import se.chalmers.ju2jmh.testinput.SimpleSubclass;
+import se.chalmers.ju2jmh.testinput.unittests.ClassWithNestedTests;
+import se.chalmers.ju2jmh.testinput.unittests.ClassWithOnlyFixtureMethods;
+import se.chalmers.ju2jmh.testinput.unittests.ExceptionTest;
+import se.chalmers.ju2jmh.testinput.unittests.IgnoredUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.NoExceptionTest;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
+import se.chalmers.ju2jmh.testinput.unittests.TestInterface;
+import se.chalmers.ju2jmh.testinput.unittests.TestSubclassWithoutOwnTests;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithFixtureMethodsAndRules;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClassMetadataTest {
+    private static byte[] bytecode(Class<?> clazz) throws IOException {
+        String resource = clazz.getName().replace('.', '/') + ".class";
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(resource)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static boolean isJUnitAnnotation(AnnotationEntry annotation,
+            Class<? extends Annotation> annotationClass) {
+        return Bytecode.annotationTypeName(annotationClass)
+                .equals(annotation.getAnnotationType());
+    }
+
+    @SafeVarargs
+    private static boolean isAnnotated(FieldOrMethod member,
+            Class<? extends Annotation>... annotationClasses) {
+        for (AnnotationEntry annotation : member.getAnnotationEntries()) {
+            for (Class<? extends Annotation> annotationClass : annotationClasses) {
+                if (isJUnitAnnotation(annotation, annotationClass)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Summarizes a class from its full BCEL model, as an oracle for summaries of class metadata.
+     */
+    private static ClassSummary summaryOfFullBytecode(JavaClass bytecode) {
+        UnitTestClass.Builder builder = UnitTestClass.Builder.forClass(bytecode.getClassName());
+        for (Method method : bytecode.getMethods()) {
+            if (method.getArgumentTypes().length > 0) {
+                continue;
+            }
+            for (AnnotationEntry annotation : method.getAnnotationEntries()) {
+                String name = method.getName();
+                if (isJUnitAnnotation(annotation, org.junit.Test.class)) {
+                    if (isAnnotated(method, Ignore.class)) {
+                        continue;
+                    }
+                    Optional<String> expected = Arrays.stream(annotation.getElementValuePairs())
+                            .filter(evp -> evp.getNameString().equals("expected"))
+                            .map(evp -> evp.getValue().stringifyValue())
+                            .map(Bytecode::referenceFieldTypeDescriptorToClassName)
+                            .filter(Predicate.not(
+                                    Predicate.isEqual(org.junit.Test.None.class.getName())))
+                            .findFirst();
+                    if (expected.isEmpty()) {
+                        builder.withTest(name);
+                    } else {
+                        builder.withExceptionTest(name, expected.get());
+                    }
+                } else if (isJUnitAnnotation(annotation, Before.class)) {
+                    builder.withBefore(name);
+                } else if (isJUnitAnnotation(annotation, After.class)) {
+                    builder.withAfter(name);
+                } else if (isJUnitAnnotation(annotation, BeforeClass.class)) {
+                    builder.withBeforeClass(name);
+                } else if (isJUnitAnnotation(annotation, AfterClass.class)) {
+                    builder.withAfterClass(name);
+                } else if (isJUnitAnnotation(annotation, Rule.class)) {
+                    builder.withInstanceRuleMethod(name);
+                } else if (isJUnitAnnotation(annotation, ClassRule.class)) {
+                    builder.withClassRuleMethod(name);
+                }
+            }
+        }
+        for (Field field : bytecode.getFields()) {
+            if (isAnnotated(field, Rule.class)) {
+                builder.withInstanceRuleField(field.getName());
+            } else if (isAnnotated(field, ClassRule.class)) {
+                builder.withClassRuleField(field.getName());
+            }
+        }
+        boolean isTestClass = !bytecode.isInterface() && !bytecode.isEnum()
+                && !bytecode.isAnnotation()
+                && (Arrays.stream(bytecode.getMethods())
+                        .filter(m -> m.isPublic() && m.getArgumentTypes().length == 0)
+                        .anyMatch(m -> isAnnotated(m, org.junit.Test.class, Before.class,
+                                After.class, BeforeClass.class, AfterClass.class, Rule.class,
+                                ClassRule.class))
+                || Arrays.stream(bytecode.getFields())
+                        .filter(AccessFlags::isPublic)
+                        .anyMatch(f -> isAnnotated(f, Rule.class, ClassRule.class)));
+        return new ClassSummary(bytecode.getSuperclassName(), bytecode.isAbstract(), isTestClass,
+                builder.build());
+    }
+
+    @Test
+    public void summariesMatchSummariesOfFullBytecode() throws IOException {
+        List<Class<?>> classes = List.of(SimpleClass.class, SimpleSubclass.class,
+                SimpleClassWithInterfaces.class, SimpleInterface1.class, NestedClasses.class,
+                ClassWithNestedTests.class, ClassWithNestedTests.Nested.class,
+                ClassWithOnlyFixtureMethods.class, ExceptionTest.class, IgnoredUnitTest.class,
+                NoExceptionTest.class, SimpleUnitTest.class, TestAbstractClass.class,
+                TestImplementation.class, TestInterface.class, TestSubclassWithoutOwnTests.class,
+                UnitTestWithFixtureMethodsAndRules.class);
+        for (Class<?> clazz : classes) {
+            byte[] bytecode = bytecode(clazz);
+            ClassSummary expected = summaryOfFullBytecode(
+                    new ClassParser(new ByteArrayInputStream(bytecode), clazz.getName()).parse());
+
+            ClassSummary summary = ClassSummary.of(ClassMetadata.read(bytecode));
+
+            assertEquals(expected, summary, clazz.getName());
+        }
+    }
+
+    @Test
+    public void skipsMembersOfClassesNotReferencingJUnit() throws IOException {
+        ClassMetadata metadata = ClassMetadata.read(bytecode(SimpleSubclass.class));
+
+        assertThat(metadata.name(), equalTo(SimpleSubclass.class.getName()));
+        assertThat(metadata.superclassName(),
+                equalTo(SimpleSubclass.class.getSuperclass().getName()));
+        assertThat(metadata.fields(), is(empty()));
+        assertThat(metadata.methods(), is(empty()));
+    }
+
+    @Test
+    public void rejectsMalformedClassFiles() throws IOException {
+        byte[] bytecode = bytecode(SimpleUnitTest.class);
+        byte[] truncated = Arrays.copyOf(bytecode, bytecode.length / 2);
+        byte[] notClassFile = Arrays.copyOf(bytecode, bytecode.length);
+        notClassFile[0] = 0;
+
+        assertThrows(IOException.class, () -> ClassMetadata.read(truncated));
+        assertThrows(IOException.class, () -> ClassMetadata.read(notClassFile));
+    }
+}
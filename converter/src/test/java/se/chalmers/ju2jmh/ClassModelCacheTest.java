@@ -0,0 +1,152 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.chalmers.ju2jmh.model.UnitTestClass;
+import se.chalmers.ju2jmh.testinput.unittests.ExceptionTest;
+import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithFixtureMethodsAndRules;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassModelCacheTest {
+    private InputClassDirectory inputClassDirectory;
+    private Path cacheDirectory;
+
+    @BeforeEach
+    public void setUpDirectories(@TempDir Path tempDir) {
+        inputClassDirectory = new InputClassDirectory(tempDir.resolve("input"));
+        cacheDirectory = tempDir.resolve("cache");
+    }
+
+    private InputClassRepository makeRepository(ClassModelCache cache) {
+        return new InputClassRepository(
+                List.of(inputClassDirectory.sourcesDirectory()),
+                List.of(inputClassDirectory.bytecodeDirectory()),
+                cache);
+    }
+
+    private String key(Class<?> clazz) throws IOException {
+        Path bytecodeFile = inputClassDirectory.bytecodeDirectory()
+                .resolve(clazz.getName().replace('.', '/') + ".class");
+        Path sourceFile = inputClassDirectory.sourcesDirectory()
+                .resolve(clazz.getName().replace('.', '/') + ".java");
+        return ClassModelCache.key(clazz.getName(), Files.readAllBytes(bytecodeFile),
+                Files.readAllBytes(sourceFile));
+    }
+
+    @Test
+    public void loadsStoredSummaries() throws IOException, ClassNotFoundException {
+        Class<?>[] classes = new Class<?>[] {
+                UnitTestWithFixtureMethodsAndRules.class, ExceptionTest.class,
+                TestAbstractClass.class
+        };
+        for (Class<?> clazz : classes) {
+            inputClassDirectory.add(clazz);
+        }
+        InputClassRepository repository = makeRepository(null);
+        ClassModelCache cache = new ClassModelCache(cacheDirectory);
+        for (Class<?> clazz : classes) {
+            ClassSummary summary = repository.findSummary(clazz.getName());
+            cache.store(key(clazz), summary);
+
+            Optional<ClassSummary> loaded = cache.load(key(clazz));
+
+            assertEquals(Optional.of(summary), loaded);
+        }
+    }
+
+    @Test
+    public void treatsAbsentEntryAsMiss() throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(ExceptionTest.class);
+        ClassModelCache cache = new ClassModelCache(cacheDirectory);
+
+        assertEquals(Optional.empty(), cache.load(key(ExceptionTest.class)));
+    }
+
+    @Test
+    public void treatsCorruptEntryAsMiss() throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(ExceptionTest.class);
+        ClassModelCache cache = new ClassModelCache(cacheDirectory);
+        String key = key(ExceptionTest.class);
+        Path entryFile = cacheDirectory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+        Files.createDirectories(entryFile.getParent());
+        Files.writeString(entryFile, ClassModelCache.HEADER + "\nname");
+
+        assertEquals(Optional.empty(), cache.load(key));
+    }
+
+    @Test
+    public void treatsEntryOfOtherFormatVersionAsMiss()
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(ExceptionTest.class);
+        ClassModelCache cache = new ClassModelCache(cacheDirectory);
+        String key = key(ExceptionTest.class);
+        Path entryFile = cacheDirectory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+        Files.createDirectories(entryFile.getParent());
+        Files.writeString(entryFile, String.join("\n",
+                "ju2jmh-class-summary " + (ClassModelCache.FORMAT_VERSION - 1),
+                "name " + ExceptionTest.class.getName(),
+                "superclass " + Object.class.getName(),
+                "abstract false",
+                "test-class true",
+                "end"));
+
+        assertEquals(Optional.empty(), cache.load(key));
+    }
+
+    @Test
+    public void repositoryReusesSummariesFromEarlierRuns()
+            throws IOException, ClassNotFoundException {
+        Class<?> testClass = UnitTestWithFixtureMethodsAndRules.class;
+        inputClassDirectory.add(testClass);
+        ClassSummary expected = makeRepository(null).findSummary(testClass.getName());
+
+        ClassModelCache cache = new ClassModelCache(cacheDirectory);
+        ClassSummary cold = makeRepository(cache).findSummary(testClass.getName());
+        ClassSummary warm = makeRepository(cache).findSummary(testClass.getName());
+
+        assertEquals(expected, cold);
+        assertEquals(expected, warm);
+    }
+
+    @Test
+    public void repositoryReadsSummaryFromCache() throws IOException, ClassNotFoundException {
+        Class<?> testClass = ExceptionTest.class;
+        inputClassDirectory.add(testClass);
+        ClassModelCache cache = new ClassModelCache(cacheDirectory);
+        ClassSummary stored = new ClassSummary(Object.class.getName(), false, true,
+                UnitTestClass.Builder.forClass(testClass.getName()).withTest("cached").build());
+        cache.store(key(testClass), stored);
+
+        UnitTestClass actual =
+                new UnitTestClassRepository(makeRepository(cache)).findClass(testClass.getName());
+
+        assertEquals(stored.declaredMembers(), actual);
+    }
+
+    @Test
+    public void repositoryIgnoresSummaryOfModifiedClass()
+            throws IOException, ClassNotFoundException {
+        Class<?> testClass = ExceptionTest.class;
+        inputClassDirectory.add(testClass);
+        ClassModelCache cache = new ClassModelCache(cacheDirectory);
+        ClassSummary expected = makeRepository(cache).findSummary(testClass.getName());
+        Path sourceFile = inputClassDirectory.sourcesDirectory()
+                .resolve(testClass.getName().replace('.', '/') + ".java");
+        Files.writeString(sourceFile, Files.readString(sourceFile) + "\n");
+        String key = key(testClass);
+
+        assertTrue(cache.load(key).isEmpty());
+        assertEquals(expected, makeRepository(cache).findSummary(testClass.getName()));
+        assertEquals(Optional.of(expected), cache.load(key));
+    }
+}
@@ -0,0 +1,59 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversionExecutorTest {
+    private static final List<Integer> INPUTS =
+            IntStream.range(0, 100).boxed().collect(Collectors.toUnmodifiableList());
+
+    @Test
+    public void singleThreadIsSequential() {
+        assertSame(ConversionExecutor.sequential(), ConversionExecutor.withThreads(1));
+        assertFalse(ConversionExecutor.withThreads(1).isParallel());
+    }
+
+    @Test
+    public void rejectsNonPositiveThreadCount() {
+        assertThrows(IllegalArgumentException.class, () -> ConversionExecutor.withThreads(0));
+    }
+
+    @Test
+    public void preservesInputOrder() throws Exception {
+        List<Integer> expected = INPUTS.stream().map(i -> i * 2)
+                .collect(Collectors.toUnmodifiableList());
+        try (ConversionExecutor executor = ConversionExecutor.withThreads(4)) {
+            assertTrue(executor.isParallel());
+
+            List<Integer> actual = executor.map(INPUTS, i -> i * 2);
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void throwsExceptionOfFirstFailingTask() {
+        try (ConversionExecutor executor = ConversionExecutor.withThreads(4)) {
+            ClassNotFoundException e = assertThrows(ClassNotFoundException.class,
+                    () -> executor.forEach(INPUTS, i -> {
+                        if (i == 10) {
+                            throw new ClassNotFoundException("10");
+                        } else if (i > 10) {
+                            throw new IOException(Integer.toString(i));
+                        }
+                    }));
+
+            assertEquals("10", e.getMessage());
+        }
+    }
+}
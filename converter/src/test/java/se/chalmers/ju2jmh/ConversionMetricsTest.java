@@ -0,0 +1,122 @@
+package se.chalmers.ju2jmh;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+
+public class ConversionMetricsTest {
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void countsNestedPhasesOnlyTowardsNestedPhase() {
+        ConversionMetrics metrics = new ConversionMetrics();
+
+        try (ConversionMetrics.Measurement outer =
+                     metrics.measure(ConversionMetrics.Phase.AST_TRANSFORMATION, "a.A")) {
+            try (ConversionMetrics.Measurement inner =
+                         metrics.measure(ConversionMetrics.Phase.BYTECODE_PARSING, "a.B")) {
+                sleep(20);
+            }
+        }
+
+        long parsingNanos = metrics.nanos(ConversionMetrics.Phase.BYTECODE_PARSING);
+        assertThat(parsingNanos, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20)));
+        assertThat(metrics.nanos(ConversionMetrics.Phase.AST_TRANSFORMATION),
+                lessThan(parsingNanos));
+        assertThat(metrics.measurements(ConversionMetrics.Phase.BYTECODE_PARSING), equalTo(1L));
+        assertThat(metrics.measurements(ConversionMetrics.Phase.AST_TRANSFORMATION), equalTo(1L));
+        assertThat(metrics.slowestClasses(1), equalTo(List.of("a.B")));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void reportsCountersAndSlowestClassesAsJson() {
+        ConversionMetrics metrics = new ConversionMetrics();
+        try (ConversionMetrics.Measurement m =
+                     metrics.measure(ConversionMetrics.Phase.PRETTY_PRINTING, "a.Slow")) {
+            sleep(10);
+        }
+        try (ConversionMetrics.Measurement m =
+                     metrics.measure(ConversionMetrics.Phase.PRETTY_PRINTING, "a.Fast")) {
+            // Nothing to do.
+        }
+        metrics.increment(ConversionMetrics.Counter.FILES_WRITTEN);
+        metrics.add(ConversionMetrics.Counter.BYTES_WRITTEN, 42);
+
+        String json = metrics.toJson();
+
+        assertThat(metrics.slowestClasses(10), equalTo(List.of("a.Slow", "a.Fast")));
+        assertThat(json, containsString("\"files_written\": 1"));
+        assertThat(json, containsString("\"bytes_written\": 42"));
+        assertThat(json, containsString("\"pretty_printing\": {\"nanos\": "));
+        assertThat(json, containsString("{\"class\": \"a.Slow\", \"nanos\": "));
+    }
+
+    @Test
+    public void repositoryRecordsLoadedAndParsedClasses(@TempDir Path tempDir)
+            throws IOException, ClassNotFoundException {
+        InputClassDirectory inputClassDirectory = InputClassDirectory.directoryWithClasses(
+                tempDir, SimpleUnitTest.class, TestImplementation.class);
+        ConversionMetrics metrics = new ConversionMetrics();
+        InputClassRepository repository = new InputClassRepository(
+                List.of(inputClassDirectory.sourcesDirectory()),
+                List.of(inputClassDirectory.bytecodeDirectory()), null, metrics);
+
+        InputClass inputClass = repository.findClass(SimpleUnitTest.class.getName());
+        inputClass.getSource();
+        inputClass.getSource();
+        inputClass.getBytecodeView();
+        repository.findSummary(TestImplementation.class.getName());
+
+        assertThat(metrics.count(ConversionMetrics.Counter.CLASSES_LOADED), equalTo(1L));
+        // Each copy of the source is parsed separately.
+        assertThat(metrics.measurements(ConversionMetrics.Phase.SOURCE_PARSING), equalTo(2L));
+        assertThat(metrics.measurements(ConversionMetrics.Phase.BYTECODE_PARSING), equalTo(2L));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void recordsPhasesAsFlightRecorderEvents(@TempDir Path tempDir) throws IOException {
+        ConversionMetrics metrics = new ConversionMetrics();
+        Path recordingFile = tempDir.resolve("recording.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("se.chalmers.ju2jmh.ConversionPhase");
+            recording.start();
+            try (ConversionMetrics.Measurement m =
+                         metrics.measure(ConversionMetrics.Phase.SOURCE_PARSING, "a.A")) {
+                // Nothing to do.
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        assertThat(events, hasSize(1));
+        assertThat(events.get(0).getString("phase"), equalTo("SOURCE_PARSING"));
+        assertThat(events.get(0).getString("className"), equalTo("a.A"));
+    }
+}
@@ -0,0 +1,127 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
+import se.chalmers.ju2jmh.testinput.unittests.TestInterface;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class ConverterDaemonTest {
+    private static Map<Path, String> readTree(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            Map<Path, String> contents = new TreeMap<>();
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                contents.put(directory.relativize(file), Files.readString(file));
+            }
+            return contents;
+        }
+    }
+
+    private static List<String> arguments(InputClassDirectory input, Path outputDirectory) {
+        return List.of(input.sourcesDirectory().toString(), input.bytecodeDirectory().toString(),
+                outputDirectory.toString(), SimpleUnitTest.class.getName(),
+                TestImplementation.class.getName(), "--tailored-benchmark");
+    }
+
+    private static Optional<Integer> convertWithDaemon(Path stateFile, List<String> arguments)
+            throws IOException {
+        return ConverterDaemon.convert(stateFile, arguments, new PrintWriter(new StringWriter()));
+    }
+
+    private static Thread startDaemon(ConverterDaemon converterDaemon, Path stateFile)
+            throws InterruptedException {
+        Thread daemon = new Thread(() -> new CommandLine(converterDaemon)
+                .execute("--state-file=" + stateFile));
+        daemon.start();
+        while (!Files.exists(stateFile)) {
+            Thread.sleep(10);
+        }
+        return daemon;
+    }
+
+    @Test
+    public void daemonGeneratesSameBenchmarksAsConverter(@TempDir Path tempDir)
+            throws IOException, ClassNotFoundException, InterruptedException {
+        InputClassDirectory input = InputClassDirectory.directoryWithClasses(
+                tempDir.resolve("input"), SimpleUnitTest.class, TestImplementation.class,
+                TestAbstractClass.class, TestInterface.class);
+        Path expectedOutput = Files.createDirectories(tempDir.resolve("expected"));
+        Path firstOutput = Files.createDirectories(tempDir.resolve("first"));
+        Path secondOutput = Files.createDirectories(tempDir.resolve("second"));
+        Path stateFile = tempDir.resolve("daemon-state");
+        new CommandLine(new Converter())
+                .execute(arguments(input, expectedOutput).toArray(String[]::new));
+
+        Thread daemon = startDaemon(new ConverterDaemon(), stateFile);
+        Optional<Integer> firstExitCode =
+                convertWithDaemon(stateFile, arguments(input, firstOutput));
+        Optional<Integer> secondExitCode =
+                convertWithDaemon(stateFile, arguments(input, secondOutput));
+        int stopExitCode =
+                new CommandLine(new ConverterDaemon()).execute("--state-file=" + stateFile, "--stop");
+        daemon.join();
+
+        assertThat(firstExitCode, equalTo(Optional.of(CommandLine.ExitCode.OK)));
+        assertThat(secondExitCode, equalTo(Optional.of(CommandLine.ExitCode.OK)));
+        assertThat(stopExitCode, equalTo(CommandLine.ExitCode.OK));
+        assertEquals(readTree(expectedOutput), readTree(firstOutput));
+        assertEquals(readTree(expectedOutput), readTree(secondOutput));
+        assertFalse(Files.exists(stateFile));
+    }
+
+    @Test
+    public void disconnectsStalledClients(@TempDir Path tempDir)
+            throws IOException, ClassNotFoundException, InterruptedException {
+        InputClassDirectory input = InputClassDirectory.directoryWithClasses(
+                tempDir.resolve("input"), SimpleUnitTest.class, TestImplementation.class,
+                TestAbstractClass.class, TestInterface.class);
+        Path output = Files.createDirectories(tempDir.resolve("output"));
+        Path stateFile = tempDir.resolve("daemon-state");
+        Thread daemon = startDaemon(new ConverterDaemon(100), stateFile);
+        int port = Integer.parseInt(Files.readAllLines(stateFile).get(0));
+
+        Socket stalledClient = new Socket(InetAddress.getLoopbackAddress(), port);
+        Optional<Integer> exitCode;
+        try {
+            exitCode = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                    () -> convertWithDaemon(stateFile, arguments(input, output)));
+        } finally {
+            stalledClient.close();
+        }
+        new CommandLine(new ConverterDaemon()).execute("--state-file=" + stateFile, "--stop");
+        daemon.join();
+
+        assertThat(exitCode, equalTo(Optional.of(CommandLine.ExitCode.OK)));
+    }
+
+    @Test
+    public void reportsMissingDaemon(@TempDir Path tempDir) throws IOException {
+        Optional<Integer> exitCode =
+                convertWithDaemon(tempDir.resolve("daemon-state"), List.of());
+
+        assertThat(exitCode, equalTo(Optional.empty()));
+    }
+}
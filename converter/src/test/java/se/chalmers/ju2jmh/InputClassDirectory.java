@@ -5,7 +5,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public final class InputClassDirectory {
     private final Path sourcesDirectory;
@@ -64,6 +70,32 @@ public final class InputClassDirectory {
         copyResourceToFile(clazz.getClassLoader(), bytecodeResourceName(clazz), bytecodeDirectory);
     }
 
+    private static Path writeArchive(Path directory, Path archive) throws IOException {
+        Files.createDirectories(archive.getParent());
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (Path file : files) {
+                String entryName = directory.relativize(file).toString()
+                        .replace(File.separatorChar, '/');
+                out.putNextEntry(new ZipEntry(entryName));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        }
+        return archive;
+    }
+
+    public Path writeSourcesArchive(Path archive) throws IOException {
+        return writeArchive(sourcesDirectory, archive);
+    }
+
+    public Path writeBytecodeArchive(Path archive) throws IOException {
+        return writeArchive(bytecodeDirectory, archive);
+    }
+
     public Path sourcesDirectory() {
         return sourcesDirectory;
     }
@@ -1,5 +1,6 @@
 package se.chalmers.ju2jmh;
 
+import com.github.javaparser.ParseProblemException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -12,8 +13,16 @@ import se.chalmers.ju2jmh.testinput.SimpleSubclass;
 import se.chalmers.ju2jmh.testinput.SimpleSuperclass;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
@@ -59,6 +68,46 @@ public class InputClassRepositoryTest {
                 () -> repository.findClass(SimpleClass.class.getName()));
     }
 
+    @Test
+    public void findsClassWithAbsentSourceInBytecodeOnlyRepository()
+            throws IOException, ClassNotFoundException {
+        InputClassRepository repository = new InputClassRepository(
+                List.of(), List.of(inputClassDirectory.bytecodeDirectory()));
+        inputClassDirectory.addBytecode(SimpleSubclass.class);
+        InputClass subclass = repository.findClass(SimpleSubclass.class.getName());
+        assertTrue(repository.isBytecodeOnly());
+        assertEquals(SimpleSuperclass.class.getName(), subclass.getSuperclassName());
+        assertEquals(SimpleSuperclass.class.getName(),
+                repository.findSummary(SimpleSubclass.class.getName()).superclassName());
+        assertThrows(IllegalStateException.class, subclass::getSourceView);
+    }
+
+    @Test
+    public void sharesClassesLoadedFromSameFiles(@TempDir Path tempDir)
+            throws IOException, ClassNotFoundException {
+        makeRepository(SimpleSubclass.class, SimpleSuperclass.class);
+        InputClassDirectory other = InputClassDirectory.directoryWithClasses(
+                tempDir.resolve("other"), SimpleSuperclass.class);
+        List<Path> sourcePath = List.of(inputClassDirectory.sourcesDirectory());
+        List<Path> classPath = List.of(inputClassDirectory.bytecodeDirectory());
+        try (SharedInputCache sharedCache = new SharedInputCache()) {
+            InputClassRepository first = new InputClassRepository(
+                    sourcePath, classPath, null, new ConversionMetrics(), sharedCache);
+            InputClassRepository second = new InputClassRepository(
+                    sourcePath, classPath, null, new ConversionMetrics(), sharedCache);
+            InputClassRepository third = new InputClassRepository(
+                    List.of(other.sourcesDirectory()), List.of(other.bytecodeDirectory()), null,
+                    new ConversionMetrics(), sharedCache);
+
+            assertSame(first.findClass(SimpleSubclass.class.getName()),
+                    second.findClass(SimpleSubclass.class.getName()));
+            assertSame(first.findIdentifierIndex(SimpleSubclass.class.getName()),
+                    second.findIdentifierIndex(SimpleSubclass.class.getName()));
+            assertNotSame(first.findClass(SimpleSuperclass.class.getName()),
+                    third.findClass(SimpleSuperclass.class.getName()));
+        }
+    }
+
     @Test
     public void failsToFindClassWithAbsentBytecode() throws IOException, ClassNotFoundException {
         InputClassRepository repository = makeRepository();
@@ -67,6 +116,19 @@ public class InputClassRepositoryTest {
                 () -> repository.findClass(SimpleClass.class.getName()));
     }
 
+    @Test
+    public void parsesSourceOnlyWhenRequested() throws IOException, ClassNotFoundException {
+        InputClassRepository repository = makeRepository(SimpleSubclass.class);
+        Path sourceFile = inputClassDirectory.sourcesDirectory()
+                .resolve(SimpleSubclass.class.getName().replace('.', '/') + ".java");
+        Files.writeString(sourceFile, "not Java source");
+
+        InputClass subclass = repository.findClass(SimpleSubclass.class.getName());
+
+        assertEquals(SimpleSuperclass.class.getName(), subclass.getSuperclassName());
+        assertThrows(ParseProblemException.class, subclass::getSource);
+    }
+
     @Test
     public void returnsSameObject() throws IOException, ClassNotFoundException {
         InputClassRepository repository = makeRepository(SimpleClass.class);
@@ -75,6 +137,107 @@ public class InputClassRepositoryTest {
         assertSame(first, second);
     }
 
+    @Test
+    public void returnsSharedViewsAndSeparateCopies() throws IOException, ClassNotFoundException {
+        InputClassRepository repository = makeRepository(NestedClasses.class);
+        InputClass inputClass = repository.findClass(NestedClasses.class.getName());
+
+        assertSame(inputClass.getSourceView(), inputClass.getSourceView());
+        assertSame(inputClass.getBytecodeView(), inputClass.getBytecodeView());
+        assertNotSame(inputClass.getSourceView(), inputClass.getSource());
+        assertNotSame(inputClass.getBytecodeView(), inputClass.getBytecode());
+        assertEquals(inputClass.getSourceView(), inputClass.getSource());
+        assertEquals(inputClass.getBytecodeView().getClassName(),
+                inputClass.getBytecode().getClassName());
+    }
+
+    @Test
+    public void returnsSameObjectWhenLoadedConcurrently() throws Exception {
+        InputClassRepository repository = makeRepository(SimpleClass.class);
+        Callable<InputClass> findClass = () -> repository.findClass(SimpleClass.class.getName());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<InputClass> inputClasses;
+        try {
+            List<Future<InputClass>> futures = executor.invokeAll(IntStream.range(0, 32)
+                    .mapToObj(i -> findClass)
+                    .collect(Collectors.toUnmodifiableList()));
+            inputClasses = futures.stream().map(f -> {
+                try {
+                    return f.get();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }).collect(Collectors.toUnmodifiableList());
+        } finally {
+            executor.shutdown();
+        }
+
+        for (InputClass inputClass : inputClasses) {
+            assertSame(inputClasses.get(0), inputClass);
+        }
+    }
+
+    @Test
+    public void answersLookupsFromIndexBuiltOnFirstLookup()
+            throws IOException, ClassNotFoundException {
+        InputClassRepository repository = makeRepository(SimpleSubclass.class);
+        repository.findClass(SimpleSubclass.class.getName());
+        inputClassDirectory.add(SimpleClass.class);
+        assertThrows(ClassNotFoundException.class,
+                () -> repository.findClass(SimpleClass.class.getName()));
+
+        InputClass simpleClass = makeRepository().findClass(SimpleClass.class.getName());
+
+        assertEquals(SimpleClass.class.getName(), simpleClass.getName());
+    }
+
+    @Test
+    public void prefersClassesInEarlierRoots(@TempDir Path tempDir)
+            throws IOException, ClassNotFoundException {
+        InputClassDirectory first = new InputClassDirectory(tempDir.resolve("first"));
+        first.addSource(SimpleSubclass.class);
+        first.addBytecode(SimpleSuperclass.class);
+        inputClassDirectory.add(SimpleSubclass.class);
+        InputClassRepository repository = new InputClassRepository(
+                List.of(first.sourcesDirectory(), inputClassDirectory.sourcesDirectory()),
+                List.of(first.bytecodeDirectory(), inputClassDirectory.bytecodeDirectory()));
+        Path firstSource = first.sourcesDirectory()
+                .resolve(SimpleSubclass.class.getName().replace('.', '/') + ".java");
+        Files.writeString(firstSource, Files.readString(firstSource) + "\n");
+        String expected = ClassModelCache.key(SimpleSubclass.class.getName(),
+                Files.readAllBytes(inputClassDirectory.bytecodeDirectory()
+                        .resolve(SimpleSubclass.class.getName().replace('.', '/') + ".class")),
+                Files.readAllBytes(firstSource));
+
+        assertEquals(expected, repository.contentHash(SimpleSubclass.class.getName()));
+    }
+
+    @Test
+    public void findsClassesInDirectoriesWithSymbolicLinkLoops()
+            throws IOException, ClassNotFoundException {
+        InputClassRepository repository = makeRepository(SimpleClass.class);
+        Path packageDirectory = inputClassDirectory.bytecodeDirectory()
+                .resolve(SimpleClass.class.getPackageName().replace('.', '/'));
+        Files.createSymbolicLink(packageDirectory.resolve("loop1"), packageDirectory);
+        Files.createSymbolicLink(packageDirectory.resolve("loop2"), packageDirectory);
+
+        InputClass simpleClass = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> repository.findClass(SimpleClass.class.getName()));
+
+        assertEquals(SimpleClass.class.getName(), simpleClass.getName());
+    }
+
+    @Test
+    public void contentHashIsComputedOncePerClass() throws IOException, ClassNotFoundException {
+        InputClassRepository repository = makeRepository(SimpleSubclass.class);
+        String hash = repository.contentHash(SimpleSubclass.class.getName());
+        Path sourceFile = inputClassDirectory.sourcesDirectory()
+                .resolve(SimpleSubclass.class.getName().replace('.', '/') + ".java");
+        Files.writeString(sourceFile, Files.readString(sourceFile) + "\n");
+
+        assertEquals(hash, repository.contentHash(SimpleSubclass.class.getName()));
+    }
+
     @Test
     public void findsPresentSuperclassName() throws IOException, ClassNotFoundException {
         InputClassRepository repository =
@@ -133,4 +296,57 @@ public class InputClassRepositoryTest {
         assertThat(interfaceNames, containsInAnyOrder(
                 SimpleInterface1.class.getName(), SimpleInterface2.class.getName()));
     }
+
+    @Test
+    public void findsClassesInArchives(@TempDir Path archiveDir)
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(SimpleSubclass.class);
+        inputClassDirectory.add(NestedClasses.class);
+        inputClassDirectory.add(NestedClasses.Static.class);
+        try (InputClassRepository repository = new InputClassRepository(
+                inputClassDirectory.writeSourcesArchive(archiveDir.resolve("sources.jar")),
+                inputClassDirectory.writeBytecodeArchive(archiveDir.resolve("classes.jar")))) {
+            InputClass subclass = repository.findClass(SimpleSubclass.class.getName());
+            InputClass nestedClass = repository.findClass(NestedClasses.Static.class.getName());
+
+            assertEquals(SimpleSuperclass.class.getName(), subclass.getSuperclassName());
+            assertEquals(NestedClasses.Static.class.getSimpleName(),
+                    nestedClass.getSource().getName().asString());
+            assertThrows(ClassNotFoundException.class,
+                    () -> repository.findClass(SimpleClass.class.getName()));
+        }
+    }
+
+    @Test
+    public void findsClassesInArchivesAndDirectories(@TempDir Path tempDir)
+            throws IOException, ClassNotFoundException {
+        InputClassDirectory archived = new InputClassDirectory(tempDir.resolve("archived"));
+        archived.add(SimpleSuperclass.class);
+        inputClassDirectory.add(SimpleSubclass.class);
+        List<Path> sourcePath = List.of(inputClassDirectory.sourcesDirectory(),
+                archived.writeSourcesArchive(tempDir.resolve("sources.zip")));
+        List<Path> classPath = List.of(
+                archived.writeBytecodeArchive(tempDir.resolve("classes.jar")),
+                inputClassDirectory.bytecodeDirectory());
+        try (InputClassRepository repository = new InputClassRepository(sourcePath, classPath)) {
+            assertEquals(SimpleSubclass.class.getName(),
+                    repository.findClass(SimpleSubclass.class.getName()).getName());
+            assertEquals(SimpleSuperclass.class.getName(),
+                    repository.findClass(SimpleSuperclass.class.getName()).getName());
+        }
+    }
+
+    @Test
+    public void sharesIdentifierIndexBetweenClassesInSameSourceFile()
+            throws IOException, ClassNotFoundException {
+        InputClassRepository repository = makeRepository(NestedClasses.class);
+
+        IdentifierIndex outerIndex = repository.findIdentifierIndex(NestedClasses.class.getName());
+        IdentifierIndex nestedIndex =
+                repository.findIdentifierIndex(NestedClasses.StaticWithStatic.class.getName());
+
+        assertSame(outerIndex, nestedIndex);
+        assertTrue(outerIndex.contains("InnerInner"));
+        assertFalse(outerIndex.contains("NotAnIdentifierInNestedClasses"));
+    }
 }
@@ -0,0 +1,86 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementationSubclass;
+import se.chalmers.ju2jmh.testinput.unittests.TestInterface;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithComputedFields;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithConstantFields;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithFixtureMethodsAndRules;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithMutableFields;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InstanceStateAnalysisTest {
+    private InputClassDirectory inputClassDirectory;
+    private InputClassRepository repository;
+
+    @BeforeEach
+    public void setUpRepository(@TempDir Path tempDir)
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory = InputClassDirectory.directoryWithClasses(tempDir);
+        repository = new InputClassRepository(
+                inputClassDirectory.sourcesDirectory(), inputClassDirectory.bytecodeDirectory());
+    }
+
+    private boolean isStateless(Class<?> testClass) {
+        return InstanceStateAnalysis.isStateless(repository, testClass.getName());
+    }
+
+    @Test
+    public void classesWithoutFieldsAreStateless() throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(SimpleUnitTest.class);
+
+        assertTrue(isStateless(SimpleUnitTest.class));
+    }
+
+    @Test
+    public void classesWithFinalConstantFieldsAreStateless()
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(UnitTestWithConstantFields.class);
+
+        assertTrue(isStateless(UnitTestWithConstantFields.class));
+    }
+
+    @Test
+    public void superclassesAreAnalysed() throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(TestImplementationSubclass.class);
+        inputClassDirectory.add(TestImplementation.class);
+        inputClassDirectory.add(TestAbstractClass.class);
+        inputClassDirectory.add(TestInterface.class);
+
+        assertTrue(isStateless(TestImplementationSubclass.class));
+    }
+
+    @Test
+    public void classesWithUnavailableSuperclassesAreStateful()
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(TestImplementationSubclass.class);
+
+        assertFalse(isStateless(TestImplementationSubclass.class));
+    }
+
+    @Test
+    public void classesWithMutableFieldsAreStateful() throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(UnitTestWithMutableFields.class);
+        inputClassDirectory.add(UnitTestWithFixtureMethodsAndRules.class);
+
+        assertFalse(isStateless(UnitTestWithMutableFields.class));
+        assertFalse(isStateless(UnitTestWithFixtureMethodsAndRules.class));
+    }
+
+    @Test
+    public void classesWithComputedFieldsAreStateful() throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(UnitTestWithComputedFields.class);
+
+        assertFalse(isStateless(UnitTestWithComputedFields.class));
+    }
+}
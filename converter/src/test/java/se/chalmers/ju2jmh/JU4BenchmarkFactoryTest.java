@@ -16,6 +16,7 @@ import se.chalmers.ju2jmh.testinput.unittests.TwoTestCases;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -85,6 +86,23 @@ public class JU4BenchmarkFactoryTest {
         assertProducesExpectedOutput(ClassWithNestedTests.Nested.NestedNested.class);
     }
 
+    @Test
+    public void producesBenchmarkWithoutSources(@TempDir Path tempDir)
+            throws ClassNotFoundException, IOException, InvalidInputClassException {
+        InputClassDirectory inputClassDirectory = new InputClassDirectory(tempDir);
+        inputClassDirectory.addBytecode(TestImplementation.class);
+        inputClassDirectory.addBytecode(TestAbstractClass.class);
+        InputClassRepository bytecodeRepository = new InputClassRepository(
+                List.of(), List.of(inputClassDirectory.bytecodeDirectory()));
+        JU4BenchmarkFactory benchmarkFactory = new JU4BenchmarkFactory(bytecodeRepository);
+        CompilationUnit expected = astLoader.load("TestImplementation_Expected.java");
+
+        CompilationUnit generated =
+                benchmarkFactory.createBenchmarkFromTest(TestImplementation.class.getName());
+
+        assertThat(generated, equalsAst(expected));
+    }
+
     @Test
     public void throwsExceptionWhenConvertingAbstractClass() {
         JU4BenchmarkFactory benchmarkFactory = new JU4BenchmarkFactory(repository);
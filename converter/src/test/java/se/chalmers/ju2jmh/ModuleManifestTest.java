@@ -0,0 +1,113 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
+import se.chalmers.ju2jmh.testinput.unittests.TestInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ModuleManifestTest {
+    private static Map<Path, String> readTree(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            Map<Path, String> contents = new TreeMap<>();
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                contents.put(directory.relativize(file), Files.readString(file));
+            }
+            return contents;
+        }
+    }
+
+    @Test
+    public void readsModulesWithPathsRelativeToManifest(@TempDir Path tempDir)
+            throws IOException {
+        Path manifestFile = tempDir.resolve("modules.properties");
+        Files.writeString(manifestFile, String.join("\n",
+                "modules = lib, app",
+                "lib.source-path = lib/src",
+                "lib.class-path = lib/classes" + File.pathSeparator + "fixtures/classes",
+                "lib.output = lib/jmh",
+                "lib.classes = a.A, a.B",
+                "app.class-path = app/classes",
+                "app.output = app/jmh"));
+
+        List<ModuleManifest.Module> modules = ModuleManifest.load(manifestFile).getModules();
+
+        assertThat(modules.size(), equalTo(2));
+        ModuleManifest.Module lib = modules.get(0);
+        assertThat(lib.getName(), equalTo("lib"));
+        assertThat(lib.getSourcePath(), equalTo(List.of(tempDir.resolve("lib/src"))));
+        assertThat(lib.getClassPath(), equalTo(
+                List.of(tempDir.resolve("lib/classes"), tempDir.resolve("fixtures/classes"))));
+        assertThat(lib.getOutputPath(), equalTo(tempDir.resolve("lib/jmh")));
+        assertThat(lib.getClassNames(), equalTo(List.of("a.A", "a.B")));
+        ModuleManifest.Module app = modules.get(1);
+        assertThat(app.getSourcePath(), equalTo(List.of()));
+        assertThat(app.getClassNames(), equalTo(List.of()));
+    }
+
+    @Test
+    public void rejectsModuleWithoutOutput(@TempDir Path tempDir) throws IOException {
+        Path manifestFile = tempDir.resolve("modules.properties");
+        Files.writeString(manifestFile, "modules = lib\nlib.class-path = lib/classes\n");
+
+        assertThrows(IllegalArgumentException.class, () -> ModuleManifest.load(manifestFile));
+    }
+
+    @Test
+    public void convertsModulesAsSeparateConversions(@TempDir Path tempDir)
+            throws IOException, ClassNotFoundException {
+        InputClassDirectory lib = InputClassDirectory.directoryWithClasses(
+                tempDir.resolve("lib"), SimpleUnitTest.class);
+        InputClassDirectory fixtures = InputClassDirectory.directoryWithClasses(
+                tempDir.resolve("fixtures"), TestAbstractClass.class, TestInterface.class);
+        InputClassDirectory app = InputClassDirectory.directoryWithClasses(
+                tempDir.resolve("app"), TestImplementation.class);
+        String appSourcePath = app.sourcesDirectory() + File.pathSeparator
+                + fixtures.sourcesDirectory();
+        String appClassPath = app.bytecodeDirectory() + File.pathSeparator
+                + fixtures.bytecodeDirectory();
+        Path expectedLibOutput = Files.createDirectories(tempDir.resolve("expected/lib"));
+        Path expectedAppOutput = Files.createDirectories(tempDir.resolve("expected/app"));
+        new CommandLine(new Converter()).execute(lib.sourcesDirectory().toString(),
+                lib.bytecodeDirectory().toString(), expectedLibOutput.toString(),
+                SimpleUnitTest.class.getName());
+        new CommandLine(new Converter()).execute(appSourcePath, appClassPath,
+                expectedAppOutput.toString(), TestImplementation.class.getName());
+        Path manifestFile = tempDir.resolve("modules.properties");
+        Files.writeString(manifestFile, String.join("\n",
+                "modules = lib, app",
+                "lib.source-path = " + lib.sourcesDirectory(),
+                "lib.class-path = " + lib.bytecodeDirectory(),
+                "lib.output = output/lib",
+                "lib.classes = " + SimpleUnitTest.class.getName(),
+                "app.source-path = " + appSourcePath,
+                "app.class-path = " + appClassPath,
+                "app.output = output/app",
+                "app.classes = " + TestImplementation.class.getName()));
+
+        int exitCode = new CommandLine(new Converter())
+                .execute("--modules=" + manifestFile, "--threads=2");
+
+        assertThat(exitCode, equalTo(CommandLine.ExitCode.OK));
+        assertThat(readTree(tempDir.resolve("output/lib")),
+                equalTo(readTree(expectedLibOutput)));
+        assertThat(readTree(tempDir.resolve("output/app")),
+                equalTo(readTree(expectedAppOutput)));
+    }
+}
@@ -2,6 +2,8 @@ package se.chalmers.ju2jmh;
 
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -13,6 +15,7 @@ import se.chalmers.ju2jmh.testinput.unittests.ClassWithNestedTests;
 import se.chalmers.ju2jmh.testinput.unittests.ClassWithOnlyFixtureMethods;
 import se.chalmers.ju2jmh.testinput.unittests.ExceptionTest;
 import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTestSubclassWithRule;
 import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
 import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
 import se.chalmers.ju2jmh.testinput.unittests.TestImplementationSubclass;
@@ -21,16 +24,23 @@ import se.chalmers.ju2jmh.testinput.unittests.TestSubclassWithoutOwnTests;
 import se.chalmers.ju2jmh.testinput.unittests.TestWithNestedTypesNamedBenchmark;
 import se.chalmers.ju2jmh.testinput.unittests.TwoTestCases;
 import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithFixtureMethodsAndRules;
+import se.chalmers.ju2jmh.testinput.unittests.UnitTestWithMutableFields;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static se.chalmers.ju2jmh.AstMatcher.equalsAst;
 
 public class NestedBenchmarkSuiteBuilderTest {
@@ -442,4 +452,286 @@ public class NestedBenchmarkSuiteBuilderTest {
             assertThat(suite.get(compilationUnit), equalsAst(expected.get(compilationUnit)));
         }
     }
+
+    @Test
+    public void addsTrialClassFixtureMethods() throws ClassNotFoundException, IOException {
+        inputClassDirectory.add(SimpleUnitTest.class);
+        CompilationUnit expected =
+                astLoader.load("SimpleUnitTest_Expected_TrialClassFixtures.java");
+        NestedBenchmarkSuiteBuilder builder =
+                new NestedBenchmarkSuiteBuilder(inputClassDirectory.sourcesDirectory(),
+                        inputClassDirectory.bytecodeDirectory())
+                        .withTrialClassFixtures(true);
+
+        Map<String, CompilationUnit> suite =
+                builder.addTestClass(SimpleUnitTest.class.getName()).buildSuite();
+
+        assertThat(suite.get(SimpleUnitTest.class.getName()), equalsAst(expected));
+    }
+
+    @Test
+    public void addsInvocationFixtureMethods() throws ClassNotFoundException, IOException {
+        inputClassDirectory.add(SimpleUnitTest.class);
+        CompilationUnit expected =
+                astLoader.load("SimpleUnitTest_Expected_InvocationFixtures.java");
+        NestedBenchmarkSuiteBuilder builder =
+                new NestedBenchmarkSuiteBuilder(inputClassDirectory.sourcesDirectory(),
+                        inputClassDirectory.bytecodeDirectory())
+                        .withInvocationFixtures(true);
+
+        Map<String, CompilationUnit> suite =
+                builder.addTestClass(SimpleUnitTest.class.getName()).buildSuite();
+
+        assertThat(suite.get(SimpleUnitTest.class.getName()), equalsAst(expected));
+    }
+
+    @Test
+    public void sharesImplementationsOfStatelessClasses()
+            throws ClassNotFoundException, IOException {
+        inputClassDirectory.add(SimpleUnitTest.class);
+        inputClassDirectory.add(UnitTestWithMutableFields.class);
+        CompilationUnit expected =
+                astLoader.load("SimpleUnitTest_Expected_SharedImplementation.java");
+        NestedBenchmarkSuiteBuilder builder =
+                new NestedBenchmarkSuiteBuilder(inputClassDirectory.sourcesDirectory(),
+                        inputClassDirectory.bytecodeDirectory())
+                        .withStatelessInstanceReuse(true);
+
+        Map<String, CompilationUnit> suite = builder.addTestClass(SimpleUnitTest.class.getName())
+                .addTestClass(UnitTestWithMutableFields.class.getName())
+                .buildSuite();
+
+        assertThat(suite.get(SimpleUnitTest.class.getName()), equalsAst(expected));
+        assertTrue(suite.get(UnitTestWithMutableFields.class.getName())
+                .findAll(MethodDeclaration.class,
+                        m -> m.getNameAsString().equals("createSharedImplementation"))
+                .isEmpty());
+    }
+
+    @Test
+    public void passesPhaseCountersToBenchmarks() throws ClassNotFoundException, IOException {
+        inputClassDirectory.add(SimpleUnitTest.class);
+        CompilationUnit expected = astLoader.load("SimpleUnitTest_Expected_PhaseCounters.java");
+        NestedBenchmarkSuiteBuilder builder =
+                new NestedBenchmarkSuiteBuilder(inputClassDirectory.sourcesDirectory(),
+                        inputClassDirectory.bytecodeDirectory())
+                        .withPhaseCounters(true);
+
+        Map<String, CompilationUnit> suite =
+                builder.addTestClass(SimpleUnitTest.class.getName()).buildSuite();
+
+        assertThat(suite.get(SimpleUnitTest.class.getName()), equalsAst(expected));
+    }
+
+    @Test
+    public void canConvertClassesInArchives(@TempDir Path archiveDir)
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(TestInterface.class);
+        inputClassDirectory.add(TestAbstractClass.class);
+        inputClassDirectory.add(TestImplementation.class);
+        Map<String, CompilationUnit> expected = new HashMap<>();
+        expected.put(TestInterface.class.getName(), originalAst(TestInterface.class));
+        expected.put(TestAbstractClass.class.getName(),
+                astLoader.load("TestAbstractClass_Expected.java"));
+        expected.put(TestImplementation.class.getName(),
+                astLoader.load("TestImplementation_Expected.java"));
+        Path sourcesArchive =
+                inputClassDirectory.writeSourcesArchive(archiveDir.resolve("sources.jar"));
+        Path bytecodeArchive =
+                inputClassDirectory.writeBytecodeArchive(archiveDir.resolve("classes.jar"));
+        try (InputClassRepository repository =
+                new InputClassRepository(sourcesArchive, bytecodeArchive)) {
+            NestedBenchmarkSuiteBuilder builder = new NestedBenchmarkSuiteBuilder(repository);
+
+            Map<String, CompilationUnit> suite =
+                    builder.addTestClass(TestImplementation.class.getName()).buildSuite();
+
+            assertEquals(expected.keySet(), suite.keySet());
+            assertEquals(Set.copyOf(expected.keySet()),
+                    Set.copyOf(builder.findOutputClassNames()));
+            for (String compilationUnit : expected.keySet()) {
+                assertThat(suite.get(compilationUnit), equalsAst(expected.get(compilationUnit)));
+            }
+        }
+    }
+
+    @Test
+    public void buildersCanShareRepository() throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(SimpleUnitTest.class);
+        inputClassDirectory.add(TwoTestCases.class);
+        InputClassRepository repository = new InputClassRepository(
+                inputClassDirectory.sourcesDirectory(), inputClassDirectory.bytecodeDirectory());
+        NestedBenchmarkSuiteBuilder builder1 = new NestedBenchmarkSuiteBuilder(repository);
+        NestedBenchmarkSuiteBuilder builder2 = new NestedBenchmarkSuiteBuilder(repository);
+
+        Map<String, CompilationUnit> suite1 =
+                builder1.addTestClass(SimpleUnitTest.class.getName()).buildSuite();
+        Map<String, CompilationUnit> suite2 =
+                builder2.addTestClass(TwoTestCases.class.getName()).buildSuite();
+
+        assertThat(suite1.get(SimpleUnitTest.class.getName()),
+                equalsAst(astLoader.load("SimpleUnitTest_Expected.java")));
+        assertThat(suite1.get(TwoTestCases.class.getName()),
+                equalsAst(originalAst(TwoTestCases.class)));
+        assertThat(suite2.get(SimpleUnitTest.class.getName()),
+                equalsAst(originalAst(SimpleUnitTest.class)));
+        assertThat(suite2.get(TwoTestCases.class.getName()),
+                equalsAst(astLoader.load("TwoTestCases_Expected.java")));
+    }
+
+    @Test
+    public void parallelBuildMatchesExpectedSuite() throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(ClassWithNestedTests.class);
+        inputClassDirectory.add(ClassWithNestedTests.Nested.class);
+        inputClassDirectory.add(ClassWithNestedTests.Nested.NestedNested.class);
+        inputClassDirectory.add(ClassWithNestedTestSubclasses.class);
+        inputClassDirectory.add(ClassWithNestedTestSubclasses.NestedSubclass.class);
+        inputClassDirectory.add(
+                ClassWithNestedTestSubclasses.NestedSubclass.NestedNestedSubclass.class);
+        inputClassDirectory.add(TestInterface.class);
+        inputClassDirectory.add(TestAbstractClass.class);
+        inputClassDirectory.add(TestImplementation.class);
+        Map<String, CompilationUnit> expected = new HashMap<>();
+        expected.put(ClassWithNestedTests.class.getName(),
+                astLoader.load("ClassWithNestedTests_Expected_Abstract.java"));
+        expected.put(ClassWithNestedTestSubclasses.class.getName(),
+                astLoader.load("ClassWithNestedTestSubclasses_Expected.java"));
+        expected.put(TestInterface.class.getName(), originalAst(TestInterface.class));
+        expected.put(TestAbstractClass.class.getName(),
+                astLoader.load("TestAbstractClass_Expected.java"));
+        expected.put(TestImplementation.class.getName(),
+                astLoader.load("TestImplementation_Expected.java"));
+        Map<String, CompilationUnit> suite;
+        try (ConversionExecutor executor = ConversionExecutor.withThreads(4)) {
+            NestedBenchmarkSuiteBuilder builder =
+                    new NestedBenchmarkSuiteBuilder(inputClassDirectory.sourcesDirectory(),
+                            inputClassDirectory.bytecodeDirectory())
+                            .withExecutor(executor);
+
+            suite = builder.addTestClasses(List.of(TestImplementation.class.getName()))
+                    .addTestClassIncludingNested(ClassWithNestedTestSubclasses.class.getName())
+                    .buildSuite();
+        }
+
+        assertEquals(expected.keySet(), suite.keySet());
+        for (String compilationUnit : expected.keySet()) {
+            assertThat(suite.get(compilationUnit), equalsAst(expected.get(compilationUnit)));
+        }
+    }
+
+    @Test
+    public void partialBuildMatchesExpectedCompilationUnits()
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(TestInterface.class);
+        inputClassDirectory.add(TestAbstractClass.class);
+        inputClassDirectory.add(TestImplementation.class);
+        inputClassDirectory.add(SimpleUnitTest.class);
+        NestedBenchmarkSuiteBuilder builder =
+                new NestedBenchmarkSuiteBuilder(inputClassDirectory.sourcesDirectory(),
+                        inputClassDirectory.bytecodeDirectory());
+
+        Map<String, CompilationUnit> suite = builder
+                .addTestClass(TestImplementation.class.getName())
+                .addTestClass(SimpleUnitTest.class.getName())
+                .buildSuite(List.of(TestImplementation.class.getName()));
+
+        assertEquals(List.of(SimpleUnitTest.class.getName(), TestAbstractClass.class.getName(),
+                        TestImplementation.class.getName(), TestInterface.class.getName()),
+                builder.findOutputClassNames());
+        assertEquals(Set.of(TestImplementation.class.getName()), suite.keySet());
+        assertThat(suite.get(TestImplementation.class.getName()),
+                equalsAst(astLoader.load("TestImplementation_Expected.java")));
+    }
+
+    @Test
+    public void streamingBuildPassesEachCompilationUnitToSinkOnce()
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(TestInterface.class);
+        inputClassDirectory.add(TestAbstractClass.class);
+        inputClassDirectory.add(TestImplementation.class);
+        inputClassDirectory.add(SimpleUnitTest.class);
+        Map<String, CompilationUnit> expected = new HashMap<>();
+        expected.put(TestInterface.class.getName(), originalAst(TestInterface.class));
+        expected.put(TestAbstractClass.class.getName(),
+                astLoader.load("TestAbstractClass_Expected.java"));
+        expected.put(TestImplementation.class.getName(),
+                astLoader.load("TestImplementation_Expected.java"));
+        expected.put(SimpleUnitTest.class.getName(),
+                astLoader.load("SimpleUnitTest_Expected.java"));
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        Map<String, CompilationUnit> suite = new ConcurrentHashMap<>();
+        try (ConversionExecutor executor = ConversionExecutor.withThreads(4)) {
+            NestedBenchmarkSuiteBuilder builder =
+                    new NestedBenchmarkSuiteBuilder(inputClassDirectory.sourcesDirectory(),
+                            inputClassDirectory.bytecodeDirectory())
+                            .withExecutor(executor)
+                            .addTestClass(TestImplementation.class.getName())
+                            .addTestClass(SimpleUnitTest.class.getName());
+
+            builder.buildSuite(builder.findOutputClassNames(), (className, compilationUnit) -> {
+                received.add(className);
+                suite.put(className, compilationUnit);
+            });
+        }
+
+        assertEquals(expected.size(), received.size());
+        assertEquals(expected.keySet(), suite.keySet());
+        for (String compilationUnit : expected.keySet()) {
+            assertThat(suite.get(compilationUnit), equalsAst(expected.get(compilationUnit)));
+        }
+    }
+
+    @Test
+    public void streamingBuildDoesNotRetainCompilationUnits()
+            throws IOException, ClassNotFoundException, InterruptedException {
+        inputClassDirectory.add(TestInterface.class);
+        inputClassDirectory.add(TestAbstractClass.class);
+        inputClassDirectory.add(TestImplementation.class);
+        ConversionMetrics metrics = new ConversionMetrics();
+        InputClassRepository repository = new InputClassRepository(
+                List.of(inputClassDirectory.sourcesDirectory()),
+                List.of(inputClassDirectory.bytecodeDirectory()), null, metrics);
+        NestedBenchmarkSuiteBuilder builder = new NestedBenchmarkSuiteBuilder(repository)
+                .addTestClass(TestImplementation.class.getName());
+        List<WeakReference<CompilationUnit>> written = new ArrayList<>();
+
+        builder.buildSuite(builder.findOutputClassNames(),
+                (className, compilationUnit) -> written.add(new WeakReference<>(compilationUnit)));
+        for (int i = 0; i < 10 && written.stream().anyMatch(r -> r.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(3, written.size());
+        assertTrue(written.stream().allMatch(r -> r.get() == null));
+        // Each compilation unit is parsed once, and no parsed source is kept by the repository.
+        assertEquals(3L, metrics.measurements(ConversionMetrics.Phase.SOURCE_PARSING));
+        repository.findClass(TestImplementation.class.getName()).getSourceView();
+        assertEquals(4L, metrics.measurements(ConversionMetrics.Phase.SOURCE_PARSING));
+    }
+
+    @Test
+    public void benchmarksWithRulesOverrideRuleFreeSuperclassBenchmarks()
+            throws IOException, ClassNotFoundException {
+        inputClassDirectory.add(SimpleUnitTest.class);
+        inputClassDirectory.add(SimpleUnitTestSubclassWithRule.class);
+        NestedBenchmarkSuiteBuilder builder =
+                new NestedBenchmarkSuiteBuilder(inputClassDirectory.sourcesDirectory(),
+                        inputClassDirectory.bytecodeDirectory());
+
+        Map<String, CompilationUnit> suite = builder
+                .addTestClass(SimpleUnitTest.class.getName())
+                .addTestClass(SimpleUnitTestSubclassWithRule.class.getName())
+                .buildSuite();
+
+        ClassOrInterfaceDeclaration benchmarkClass = suite
+                .get(SimpleUnitTestSubclassWithRule.class.getName())
+                .findFirst(ClassOrInterfaceDeclaration.class,
+                        c -> c.getNameAsString().equals("_Benchmark"))
+                .orElseThrow();
+        assertEquals(List.of(), benchmarkClass.getMethodsByName("hasClassRules"));
+        assertThat(benchmarkClass.getMethodsByName("hasInstanceRules").get(0),
+                equalsAst(StaticJavaParser.parseMethodDeclaration(
+                        "@java.lang.Override public boolean hasInstanceRules() { return true; }")));
+    }
 }
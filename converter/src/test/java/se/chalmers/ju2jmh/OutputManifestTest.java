@@ -0,0 +1,134 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutputManifestTest {
+    private static final String CLASS_NAME = "com.example.ExampleTest";
+    private static final String OTHER_CLASS_NAME = "com.example.OtherTest";
+    private Path outputPath;
+
+    @BeforeEach
+    public void setUpOutputDirectory(@TempDir Path tempDir) {
+        outputPath = tempDir;
+    }
+
+    private Path writeOutputFile(String className) throws IOException {
+        Path outputFile = outputPath.resolve(className.replace('.', '/') + ".java");
+        Files.createDirectories(outputFile.getParent());
+        Files.writeString(outputFile, "class " + ClassNames.simpleClassName(className) + " {}");
+        return outputFile;
+    }
+
+    private void saveManifest(String version, String... classNamesAndHashes) throws IOException {
+        OutputManifest manifest = OutputManifest.load(outputPath, version);
+        for (int i = 0; i < classNamesAndHashes.length; i += 2) {
+            manifest.record(classNamesAndHashes[i], classNamesAndHashes[i + 1]);
+        }
+        manifest.save();
+    }
+
+    @Test
+    public void emptyManifestHasNothingUpToDate() throws IOException {
+        writeOutputFile(CLASS_NAME);
+
+        OutputManifest manifest = OutputManifest.load(outputPath, "1");
+
+        assertFalse(manifest.isUpToDate(CLASS_NAME, "hash"));
+    }
+
+    @Test
+    public void outputWithSameInputsIsUpToDate() throws IOException {
+        writeOutputFile(CLASS_NAME);
+        saveManifest("1", CLASS_NAME, "hash");
+
+        OutputManifest manifest = OutputManifest.load(outputPath, "1");
+
+        assertTrue(manifest.isUpToDate(CLASS_NAME, "hash"));
+        assertFalse(manifest.isUpToDate(CLASS_NAME, "other-hash"));
+    }
+
+    @Test
+    public void outputOfOtherConverterVersionIsNotUpToDate() throws IOException {
+        writeOutputFile(CLASS_NAME);
+        saveManifest("1", CLASS_NAME, "hash");
+
+        OutputManifest manifest = OutputManifest.load(outputPath, "2");
+
+        assertFalse(manifest.isUpToDate(CLASS_NAME, "hash"));
+    }
+
+    @Test
+    public void forgottenOutputIsNotUpToDate() throws IOException {
+        writeOutputFile(CLASS_NAME);
+        writeOutputFile(OTHER_CLASS_NAME);
+        OutputManifest previous = OutputManifest.load(outputPath, "1");
+        previous.record(CLASS_NAME, "hash");
+        previous.record(OTHER_CLASS_NAME, "hash");
+        previous.forget(CLASS_NAME);
+        previous.save();
+
+        OutputManifest manifest = OutputManifest.load(outputPath, "1");
+
+        assertFalse(manifest.isUpToDate(CLASS_NAME, "hash"));
+        assertTrue(manifest.isUpToDate(OTHER_CLASS_NAME, "hash"));
+    }
+
+    @Test
+    public void deletedOutputIsNotUpToDate() throws IOException {
+        Path outputFile = writeOutputFile(CLASS_NAME);
+        saveManifest("1", CLASS_NAME, "hash");
+        Files.delete(outputFile);
+
+        OutputManifest manifest = OutputManifest.load(outputPath, "1");
+
+        assertFalse(manifest.isUpToDate(CLASS_NAME, "hash"));
+    }
+
+    @Test
+    public void deletesOnlyStaleOutputs() throws IOException {
+        Path outputFile = writeOutputFile(CLASS_NAME);
+        Path staleOutputFile = writeOutputFile(OTHER_CLASS_NAME);
+        Path unrecordedFile = writeOutputFile("com.example.Unrecorded");
+        saveManifest("1", CLASS_NAME, "hash", OTHER_CLASS_NAME, "hash");
+        OutputManifest manifest = OutputManifest.load(outputPath, "1");
+        manifest.record(CLASS_NAME, "hash");
+
+        manifest.deleteStaleOutputs();
+
+        assertEquals(Set.of(OTHER_CLASS_NAME), manifest.staleClassNames());
+        assertTrue(Files.exists(outputFile));
+        assertFalse(Files.exists(staleOutputFile));
+        assertTrue(Files.exists(unrecordedFile));
+    }
+
+    @Test
+    public void converterVersionIdentifiesBuildDirectories() {
+        // The tests run the converter from its build directories rather than from a JAR.
+        String version = OutputManifest.currentConverterVersion();
+
+        assertTrue(version.matches("dev-[0-9a-f]{64}"), version);
+        assertEquals(version, OutputManifest.currentConverterVersion());
+    }
+
+    @Test
+    public void ignoresCorruptManifest() throws IOException {
+        writeOutputFile(CLASS_NAME);
+        Files.writeString(outputPath.resolve(OutputManifest.FILE_NAME), CLASS_NAME + " hash");
+
+        OutputManifest manifest = OutputManifest.load(outputPath, "1");
+
+        assertFalse(manifest.isUpToDate(CLASS_NAME, "hash"));
+        assertEquals(Set.of(), manifest.staleClassNames());
+    }
+}
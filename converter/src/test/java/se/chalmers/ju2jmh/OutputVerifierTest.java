@@ -0,0 +1,127 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
+import se.chalmers.ju2jmh.testinput.unittests.TestInterface;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutputVerifierTest {
+    private static final String BROKEN_CLASS_NAME = "broken.Broken";
+
+    private static InputClassDirectory input(Path tempDir)
+            throws IOException, ClassNotFoundException {
+        return InputClassDirectory.directoryWithClasses(tempDir.resolve("input"),
+                SimpleUnitTest.class, TestImplementation.class, TestAbstractClass.class,
+                TestInterface.class);
+    }
+
+    private static Path writeBrokenClass(Path outputDirectory) throws IOException {
+        Path file = outputDirectory.resolve("broken/Broken.java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "package broken;\n\npublic class Broken extends "
+                + SimpleUnitTest.class.getName() + "._Benchmark {\n    Missing missing;\n}\n");
+        return file;
+    }
+
+    private static int convert(InputClassDirectory input, Path outputDirectory,
+            String... options) {
+        return convert(input, outputDirectory, new PrintWriter(System.err, true), options);
+    }
+
+    private static int convert(InputClassDirectory input, Path outputDirectory,
+            PrintWriter err, String... options) {
+        List<String> arguments = new ArrayList<>(List.of(
+                input.sourcesDirectory().toString(), input.bytecodeDirectory().toString(),
+                outputDirectory.toString(), SimpleUnitTest.class.getName(),
+                TestImplementation.class.getName(), "--threads=2"));
+        arguments.addAll(List.of(options));
+        return new CommandLine(new Converter())
+                .setErr(err)
+                .execute(arguments.toArray(String[]::new));
+    }
+
+    @Test
+    public void reportsOnlyClassesFailingToCompile(@TempDir Path tempDir) throws Exception {
+        InputClassDirectory input = input(tempDir);
+        Path output = Files.createDirectories(tempDir.resolve("output"));
+        assertThat(convert(input, output, "--verify"), equalTo(CommandLine.ExitCode.OK));
+        writeBrokenClass(output);
+
+        Map<String, List<String>> failures;
+        try (InputClassRepository repository = new InputClassRepository(
+                input.sourcesDirectory(), input.bytecodeDirectory())) {
+            failures = new OutputVerifier(repository, output).verify();
+        }
+
+        assertThat(failures.keySet(), contains(BROKEN_CLASS_NAME));
+        assertThat(failures.get(BROKEN_CLASS_NAME).size(), equalTo(1));
+    }
+
+    @Test
+    public void reportsFailuresToErrorWriter(@TempDir Path tempDir) throws Exception {
+        InputClassDirectory input = input(tempDir);
+        Path output = Files.createDirectories(tempDir.resolve("output"));
+        writeBrokenClass(output);
+        StringWriter err = new StringWriter();
+
+        convert(input, output, new PrintWriter(err, true), "--verify");
+
+        assertThat(err.toString(),
+                containsString("Generated class " + BROKEN_CLASS_NAME + " failed to compile:"));
+    }
+
+    @Test
+    public void deletesFailingGeneratedClassesWhenIgnoringFailures(@TempDir Path tempDir)
+            throws Exception {
+        InputClassDirectory input = input(tempDir);
+        Path source = input.sourcesDirectory()
+                .resolve(TestImplementation.class.getName().replace('.', '/') + ".java");
+        String sourceCode = Files.readString(source);
+        int bodyStart = sourceCode.indexOf('{', sourceCode.indexOf("class ")) + 1;
+        Files.writeString(source, sourceCode.substring(0, bodyStart) + "\n    Missing missing;"
+                + sourceCode.substring(bodyStart));
+        Path output = Files.createDirectories(tempDir.resolve("output"));
+        Path brokenFile = output.resolve(
+                TestImplementation.class.getName().replace('.', '/') + ".java");
+
+        assertThat(convert(input, output, "--verify"), not(equalTo(CommandLine.ExitCode.OK)));
+        assertTrue(Files.exists(brokenFile));
+        assertThat(convert(input, output, "--verify", "--ignore-failures"),
+                equalTo(CommandLine.ExitCode.OK));
+        assertFalse(Files.exists(brokenFile));
+        assertTrue(Files.exists(output.resolve(
+                SimpleUnitTest.class.getName().replace('.', '/') + ".java")));
+    }
+
+    @Test
+    public void keepsFailingClassesNotGeneratedWhenIgnoringFailures(@TempDir Path tempDir)
+            throws Exception {
+        InputClassDirectory input = input(tempDir);
+        Path output = Files.createDirectories(tempDir.resolve("output"));
+        Path brokenFile = writeBrokenClass(output);
+
+        assertThat(convert(input, output, "--verify", "--ignore-failures"),
+                not(equalTo(CommandLine.ExitCode.OK)));
+        assertTrue(Files.exists(brokenFile));
+    }
+}
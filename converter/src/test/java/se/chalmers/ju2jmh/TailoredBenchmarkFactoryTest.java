@@ -15,6 +15,7 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -1314,6 +1315,196 @@ public class TailoredBenchmarkFactoryTest {
         assertThat(benchmark, equalsAst(expected));
     }
 
+    @Test
+    public void handlesClassFixtureMethodsInTrialMethods() {
+        BlockStmt expectedRunBenchmarkBody = blockFromLines(
+                "{",
+                "  this.instance = new Test();",
+                "  payload.accept(this.instance);",
+                "}");
+        MethodDeclaration expectedSetUp = methodFromLines(
+                "@org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)",
+                "public void setUpClassFixture() throws java.lang.Throwable {",
+                "  Test.beforeClass1();",
+                "  Test.beforeClass2();",
+                "}");
+        BlockStmt expectedTearDownBody = blockFromLines(
+                "{",
+                "  Test.afterClass();",
+                "}");
+        UnitTestClass testClass = UnitTestClass.Builder.forClass("com.example.Test")
+                .withTest("test")
+                .withBeforeClass("beforeClass1")
+                .withBeforeClass("beforeClass2")
+                .withAfterClass("afterClass")
+                .build();
+
+        ClassOrInterfaceDeclaration benchmark =
+                TailoredBenchmarkFactory.generateBenchmarkClass(testClass, n -> true, true);
+
+        assertThat(getMethodBody(benchmark, "runBenchmark"), equalsAst(expectedRunBenchmarkBody));
+        assertThat(getMethod(benchmark, "setUpClassFixture"), equalsAst(expectedSetUp));
+        assertThat(getMethodBody(benchmark, "tearDownClassFixture"),
+                equalsAst(expectedTearDownBody));
+    }
+
+    @Test
+    public void handlesClassRulesInTrialMethods() {
+        MethodDeclaration expectedForPayload = methodFromLines(
+                "public static org.junit.runners.model.Statement forPayload(",
+                "    se.chalmers.ju2jmh.api.ThrowingConsumer<Test> payload,",
+                "    String name,",
+                "    _Benchmark benchmark) {",
+                "  org.junit.runner.Description description =",
+                "    se.chalmers.ju2jmh.api.Rules.description(Test.class, name);",
+                "  org.junit.runners.model.Statement statement =",
+                "    new _ClassStatement(payload, benchmark);",
+                "  return statement;",
+                "}");
+        BlockStmt expectedSetUpBody = blockFromLines(
+                "{",
+                "  org.junit.runner.Description description =",
+                "    org.junit.runner.Description.createSuiteDescription(Test.class);",
+                "  this.classFixture = se.chalmers.ju2jmh.api.TrialClassFixture.start(",
+                "    trial -> new _ClassStatement._ApplyClassRulesStatement(",
+                "      new org.junit.runners.model.Statement() {",
+                "        @java.lang.Override",
+                "        public void evaluate() throws java.lang.Throwable {",
+                "          Test.beforeClass();",
+                "          trial.evaluate();",
+                "        }",
+                "      },",
+                "      description),",
+                "    Test.class);",
+                "}");
+        UnitTestClass testClass = UnitTestClass.Builder.forClass("com.example.Test")
+                .withTest("test")
+                .withBeforeClass("beforeClass")
+                .withClassRuleField("rule")
+                .build();
+
+        ClassOrInterfaceDeclaration benchmark =
+                TailoredBenchmarkFactory.generateBenchmarkClass(testClass, n -> true, true);
+
+        ClassOrInterfaceDeclaration classStatement = getNestedClass(benchmark, "_ClassStatement");
+        assertThat(getMethod(classStatement, "forPayload"), equalsAst(expectedForPayload));
+        assertThat(getMethodBody(benchmark, "setUpClassFixture"), equalsAst(expectedSetUpBody));
+        assertThat(getMethodBody(benchmark, "tearDownClassFixture"),
+                equalsAst(blockFromLines("{", "  this.classFixture.stop();", "}")));
+    }
+
+    @Test
+    public void handlesInstanceFixturesInInvocationMethods() {
+        BlockStmt expectedBenchmarkBody = blockFromLines(
+                "{",
+                "  this.payloads.test.accept(this.instance);",
+                "}");
+        MethodDeclaration expectedSetUp = methodFromLines(
+                "@org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Invocation)",
+                "public void setUpInvocation() throws java.lang.Throwable {",
+                "  Test.beforeClass();",
+                "  this.instance = new Test();",
+                "  this.instance.before();",
+                "}");
+        MethodDeclaration expectedTearDown = methodFromLines(
+                "@org.openjdk.jmh.annotations.TearDown("
+                        + "org.openjdk.jmh.annotations.Level.Invocation)",
+                "public void tearDownInvocation() throws java.lang.Throwable {",
+                "  try {",
+                "    this.instance.after();",
+                "  } finally {",
+                "    Test.afterClass();",
+                "  }",
+                "}");
+        UnitTestClass testClass = UnitTestClass.Builder.forClass("com.example.Test")
+                .withTest("test")
+                .withBeforeClass("beforeClass")
+                .withAfterClass("afterClass")
+                .withBefore("before")
+                .withAfter("after")
+                .build();
+
+        ClassOrInterfaceDeclaration benchmark = TailoredBenchmarkFactory.generateBenchmarkClass(
+                testClass, n -> true, false, true, false, false);
+
+        assertThat(getMethodBody(benchmark, "benchmark_test"), equalsAst(expectedBenchmarkBody));
+        assertTrue(benchmark.getMethodsByName("runBenchmark").isEmpty());
+        assertThat(getMethod(benchmark, "setUpInvocation"), equalsAst(expectedSetUp));
+        assertThat(getMethod(benchmark, "tearDownInvocation"), equalsAst(expectedTearDown));
+    }
+
+    @Test
+    public void keepsFixturesWrappedByRulesInBenchmarkMethods() {
+        UnitTestClass testClass = UnitTestClass.Builder.forClass("com.example.Test")
+                .withTest("test")
+                .withBefore("before")
+                .withClassRuleField("rule")
+                .build();
+
+        ClassOrInterfaceDeclaration benchmark = TailoredBenchmarkFactory.generateBenchmarkClass(
+                testClass, n -> true, false, true, false, false);
+
+        assertThat(getMethodBody(benchmark, "benchmark_test"),
+                equalsAst(blockFromLines("{", "  this.payloads.test.evaluate();", "}")));
+        assertTrue(benchmark.getMethodsByName("setUpInvocation").isEmpty());
+        assertTrue(benchmark.getMethodsByName("tearDownInvocation").isEmpty());
+    }
+
+    @Test
+    public void createsSharedInstanceInTrialMethod() {
+        MethodDeclaration expectedSetUp = methodFromLines(
+                "@org.openjdk.jmh.annotations.Setup(org.openjdk.jmh.annotations.Level.Trial)",
+                "public void createSharedInstance() throws java.lang.Throwable {",
+                "  this.instance = new Test();",
+                "}");
+        UnitTestClass testClass = UnitTestClass.Builder.forClass("com.example.Test")
+                .withTest("test")
+                .withBefore("before")
+                .build();
+
+        ClassOrInterfaceDeclaration benchmark = TailoredBenchmarkFactory.generateBenchmarkClass(
+                testClass, n -> true, false, false, true, false);
+
+        assertThat(getMethod(benchmark, "createSharedInstance"), equalsAst(expectedSetUp));
+        assertFalse(getMethod(benchmark, "runBenchmark").toString().contains("new Test()"));
+    }
+
+    @Test
+    public void timesPhasesWithPhaseCounters() {
+        BlockStmt expectedBenchmarkBody = blockFromLines(
+                "{",
+                "  this.phaseCounters = phaseCounters;",
+                "  phaseCounters.startInvocation();",
+                "  this.runBenchmark(this.payloads.test);",
+                "  phaseCounters.endInvocation();",
+                "}");
+        BlockStmt expectedRunBenchmarkBody = blockFromLines(
+                "{",
+                "  this.phaseCounters.startPhase();",
+                "  this.instance = new Test();",
+                "  this.phaseCounters.endCreation();",
+                "  this.phaseCounters.startPhase();",
+                "  this.instance.before();",
+                "  this.phaseCounters.endFixture();",
+                "  this.phaseCounters.startPhase();",
+                "  payload.accept(this.instance);",
+                "  this.phaseCounters.endTest();",
+                "}");
+        UnitTestClass testClass = UnitTestClass.Builder.forClass("com.example.Test")
+                .withTest("test")
+                .withBefore("before")
+                .build();
+
+        ClassOrInterfaceDeclaration benchmark = TailoredBenchmarkFactory.generateBenchmarkClass(
+                testClass, n -> true, false, false, false, true);
+
+        MethodDeclaration benchmarkMethod = getMethod(benchmark, "benchmark_test");
+        assertThat(benchmarkMethod.getParameter(0).getTypeAsString(),
+                equalTo("se.chalmers.ju2jmh.api.PhaseCounters"));
+        assertThat(benchmarkMethod.getBody().orElseThrow(), equalsAst(expectedBenchmarkBody));
+        assertThat(getMethodBody(benchmark, "runBenchmark"), equalsAst(expectedRunBenchmarkBody));
+    }
+
     @Test
     public void generatedNameValidatorCatchesAllIdentifiers() {
         CompilationUnit compilationUnit = compilationUnitFromLines(
@@ -1411,4 +1602,57 @@ public class TailoredBenchmarkFactoryTest {
         assertTrue(nameValidator.test("_other"));
         assertTrue(nameValidator.test("_NOT_i"));
     }
+
+    @Test
+    public void addsMembersForEachTestAfterTemplateMembers() {
+        UnitTestClass withoutRules = UnitTestClass.Builder.forClass("com.example.Test")
+                .withBefore("before")
+                .withAfterClass("afterClass")
+                .withTest("test1")
+                .withExceptionTest("test2", "java.lang.Exception")
+                .withTest("test3")
+                .build();
+        UnitTestClass withRules = UnitTestClass.Builder.forClass("com.example.RuleTest")
+                .withInstanceRuleField("rule")
+                .withClassRuleMethod("classRule")
+                .withTest("test1")
+                .withExceptionTest("test2", "java.lang.Exception")
+                .withTest("test3")
+                .build();
+        List<String> benchmarkNames =
+                List.of("benchmark_test1", "benchmark_test2", "benchmark_test3");
+        List<String> payloadNames = List.of("test1", "test2", "test3");
+
+        for (UnitTestClass testClass : List.of(withoutRules, withRules)) {
+            for (boolean trialClassFixtures : List.of(false, true)) {
+                for (boolean invocationFixtures : List.of(false, true)) {
+                    for (boolean phaseCounters : List.of(false, true)) {
+                        ClassOrInterfaceDeclaration generated = TailoredBenchmarkFactory
+                                .generateBenchmarkClass(testClass, n -> true,
+                                        trialClassFixtures, invocationFixtures, false,
+                                        phaseCounters);
+
+                        int fieldCount = phaseCounters ? 3 : 2;
+                        List<BodyDeclaration<?>> members = generated.getMembers();
+                        assertTrue(members.subList(0, fieldCount).stream()
+                                .allMatch(BodyDeclaration::isFieldDeclaration));
+                        assertIterableEquals(benchmarkNames,
+                                members.subList(fieldCount, fieldCount + benchmarkNames.size())
+                                        .stream()
+                                        .map(m -> m.asMethodDeclaration().getNameAsString())
+                                        .collect(Collectors.toList()));
+                        assertThat(generated.getMethods().stream()
+                                .filter(m -> m.isAnnotationPresent("Benchmark"))
+                                .count(), equalTo((long) benchmarkNames.size()));
+                        assertIterableEquals(payloadNames,
+                                getNestedClass(generated, "_Payloads").getFields().stream()
+                                        .map(f -> f.getVariable(0).getNameAsString())
+                                        .collect(Collectors.toList()));
+                        assertThat(getMethodBody(generated, "makePayloads").getStatements()
+                                .size(), equalTo(payloadNames.size() + 1));
+                    }
+                }
+            }
+        }
+    }
 }
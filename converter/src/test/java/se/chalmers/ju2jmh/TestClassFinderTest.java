@@ -0,0 +1,87 @@
+package se.chalmers.ju2jmh;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.chalmers.ju2jmh.testinput.SimpleClass;
+import se.chalmers.ju2jmh.testinput.SimpleSubclass;
+import se.chalmers.ju2jmh.testinput.SimpleSuperclass;
+import se.chalmers.ju2jmh.testinput.unittests.ClassWithNestedTests;
+import se.chalmers.ju2jmh.testinput.unittests.ClassWithOnlyFixtureMethods;
+import se.chalmers.ju2jmh.testinput.unittests.ExceptionTest;
+import se.chalmers.ju2jmh.testinput.unittests.SimpleUnitTest;
+import se.chalmers.ju2jmh.testinput.unittests.TestAbstractClass;
+import se.chalmers.ju2jmh.testinput.unittests.TestImplementation;
+import se.chalmers.ju2jmh.testinput.unittests.TestInterface;
+import se.chalmers.ju2jmh.testinput.unittests.TestSubclassWithoutOwnTests;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestClassFinderTest {
+    private InputClassRepository repository;
+
+    @BeforeEach
+    public void setUpRepository(@TempDir Path tempDir) throws IOException, ClassNotFoundException {
+        InputClassDirectory inputClassDirectory = InputClassDirectory.directoryWithClasses(tempDir,
+                SimpleClass.class, SimpleSubclass.class, SimpleSuperclass.class,
+                ClassWithNestedTests.class, ClassWithNestedTests.Nested.class,
+                ClassWithNestedTests.Nested.NestedNested.class,
+                ClassWithOnlyFixtureMethods.class, SimpleUnitTest.class, TestAbstractClass.class,
+                TestImplementation.class, TestInterface.class,
+                TestSubclassWithoutOwnTests.class);
+        // Test class without source, which cannot be converted.
+        inputClassDirectory.addBytecode(ExceptionTest.class);
+        repository = new InputClassRepository(inputClassDirectory.sourcesDirectory(),
+                inputClassDirectory.bytecodeDirectory());
+    }
+
+    @Test
+    public void findsConcreteAndInheritingTestClasses() {
+        List<String> expected = List.of(ClassWithNestedTests.Nested.class.getName(),
+                ClassWithNestedTests.Nested.NestedNested.class.getName(),
+                ClassWithOnlyFixtureMethods.class.getName(), SimpleUnitTest.class.getName(),
+                TestImplementation.class.getName(), TestSubclassWithoutOwnTests.class.getName());
+
+        List<String> testClasses = new TestClassFinder(repository).findTestClasses();
+
+        assertEquals(expected, testClasses);
+    }
+
+    @Test
+    public void findsSameTestClassesInParallel() {
+        List<String> expected = new TestClassFinder(repository).findTestClasses();
+
+        List<String> testClasses;
+        try (ConversionExecutor executor = ConversionExecutor.withThreads(4)) {
+            testClasses = new TestClassFinder(repository).withExecutor(executor).findTestClasses();
+        }
+
+        assertEquals(expected, testClasses);
+    }
+
+    @Test
+    public void findsOnlyIncludedAndNotExcludedTestClasses() {
+        List<String> expected = List.of(
+                ClassWithOnlyFixtureMethods.class.getName(), SimpleUnitTest.class.getName());
+
+        List<String> testClasses = new TestClassFinder(repository)
+                .withIncludes(List.of("se.chalmers.ju2jmh.testinput.**"))
+                .withExcludes(List.of("**.Test*", "**$*"))
+                .findTestClasses();
+
+        assertEquals(expected, testClasses);
+    }
+
+    @Test
+    public void findsNoTestClassesOutsideIncludedPackages() {
+        List<String> testClasses = new TestClassFinder(repository)
+                .withIncludes(List.of("se.chalmers.ju2jmh.testinput.*"))
+                .findTestClasses();
+
+        assertEquals(List.of(), testClasses);
+    }
+}
@@ -19,6 +19,16 @@ public class ClassWithNestedTests {
                     this.runBenchmark(this.implementation()::nestedNestedTest, this.description("nestedNestedTest"));
                 }
 
+                @java.lang.Override
+                public boolean hasClassRules() {
+                    return false;
+                }
+
+                @java.lang.Override
+                public boolean hasInstanceRules() {
+                    return false;
+                }
+
                 private NestedNested implementation;
 
                 @java.lang.Override
@@ -41,6 +51,16 @@ public class ClassWithNestedTests {
                 this.runBenchmark(this.implementation()::nestedTest, this.description("nestedTest"));
             }
 
+            @java.lang.Override
+            public boolean hasClassRules() {
+                return false;
+            }
+
+            @java.lang.Override
+            public boolean hasInstanceRules() {
+                return false;
+            }
+
             private Nested implementation;
 
             @java.lang.Override
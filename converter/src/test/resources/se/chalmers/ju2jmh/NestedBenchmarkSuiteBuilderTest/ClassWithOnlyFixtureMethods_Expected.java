@@ -24,6 +24,16 @@ public class ClassWithOnlyFixtureMethods {
             super.after();
         }
 
+        @java.lang.Override
+        public boolean hasClassRules() {
+            return false;
+        }
+
+        @java.lang.Override
+        public boolean hasInstanceRules() {
+            return false;
+        }
+
         private ClassWithOnlyFixtureMethods implementation;
 
         @java.lang.Override
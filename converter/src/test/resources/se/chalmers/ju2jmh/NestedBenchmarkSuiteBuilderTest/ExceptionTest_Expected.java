@@ -16,6 +16,16 @@ public class ExceptionTest {
             this.runExceptionBenchmark(this.implementation()::testException, this.description("testException"), java.lang.Exception.class);
         }
 
+        @java.lang.Override
+        public boolean hasClassRules() {
+            return false;
+        }
+
+        @java.lang.Override
+        public boolean hasInstanceRules() {
+            return false;
+        }
+
         private ExceptionTest implementation;
 
         @java.lang.Override
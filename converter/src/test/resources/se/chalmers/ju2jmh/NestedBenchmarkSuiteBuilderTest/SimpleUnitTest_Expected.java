@@ -14,6 +14,16 @@ public class SimpleUnitTest {
             this.runBenchmark(this.implementation()::test, this.description("test"));
         }
 
+        @java.lang.Override
+        public boolean hasClassRules() {
+            return false;
+        }
+
+        @java.lang.Override
+        public boolean hasInstanceRules() {
+            return false;
+        }
+
         private SimpleUnitTest implementation;
 
         @java.lang.Override
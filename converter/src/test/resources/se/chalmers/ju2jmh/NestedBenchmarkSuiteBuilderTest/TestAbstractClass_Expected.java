@@ -14,6 +14,16 @@ public abstract class TestAbstractClass {
             this.runBenchmark(this.implementation()::abstractClassTest, this.description("abstractClassTest"));
         }
 
+        @java.lang.Override
+        public boolean hasClassRules() {
+            return false;
+        }
+
+        @java.lang.Override
+        public boolean hasInstanceRules() {
+            return false;
+        }
+
         @java.lang.Override
         public abstract void createImplementation() throws java.lang.Throwable;
 
@@ -14,6 +14,16 @@ public class TestImplementation extends TestAbstractClass implements TestInterfa
             this.runBenchmark(this.implementation()::implementationTest, this.description("implementationTest"));
         }
 
+        @java.lang.Override
+        public boolean hasClassRules() {
+            return false;
+        }
+
+        @java.lang.Override
+        public boolean hasInstanceRules() {
+            return false;
+        }
+
         private TestImplementation implementation;
 
         @java.lang.Override
@@ -50,6 +50,16 @@ public class TestWithNestedTypesNamedBenchmark {
                     this.runBenchmark(this.implementation()::test3, this.description("test3"));
                 }
 
+                @java.lang.Override
+                public boolean hasClassRules() {
+                    return false;
+                }
+
+                @java.lang.Override
+                public boolean hasInstanceRules() {
+                    return false;
+                }
+
                 private Nested implementation;
 
                 @java.lang.Override
@@ -72,6 +82,16 @@ public class TestWithNestedTypesNamedBenchmark {
                 this.runBenchmark(this.implementation()::test2, this.description("test2"));
             }
 
+            @java.lang.Override
+            public boolean hasClassRules() {
+                return false;
+            }
+
+            @java.lang.Override
+            public boolean hasInstanceRules() {
+                return false;
+            }
+
             private _Benchmark implementation;
 
             @java.lang.Override
@@ -99,6 +119,16 @@ public class TestWithNestedTypesNamedBenchmark {
             this.runBenchmark(this.implementation()::test1, this.description("test1"));
         }
 
+        @java.lang.Override
+        public boolean hasClassRules() {
+            return false;
+        }
+
+        @java.lang.Override
+        public boolean hasInstanceRules() {
+            return false;
+        }
+
         private TestWithNestedTypesNamedBenchmark implementation;
 
         @java.lang.Override
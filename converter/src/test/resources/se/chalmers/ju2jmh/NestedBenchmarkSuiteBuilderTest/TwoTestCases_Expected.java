@@ -23,6 +23,16 @@ public class TwoTestCases {
             this.runBenchmark(this.implementation()::test2, this.description("test2"));
         }
 
+        @java.lang.Override
+        public boolean hasClassRules() {
+            return false;
+        }
+
+        @java.lang.Override
+        public boolean hasInstanceRules() {
+            return false;
+        }
+
         private TwoTestCases implementation;
 
         @java.lang.Override
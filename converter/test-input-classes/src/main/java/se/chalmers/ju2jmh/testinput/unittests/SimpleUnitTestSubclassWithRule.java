@@ -0,0 +1,22 @@
+package se.chalmers.ju2jmh.testinput.unittests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+public class SimpleUnitTestSubclassWithRule extends SimpleUnitTest {
+    private boolean ruleApplied = false;
+
+    @Rule
+    public final TestRule rule = (base, description) -> {
+        ruleApplied = true;
+        return base;
+    };
+
+    @Test
+    public void subclassTest() {
+        if (!ruleApplied) {
+            throw new AssertionError("Rule was not applied");
+        }
+    }
+}
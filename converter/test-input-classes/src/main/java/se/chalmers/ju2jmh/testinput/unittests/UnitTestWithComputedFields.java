@@ -0,0 +1,10 @@
+package se.chalmers.ju2jmh.testinput.unittests;
+
+import org.junit.Test;
+
+public class UnitTestWithComputedFields {
+    private final long created = System.nanoTime();
+
+    @Test
+    public void test() {}
+}
@@ -0,0 +1,16 @@
+package se.chalmers.ju2jmh.testinput.unittests;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnitTestWithConstantFields {
+    private final int count = 3;
+    private final String name = "name";
+    private final Integer boxed = 42;
+
+    @Before
+    public void before() {}
+
+    @Test
+    public void test() {}
+}
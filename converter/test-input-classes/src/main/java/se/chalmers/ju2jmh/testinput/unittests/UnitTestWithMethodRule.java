@@ -0,0 +1,22 @@
+package se.chalmers.ju2jmh.testinput.unittests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.MethodRule;
+
+public class UnitTestWithMethodRule {
+    private String ruleMethodName = null;
+
+    @Rule
+    public final MethodRule methodRule = (base, method, target) -> {
+        ruleMethodName = method.getName();
+        return base;
+    };
+
+    @Test
+    public void test() {
+        if (!"test".equals(ruleMethodName)) {
+            throw new AssertionError("Rule was applied to " + ruleMethodName);
+        }
+    }
+}
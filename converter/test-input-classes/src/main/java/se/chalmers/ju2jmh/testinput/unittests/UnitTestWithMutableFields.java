@@ -0,0 +1,15 @@
+package se.chalmers.ju2jmh.testinput.unittests;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UnitTestWithMutableFields {
+    private final List<String> values = new ArrayList<>();
+
+    @Test
+    public void test() {
+        values.add("value");
+    }
+}